@@ -0,0 +1,40 @@
+package cn.huiwings.tcprest.annotations;
+
+import cn.huiwings.tcprest.server.ResourceScope;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares how instances of a resource class registered with
+ * {@link cn.huiwings.tcprest.server.ResourceRegister#addResource(Class)} are created and reused.
+ *
+ * <p><b>Example:</b></p>
+ * <pre>{@code
+ * @Scope(value = ResourceScope.POOLED, poolSize = 32)
+ * public class ReportResource implements ReportService, ResettableResource {
+ *     private final byte[] buffer = new byte[1 << 20];  // expensive to allocate per request
+ *
+ *     public void reset() {
+ *         Arrays.fill(buffer, (byte) 0);
+ *     }
+ * }
+ * }</pre>
+ *
+ * @since 2.0.0
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Scope {
+    /**
+     * @return instance lifetime
+     */
+    ResourceScope value();
+
+    /**
+     * @return idle instances kept for {@link ResourceScope#POOLED} (ignored by other scopes)
+     */
+    int poolSize() default ResourceScope.DEFAULT_POOL_SIZE;
+}
@@ -0,0 +1,84 @@
+package cn.huiwings.tcprest.client;
+
+import java.lang.reflect.Proxy;
+
+/**
+ * Creates asynchronous clients on top of a configured {@link TcpRestClientFactory}.
+ *
+ * <p>The async interface mirrors a service interface, with every method returning
+ * {@code CompletableFuture<T>} where the service method returns {@code T}. Pooling, multiplexing,
+ * discovery, SSL, mappers and security all come from the base factory.</p>
+ *
+ * <pre>
+ * public interface CalculatorAsync {
+ *     CompletableFuture&lt;Integer&gt; add(int a, int b);
+ * }
+ *
+ * TcpRestClientFactory base = new TcpRestClientFactory(Calculator.class, "localhost", 8080)
+ *     .withMultiplexing();
+ * CalculatorAsync calc = new AsyncTcpRestClientFactory(base).getInstance(CalculatorAsync.class);
+ * calc.add(1, 2).thenAccept(System.out::println);
+ * </pre>
+ *
+ * <p>Combine with {@link TcpRestClientFactory#withMultiplexing()} so pending calls hold no thread;
+ * without it each pending call occupies a thread of a shared executor.</p>
+ *
+ * @author Weinan Li
+ */
+public class AsyncTcpRestClientFactory {
+
+    private final TcpRestClientFactory base;
+
+    /**
+     * @param base configured factory whose service interfaces back the async interfaces
+     */
+    public AsyncTcpRestClientFactory(TcpRestClientFactory base) {
+        this.base = java.util.Objects.requireNonNull(base, "base factory must not be null");
+    }
+
+    /**
+     * Create an async client when the base factory has exactly one service interface.
+     *
+     * @param asyncInterface interface whose methods return futures
+     * @return async client proxy
+     * @throws IllegalStateException if the base factory has several interfaces
+     */
+    public <A> A getInstance(Class<A> asyncInterface) {
+        Class<?>[] registered = base.getInterfaceClasses();
+        if (registered.length != 1) {
+            throw new IllegalStateException(
+                    "Multiple interfaces registered; use getInstance(Class<A>, Class<?>) to pick the service interface.");
+        }
+        return getInstance(asyncInterface, registered[0]);
+    }
+
+    /**
+     * Create an async client for the given service interface.
+     *
+     * @param asyncInterface interface whose methods return futures
+     * @param syncInterface  service interface registered with the base factory
+     * @return async client proxy
+     * @throws IllegalArgumentException if the service interface is not registered or a method does not match
+     */
+    @SuppressWarnings("unchecked")
+    public <A> A getInstance(Class<A> asyncInterface, Class<?> syncInterface) {
+        if (asyncInterface == null || !asyncInterface.isInterface()) {
+            throw new IllegalArgumentException("asyncInterface must be a non-null interface");
+        }
+        if (syncInterface == null || !base.isRegistered(syncInterface)) {
+            throw new IllegalArgumentException("Interface not registered with the base factory: "
+                    + (syncInterface == null ? null : syncInterface.getName()));
+        }
+        String name = syncInterface.getCanonicalName();
+        TcpRestClient transport = base.createTransport(name);
+        TcpRestClientProxy delegate = new TcpRestClientProxy(name, transport, base.extraMappers, base.sslParams,
+                base.compressionConfig, base.securityConfig);
+        return (A) Proxy.newProxyInstance(asyncInterface.getClassLoader(),
+                new Class<?>[]{asyncInterface},
+                new AsyncTcpRestClientProxy(asyncInterface, syncInterface, transport, delegate));
+    }
+
+    public TcpRestClientFactory getBase() {
+        return base;
+    }
+}
@@ -0,0 +1,142 @@
+package cn.huiwings.tcprest.client;
+
+import cn.huiwings.tcprest.annotations.TimeoutAnnotationHandler;
+import cn.huiwings.tcprest.codec.v2.ProtocolV2Codec;
+import cn.huiwings.tcprest.mapper.Mapper;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.logging.Logger;
+
+/**
+ * Invocation handler for asynchronous client interfaces.
+ *
+ * <p>Every method of the async interface returns {@link CompletableFuture} (or {@link CompletionStage})
+ * and is paired with the method of the synchronous service interface that has the same name and
+ * parameter types. Requests are encoded with the synchronous method's class and signature, so the
+ * server sees an ordinary call; the response is decoded with the synchronous return type.</p>
+ *
+ * <p>The returned future is completed by the transport: on a multiplexed connection that is the
+ * connection's reader thread, so dependent stages should not block. {@code @Timeout} is read from the
+ * async method first, then from the synchronous one, and enforced by a shared timer which fails the
+ * future with {@link cn.huiwings.tcprest.exception.TimeoutException}.</p>
+ *
+ * @author Weinan Li
+ * @see AsyncTcpRestClientFactory
+ */
+public class AsyncTcpRestClientProxy implements InvocationHandler {
+
+    private final Logger logger = Logger.getLogger(AsyncTcpRestClientProxy.class.getName());
+    private final Class<?> syncInterface;
+    private final TcpRestClient tcpRestClient;
+    private final ProtocolV2Codec codec;
+    private final Map<String, Mapper> mappers;
+    private final Map<Method, Method> syncMethods = new HashMap<>();
+
+    /**
+     * @param asyncInterface interface whose methods return futures
+     * @param syncInterface  service interface registered on the server
+     * @param tcpRestClient  transport
+     * @param delegate       synchronous proxy of the service interface; supplies codec and mappers
+     * @throws IllegalArgumentException if an async method has no matching synchronous method
+     */
+    public AsyncTcpRestClientProxy(Class<?> asyncInterface, Class<?> syncInterface, TcpRestClient tcpRestClient,
+                                   TcpRestClientProxy delegate) {
+        this.syncInterface = syncInterface;
+        this.tcpRestClient = tcpRestClient;
+        this.codec = delegate.getCodec();
+        this.mappers = delegate.getMappers();
+        for (Method asyncMethod : asyncInterface.getMethods()) {
+            syncMethods.put(asyncMethod, resolveSyncMethod(asyncMethod, syncInterface));
+        }
+    }
+
+    /**
+     * Find the synchronous counterpart of an async method and check the future's type argument.
+     */
+    static Method resolveSyncMethod(Method asyncMethod, Class<?> syncInterface) {
+        Class<?> returnType = asyncMethod.getReturnType();
+        if (returnType != CompletableFuture.class && returnType != CompletionStage.class) {
+            throw new IllegalArgumentException("Async method must return CompletableFuture or CompletionStage: "
+                    + asyncMethod);
+        }
+        Method syncMethod;
+        try {
+            syncMethod = syncInterface.getMethod(asyncMethod.getName(), asyncMethod.getParameterTypes());
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("No method " + asyncMethod.getName() + " with the same parameters in "
+                    + syncInterface.getName() + " for async method: " + asyncMethod);
+        }
+        Type generic = asyncMethod.getGenericReturnType();
+        if (generic instanceof ParameterizedType) {
+            Type arg = ((ParameterizedType) generic).getActualTypeArguments()[0];
+            Class<?> raw = arg instanceof Class ? (Class<?>) arg
+                    : arg instanceof ParameterizedType ? (Class<?>) ((ParameterizedType) arg).getRawType()
+                    : null;
+            if (raw != null && raw != Object.class && raw != box(syncMethod.getReturnType())) {
+                throw new IllegalArgumentException("Future type " + arg.getTypeName() + " of " + asyncMethod
+                        + " does not match return type " + syncMethod.getReturnType().getName() + " of " + syncMethod);
+            }
+        }
+        return syncMethod;
+    }
+
+    private static Class<?> box(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        if (type == void.class) return Void.class;
+        if (type == int.class) return Integer.class;
+        if (type == long.class) return Long.class;
+        if (type == double.class) return Double.class;
+        if (type == float.class) return Float.class;
+        if (type == boolean.class) return Boolean.class;
+        if (type == byte.class) return Byte.class;
+        if (type == short.class) return Short.class;
+        return Character.class;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] params) throws Throwable {
+        Method syncMethod = syncMethods.get(method);
+        if (syncMethod == null) {
+            throw new IllegalAccessException("Method cannot be invoked: " + method.getName());
+        }
+        String request;
+        try {
+            request = codec.encode(syncInterface, syncMethod, params, mappers);
+        } catch (RuntimeException e) {
+            CompletableFuture<Object> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        int timeout = TimeoutAnnotationHandler.getTimeout(method);
+        if (timeout == 0) {
+            timeout = TimeoutAnnotationHandler.getTimeout(syncMethod);
+        }
+        Class<?> returnType = syncMethod.getReturnType();
+        return tcpRestClient.sendRequestAsync(request, timeout).thenApply(response -> {
+            try {
+                return codec.decode(response, returnType);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * @return the synchronous service interface requests are encoded against
+     */
+    public Class<?> getSyncInterface() {
+        return syncInterface;
+    }
+}
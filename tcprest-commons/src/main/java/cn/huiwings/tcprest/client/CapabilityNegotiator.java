@@ -0,0 +1,91 @@
+package cn.huiwings.tcprest.client;
+
+import cn.huiwings.tcprest.discovery.HostPort;
+import cn.huiwings.tcprest.protocol.Capabilities;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Runs the capability handshake ({@link Capabilities}) and remembers the latest answer per host.
+ *
+ * <p>Shared by all proxies and the {@link ConnectionPool} of a {@link TcpRestClientFactory}
+ * (see {@link TcpRestClientFactory#withCapabilityHandshake()}). Every new pooled connection
+ * negotiates when it is opened, so the agreement follows a host through a rolling upgrade; clients
+ * without a pool negotiate once per host on a short-lived connection. Hosts that do not understand
+ * the handshake are remembered as {@link Capabilities#LEGACY} and are not asked again.</p>
+ *
+ * @since 2.0.0
+ */
+public class CapabilityNegotiator {
+
+    private static final Logger logger = Logger.getLogger(CapabilityNegotiator.class.getName());
+
+    /**
+     * Read timeout for the handshake answer.
+     */
+    static final int HANDSHAKE_TIMEOUT_MILLIS = 5000;
+
+    private final Capabilities offer;
+    private final ConcurrentMap<HostPort, Capabilities> agreed = new ConcurrentHashMap<>();
+
+    /**
+     * @param offer what this client offers to every server
+     */
+    public CapabilityNegotiator(Capabilities offer) {
+        if (offer == null) {
+            throw new IllegalArgumentException("Offer cannot be null");
+        }
+        this.offer = offer;
+    }
+
+    /**
+     * One line written, one line read, on a connection to the host being negotiated with.
+     */
+    interface LineExchange {
+        String exchange(String line) throws IOException;
+    }
+
+    /**
+     * Send the offer and record the answer.
+     *
+     * @param address host being negotiated with
+     * @param exchange writes the offer and reads the answer (null if the connection closed)
+     * @return the agreed capabilities ({@link Capabilities#LEGACY} for servers without handshake support)
+     * @throws IOException if the exchange fails
+     */
+    Capabilities negotiate(HostPort address, LineExchange exchange) throws IOException {
+        String answer = exchange.exchange(offer.toLine());
+        Capabilities result = Capabilities.isHello(answer) ? Capabilities.parse(answer) : Capabilities.LEGACY;
+        Capabilities previous = agreed.put(address, result);
+        if (!result.toLine().equals(previous == null ? null : previous.toLine())) {
+            logger.fine("Capabilities agreed with " + address + ": " + result);
+        }
+        return result;
+    }
+
+    /**
+     * @param address target host
+     * @return true unless the host is known not to understand the handshake
+     */
+    boolean shouldNegotiate(HostPort address) {
+        return agreed.get(address) != Capabilities.LEGACY;
+    }
+
+    /**
+     * @param address target host
+     * @return the latest agreement with the host, or null if none yet
+     */
+    public Capabilities get(HostPort address) {
+        return agreed.get(address);
+    }
+
+    /**
+     * @return what this client offers
+     */
+    public Capabilities getOffer() {
+        return offer;
+    }
+}
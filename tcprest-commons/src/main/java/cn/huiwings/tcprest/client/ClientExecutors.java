@@ -0,0 +1,84 @@
+package cn.huiwings.tcprest.client;
+
+import cn.huiwings.tcprest.exception.TimeoutException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared daemon threads for the asynchronous client API.
+ *
+ * <ul>
+ *   <li>One timer thread fails futures whose {@link cn.huiwings.tcprest.annotations.Timeout} has elapsed,
+ *       so pending async calls do not each hold a thread blocked on {@code SO_TIMEOUT}.</li>
+ *   <li>A cached pool runs blocking sends for transports without a non-blocking path
+ *       (e.g. servers without multiplexing support).</li>
+ * </ul>
+ *
+ * @author Weinan Li
+ */
+final class ClientExecutors {
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+            daemonFactory("tcprest-client-timer"));
+
+    private static final ExecutorService BLOCKING = Executors.newCachedThreadPool(
+            daemonFactory("tcprest-client-blocking"));
+
+    private ClientExecutors() {
+    }
+
+    /**
+     * Message for a request that timed out. A socket can time out without a {@code @Timeout} on the
+     * method (e.g. the multiplexing handshake); the cause then says which wait expired.
+     *
+     * @param timeoutSeconds timeout of the method in seconds (0 = none)
+     * @param cause          the socket timeout
+     * @return the message
+     */
+    static String timeoutMessage(int timeoutSeconds, java.net.SocketTimeoutException cause) {
+        return timeoutSeconds > 0 ? "Request timeout after " + timeoutSeconds + " seconds"
+                : "Request timed out: " + cause.getMessage();
+    }
+
+    /**
+     * Fail the future with {@link TimeoutException} if it is not complete after {@code timeoutSeconds}.
+     *
+     * @param future         future to guard
+     * @param timeoutSeconds timeout in seconds (0 = none)
+     * @return the same future
+     */
+    static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, int timeoutSeconds) {
+        if (timeoutSeconds <= 0 || future.isDone()) {
+            return future;
+        }
+        ScheduledFuture<?> timer = TIMER.schedule(
+                () -> future.completeExceptionally(
+                        new TimeoutException("Request timeout after " + timeoutSeconds + " seconds")),
+                timeoutSeconds, TimeUnit.SECONDS);
+        future.whenComplete((r, e) -> timer.cancel(false));
+        return future;
+    }
+
+    /**
+     * @return executor for blocking sends issued by the async API
+     */
+    static ExecutorService blocking() {
+        return BLOCKING;
+    }
+
+    private static ThreadFactory daemonFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
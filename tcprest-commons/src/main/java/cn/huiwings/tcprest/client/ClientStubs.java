@@ -0,0 +1,391 @@
+package cn.huiwings.tcprest.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Generates client stubs: one hidden class per interface that implements every interface method by
+ * handing its {@link Method} and arguments straight to {@link TcpRestClientProxy#invokeStub(Method, Object[])}.
+ *
+ * <p>Compared with {@link java.lang.reflect.Proxy} there is no {@code InvocationHandler} dispatch and
+ * no {@code UndeclaredThrowableException} wrapping of runtime exceptions on the way back, and
+ * {@code equals}, {@code hashCode} and {@code toString} are the ones of {@link Object} instead of
+ * remote calls. The class file is written directly (no bytecode library): each method only loads,
+ * boxes and forwards its arguments and unboxes the result, so it needs no branches and no stack map
+ * frames.</p>
+ *
+ * <p>The stub is defined as a hidden class in the package of the interface, through
+ * {@link MethodHandles#privateLookupIn}, and generated once per interface. Interfaces the stub cannot
+ * be defined for (modules that do not open the package, inaccessible parameter or return types, more
+ * than 255 argument slots) are served by a {@code Proxy} instead.</p>
+ *
+ * @since 2.0.0
+ */
+final class ClientStubs {
+
+    private static final Logger logger = Logger.getLogger(ClientStubs.class.getName());
+
+    private static final String HANDLER = "cn/huiwings/tcprest/client/TcpRestClientProxy";
+    private static final String HANDLER_DESC = "L" + HANDLER + ";";
+    private static final String METHODS_DESC = "[Ljava/lang/reflect/Method;";
+    private static final String INVOKE_DESC = "(Ljava/lang/reflect/Method;[Ljava/lang/Object;)Ljava/lang/Object;";
+    private static final int MAX_ARG_SLOTS = 255;
+
+    private static final ClassValue<StubClass> STUB_CLASSES = new ClassValue<StubClass>() {
+        @Override
+        protected StubClass computeValue(Class<?> type) {
+            try {
+                return define(type);
+            } catch (Throwable e) {
+                logger.fine("No generated stub for " + type.getName() + ", using a dynamic proxy: " + e);
+                return null;
+            }
+        }
+    };
+
+    private ClientStubs() {
+    }
+
+    /**
+     * @param type client interface
+     * @param handler proxy handling the calls
+     * @return a stub instance, or null if no stub can be generated for the interface
+     */
+    static Object create(Class<?> type, TcpRestClientProxy handler) {
+        StubClass stubClass = STUB_CLASSES.get(type);
+        if (stubClass == null) {
+            return null;
+        }
+        try {
+            return stubClass.constructor.invoke(handler, stubClass.methods);
+        } catch (Throwable e) {
+            logger.fine("Cannot instantiate stub for " + type.getName() + ": " + e);
+            return null;
+        }
+    }
+
+    private static StubClass define(Class<?> type) throws Exception {
+        if (!type.isInterface() || type.isHidden()) {
+            throw new IllegalArgumentException("Not a stubbable interface: " + type.getName());
+        }
+        Method[] methods = stubbedMethods(type);
+        for (Method method : methods) {
+            checkAccessible(type, method.getReturnType());
+            for (Class<?> parameterType : method.getParameterTypes()) {
+                checkAccessible(type, parameterType);
+            }
+        }
+
+        MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+        byte[] bytes = generate(type.getName().replace('.', '/') + "$TcpRestStub", type, methods);
+        MethodHandles.Lookup stubLookup = lookup.defineHiddenClass(bytes, true);
+        MethodHandle constructor = stubLookup.findConstructor(stubLookup.lookupClass(),
+                MethodType.methodType(void.class, TcpRestClientProxy.class, Method[].class));
+        return new StubClass(constructor, methods);
+    }
+
+    /**
+     * Abstract and default instance methods, one per name and descriptor.
+     */
+    private static Method[] stubbedMethods(Class<?> type) {
+        Map<String, Method> methods = new LinkedHashMap<>();
+        for (Method method : type.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers())) {
+                methods.putIfAbsent(method.getName() + descriptor(method), method);
+            }
+        }
+        return methods.values().toArray(new Method[0]);
+    }
+
+    private static void checkAccessible(Class<?> type, Class<?> used) {
+        while (used.isArray()) {
+            used = used.getComponentType();
+        }
+        if (used.isPrimitive() || Modifier.isPublic(used.getModifiers())
+                || (used.getClassLoader() == type.getClassLoader() && used.getPackageName().equals(type.getPackageName()))) {
+            return;
+        }
+        throw new IllegalArgumentException("Type not accessible from the stub: " + used.getName());
+    }
+
+    static byte[] generate(String className, Class<?> type, Method[] methods) throws IOException {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(className);
+        int superClass = pool.classRef("java/lang/Object");
+        int interfaceClass = pool.classRef(type.getName().replace('.', '/'));
+        int handlerField = pool.fieldRef(className, "handler", HANDLER_DESC);
+        int methodsField = pool.fieldRef(className, "methods", METHODS_DESC);
+        int code = pool.utf8("Code");
+
+        List<byte[]> methodInfos = new ArrayList<>();
+        methodInfos.add(constructor(pool, code, handlerField, methodsField));
+        int invoke = pool.methodRef(HANDLER, "invokeStub", INVOKE_DESC);
+        for (int i = 0; i < methods.length; i++) {
+            methodInfos.add(stubMethod(pool, code, handlerField, methodsField, invoke, methods[i], i));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(61); // Java 17
+        pool.writeTo(out);
+        out.writeShort(Modifier.PUBLIC | Modifier.FINAL | 0x0020); // ACC_SUPER
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(interfaceClass);
+
+        out.writeShort(2);
+        writeField(out, pool.utf8("handler"), pool.utf8(HANDLER_DESC));
+        writeField(out, pool.utf8("methods"), pool.utf8(METHODS_DESC));
+
+        out.writeShort(methodInfos.size());
+        for (byte[] methodInfo : methodInfos) {
+            out.write(methodInfo);
+        }
+        out.writeShort(0); // class attributes
+        return bytes.toByteArray();
+    }
+
+    private static void writeField(DataOutputStream out, int name, int descriptor) throws IOException {
+        out.writeShort(Modifier.PRIVATE | Modifier.FINAL);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(0);
+    }
+
+    private static byte[] constructor(ConstantPool pool, int code, int handlerField, int methodsField) throws IOException {
+        Code body = new Code();
+        body.op(0x2a); // aload_0
+        body.op(0xb7).u2(pool.methodRef("java/lang/Object", "<init>", "()V")); // invokespecial
+        body.op(0x2a).op(0x2b); // aload_0, aload_1
+        body.op(0xb5).u2(handlerField); // putfield
+        body.op(0x2a).op(0x2c); // aload_0, aload_2
+        body.op(0xb5).u2(methodsField);
+        body.op(0xb1); // return
+        return methodInfo(Modifier.PUBLIC, pool.utf8("<init>"),
+                pool.utf8("(" + HANDLER_DESC + METHODS_DESC + ")V"), code, 2, 3, body);
+    }
+
+    private static byte[] stubMethod(ConstantPool pool, int code, int handlerField, int methodsField, int invoke,
+                                     Method method, int index) throws IOException {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        Code body = new Code();
+        // handler.invokeStub(methods[index], new Object[]{args...})
+        body.op(0x2a).op(0xb4).u2(handlerField); // aload_0, getfield
+        body.op(0x2a).op(0xb4).u2(methodsField);
+        body.pushInt(index).op(0x32); // aaload
+        body.pushInt(parameterTypes.length).op(0xbd).u2(pool.classRef("java/lang/Object")); // anewarray
+        int slot = 1;
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> parameterType = parameterTypes[i];
+            body.op(0x59).pushInt(i); // dup
+            body.op(loadOpcode(parameterType)).u1(slot);
+            if (parameterType.isPrimitive()) {
+                Class<?> wrapper = MethodType.methodType(parameterType).wrap().returnType();
+                body.op(0xb8).u2(pool.methodRef(internalName(wrapper), "valueOf", // invokestatic
+                        "(" + descriptor(parameterType) + ")" + descriptor(wrapper)));
+            }
+            body.op(0x53); // aastore
+            slot += parameterType == long.class || parameterType == double.class ? 2 : 1;
+            if (slot > MAX_ARG_SLOTS) {
+                throw new IllegalArgumentException("Too many arguments: " + method);
+            }
+        }
+        body.op(0xb6).u2(invoke); // invokevirtual
+
+        Class<?> returnType = method.getReturnType();
+        if (returnType == void.class) {
+            body.op(0x57).op(0xb1); // pop, return
+        } else if (returnType.isPrimitive()) {
+            Class<?> wrapper = MethodType.methodType(returnType).wrap().returnType();
+            body.op(0xc0).u2(pool.classRef(internalName(wrapper))); // checkcast
+            body.op(0xb6).u2(pool.methodRef(internalName(wrapper), returnType.getName() + "Value",
+                    "()" + descriptor(returnType)));
+            body.op(returnOpcode(returnType));
+        } else {
+            if (returnType != Object.class) {
+                body.op(0xc0).u2(pool.classRef(internalName(returnType)));
+            }
+            body.op(0xb0); // areturn
+        }
+        return methodInfo(Modifier.PUBLIC | Modifier.FINAL, pool.utf8(method.getName()), pool.utf8(descriptor(method)),
+                code, 8, slot, body);
+    }
+
+    private static byte[] methodInfo(int access, int name, int descriptor, int code, int maxStack, int maxLocals,
+                                     Code body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + body.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(access);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(code);
+        out.writeInt(12 + body.size());
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(body.size());
+        body.writeTo(out);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // code attributes
+        return bytes.toByteArray();
+    }
+
+    private static int loadOpcode(Class<?> type) {
+        if (type == long.class) {
+            return 0x16; // lload
+        } else if (type == float.class) {
+            return 0x17; // fload
+        } else if (type == double.class) {
+            return 0x18; // dload
+        } else if (type.isPrimitive()) {
+            return 0x15; // iload
+        }
+        return 0x19; // aload
+    }
+
+    private static int returnOpcode(Class<?> type) {
+        if (type == long.class) {
+            return 0xad; // lreturn
+        } else if (type == float.class) {
+            return 0xae; // freturn
+        } else if (type == double.class) {
+            return 0xaf; // dreturn
+        }
+        return 0xac; // ireturn
+    }
+
+    private static String internalName(Class<?> type) {
+        // Arrays are referenced by descriptor in class constants
+        return type.isArray() ? descriptor(type) : type.getName().replace('.', '/');
+    }
+
+    private static String descriptor(Method method) {
+        return MethodType.methodType(method.getReturnType(), method.getParameterTypes()).toMethodDescriptorString();
+    }
+
+    private static String descriptor(Class<?> type) {
+        return type.descriptorString();
+    }
+
+    private static final class StubClass {
+        private final MethodHandle constructor;
+        private final Method[] methods;
+
+        StubClass(MethodHandle constructor, Method[] methods) {
+            this.constructor = constructor;
+            this.methods = methods;
+        }
+    }
+
+    private static final class Code {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+
+        Code op(int opcode) {
+            bytes.write(opcode);
+            return this;
+        }
+
+        Code u1(int value) {
+            bytes.write(value);
+            return this;
+        }
+
+        Code u2(int value) {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+            return this;
+        }
+
+        Code pushInt(int value) {
+            if (value <= 5) {
+                return op(0x03 + value); // iconst_<n>
+            } else if (value <= Byte.MAX_VALUE) {
+                return op(0x10).u1(value); // bipush
+            }
+            return op(0x11).u2(value); // sipush
+        }
+
+        int size() {
+            return bytes.size();
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            bytes.writeTo(out);
+        }
+    }
+
+    /**
+     * Class file constant pool with deduplicated entries.
+     */
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) throws IOException {
+            Integer index = entries.get("U" + value);
+            if (index == null) {
+                out.writeByte(1);
+                out.writeUTF(value);
+                index = add("U" + value);
+            }
+            return index;
+        }
+
+        int classRef(String internalName) throws IOException {
+            return ref("C" + internalName, 7, utf8(internalName), -1);
+        }
+
+        int fieldRef(String owner, String name, String descriptor) throws IOException {
+            return ref("F" + owner + "." + name + descriptor, 9, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        int methodRef(String owner, String name, String descriptor) throws IOException {
+            return ref("M" + owner + "." + name + descriptor, 10, classRef(owner), nameAndType(name, descriptor));
+        }
+
+        private int nameAndType(String name, String descriptor) throws IOException {
+            return ref("N" + name + descriptor, 12, utf8(name), utf8(descriptor));
+        }
+
+        private int ref(String key, int tag, int first, int second) throws IOException {
+            Integer index = entries.get(key);
+            if (index == null) {
+                out.writeByte(tag);
+                out.writeShort(first);
+                if (second >= 0) {
+                    out.writeShort(second);
+                }
+                index = add(key);
+            }
+            return index;
+        }
+
+        private int add(String key) {
+            int index = count++;
+            entries.put(key, index);
+            return index;
+        }
+
+        void writeTo(DataOutputStream target) throws IOException {
+            target.writeShort(count);
+            bytes.writeTo(target);
+        }
+    }
+}
@@ -0,0 +1,496 @@
+package cn.huiwings.tcprest.client;
+
+import cn.huiwings.tcprest.discovery.HostPort;
+import cn.huiwings.tcprest.exception.ConnectionPoolExhaustedException;
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.ssl.SSLParams;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Bounded pool of client connections, keyed by {@link HostPort}.
+ *
+ * <p>One pool is shared by all proxies created from a {@link TcpRestClientFactory}
+ * (see {@link TcpRestClientFactory#withConnectionPool()}), including discovery-based clients,
+ * so every interface and every resolved instance reuses warm sockets.</p>
+ *
+ * <p><b>Sizing:</b> per host, at most {@code maxTotal} connections exist; released connections beyond
+ * {@code maxIdle} are closed; the background evictor closes connections idle longer than
+ * {@code idleEvictMillis} and re-opens up to {@code minIdle}.</p>
+ *
+ * <p><b>Exhaustion:</b> when all {@code maxTotal} connections are borrowed, {@link #borrow(HostPort)}
+ * waits up to {@code maxWaitMillis} and then throws {@link ConnectionPoolExhaustedException}.
+ * Wait counts and wait times are exposed for monitoring.</p>
+ *
+ * <p><b>Capability handshake:</b> with a {@link CapabilityNegotiator} set, every new connection
+ * negotiates before it is handed out. If the server does not understand the handshake the socket is
+ * reopened once (older servers may close it after the error reply) and the host is not asked again.</p>
+ *
+ * @author Weinan Li
+ */
+public class ConnectionPool implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ConnectionPool.class.getName());
+
+    private final ConnectionPoolConfig config;
+    private final SSLParams sslParams;
+    private volatile CapabilityNegotiator capabilityNegotiator;
+    private final ConcurrentMap<HostPort, HostPool> pools = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong reuseCount = new AtomicLong();
+    private final AtomicLong exhaustedCount = new AtomicLong();
+    private final AtomicLong waitTimeoutCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Per-host state. {@code total} counts idle, borrowed and currently-opening connections.
+     */
+    private static class HostPool {
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition available = lock.newCondition();
+        final Deque<PooledConnection> idle = new ArrayDeque<>();
+        int total;
+    }
+
+    public ConnectionPool() {
+        this(new ConnectionPoolConfig(), null);
+    }
+
+    public ConnectionPool(ConnectionPoolConfig config) {
+        this(config, null);
+    }
+
+    /**
+     * @param config    pool configuration
+     * @param sslParams SSL configuration for new sockets (null = plain TCP)
+     */
+    public ConnectionPool(ConnectionPoolConfig config, SSLParams sslParams) {
+        if (config == null) {
+            throw new IllegalArgumentException("Connection pool config cannot be null");
+        }
+        this.config = config;
+        this.sslParams = sslParams;
+        if (config.getEvictionIntervalMillis() > 0) {
+            evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "tcprest-pool-evictor");
+                t.setDaemon(true);
+                return t;
+            });
+            evictor.scheduleWithFixedDelay(this::evict, config.getEvictionIntervalMillis(),
+                    config.getEvictionIntervalMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
+        logger.info("Connection pool configured: " + config);
+    }
+
+    /**
+     * Borrow a connection to the given address: a validated idle one if available, otherwise a new one
+     * while under {@code maxTotal}, otherwise wait up to {@code maxWaitMillis}.
+     *
+     * @param address target host and port
+     * @return a connection that must be handed back via {@link #release} or {@link #invalidate}
+     * @throws IOException if a new connection cannot be opened
+     * @throws ConnectionPoolExhaustedException if no connection became available in time
+     */
+    public PooledConnection borrow(HostPort address) throws IOException {
+        return borrow(address, false);
+    }
+
+    /**
+     * Borrow a newly opened connection, skipping idle ones (used to resend a request whose write failed).
+     */
+    PooledConnection borrowNew(HostPort address) throws IOException {
+        return borrow(address, true);
+    }
+
+    private PooledConnection borrow(HostPort address, boolean fresh) throws IOException {
+        HostPool pool = pools.computeIfAbsent(address, k -> new HostPool());
+        long startNanos = System.nanoTime();
+        long deadline = startNanos + TimeUnit.MILLISECONDS.toNanos(config.getMaxWaitMillis());
+        boolean waited = false;
+        while (true) {
+            PooledConnection idle;
+            pool.lock.lock();
+            try {
+                while (true) {
+                    ensureOpen();
+                    idle = fresh ? null : pool.idle.pollFirst();
+                    if (idle != null || pool.total < config.getMaxTotal()) {
+                        break;
+                    }
+                    if (!waited) {
+                        waited = true;
+                        exhaustedCount.incrementAndGet();
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        waitTimeoutCount.incrementAndGet();
+                        recordWait(startNanos);
+                        throw new ConnectionPoolExhaustedException("Connection pool exhausted for " + address
+                                + " (maxTotal=" + config.getMaxTotal() + ", waited " + config.getMaxWaitMillis() + "ms)");
+                    }
+                    pool.available.awaitNanos(remaining);
+                }
+                if (idle == null) {
+                    pool.total++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a pooled connection to " + address, e);
+            } finally {
+                pool.lock.unlock();
+            }
+
+            if (idle == null) {
+                PooledConnection conn = open(pool, address);
+                finishBorrow(waited, startNanos);
+                return conn;
+            }
+            if (!config.isValidateOnBorrow() || idle.isAlive(config.getValidateAfterIdleMillis())) {
+                reuseCount.incrementAndGet();
+                finishBorrow(waited, startNanos);
+                return idle;
+            }
+            logger.fine("Discarding stale pooled connection: " + idle);
+            invalidate(idle);
+        }
+    }
+
+    /**
+     * Return a healthy connection to the pool; closed instead if {@code maxIdle} is reached.
+     *
+     * @param conn connection obtained from {@link #borrow(HostPort)}
+     */
+    public void release(PooledConnection conn) {
+        HostPool pool = pools.get(conn.getAddress());
+        if (pool == null) {
+            conn.close();
+            return;
+        }
+        boolean keep;
+        pool.lock.lock();
+        try {
+            keep = !closed && pool.idle.size() < config.getMaxIdle();
+            if (keep) {
+                conn.touch();
+                pool.idle.addFirst(conn);
+            } else {
+                pool.total--;
+            }
+            pool.available.signal();
+        } finally {
+            pool.lock.unlock();
+        }
+        if (!keep) {
+            destroy(conn);
+        }
+    }
+
+    /**
+     * Close a broken connection and free its slot.
+     *
+     * @param conn connection obtained from {@link #borrow(HostPort)}
+     */
+    public void invalidate(PooledConnection conn) {
+        HostPool pool = pools.get(conn.getAddress());
+        if (pool != null) {
+            pool.lock.lock();
+            try {
+                pool.total--;
+                pool.available.signal();
+            } finally {
+                pool.lock.unlock();
+            }
+        }
+        destroy(conn);
+    }
+
+    private PooledConnection open(HostPool pool, HostPort address) throws IOException {
+        try {
+            PooledConnection conn = connect(address);
+            CapabilityNegotiator negotiator = capabilityNegotiator;
+            if (negotiator != null && negotiator.shouldNegotiate(address)) {
+                PooledConnection negotiated = conn;
+                try {
+                    Capabilities agreed = negotiator.negotiate(address, line ->
+                            negotiated.handshake(line, CapabilityNegotiator.HANDSHAKE_TIMEOUT_MILLIS));
+                    if (agreed == Capabilities.LEGACY) {
+                        negotiated.close();
+                        conn = connect(address);
+                    }
+                } catch (Exception e) {
+                    negotiated.close();
+                    throw e;
+                }
+            }
+            createdCount.incrementAndGet();
+            return conn;
+        } catch (Exception e) {
+            pool.lock.lock();
+            try {
+                pool.total--;
+                pool.available.signal();
+            } finally {
+                pool.lock.unlock();
+            }
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            throw new IOException("Failed to open connection to " + address + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Plain TCP connections are opened through a {@link SocketChannel} so they can be validated without blocking.
+     */
+    private PooledConnection connect(HostPort address) throws Exception {
+        if (sslParams == null) {
+            return new PooledConnection(address,
+                    SocketChannel.open(new InetSocketAddress(address.getHost(), address.getPort())).socket());
+        }
+        return new PooledConnection(address,
+                DefaultTcpRestClient.openSocket(sslParams, address.getHost(), address.getPort()));
+    }
+
+    private void destroy(PooledConnection conn) {
+        conn.close();
+        destroyedCount.incrementAndGet();
+    }
+
+    private void finishBorrow(boolean waited, long startNanos) {
+        borrowCount.incrementAndGet();
+        if (waited) {
+            recordWait(startNanos);
+        }
+    }
+
+    private void recordWait(long startNanos) {
+        long waitNanos = System.nanoTime() - startNanos;
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Connection pool is closed");
+        }
+    }
+
+    /**
+     * Evictor run: close connections idle longer than {@code idleEvictMillis} (keeping {@code minIdle}),
+     * then top each host back up to {@code minIdle}.
+     */
+    void evict() {
+        long now = System.currentTimeMillis();
+        for (java.util.Map.Entry<HostPort, HostPool> entry : pools.entrySet()) {
+            HostPool pool = entry.getValue();
+            List<PooledConnection> expired = new ArrayList<>();
+            int missing;
+            pool.lock.lock();
+            try {
+                if (config.getIdleEvictMillis() > 0) {
+                    Iterator<PooledConnection> oldestFirst = pool.idle.descendingIterator();
+                    while (oldestFirst.hasNext() && pool.idle.size() > config.getMinIdle()) {
+                        PooledConnection conn = oldestFirst.next();
+                        if (now - conn.getLastUsedMillis() > config.getIdleEvictMillis()) {
+                            oldestFirst.remove();
+                            pool.total--;
+                            expired.add(conn);
+                        }
+                    }
+                }
+                missing = closed ? 0 : Math.min(config.getMinIdle() - pool.idle.size(),
+                        config.getMaxTotal() - pool.total);
+                if (missing > 0) {
+                    pool.total += missing;
+                }
+            } finally {
+                pool.lock.unlock();
+            }
+            for (PooledConnection conn : expired) {
+                destroy(conn);
+            }
+            for (int i = 0; i < missing; i++) {
+                try {
+                    // The slot was reserved above; open() frees it on failure
+                    PooledConnection conn = open(pool, entry.getKey());
+                    pool.lock.lock();
+                    try {
+                        pool.idle.addLast(conn);
+                        pool.available.signal();
+                    } finally {
+                        pool.lock.unlock();
+                    }
+                } catch (IOException e) {
+                    logger.fine("Could not pre-open connection to " + entry.getKey() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @param address target host and port
+     * @return idle connections currently pooled for the address
+     */
+    public int getIdleCount(HostPort address) {
+        HostPool pool = pools.get(address);
+        if (pool == null) {
+            return 0;
+        }
+        pool.lock.lock();
+        try {
+            return pool.idle.size();
+        } finally {
+            pool.lock.unlock();
+        }
+    }
+
+    /**
+     * @param address target host and port
+     * @return borrowed connections (total minus idle) for the address
+     */
+    public int getActiveCount(HostPort address) {
+        HostPool pool = pools.get(address);
+        if (pool == null) {
+            return 0;
+        }
+        pool.lock.lock();
+        try {
+            return pool.total - pool.idle.size();
+        } finally {
+            pool.lock.unlock();
+        }
+    }
+
+    /**
+     * Negotiate capabilities on every new connection.
+     *
+     * @param capabilityNegotiator negotiator shared with the clients using this pool (null = no handshake)
+     */
+    public void setCapabilityNegotiator(CapabilityNegotiator capabilityNegotiator) {
+        this.capabilityNegotiator = capabilityNegotiator;
+    }
+
+    public CapabilityNegotiator getCapabilityNegotiator() {
+        return capabilityNegotiator;
+    }
+
+    public ConnectionPoolConfig getConfig() {
+        return config;
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getDestroyedCount() {
+        return destroyedCount.get();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * @return borrows served by an already-open connection
+     */
+    public long getReuseCount() {
+        return reuseCount.get();
+    }
+
+    /**
+     * @return borrows that found the pool exhausted and had to wait
+     */
+    public long getExhaustedCount() {
+        return exhaustedCount.get();
+    }
+
+    /**
+     * @return borrows that gave up after {@code maxWaitMillis}
+     */
+    public long getWaitTimeoutCount() {
+        return waitTimeoutCount.get();
+    }
+
+    /**
+     * @return total time spent waiting on an exhausted pool, in milliseconds
+     */
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+    }
+
+    /**
+     * @return longest single wait on an exhausted pool, in milliseconds
+     */
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Close all idle connections and stop the evictor. Borrowed connections are closed when released.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+        for (HostPool pool : pools.values()) {
+            List<PooledConnection> idle;
+            pool.lock.lock();
+            try {
+                idle = new ArrayList<>(pool.idle);
+                pool.total -= idle.size();
+                pool.idle.clear();
+                pool.available.signalAll();
+            } finally {
+                pool.lock.unlock();
+            }
+            for (PooledConnection conn : idle) {
+                destroy(conn);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{" +
+                "created=" + createdCount +
+                ", destroyed=" + destroyedCount +
+                ", borrowed=" + borrowCount +
+                ", reused=" + reuseCount +
+                ", exhausted=" + exhaustedCount +
+                ", waitTimeouts=" + waitTimeoutCount +
+                ", totalWaitMillis=" + getTotalWaitMillis() +
+                ", maxWaitMillis=" + getMaxWaitMillis() +
+                '}';
+    }
+}
@@ -0,0 +1,196 @@
+package cn.huiwings.tcprest.client;
+
+/**
+ * Configuration for the client-side {@link ConnectionPool}.
+ *
+ * <p>Connections are pooled per target {@link cn.huiwings.tcprest.discovery.HostPort}; every limit
+ * below applies to each host separately. Pooling only pays off when the server keeps connections
+ * open ({@link cn.huiwings.tcprest.server.TcpRestServer#enableKeepAlive()}); against a server that
+ * closes after each response, validation on borrow discards the closed socket and a fresh one is opened.</p>
+ *
+ * @author Weinan Li
+ */
+public class ConnectionPoolConfig {
+
+    /**
+     * Default maximum number of connections (borrowed + idle) per host.
+     */
+    public static final int DEFAULT_MAX_TOTAL = 16;
+
+    /**
+     * Default maximum number of idle connections kept per host.
+     */
+    public static final int DEFAULT_MAX_IDLE = 8;
+
+    /**
+     * Default maximum time to wait for a connection when the pool is exhausted (5 seconds).
+     */
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 5000;
+
+    /**
+     * Default idle time after which a connection above {@code minIdle} is evicted (30 seconds).
+     * Should be lower than the server's keep-alive idle timeout.
+     */
+    public static final long DEFAULT_IDLE_EVICT_MILLIS = 30 * 1000;
+
+    /**
+     * Default idle time after which an SSL connection is probed on borrow (2 seconds).
+     */
+    public static final long DEFAULT_VALIDATE_AFTER_IDLE_MILLIS = 2 * 1000;
+
+    /**
+     * Default interval between eviction runs (10 seconds).
+     */
+    public static final long DEFAULT_EVICTION_INTERVAL_MILLIS = 10 * 1000;
+
+    /**
+     * Maximum connections (borrowed + idle) per host. Default: {@value #DEFAULT_MAX_TOTAL}
+     */
+    private int maxTotal = DEFAULT_MAX_TOTAL;
+
+    /**
+     * Maximum idle connections kept per host; extra connections are closed on release.
+     * Default: {@value #DEFAULT_MAX_IDLE}
+     */
+    private int maxIdle = DEFAULT_MAX_IDLE;
+
+    /**
+     * Idle connections the evictor keeps warm per host (pre-opened if missing). Default: 0
+     */
+    private int minIdle = 0;
+
+    /**
+     * Maximum time to wait for a connection when {@code maxTotal} are borrowed.
+     * 0 means fail immediately. Default: {@value #DEFAULT_MAX_WAIT_MILLIS}
+     */
+    private long maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+
+    /**
+     * Check that an idle connection is still open before handing it out. Default: true
+     */
+    private boolean validateOnBorrow = true;
+
+    /**
+     * Plain TCP connections are validated with a non-blocking read; SSL connections need a short blocking
+     * read, done only when they have been idle at least this long. Default: {@value #DEFAULT_VALIDATE_AFTER_IDLE_MILLIS}
+     */
+    private long validateAfterIdleMillis = DEFAULT_VALIDATE_AFTER_IDLE_MILLIS;
+
+    /**
+     * Evict idle connections (above {@code minIdle}) unused for this long. 0 disables. Default: {@value #DEFAULT_IDLE_EVICT_MILLIS}
+     */
+    private long idleEvictMillis = DEFAULT_IDLE_EVICT_MILLIS;
+
+    /**
+     * Interval of the background evictor. 0 disables the evictor. Default: {@value #DEFAULT_EVICTION_INTERVAL_MILLIS}
+     */
+    private long evictionIntervalMillis = DEFAULT_EVICTION_INTERVAL_MILLIS;
+
+    public ConnectionPoolConfig() {
+    }
+
+    public ConnectionPoolConfig(int maxTotal, int maxIdle, int minIdle) {
+        setMaxTotal(maxTotal);
+        setMaxIdle(maxIdle);
+        setMinIdle(minIdle);
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public void setMaxTotal(int maxTotal) {
+        if (maxTotal < 1) {
+            throw new IllegalArgumentException("maxTotal must be at least 1");
+        }
+        this.maxTotal = maxTotal;
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public void setMaxIdle(int maxIdle) {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("maxIdle must be non-negative");
+        }
+        this.maxIdle = maxIdle;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public void setMinIdle(int minIdle) {
+        if (minIdle < 0) {
+            throw new IllegalArgumentException("minIdle must be non-negative");
+        }
+        this.minIdle = minIdle;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public void setMaxWaitMillis(long maxWaitMillis) {
+        if (maxWaitMillis < 0) {
+            throw new IllegalArgumentException("maxWaitMillis must be non-negative");
+        }
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public boolean isValidateOnBorrow() {
+        return validateOnBorrow;
+    }
+
+    public void setValidateOnBorrow(boolean validateOnBorrow) {
+        this.validateOnBorrow = validateOnBorrow;
+    }
+
+    public long getValidateAfterIdleMillis() {
+        return validateAfterIdleMillis;
+    }
+
+    public void setValidateAfterIdleMillis(long validateAfterIdleMillis) {
+        if (validateAfterIdleMillis < 0) {
+            throw new IllegalArgumentException("validateAfterIdleMillis must be non-negative");
+        }
+        this.validateAfterIdleMillis = validateAfterIdleMillis;
+    }
+
+    public long getIdleEvictMillis() {
+        return idleEvictMillis;
+    }
+
+    public void setIdleEvictMillis(long idleEvictMillis) {
+        if (idleEvictMillis < 0) {
+            throw new IllegalArgumentException("idleEvictMillis must be non-negative");
+        }
+        this.idleEvictMillis = idleEvictMillis;
+    }
+
+    public long getEvictionIntervalMillis() {
+        return evictionIntervalMillis;
+    }
+
+    public void setEvictionIntervalMillis(long evictionIntervalMillis) {
+        if (evictionIntervalMillis < 0) {
+            throw new IllegalArgumentException("evictionIntervalMillis must be non-negative");
+        }
+        this.evictionIntervalMillis = evictionIntervalMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPoolConfig{" +
+                "maxTotal=" + maxTotal +
+                ", maxIdle=" + maxIdle +
+                ", minIdle=" + minIdle +
+                ", maxWaitMillis=" + maxWaitMillis +
+                ", validateOnBorrow=" + validateOnBorrow +
+                ", validateAfterIdleMillis=" + validateAfterIdleMillis +
+                ", idleEvictMillis=" + idleEvictMillis +
+                ", evictionIntervalMillis=" + evictionIntervalMillis +
+                '}';
+    }
+}
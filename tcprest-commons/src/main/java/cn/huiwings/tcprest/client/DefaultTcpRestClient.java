@@ -1,21 +1,33 @@
 package cn.huiwings.tcprest.client;
 
 import cn.huiwings.tcprest.commons.PropertyProcessor;
+import cn.huiwings.tcprest.discovery.HostPort;
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Frames;
 import cn.huiwings.tcprest.ssl.SSLParams;
 
 import javax.net.SocketFactory;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.Socket;
 import java.security.KeyStore;
+import java.util.concurrent.CompletableFuture;
 
 /**
+ * Socket-based transport. Without a {@link ConnectionPool} every request opens and closes its own socket;
+ * with a pool, requests borrow a kept-alive connection for the target host and return it afterwards.
+ * With a {@link MultiplexedConnectionManager}, concurrent requests share a few multiplexed connections.
+ * With a {@link CapabilityNegotiator}, the client negotiates wire features with each host before its first request.
+ *
  * @author Weinan Li
  * @date 07 30 2012
  */
@@ -24,12 +36,35 @@ public class DefaultTcpRestClient implements TcpRestClient {
     private String host;
     private int port;
     private SSLParams sslParams;
+    private ConnectionPool connectionPool;
+    private MultiplexedConnectionManager multiplexedConnections;
+    private CapabilityNegotiator capabilityNegotiator;
 
     public DefaultTcpRestClient(SSLParams sslParams, String deletgatedClassName, String host, int port) {
+        this(sslParams, deletgatedClassName, host, port, null, null);
+    }
+
+    /**
+     * @param connectionPool pool to borrow connections from (null = one socket per request)
+     */
+    public DefaultTcpRestClient(SSLParams sslParams, String deletgatedClassName, String host, int port,
+                                ConnectionPool connectionPool) {
+        this(sslParams, deletgatedClassName, host, port, connectionPool, null);
+    }
+
+    /**
+     * @param connectionPool         pool to borrow connections from (null = one socket per request)
+     * @param multiplexedConnections shared multiplexed connections, tried first (null = disabled);
+     *                               servers without multiplexing support fall back to the pool or plain sockets
+     */
+    public DefaultTcpRestClient(SSLParams sslParams, String deletgatedClassName, String host, int port,
+                                ConnectionPool connectionPool, MultiplexedConnectionManager multiplexedConnections) {
         this.deletgatedClassName = deletgatedClassName;
         this.host = host;
         this.port = port;
         this.sslParams = sslParams;
+        this.connectionPool = connectionPool;
+        this.multiplexedConnections = multiplexedConnections;
     }
 
     private String sendRequest(String request, Socket socket) throws Exception {
@@ -46,27 +81,169 @@ public class DefaultTcpRestClient implements TcpRestClient {
         }
     }
 
+    /**
+     * Send over a pooled connection. If the request could not be written to a reused connection
+     * (the server closed it after validation), the server never saw it, so it is resent once on a newly
+     * opened connection. Failures after the request was written are not retried: the server may have run it.
+     */
+    private <T> T sendPooledRequest(PooledExchange<T> exchange) throws Exception {
+        HostPort address = new HostPort(host, port);
+        PooledConnection conn = connectionPool.borrow(address);
+        boolean reused = conn.getUseCount() > 0;
+        try {
+            return exchange(conn, exchange);
+        } catch (PooledConnection.RequestNotSentException e) {
+            if (!reused) {
+                throw e;
+            }
+            return exchange(connectionPool.borrowNew(address), exchange);
+        }
+    }
+
+    /**
+     * One exchange on a borrowed connection; the connection is released on success and invalidated otherwise.
+     */
+    private <T> T exchange(PooledConnection conn, PooledExchange<T> exchange) throws IOException {
+        boolean reused = conn.getUseCount() > 0;
+        T response;
+        try {
+            response = exchange.run(conn);
+        } catch (IOException | RuntimeException e) {
+            connectionPool.invalidate(conn);
+            throw e;
+        }
+        if (response == null) {
+            connectionPool.invalidate(conn);
+            if (reused) {
+                throw new EOFException("Pooled connection closed by server before responding");
+            }
+            return null;
+        }
+        connectionPool.release(conn);
+        return response;
+    }
+
     @Override
     public String sendRequest(String request, int timeout) throws Exception {
+        if (multiplexedConnections != null) {
+            MultiplexedConnection conn = multiplexedConnections.acquire(new HostPort(host, port));
+            if (conn != null) {
+                return conn.sendRequest(request, timeout);
+            }
+        }
+
+        if (connectionPool != null) {
+            return sendPooledRequest(conn -> conn.exchange(request, timeout));
+        }
+
+        return sendRequest(request, openRequestSocket(timeout));
+    }
+
+    /**
+     * Protocol V3 requests go over the pool or a socket per request; multiplexed connections carry
+     * V2 lines only and are not used.
+     */
+    @Override
+    public byte[] sendBinaryRequest(byte[] frame, int timeout) throws Exception {
+        if (connectionPool != null) {
+            return sendPooledRequest(conn -> conn.exchange(frame, timeout));
+        }
+        Socket socket = openRequestSocket(timeout);
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write(frame);
+            out.flush();
+            return ProtocolV3Frames.readResponse(new BufferedInputStream(socket.getInputStream()));
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private Socket openRequestSocket(int timeout) throws Exception {
         if (sslParams == null) {
             Socket clientSocket = new Socket(host, port);
 
             if (timeout > 0)
                 clientSocket.setSoTimeout(timeout * 1000);
 
-            return sendRequest(request, clientSocket);
+            return clientSocket;
         }
 
         // Set the key store to use for validating the server cert.
         System.setProperty("javax.net.ssl.trustStore", PropertyProcessor.getFilePath(sslParams.getTrustStorePath()));
-        Socket socket = null;
         if (sslParams.isNeedClientAuth()) {
-            socket = sslClientWithCert(sslParams, host, port, timeout);
-        } else {
-            socket = sslClientWithoutCert(host, port, timeout);
+            return sslClientWithCert(sslParams, host, port, timeout);
         }
+        return sslClientWithoutCert(host, port, timeout);
+    }
+
+    /**
+     * On a multiplexed connection the future is completed by the connection's reader thread and
+     * timed out by a shared timer; otherwise the blocking send runs on a shared executor.
+     */
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String request, int timeout) {
+        if (multiplexedConnections != null) {
+            try {
+                MultiplexedConnection conn = multiplexedConnections.acquire(new HostPort(host, port));
+                if (conn != null) {
+                    return ClientExecutors.withTimeout(conn.send(request), timeout);
+                }
+            } catch (Exception e) {
+                CompletableFuture<String> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+        }
+        return TcpRestClient.super.sendRequestAsync(request, timeout);
+    }
 
-        return sendRequest(request, socket);
+    /**
+     * @param capabilityNegotiator negotiator shared by the factory's clients (null = no handshake)
+     */
+    public void setCapabilityNegotiator(CapabilityNegotiator capabilityNegotiator) {
+        this.capabilityNegotiator = capabilityNegotiator;
+    }
+
+    /**
+     * Pooled connections negotiate when they are opened, so with a pool this borrows (and returns) a
+     * connection; without one the handshake runs once per host on a dedicated short-lived socket.
+     */
+    @Override
+    public Capabilities getCapabilities() throws Exception {
+        if (capabilityNegotiator == null) {
+            return null;
+        }
+        HostPort address = new HostPort(host, port);
+        Capabilities agreed = capabilityNegotiator.get(address);
+        if (agreed != null) {
+            return agreed;
+        }
+        if (connectionPool != null && connectionPool.getCapabilityNegotiator() == capabilityNegotiator) {
+            connectionPool.release(connectionPool.borrow(address));
+            agreed = capabilityNegotiator.get(address);
+            if (agreed != null) {
+                return agreed;
+            }
+        }
+        Socket socket = openRequestSocket(0);
+        try (PrintWriter writer = new PrintWriter(socket.getOutputStream());
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            socket.setSoTimeout(CapabilityNegotiator.HANDSHAKE_TIMEOUT_MILLIS);
+            return capabilityNegotiator.negotiate(address, line -> {
+                writer.println(line);
+                writer.flush();
+                return reader.readLine();
+            });
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
     }
 
     @Override
@@ -74,6 +251,21 @@ public class DefaultTcpRestClient implements TcpRestClient {
         return deletgatedClassName;
     }
 
+    /**
+     * Open a connected socket (plain or SSL per {@code sslParams}) without a read timeout.
+     * Used by {@link ConnectionPool} to create pooled connections.
+     */
+    static Socket openSocket(SSLParams sslParams, String host, int port) throws Exception {
+        if (sslParams == null) {
+            return new Socket(host, port);
+        }
+        System.setProperty("javax.net.ssl.trustStore", PropertyProcessor.getFilePath(sslParams.getTrustStorePath()));
+        if (sslParams.isNeedClientAuth()) {
+            return sslContextWithCert(sslParams).getSocketFactory().createSocket(host, port);
+        }
+        return SSLSocketFactory.getDefault().createSocket(host, port);
+    }
+
     private Socket sslClientWithoutCert(String host, int port, int timeout) throws Exception {
         SocketFactory sf = SSLSocketFactory.getDefault();
         Socket socket = sf.createSocket(host, port);
@@ -83,6 +275,22 @@ public class DefaultTcpRestClient implements TcpRestClient {
     }
 
     private Socket sslClientWithCert(SSLParams sslParams, String host, int port, int timeout) throws Exception {
+        SocketFactory factory = sslContextWithCert(sslParams).getSocketFactory();
+        Socket socket = factory.createSocket(host, port);
+        if (timeout > 0)
+            socket.setSoTimeout(timeout);
+        return socket;
+
+    }
+
+    /**
+     * One request/response exchange on a pooled connection.
+     */
+    private interface PooledExchange<T> {
+        T run(PooledConnection conn) throws IOException;
+    }
+
+    private static SSLContext sslContextWithCert(SSLParams sslParams) throws Exception {
         SSLContext context = SSLContext.getInstance("TLS");
         KeyStore ks = KeyStore.getInstance("jceks");
 
@@ -91,13 +299,7 @@ public class DefaultTcpRestClient implements TcpRestClient {
         KeyManagerFactory kf = KeyManagerFactory.getInstance("SunX509");
         kf.init(ks, sslParams.getKeyStoreKeyPass().toCharArray());
         context.init(kf.getKeyManagers(), null, null);
-
-        SocketFactory factory = context.getSocketFactory();
-        Socket socket = factory.createSocket(host, port);
-        if (timeout > 0)
-            socket.setSoTimeout(timeout);
-        return socket;
-
+        return context;
     }
 
 }
@@ -3,6 +3,7 @@ package cn.huiwings.tcprest.client;
 import cn.huiwings.tcprest.discovery.HostPort;
 import cn.huiwings.tcprest.ssl.SSLParams;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 
@@ -12,6 +13,8 @@ import java.util.function.Supplier;
  * {@link cn.huiwings.tcprest.discovery.LoadBalancer}; each {@link #sendRequest(String, int)} call
  * obtains the current address from the supplier and delegates to a fresh {@link DefaultTcpRestClient}.
  * Optional {@code afterRequest} callback is invoked with (HostPort, success) for per-instance tracking (e.g. circuit breaker).
+ * With a shared {@link ConnectionPool}, the per-request client borrows a pooled connection for the resolved instance
+ * instead of opening a new socket.
  *
  * @since 2.0.0
  */
@@ -21,6 +24,8 @@ public class DiscoveryTcpRestClient implements TcpRestClient {
     private final SSLParams sslParams;
     private final Supplier<HostPort> addressSupplier;
     private final BiConsumer<HostPort, Boolean> afterRequest;
+    private final ConnectionPool connectionPool;
+    private final MultiplexedConnectionManager multiplexedConnections;
 
     public DiscoveryTcpRestClient(String delegatedClassName, SSLParams sslParams, Supplier<HostPort> addressSupplier) {
         this(delegatedClassName, sslParams, addressSupplier, null);
@@ -28,17 +33,38 @@ public class DiscoveryTcpRestClient implements TcpRestClient {
 
     public DiscoveryTcpRestClient(String delegatedClassName, SSLParams sslParams, Supplier<HostPort> addressSupplier,
                                   BiConsumer<HostPort, Boolean> afterRequest) {
+        this(delegatedClassName, sslParams, addressSupplier, afterRequest, null);
+    }
+
+    /**
+     * @param connectionPool pool shared across proxies and instances (null = one socket per request)
+     */
+    public DiscoveryTcpRestClient(String delegatedClassName, SSLParams sslParams, Supplier<HostPort> addressSupplier,
+                                  BiConsumer<HostPort, Boolean> afterRequest, ConnectionPool connectionPool) {
+        this(delegatedClassName, sslParams, addressSupplier, afterRequest, connectionPool, null);
+    }
+
+    /**
+     * @param connectionPool         pool shared across proxies and instances (null = one socket per request)
+     * @param multiplexedConnections multiplexed connections shared across proxies and instances (null = disabled)
+     */
+    public DiscoveryTcpRestClient(String delegatedClassName, SSLParams sslParams, Supplier<HostPort> addressSupplier,
+                                  BiConsumer<HostPort, Boolean> afterRequest, ConnectionPool connectionPool,
+                                  MultiplexedConnectionManager multiplexedConnections) {
         this.delegatedClassName = delegatedClassName;
         this.sslParams = sslParams;
         this.addressSupplier = addressSupplier;
         this.afterRequest = afterRequest;
+        this.connectionPool = connectionPool;
+        this.multiplexedConnections = multiplexedConnections;
     }
 
     @Override
     public String sendRequest(String request, int timeout) throws Exception {
         HostPort addr = addressSupplier.get();
         try {
-            TcpRestClient client = new DefaultTcpRestClient(sslParams, delegatedClassName, addr.getHost(), addr.getPort());
+            TcpRestClient client = new DefaultTcpRestClient(sslParams, delegatedClassName, addr.getHost(), addr.getPort(),
+                    connectionPool, multiplexedConnections);
             String result = client.sendRequest(request, timeout);
             if (afterRequest != null) {
                 afterRequest.accept(addr, true);
@@ -52,6 +78,44 @@ public class DiscoveryTcpRestClient implements TcpRestClient {
         }
     }
 
+    @Override
+    public byte[] sendBinaryRequest(byte[] frame, int timeout) throws Exception {
+        HostPort addr = addressSupplier.get();
+        try {
+            TcpRestClient client = new DefaultTcpRestClient(sslParams, delegatedClassName, addr.getHost(), addr.getPort(),
+                    connectionPool, multiplexedConnections);
+            byte[] result = client.sendBinaryRequest(frame, timeout);
+            if (afterRequest != null) {
+                afterRequest.accept(addr, true);
+            }
+            return result;
+        } catch (Exception e) {
+            if (afterRequest != null) {
+                afterRequest.accept(addr, false);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String request, int timeout) {
+        HostPort addr;
+        try {
+            addr = addressSupplier.get();
+        } catch (RuntimeException e) {
+            CompletableFuture<String> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        TcpRestClient client = new DefaultTcpRestClient(sslParams, delegatedClassName, addr.getHost(), addr.getPort(),
+                connectionPool, multiplexedConnections);
+        CompletableFuture<String> future = client.sendRequestAsync(request, timeout);
+        if (afterRequest != null) {
+            future.whenComplete((r, e) -> afterRequest.accept(addr, e == null));
+        }
+        return future;
+    }
+
     @Override
     public String getDeletgatedClassName() {
         return delegatedClassName;
@@ -0,0 +1,233 @@
+package cn.huiwings.tcprest.client;
+
+import cn.huiwings.tcprest.discovery.HostPort;
+import cn.huiwings.tcprest.protocol.v2.MultiplexFrames;
+import cn.huiwings.tcprest.protocol.v2.ProtocolV2Constants;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A client connection carrying many concurrent requests, paired with responses by correlation ID.
+ *
+ * <p>Thread-safe: any number of threads may call {@link #send(String)} concurrently. Writes are
+ * serialized on the socket; a dedicated reader thread completes the matching future for every
+ * response line, in whatever order the server finishes them.</p>
+ *
+ * @author Weinan Li
+ * @see MultiplexFrames
+ */
+public class MultiplexedConnection implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(MultiplexedConnection.class.getName());
+
+    /**
+     * How long to wait for the server's answer to the handshake.
+     */
+    static final int HANDSHAKE_TIMEOUT_MILLIS = 5000;
+
+    private final HostPort address;
+    private final Socket socket;
+    private final PrintWriter writer;
+    private final BufferedReader reader;
+    private final ConcurrentMap<Long, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private volatile boolean closed;
+
+    private MultiplexedConnection(HostPort address, Socket socket, PrintWriter writer, BufferedReader reader) {
+        this.address = address;
+        this.socket = socket;
+        this.writer = writer;
+        this.reader = reader;
+    }
+
+    /**
+     * Open a socket and negotiate multiplexing.
+     *
+     * @param address target host and port
+     * @param socket  connected socket (closed if negotiation fails)
+     * @return the multiplexed connection, or null if the server declined the handshake
+     * @throws HandshakeUnansweredException if the server closed or did not answer the handshake in time
+     * @throws IOException if the handshake cannot be written or read
+     */
+    static MultiplexedConnection negotiate(HostPort address, Socket socket) throws IOException {
+        try {
+            PrintWriter writer = new PrintWriter(socket.getOutputStream());
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+            writer.println(ProtocolV2Constants.MUX_HELLO);
+            writer.flush();
+            String answer;
+            try {
+                answer = reader.readLine();
+            } catch (SocketTimeoutException e) {
+                // A server that reads the hello as a request and waits for more, or one that is just slow
+                throw new HandshakeUnansweredException("No multiplexing handshake answer from " + address
+                        + " within " + HANDSHAKE_TIMEOUT_MILLIS + " ms");
+            }
+            if (answer == null) {
+                throw new HandshakeUnansweredException("Connection closed during multiplexing handshake: " + address);
+            }
+            if (!MultiplexFrames.isHello(answer)) {
+                // Older server, or one without multiplexing: answered with a PROTOCOL_ERROR response
+                socket.close();
+                return null;
+            }
+            socket.setSoTimeout(0);
+            MultiplexedConnection conn = new MultiplexedConnection(address, socket, writer, reader);
+            Thread readerThread = new Thread(conn::readLoop, "tcprest-mux-reader-" + address);
+            readerThread.setDaemon(true);
+            readerThread.start();
+            return conn;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Send a request without waiting for the response.
+     *
+     * @param request V2 request frame
+     * @return future completed with the V2 response frame, or exceptionally if the connection fails
+     */
+    public CompletableFuture<String> send(String request) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new EOFException("Multiplexed connection closed: " + address));
+            return future;
+        }
+        long id = nextId.incrementAndGet();
+        pending.put(id, future);
+        // Drop the entry however the future ends (response, timeout, cancel)
+        future.whenComplete((r, e) -> pending.remove(id));
+        if (closed) {
+            // closed concurrently, possibly after close() failed the pending futures
+            future.completeExceptionally(new EOFException("Multiplexed connection closed: " + address));
+            return future;
+        }
+        boolean failed;
+        synchronized (writer) {
+            writer.println(MultiplexFrames.wrap(id, request));
+            writer.flush();
+            failed = writer.checkError();
+        }
+        if (failed) {
+            future.completeExceptionally(new IOException("Failed to write request to " + address));
+            close();
+        }
+        return future;
+    }
+
+    /**
+     * Send a request and block for its response.
+     *
+     * @param request V2 request frame
+     * @param timeout timeout in seconds (0 = wait indefinitely)
+     * @return V2 response frame
+     * @throws SocketTimeoutException if no response arrives in time
+     * @throws Exception if the connection fails
+     */
+    public String sendRequest(String request, int timeout) throws Exception {
+        CompletableFuture<String> future = send(request);
+        try {
+            return timeout > 0 ? future.get(timeout, TimeUnit.SECONDS) : future.get();
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            throw new SocketTimeoutException("No response within " + timeout + " seconds");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    private void readLoop() {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!MultiplexFrames.isMultiplexed(line)) {
+                    logger.warning("Unexpected untagged response on multiplexed connection: " + address);
+                    continue;
+                }
+                CompletableFuture<String> future;
+                try {
+                    future = pending.get(MultiplexFrames.parseId(line));
+                } catch (IllegalArgumentException e) {
+                    logger.warning("Malformed multiplexed response from " + address + ": " + e.getMessage());
+                    continue;
+                }
+                if (future != null) {
+                    future.complete(MultiplexFrames.unwrap(line));
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                logger.fine("Multiplexed connection to " + address + " failed: " + e.getMessage());
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * @return true if the connection can carry more requests
+     */
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * @return number of requests awaiting a response
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public HostPort getAddress() {
+        return address;
+    }
+
+    /**
+     * Close the socket and fail all in-flight requests.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+        EOFException failure = new EOFException("Multiplexed connection closed: " + address);
+        for (CompletableFuture<String> future : pending.values()) {
+            future.completeExceptionally(failure);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MultiplexedConnection{" + address + ", pending=" + pending.size() + "}";
+    }
+
+    /**
+     * The server neither accepted nor declined the multiplexing handshake, so it may be asked again later.
+     */
+    static class HandshakeUnansweredException extends IOException {
+        HandshakeUnansweredException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package cn.huiwings.tcprest.client;
+
+import cn.huiwings.tcprest.discovery.HostPort;
+import cn.huiwings.tcprest.ssl.SSLParams;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+/**
+ * Holds a small, fixed number of {@link MultiplexedConnection}s per {@link HostPort} and spreads
+ * calls across them round-robin.
+ *
+ * <p>Shared by all proxies created from a {@link TcpRestClientFactory} (see
+ * {@link TcpRestClientFactory#withMultiplexing()}), so thousands of concurrent calls travel over
+ * a handful of sockets. Connections are opened lazily and re-opened when they fail.</p>
+ *
+ * <p>When a server declines the multiplexing handshake, the host is remembered as unsupported and
+ * {@link #acquire(HostPort)} returns null, so callers fall back to one request per connection. A server
+ * that closes the connection or does not answer in time is treated the same way, but only for
+ * {@link #setUnansweredRetryMillis(long) a while}; then it is asked again.</p>
+ *
+ * @author Weinan Li
+ */
+public class MultiplexedConnectionManager implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(MultiplexedConnectionManager.class.getName());
+
+    /**
+     * Default number of multiplexed connections per host.
+     */
+    public static final int DEFAULT_CONNECTIONS_PER_HOST = 2;
+
+    /**
+     * Default time a host that did not answer the handshake is served without multiplexing.
+     */
+    public static final long DEFAULT_UNANSWERED_RETRY_MILLIS = 30_000;
+
+    private final int connectionsPerHost;
+    private final SSLParams sslParams;
+    private final ConcurrentMap<HostPort, Slots> hosts = new ConcurrentHashMap<>();
+    // Hosts served without multiplexing, until the given time (Long.MAX_VALUE after a decline)
+    private final ConcurrentMap<HostPort, Long> unsupported = new ConcurrentHashMap<>();
+    private volatile long unansweredRetryMillis = DEFAULT_UNANSWERED_RETRY_MILLIS;
+    private volatile boolean closed;
+
+    private static class Slots {
+        final AtomicReferenceArray<MultiplexedConnection> connections;
+        final AtomicInteger next = new AtomicInteger();
+
+        Slots(int size) {
+            connections = new AtomicReferenceArray<>(size);
+        }
+    }
+
+    public MultiplexedConnectionManager() {
+        this(DEFAULT_CONNECTIONS_PER_HOST, null);
+    }
+
+    /**
+     * @param connectionsPerHost multiplexed connections opened per host
+     * @param sslParams          SSL configuration for new sockets (null = plain TCP)
+     */
+    public MultiplexedConnectionManager(int connectionsPerHost, SSLParams sslParams) {
+        if (connectionsPerHost < 1) {
+            throw new IllegalArgumentException("connectionsPerHost must be at least 1");
+        }
+        this.connectionsPerHost = connectionsPerHost;
+        this.sslParams = sslParams;
+    }
+
+    /**
+     * Get an open multiplexed connection to the address, opening or re-opening one if needed.
+     *
+     * @param address target host and port
+     * @return a shared connection, or null if the server does not support multiplexing
+     * @throws IOException if a connection cannot be opened
+     */
+    public MultiplexedConnection acquire(HostPort address) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Multiplexed connection manager is closed");
+        }
+        if (!isSupported(address)) {
+            return null;
+        }
+        Slots slots = hosts.computeIfAbsent(address, k -> new Slots(connectionsPerHost));
+        int index = Math.floorMod(slots.next.getAndIncrement(), connectionsPerHost);
+        MultiplexedConnection conn = slots.connections.get(index);
+        if (conn != null && conn.isOpen()) {
+            return conn;
+        }
+        synchronized (slots) {
+            conn = slots.connections.get(index);
+            if (conn != null && conn.isOpen()) {
+                return conn;
+            }
+            MultiplexedConnection opened;
+            try {
+                opened = MultiplexedConnection.negotiate(address,
+                        DefaultTcpRestClient.openSocket(sslParams, address.getHost(), address.getPort()));
+            } catch (MultiplexedConnection.HandshakeUnansweredException e) {
+                logger.info(e.getMessage() + ", using plain requests for " + unansweredRetryMillis + " ms");
+                unsupported.put(address, System.currentTimeMillis() + unansweredRetryMillis);
+                return null;
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Failed to open connection to " + address + ": " + e.getMessage(), e);
+            }
+            if (opened == null) {
+                logger.info("Server does not support multiplexing, falling back to plain requests: " + address);
+                unsupported.put(address, Long.MAX_VALUE);
+                return null;
+            }
+            slots.connections.set(index, opened);
+            return opened;
+        }
+    }
+
+    /**
+     * @param address target host and port
+     * @return false if the server at the address declined the multiplexing handshake, or recently left it
+     *         unanswered
+     */
+    public boolean isSupported(HostPort address) {
+        Long until = unsupported.get(address);
+        if (until == null) {
+            return true;
+        }
+        if (System.currentTimeMillis() < until) {
+            return false;
+        }
+        unsupported.remove(address, until);
+        return true;
+    }
+
+    /**
+     * @param address target host and port
+     * @return requests currently awaiting a response across the address's connections
+     */
+    public int getPendingCount(HostPort address) {
+        Slots slots = hosts.get(address);
+        if (slots == null) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = 0; i < slots.connections.length(); i++) {
+            MultiplexedConnection conn = slots.connections.get(i);
+            if (conn != null) {
+                count += conn.getPendingCount();
+            }
+        }
+        return count;
+    }
+
+    public int getConnectionsPerHost() {
+        return connectionsPerHost;
+    }
+
+    public long getUnansweredRetryMillis() {
+        return unansweredRetryMillis;
+    }
+
+    /**
+     * @param unansweredRetryMillis how long a host that closed or did not answer the handshake is served
+     *                              without multiplexing before it is asked again
+     */
+    public void setUnansweredRetryMillis(long unansweredRetryMillis) {
+        if (unansweredRetryMillis < 0) {
+            throw new IllegalArgumentException("unansweredRetryMillis must be non-negative");
+        }
+        this.unansweredRetryMillis = unansweredRetryMillis;
+    }
+
+    /**
+     * Close all connections, failing in-flight requests.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Slots slots : hosts.values()) {
+            synchronized (slots) {
+                for (int i = 0; i < slots.connections.length(); i++) {
+                    MultiplexedConnection conn = slots.connections.get(i);
+                    if (conn != null) {
+                        conn.close();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package cn.huiwings.tcprest.client;
+
+import cn.huiwings.tcprest.discovery.HostPort;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Frames;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A client socket owned by a {@link ConnectionPool}, carrying request/response exchanges: newline-framed
+ * V2 lines or length-prefixed V3 frames.
+ *
+ * <p>Not thread-safe: a connection is used by one caller between
+ * {@link ConnectionPool#borrow(HostPort)} and {@link ConnectionPool#release(PooledConnection)}.</p>
+ *
+ * @author Weinan Li
+ */
+public class PooledConnection implements Closeable {
+
+    /**
+     * Read timeout of the blocking stale-connection probe used for sockets without a channel (SSL).
+     */
+    private static final int VALIDATION_TIMEOUT_MILLIS = 1;
+
+    private final HostPort address;
+    private final Socket socket;
+    private final OutputStream out;
+    private final InputStream in;
+    private volatile long lastUsedMillis = System.currentTimeMillis();
+    private int useCount;
+
+    PooledConnection(HostPort address, Socket socket) throws IOException {
+        this.address = address;
+        this.socket = socket;
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+        this.in = new BufferedInputStream(socket.getInputStream());
+    }
+
+    /**
+     * Write one request line and read one response line.
+     *
+     * @param request encoded request (without trailing newline)
+     * @param timeout read timeout in seconds (0 = none)
+     * @return response line, or null if the server closed the connection
+     * @throws IOException if writing or reading fails
+     */
+    public String exchange(String request, int timeout) throws IOException {
+        socket.setSoTimeout(timeout > 0 ? timeout * 1000 : 0);
+        write((request + "\n").getBytes(StandardCharsets.UTF_8));
+        String response = readLine();
+        useCount++;
+        lastUsedMillis = System.currentTimeMillis();
+        return response;
+    }
+
+    /**
+     * Exchange the capability handshake on a freshly opened connection. Does not count as a use,
+     * so the first request is still treated as running on a fresh connection.
+     *
+     * @param offer handshake offer line
+     * @param timeoutMillis read timeout in milliseconds
+     * @return answer line, or null if the server closed the connection
+     * @throws IOException if writing or reading fails
+     */
+    String handshake(String offer, int timeoutMillis) throws IOException {
+        socket.setSoTimeout(timeoutMillis);
+        write((offer + "\n").getBytes(StandardCharsets.UTF_8));
+        return readLine();
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        try {
+            out.write(bytes);
+            out.flush();
+        } catch (IOException e) {
+            throw new RequestNotSentException(e);
+        }
+    }
+
+    private String readLine() throws IOException {
+        int first = in.read();
+        return first == -1 ? null : ProtocolV3Frames.readLine(in, first);
+    }
+
+    /**
+     * Write one V3 request frame and read one response.
+     *
+     * @param frame complete V3 request frame
+     * @param timeout read timeout in seconds (0 = none)
+     * @return response payload (see {@link ProtocolV3Frames#readResponse}), or null if the server closed the connection
+     * @throws IOException if writing or reading fails
+     */
+    public byte[] exchange(byte[] frame, int timeout) throws IOException {
+        socket.setSoTimeout(timeout > 0 ? timeout * 1000 : 0);
+        write(frame);
+        byte[] response = ProtocolV3Frames.readResponse(in);
+        useCount++;
+        lastUsedMillis = System.currentTimeMillis();
+        return response;
+    }
+
+    /**
+     * Stale check: the connection is alive when the socket is open and nothing is readable
+     * (a readable EOF means the server closed it; unsolicited bytes mean the stream is out of sync).
+     *
+     * @return true if the connection can carry another request
+     */
+    public boolean isAlive() {
+        return isAlive(0);
+    }
+
+    /**
+     * Stale check used on borrow. Channel-backed (plain TCP) sockets are probed with a non-blocking read;
+     * other sockets (SSL) can only be probed by a blocking read, which is skipped unless the connection
+     * has been idle for at least {@code probeAfterIdleMillis}.
+     *
+     * @param probeAfterIdleMillis minimum idle time before a blocking probe
+     * @return true if the connection can carry another request
+     */
+    boolean isAlive(long probeAfterIdleMillis) {
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            return false;
+        }
+        try {
+            if (in.available() > 0) {
+                return false;
+            }
+            SocketChannel channel = socket.getChannel();
+            if (channel != null) {
+                synchronized (channel.blockingLock()) {
+                    channel.configureBlocking(false);
+                    try {
+                        return channel.read(ByteBuffer.allocate(1)) == 0;
+                    } finally {
+                        channel.configureBlocking(true);
+                    }
+                }
+            }
+            if (System.currentTimeMillis() - lastUsedMillis < probeAfterIdleMillis) {
+                return true;
+            }
+            socket.setSoTimeout(VALIDATION_TIMEOUT_MILLIS);
+            socket.getInputStream().read();
+            return false; // EOF or unexpected data
+
+        } catch (SocketTimeoutException e) {
+            return true; // nothing to read: still open
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public HostPort getAddress() {
+        return address;
+    }
+
+    /**
+     * @return number of completed exchanges; 0 for a freshly opened connection
+     */
+    public int getUseCount() {
+        return useCount;
+    }
+
+    public long getLastUsedMillis() {
+        return lastUsedMillis;
+    }
+
+    void touch() {
+        lastUsedMillis = System.currentTimeMillis();
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * The request could not be written, so the server cannot have received it and resending is safe.
+     */
+    static class RequestNotSentException extends IOException {
+        RequestNotSentException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PooledConnection{" + address + ", uses=" + useCount + "}";
+    }
+}
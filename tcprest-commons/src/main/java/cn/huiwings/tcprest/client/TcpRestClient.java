@@ -1,6 +1,12 @@
 package cn.huiwings.tcprest.client;
 
+import cn.huiwings.tcprest.exception.TimeoutException;
+import cn.huiwings.tcprest.protocol.Capabilities;
+
 import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * @author Weinan Li
@@ -18,5 +24,55 @@ public interface TcpRestClient {
      */
     public String sendRequest(String request, int timeout) throws Exception;
 
+    /**
+     * Asynchronous variant of {@link #sendRequest(String, int)}. The future completes with the
+     * un-processed response, or exceptionally ({@link TimeoutException} on timeout).
+     *
+     * <p>The default runs the blocking send on a shared executor. Transports with a non-blocking
+     * path (multiplexed connections) override this and complete the future from their I/O thread.</p>
+     *
+     * @param request The processed incoming request from client
+     * @param timeout timeout in seconds (0 = none)
+     * @return future response
+     */
+    default CompletableFuture<String> sendRequestAsync(String request, int timeout) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return sendRequest(request, timeout);
+            } catch (SocketTimeoutException e) {
+                throw new CompletionException(new TimeoutException(ClientExecutors.timeoutMessage(timeout, e), e));
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, ClientExecutors.blocking());
+    }
+
+    /**
+     * Send a Protocol V3 request frame and return the response payload.
+     *
+     * <p>The response is the payload of a V3 frame, or the bytes of a V2 line if the server answered
+     * in V2; {@link cn.huiwings.tcprest.codec.v3.ProtocolV3Codec#decodeResponse} accepts both.
+     * Transports without a binary path keep this default.</p>
+     *
+     * @param frame complete V3 request frame
+     * @param timeout timeout in seconds (0 = none)
+     * @return response bytes
+     * @throws UnsupportedOperationException if the transport only carries V2 lines
+     */
+    default byte[] sendBinaryRequest(byte[] frame, int timeout) throws Exception {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support Protocol V3");
+    }
+
+    /**
+     * Capabilities agreed with the target server by the capability handshake
+     * ({@link TcpRestClientFactory#withCapabilityHandshake()}). Transports that do not negotiate keep this default.
+     *
+     * @return agreed capabilities, or null if the transport does not negotiate
+     * @throws Exception if the handshake cannot be carried out
+     */
+    default Capabilities getCapabilities() throws Exception {
+        return null;
+    }
+
     public String getDeletgatedClassName();
 }
@@ -7,6 +7,8 @@ import cn.huiwings.tcprest.discovery.ServiceDiscovery;
 import cn.huiwings.tcprest.governance.CircuitBreakerProvider;
 import cn.huiwings.tcprest.governance.RetryPolicy;
 import cn.huiwings.tcprest.mapper.Mapper;
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants;
 import cn.huiwings.tcprest.security.SecurityConfig;
 import cn.huiwings.tcprest.ssl.SSLParams;
 
@@ -42,6 +44,28 @@ import java.util.Map;
  *     .getInstance();
  * </pre>
  *
+ * <p><b>With Connection Pooling:</b></p>
+ * <pre>
+ * TcpRestClientFactory factory = new TcpRestClientFactory(Calculator.class, "localhost", 8080)
+ *     .withConnectionPool();
+ * Calculator calc = factory.getInstance();
+ * </pre>
+ *
+ * <p><b>With Protocol V3 (binary frames):</b></p>
+ * <pre>
+ * Calculator calc = new TcpRestClientFactory(Calculator.class, "localhost", 8080)
+ *     .withProtocolV3()
+ *     .getInstance();
+ * </pre>
+ *
+ * <p><b>With the capability handshake (negotiated version, frame limit, security check):</b></p>
+ * <pre>
+ * Calculator calc = new TcpRestClientFactory(Calculator.class, "localhost", 8080)
+ *     .withCapabilityHandshake()
+ *     .withConnectionPool()
+ *     .getInstance();
+ * </pre>
+ *
  * <p><b>With SSL:</b></p>
  * <pre>
  * SSLParam sslParam = new SSLParam();
@@ -68,6 +92,16 @@ public class TcpRestClientFactory {
     SSLParams sslParams;
     CompressionConfig compressionConfig;
     SecurityConfig securityConfig;
+    /** When non-null, shared by every proxy of this factory (all interfaces, all discovered instances). */
+    ConnectionPool connectionPool;
+    /** When non-null, concurrent calls of every proxy share these multiplexed connections. */
+    MultiplexedConnectionManager multiplexedConnections;
+
+    boolean protocolV3;
+    boolean capabilityHandshake;
+    boolean generatedStubs;
+    /** Created on first use, so it offers the final compression and security settings. */
+    private CapabilityNegotiator capabilityNegotiator;
 
     public TcpRestClientFactory(Class<?> interfaceClass, String host, int port) {
         this.interfaceClasses = new Class<?>[]{validateInterface(interfaceClass)};
@@ -305,16 +339,54 @@ public class TcpRestClientFactory {
     }
 
     private Object createProxy(Class<?> type) {
+        String name = type.getCanonicalName();
+        TcpRestClientProxy handler = new TcpRestClientProxy(name, createTransport(name), extraMappers, sslParams,
+                compressionConfig, securityConfig, retryPolicy);
+        handler.setProtocolV3(protocolV3);
+        handler.preparePlans(type);
+        if (generatedStubs) {
+            Object stub = ClientStubs.create(type, handler);
+            if (stub != null) {
+                return stub;
+            }
+        }
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    /**
+     * Create the transport for one interface, honoring discovery, pooling and multiplexing settings.
+     */
+    TcpRestClient createTransport(String delegatedClassName) {
         if (discovery != null) {
-            return Proxy.newProxyInstance(type.getClassLoader(),
-                    new Class<?>[]{type},
-                    new TcpRestClientProxy(type.getCanonicalName(), discovery, serviceName, loadBalancer,
-                            circuitBreakerProvider, retryPolicy, extraMappers, sslParams, compressionConfig, securityConfig));
+            return TcpRestClientProxy.createDiscoveryClient(delegatedClassName, discovery, serviceName, loadBalancer,
+                    circuitBreakerProvider, sslParams, connectionPool, multiplexedConnections);
+        }
+        DefaultTcpRestClient client = new DefaultTcpRestClient(sslParams, delegatedClassName, host, port,
+                connectionPool, multiplexedConnections);
+        if (capabilityHandshake) {
+            client.setCapabilityNegotiator(getCapabilityNegotiator());
         }
-        return Proxy.newProxyInstance(type.getClassLoader(),
-                new Class<?>[]{type},
-                new TcpRestClientProxy(type.getCanonicalName(), host, port,
-                        extraMappers, sslParams, compressionConfig, securityConfig));
+        return client;
+    }
+
+    /**
+     * @param type interface class
+     * @return true if the interface is registered with this factory
+     */
+    boolean isRegistered(Class<?> type) {
+        for (Class<?> c : interfaceClasses) {
+            if (c == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return registered interfaces
+     */
+    Class<?>[] getInterfaceClasses() {
+        return interfaceClasses.clone();
     }
 
     /**
@@ -375,6 +447,162 @@ public class TcpRestClientFactory {
         return this;
     }
 
+    /**
+     * Reuse connections through a pool with default settings. Created with this factory's SSL parameters
+     * and shared by all proxies it creates. The server should have keep-alive enabled.
+     *
+     * @return this factory for chaining
+     */
+    public TcpRestClientFactory withConnectionPool() {
+        return withConnectionPool(new ConnectionPoolConfig());
+    }
+
+    /**
+     * Reuse connections through a pool with custom configuration.
+     *
+     * @param config pool configuration
+     * @return this factory for chaining
+     */
+    public TcpRestClientFactory withConnectionPool(ConnectionPoolConfig config) {
+        this.connectionPool = new ConnectionPool(config, sslParams);
+        return this;
+    }
+
+    /**
+     * Use an existing pool, e.g. to share connections between factories. The pool's own SSL parameters apply.
+     *
+     * @param connectionPool pool to borrow connections from
+     * @return this factory for chaining
+     */
+    public TcpRestClientFactory withConnectionPool(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+        return this;
+    }
+
+    /**
+     * Get the connection pool shared by this factory's proxies.
+     *
+     * @return connection pool, or null if pooling is disabled
+     */
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * Send concurrent calls over a few shared multiplexed connections per host
+     * ({@value MultiplexedConnectionManager#DEFAULT_CONNECTIONS_PER_HOST} by default).
+     * Servers that do not support multiplexing are detected and served through the pool or plain sockets.
+     *
+     * @return this factory for chaining
+     */
+    public TcpRestClientFactory withMultiplexing() {
+        return withMultiplexing(MultiplexedConnectionManager.DEFAULT_CONNECTIONS_PER_HOST);
+    }
+
+    /**
+     * Send concurrent calls over the given number of shared multiplexed connections per host.
+     *
+     * @param connectionsPerHost multiplexed connections per host
+     * @return this factory for chaining
+     */
+    public TcpRestClientFactory withMultiplexing(int connectionsPerHost) {
+        this.multiplexedConnections = new MultiplexedConnectionManager(connectionsPerHost, sslParams);
+        return this;
+    }
+
+    /**
+     * Get the multiplexed connections shared by this factory's proxies.
+     *
+     * @return multiplexed connection manager, or null if multiplexing is disabled
+     */
+    public MultiplexedConnectionManager getMultiplexedConnections() {
+        return multiplexedConnections;
+    }
+
+    /**
+     * Send requests as Protocol V3 binary frames: length-prefixed, with raw parameter bytes instead of
+     * Base64 text. Servers accept V3 alongside V2 unless configured otherwise. V3 requests use the
+     * connection pool or one socket per request, never multiplexed connections, and are not compressed.
+     *
+     * @return this factory for chaining
+     */
+    public TcpRestClientFactory withProtocolV3() {
+        this.protocolV3 = true;
+        return this;
+    }
+
+    /**
+     * @return true if proxies send Protocol V3 binary frames
+     */
+    public boolean isProtocolV3() {
+        return protocolV3;
+    }
+
+    /**
+     * Serve clients with a stub class generated per interface instead of a {@link Proxy}: interface
+     * methods forward their arguments to the client directly, without reflective dispatch through an
+     * {@link java.lang.reflect.InvocationHandler}. Stubs implement {@code equals}, {@code hashCode} and
+     * {@code toString} locally. Interfaces a stub cannot be generated for (for example in a module that
+     * does not open its package) still get a dynamic proxy.
+     *
+     * @return this factory for chaining
+     * @since 2.0.0
+     */
+    public TcpRestClientFactory withGeneratedStubs() {
+        this.generatedStubs = true;
+        return this;
+    }
+
+    /**
+     * @return true if clients are generated stubs where possible
+     */
+    public boolean isGeneratedStubs() {
+        return generatedStubs;
+    }
+
+    /**
+     * Negotiate wire features with each server before the first request ({@link Capabilities}): the
+     * protocol version (V3 is used when the server accepts it, V2 otherwise), compression, the largest
+     * accepted frame, and the server's checksum and signature modes. Requests fail fast with a
+     * {@link cn.huiwings.tcprest.exception.SecurityException} if the server requires a different checksum
+     * or signature, and with a {@link cn.huiwings.tcprest.exception.ProtocolException} if they exceed the
+     * agreed frame limit. Servers without handshake support are used with Protocol V2.
+     *
+     * <p>Pooled connections negotiate when they are opened; discovery-based clients do not negotiate.</p>
+     *
+     * @return this factory for chaining
+     */
+    public TcpRestClientFactory withCapabilityHandshake() {
+        this.capabilityHandshake = true;
+        return this;
+    }
+
+    /**
+     * @return true if proxies negotiate capabilities with each server
+     */
+    public boolean isCapabilityHandshake() {
+        return capabilityHandshake;
+    }
+
+    /**
+     * Negotiator shared by all proxies and the connection pool of this factory.
+     *
+     * @return the negotiator, or null if the capability handshake is not enabled
+     */
+    public synchronized CapabilityNegotiator getCapabilityNegotiator() {
+        if (!capabilityHandshake) {
+            return null;
+        }
+        if (capabilityNegotiator == null) {
+            capabilityNegotiator = new CapabilityNegotiator(Capabilities.offer(true, securityConfig,
+                    ProtocolV3Constants.MAX_FRAME_LENGTH));
+            if (connectionPool != null) {
+                connectionPool.setCapabilityNegotiator(capabilityNegotiator);
+            }
+        }
+        return capabilityNegotiator;
+    }
+
     /**
      * Set security configuration.
      *
@@ -3,24 +3,32 @@ package cn.huiwings.tcprest.client;
 import cn.huiwings.tcprest.annotations.TimeoutAnnotationHandler;
 import cn.huiwings.tcprest.compression.CompressionConfig;
 import cn.huiwings.tcprest.codec.v2.ProtocolV2Codec;
+import cn.huiwings.tcprest.codec.v2.RequestPlan;
+import cn.huiwings.tcprest.codec.v3.ProtocolV3Codec;
 import cn.huiwings.tcprest.discovery.HostPort;
 import cn.huiwings.tcprest.discovery.LoadBalancer;
 import cn.huiwings.tcprest.discovery.ServiceDiscovery;
 import cn.huiwings.tcprest.exception.NoInstanceException;
+import cn.huiwings.tcprest.exception.ProtocolException;
 import cn.huiwings.tcprest.governance.CircuitBreakerProvider;
 import cn.huiwings.tcprest.governance.RetryPolicy;
 import java.util.logging.Logger;
 import cn.huiwings.tcprest.mapper.Mapper;
 import cn.huiwings.tcprest.mapper.MapperHelper;
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants;
 import cn.huiwings.tcprest.security.SecurityConfig;
 import cn.huiwings.tcprest.ssl.SSLParams;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Protocol V2 TcpRest Client Proxy.
@@ -35,6 +43,9 @@ import java.util.Map;
  *   <li>Security features (checksum, class whitelist)</li>
  * </ul>
  *
+ * <p>With {@link #setProtocolV3(boolean)} requests are sent as Protocol V3 binary frames instead,
+ * through {@link TcpRestClient#sendBinaryRequest(byte[], int)}.</p>
+ *
  * @author Weinan Li
  * @date Jul 30 2012
  */
@@ -43,10 +54,15 @@ public class TcpRestClientProxy implements InvocationHandler {
     private Logger logger = Logger.getLogger(TcpRestClientProxy.class.getName());
     private TcpRestClient tcpRestClient;
     private Map<String, Mapper> mappers;
-    private ProtocolV2Codec codec;
+    private ProtocolV3Codec codec;
+    // Codec with CRC32 added, for servers whose handshake requires it while this client has no checksum
+    private volatile ProtocolV3Codec crc32Codec;
+    private volatile boolean protocolV3;
     private CompressionConfig compressionConfig = new CompressionConfig(); // Default: disabled
     private SecurityConfig securityConfig = new SecurityConfig(); // Default: no security
     private RetryPolicy retryPolicy;
+    // Per-method encoding plans, built on first use (or by preparePlans) and reused by every call
+    private final ConcurrentMap<Method, Plan> plans = new ConcurrentHashMap<>();
 
     /**
      * Create client proxy with full configuration.
@@ -78,7 +94,7 @@ public class TcpRestClientProxy implements InvocationHandler {
         }
 
         // Initialize Protocol V2 codec with security config and mappers
-        this.codec = new ProtocolV2Codec(this.securityConfig, this.mappers);
+        this.codec = new ProtocolV3Codec(this.securityConfig, this.mappers);
 
         tcpRestClient = new DefaultTcpRestClient(sslParams, delegatedClassName, host, port);
     }
@@ -119,10 +135,10 @@ public class TcpRestClientProxy implements InvocationHandler {
                               LoadBalancer loadBalancer, CircuitBreakerProvider circuitBreakerProvider,
                               RetryPolicy retryPolicy, Map<String, Mapper> extraMappers, SSLParams sslParams,
                               CompressionConfig compressionConfig, SecurityConfig securityConfig) {
-        this(delegatedClassName, createDiscoveryClient(delegatedClassName, discovery, serviceName, loadBalancer, circuitBreakerProvider, sslParams), extraMappers, sslParams, compressionConfig, securityConfig, retryPolicy);
+        this(delegatedClassName, createDiscoveryClient(delegatedClassName, discovery, serviceName, loadBalancer, circuitBreakerProvider, sslParams, null, null), extraMappers, sslParams, compressionConfig, securityConfig, retryPolicy);
     }
 
-    private static TcpRestClient createDiscoveryClient(String delegatedClassName, ServiceDiscovery discovery, String serviceName, LoadBalancer loadBalancer, CircuitBreakerProvider circuitBreakerProvider, SSLParams sslParams) {
+    static TcpRestClient createDiscoveryClient(String delegatedClassName, ServiceDiscovery discovery, String serviceName, LoadBalancer loadBalancer, CircuitBreakerProvider circuitBreakerProvider, SSLParams sslParams, ConnectionPool connectionPool, MultiplexedConnectionManager multiplexedConnections) {
         java.util.function.Supplier<HostPort> supplier = () -> {
             List<HostPort> instances = discovery.getInstances(serviceName);
             if (instances == null || instances.isEmpty()) {
@@ -152,7 +168,7 @@ public class TcpRestClientProxy implements InvocationHandler {
                 }
             };
         }
-        return new DiscoveryTcpRestClient(delegatedClassName, sslParams, supplier, afterRequest);
+        return new DiscoveryTcpRestClient(delegatedClassName, sslParams, supplier, afterRequest, connectionPool, multiplexedConnections);
     }
 
     /**
@@ -189,7 +205,7 @@ public class TcpRestClientProxy implements InvocationHandler {
         }
         this.compressionConfig = compressionConfig != null ? compressionConfig : new CompressionConfig();
         this.securityConfig = securityConfig != null ? securityConfig : new SecurityConfig();
-        this.codec = new ProtocolV2Codec(this.securityConfig, this.mappers);
+        this.codec = new ProtocolV3Codec(this.securityConfig, this.mappers);
         this.tcpRestClient = tcpRestClient;
         this.retryPolicy = retryPolicy;
     }
@@ -249,6 +265,8 @@ public class TcpRestClientProxy implements InvocationHandler {
 
     public void setMappers(Map<String, Mapper> mappers) {
         this.mappers = mappers;
+        plans.clear();
+        crc32Codec = null;
     }
 
     public Map<String, Mapper> getMappers() {
@@ -263,6 +281,7 @@ public class TcpRestClientProxy implements InvocationHandler {
     public void setSecurityConfig(SecurityConfig securityConfig) {
         this.securityConfig = securityConfig != null ? securityConfig : new SecurityConfig();
         codec.setSecurityConfig(this.securityConfig);
+        crc32Codec = null;
     }
 
     /**
@@ -314,38 +333,138 @@ public class TcpRestClientProxy implements InvocationHandler {
         return invokeOnce(method, params);
     }
 
+    /**
+     * Entry point of generated client stubs ({@link TcpRestClientFactory#withGeneratedStubs()}).
+     * Behaves like a call through a dynamic proxy: checked exceptions the method does not declare are
+     * wrapped in {@link UndeclaredThrowableException}.
+     *
+     * @param method the interface method
+     * @param params method parameters
+     * @return method result
+     * @throws Throwable if invocation fails
+     * @since 2.0.0
+     */
+    public Object invokeStub(Method method, Object[] params) throws Throwable {
+        try {
+            return invoke(null, method, params);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            for (Class<?> declared : method.getExceptionTypes()) {
+                if (declared.isInstance(e)) {
+                    throw e;
+                }
+            }
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
     private Object invokeOnce(Method method, Object[] params) throws Throwable {
-        String className = method.getDeclaringClass().getCanonicalName();
-        if (!className.equals(tcpRestClient.getDeletgatedClassName())) {
-            throw new IllegalAccessException("Method cannot be invoked: " + method.getName());
+        Plan plan = plans.get(method);
+        if (plan == null) {
+            plan = plan(method);
         }
 
         try {
+            // With the capability handshake, the agreed version wins over the configured one
+            Capabilities capabilities = tcpRestClient.getCapabilities();
+            ProtocolV3Codec codec = this.codec;
+            if (capabilities != null && capabilities.checkSecurity(securityConfig)
+                    != securityConfig.getChecksumAlgorithm()) {
+                codec = crc32Codec();
+            }
+            // Newer value encodings only where the server agreed to them; none without a handshake
+            int features = capabilities != null ? capabilities.getFeatures() : 0;
+            if (capabilities != null ? capabilities.getVersion() >= 3 : protocolV3) {
+                byte[] frame = codec.encodeRequest(plan.request, params, features);
+                checkFrameLength(frame.length - ProtocolV3Constants.FRAME_HEADER_LENGTH, capabilities);
+                byte[] response = tcpRestClient.sendBinaryRequest(frame, plan.timeout);
+                return codec.decodeResponse(response, plan.request);
+            }
+
             // Encode request with v2 format (includes method signature and mappers)
             // V2 supports intelligent type mapping: custom mappers > auto serialization > built-in
-            String request = codec.encode(method.getDeclaringClass(), method, params, mappers);
+            String request = codec.encode(plan.request, params, features);
+            checkFrameLength(request.length(), capabilities);
 
             logger.fine("V2 request: " + sanitizeForLog(request));
 
             // Send request
-            String response = tcpRestClient.sendRequest(request, TimeoutAnnotationHandler.getTimeout(method));
+            String response = tcpRestClient.sendRequest(request, plan.timeout);
             logger.fine("V2 response: " + sanitizeForLog(response));
 
             // Decode response (handles status codes and exceptions)
-            return codec.decode(response, method.getReturnType());
+            return codec.decode(response, plan.request);
 
         } catch (Exception e) {
             // Check if it's a SocketTimeoutException and wrap it as unchecked TimeoutException
             // to avoid dynamic proxy wrapping it as UndeclaredThrowableException
             if (e instanceof java.net.SocketTimeoutException) {
                 throw new cn.huiwings.tcprest.exception.TimeoutException(
-                    "Request timeout after " + TimeoutAnnotationHandler.getTimeout(method) + " seconds", e);
+                    ClientExecutors.timeoutMessage(plan.timeout, (java.net.SocketTimeoutException) e), e);
             }
             // Re-throw other exceptions as-is
             throw e;
         }
     }
 
+    /**
+     * @return a codec like {@link #codec}, with CRC32 checksums (built on first use)
+     */
+    private ProtocolV3Codec crc32Codec() {
+        ProtocolV3Codec adopted = crc32Codec;
+        if (adopted == null) {
+            adopted = new ProtocolV3Codec(securityConfig.copy().enableCRC32(), mappers);
+            crc32Codec = adopted;
+        }
+        return adopted;
+    }
+
+    /**
+     * Build and cache the plan of a method of the delegated interface.
+     */
+    private Plan plan(Method method) throws IllegalAccessException {
+        String className = method.getDeclaringClass().getCanonicalName();
+        if (!className.equals(tcpRestClient.getDeletgatedClassName())) {
+            throw new IllegalAccessException("Method cannot be invoked: " + method.getName());
+        }
+        Plan plan = new Plan(codec.plan(method.getDeclaringClass(), method, mappers),
+                TimeoutAnnotationHandler.getTimeout(method));
+        Plan existing = plans.putIfAbsent(method, plan);
+        return existing != null ? existing : plan;
+    }
+
+    /**
+     * Build the plans of all methods of the delegated interface up front, so that first calls do not
+     * pay for signatures, annotation scans and mapper lookups. Methods whose plan cannot be built are
+     * left to fail when called.
+     *
+     * @param type the delegated interface
+     */
+    public void preparePlans(Class<?> type) {
+        for (Method method : type.getMethods()) {
+            if (method.getDeclaringClass() != type) {
+                continue;
+            }
+            try {
+                plan(method);
+            } catch (IllegalAccessException | RuntimeException e) {
+                logger.fine("Plan for " + method.getName() + " not prepared: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Fail locally instead of sending a request the server would reject as oversized.
+     * V2 lines are ASCII (Base64 payloads), so their length in chars is their length in bytes.
+     */
+    private static void checkFrameLength(int length, Capabilities capabilities) {
+        if (capabilities != null && length > capabilities.getMaxFrameLength()) {
+            throw new ProtocolException("Request of " + length + " bytes exceeds the server frame limit of "
+                    + capabilities.getMaxFrameLength() + " bytes");
+        }
+    }
+
     public CompressionConfig getCompressionConfig() {
         return compressionConfig;
     }
@@ -374,6 +493,23 @@ public class TcpRestClientProxy implements InvocationHandler {
         logger.info("Client compression disabled");
     }
 
+    /**
+     * @return true if requests are sent as Protocol V3 binary frames
+     */
+    public boolean isProtocolV3() {
+        return protocolV3;
+    }
+
+    /**
+     * Send requests as Protocol V3 binary frames (false = V2 lines, the default).
+     * The transport must support {@link TcpRestClient#sendBinaryRequest(byte[], int)}.
+     *
+     * @param protocolV3 whether to use Protocol V3
+     */
+    public void setProtocolV3(boolean protocolV3) {
+        this.protocolV3 = protocolV3;
+    }
+
     /**
      * Get the Protocol V2 codec.
      *
@@ -383,6 +519,16 @@ public class TcpRestClientProxy implements InvocationHandler {
         return codec;
     }
 
+    private static final class Plan {
+        private final RequestPlan request;
+        private final int timeout;
+
+        Plan(RequestPlan request, int timeout) {
+            this.request = request;
+            this.timeout = timeout;
+        }
+    }
+
     /** Sanitize string for logging to prevent log injection (newlines/control chars). */
     private static String sanitizeForLog(String s) {
         if (s == null) return "null";
@@ -1,16 +1,31 @@
 package cn.huiwings.tcprest.codec.v2;
 
 import cn.huiwings.tcprest.codec.ProtocolCodec;
+import cn.huiwings.tcprest.exception.ProtocolException;
+import cn.huiwings.tcprest.mapper.BinaryMapper;
+import cn.huiwings.tcprest.mapper.CompactMapper;
 import cn.huiwings.tcprest.mapper.Mapper;
+import cn.huiwings.tcprest.mapper.RawTypeMapper;
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.protocol.v2.BinaryValues;
+import cn.huiwings.tcprest.protocol.v2.PackedArrays;
 import cn.huiwings.tcprest.protocol.v2.ProtocolV2Constants;
+import cn.huiwings.tcprest.protocol.v2.ProtocolV2TypeSupport;
 import cn.huiwings.tcprest.protocol.v2.StatusCode;
 import cn.huiwings.tcprest.protocol.v2.TypeSignatureUtil;
 import cn.huiwings.tcprest.security.ProtocolSecurity;
 import cn.huiwings.tcprest.security.SecurityConfig;
 
+import java.io.IOException;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.Map;
+import java.util.logging.Logger;
 
 /**
  * Security-Enhanced Protocol V2 Codec.
@@ -58,14 +73,23 @@ import java.util.Map;
  */
 public class ProtocolV2Codec implements ProtocolCodec {
 
-    private static final String COMPRESSION_DISABLED = "0";
+    private static final Logger logger = Logger.getLogger(ProtocolV2Codec.class.getName());
+
+    // Feature flags of responses that use no negotiated feature (exceptions)
+    private static final String NO_FEATURES = "0";
 
     // Array safety limits (prevent DoS attacks)
     private static final int MAX_ARRAY_DEPTH = 10;    // Maximum nesting depth for arrays
-    private static final int MAX_ARRAY_SIZE = 100000;  // Maximum array length
+    protected static final int MAX_ARRAY_SIZE = 100000;  // Maximum array length
+
+    // Stateless; writes Java serialization, which every peer reads, and reads the compact format too
+    protected static final RawTypeMapper AUTO_MAPPER = new RawTypeMapper();
+
+    // Writes the compact format, for peers that announced Capabilities.FEATURE_COMPACT
+    protected static final RawTypeMapper COMPACT_MAPPER = new CompactMapper();
 
     private SecurityConfig securityConfig;
-    private Map<String, Mapper> mappers;
+    protected Map<String, Mapper> mappers;
 
     /**
      * Create codec with default security (no checksum, no whitelist).
@@ -136,7 +160,8 @@ public class ProtocolV2Codec implements ProtocolCodec {
      * <p><b>Intelligent Mapper Support:</b></p>
      * <ol>
      *   <li><b>User-defined Mapper:</b> Custom mapper for specific types</li>
-     *   <li><b>Auto Serialization:</b> Serializable objects use RawTypeMapper</li>
+     *   <li><b>Auto Serialization:</b> Serializable objects use Java serialization, or the compact
+     *       format once the server agreed to it</li>
      *   <li><b>Built-in conversion:</b> Primitives, arrays, toString() for others</li>
      * </ol>
      *
@@ -148,11 +173,28 @@ public class ProtocolV2Codec implements ProtocolCodec {
      */
     @Override
     public String encode(Class clazz, Method method, Object[] params, Map<String, Mapper> mappers) {
+        return encode(plan(clazz, method, mappers), params);
+    }
+
+    /**
+     * Compute the parts of a request that depend only on the method, for reuse across calls.
+     *
+     * <p>Validates the class and method names, encodes the meta and resolves the encoding and mapper of
+     * every parameter whose runtime class is fixed by its declared type. The return type mapper is taken
+     * from this codec's mappers, as in {@link #decode(String, Class)}.</p>
+     *
+     * @param clazz the interface class
+     * @param method the method to invoke
+     * @param mappers mapper registry for parameters (optional)
+     * @return the plan
+     * @throws cn.huiwings.tcprest.exception.SecurityException if the class or method name is invalid
+     * @since 2.0.0
+     */
+    public RequestPlan plan(Class clazz, Method method, Map<String, Mapper> mappers) {
         // Step 1: Build metadata (ClassName/methodName(TYPE_SIGNATURE))
         String className = clazz.getName();
         String methodName = method.getName();
-        String signature = TypeSignatureUtil.getMethodSignature(method);
-        String meta = className + "/" + methodName + signature;
+        String meta = className + "/" + methodName + TypeSignatureUtil.getMethodSignature(method);
 
         // Step 2: Validate class name and method name
         if (!ProtocolSecurity.isValidClassName(className)) {
@@ -166,48 +208,95 @@ public class ProtocolV2Codec implements ProtocolCodec {
             );
         }
 
-        // Step 3: Check class whitelist if enabled
+        // Step 3: Resolve parameter encodings where the declared type fixes the runtime class
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        RequestPlan.Encoding[] encodings = new RequestPlan.Encoding[parameterTypes.length];
+        Mapper[] parameterMappers = new Mapper[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> runtimeType = exactRuntimeType(parameterTypes[i]);
+            if (runtimeType != null) {
+                parameterMappers[i] = mappers != null ? mappers.get(runtimeType.getCanonicalName()) : null;
+                encodings[i] = encodingOf(runtimeType, parameterMappers[i]);
+            }
+        }
+
+        // Step 4: Encode metadata using Base64 (wrapped with {{}})
+        String metaToken = ProtocolV2Constants.PARAM_WRAPPER_START +
+                           ProtocolSecurity.encodeComponent(meta) +
+                           ProtocolV2Constants.PARAM_WRAPPER_END;
+
+        return new RequestPlan(className, method, meta, metaToken, meta.getBytes(StandardCharsets.UTF_8),
+                encodings, parameterMappers, mappers, getMapper(this.mappers, method.getReturnType()));
+    }
+
+    /**
+     * Encode request from a plan; only the parameter values are encoded. No negotiated features are
+     * announced or used, so any server can read the request.
+     *
+     * @param plan plan from {@link #plan(Class, Method, Map)}
+     * @param params the method parameters
+     * @return encoded request string
+     * @since 2.0.0
+     */
+    public String encode(RequestPlan plan, Object[] params) {
+        return encode(plan, params, 0);
+    }
+
+    /**
+     * Encode request from a plan, announcing the wire features the server agreed to in the capability
+     * handshake ({@link Capabilities#getFeatures()}). The server answers using only those features.
+     *
+     * @param plan plan from {@link #plan(Class, Method, Map)}
+     * @param params the method parameters
+     * @param features agreed feature bits (0 for none)
+     * @return encoded request string
+     * @since 2.0.0
+     */
+    public String encode(RequestPlan plan, Object[] params, int features) {
+        features &= Capabilities.SUPPORTED_FEATURES;
+        // Check class whitelist if enabled (the configuration may change between calls)
+        String className = plan.getClassName();
         if (!securityConfig.isClassAllowed(className)) {
             throw new cn.huiwings.tcprest.exception.SecurityException(
                 "Class not in whitelist: " + className
             );
         }
 
-        // Step 4: Build parameters array (JSON-style format)
-        StringBuilder paramsBuilder = new StringBuilder();
-        paramsBuilder.append(ProtocolV2Constants.PARAMS_ARRAY_START);
-        if (params != null && params.length > 0) {
-            for (int i = 0; i < params.length; i++) {
-                if (i > 0) {
-                    paramsBuilder.append(ProtocolV2Constants.PARAM_SEPARATOR);
-                }
-                paramsBuilder.append(encodeParam(params[i], mappers));
+        // Build protocol message: V2|FEATURES|{{META}}|[PARAMS]
+        int count = params == null ? 0 : params.length;
+        StringBuilder message = new StringBuilder(plan.getMetaToken().length() + 16 + count * 16);
+        message.append(ProtocolV2Constants.PREFIX).append(features)
+               .append(ProtocolV2Constants.SEPARATOR).append(plan.getMetaToken())
+               .append(ProtocolV2Constants.SEPARATOR).append(ProtocolV2Constants.PARAMS_ARRAY_START);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                message.append(ProtocolV2Constants.PARAM_SEPARATOR);
+            }
+            Object param = params[i];
+            RequestPlan.Encoding encoding = plan.getEncoding(i);
+            if (param == null) {
+                message.append("~");
+            } else if (encoding != null) {
+                message.append(encodeParam(param, encoding, plan.getParameterMapper(i), plan.getDeclaredType(i),
+                        features));
+            } else {
+                message.append(encodeParam(param, plan.getMappers(), plan.getDeclaredType(i), features));
             }
         }
-        paramsBuilder.append(ProtocolV2Constants.PARAMS_ARRAY_END);
-        String paramsArray = paramsBuilder.toString();
-
-        // Step 5: Encode metadata using Base64 (wrapped with {{}})
-        String metaBase64 = ProtocolV2Constants.PARAM_WRAPPER_START +
-                           ProtocolSecurity.encodeComponent(meta) +
-                           ProtocolV2Constants.PARAM_WRAPPER_END;
-
-        // Step 6: Build protocol message: V2|0|{{META}}|[PARAMS]
-        String message = ProtocolV2Constants.PREFIX + COMPRESSION_DISABLED +
-                        ProtocolV2Constants.SEPARATOR + metaBase64 +
-                        ProtocolV2Constants.SEPARATOR + paramsArray;
+        message.append(ProtocolV2Constants.PARAMS_ARRAY_END);
 
-        // Step 7: Add CHK then SIG if enabled (order: content|CHK:value|SIG:value)
-        String checksum = ProtocolSecurity.calculateChecksum(message, securityConfig);
+        // Add CHK then SIG if enabled (order: content|CHK:value|SIG:value)
+        String content = message.toString();
+        String checksum = ProtocolSecurity.calculateChecksum(content, securityConfig);
         if (!checksum.isEmpty()) {
-            message += ProtocolV2Constants.SEPARATOR + checksum;
+            content += ProtocolV2Constants.SEPARATOR + checksum;
         }
-        String sigSegment = ProtocolSecurity.calculateSignature(message, securityConfig);
+        String sigSegment = ProtocolSecurity.calculateSignature(content, securityConfig);
         if (!sigSegment.isEmpty()) {
-            message += ProtocolV2Constants.SEPARATOR + sigSegment;
+            content += ProtocolV2Constants.SEPARATOR + sigSegment;
         }
 
-        return message;
+        return content;
     }
 
     /**
@@ -216,29 +305,40 @@ public class ProtocolV2Codec implements ProtocolCodec {
      * <p><b>Encoding Priority:</b></p>
      * <ol>
      *   <li><b>NULL marker:</b> null → "~"</li>
+     *   <li><b>Binary:</b> byte[] and ByteBuffer → "!" + URL-safe Base64 of the bytes if the peer
+     *       announced {@link Capabilities#FEATURE_BINARY}, else the bytes as Arrays.toString() text</li>
+     *   <li><b>Primitive arrays:</b> int[], double[][], ... → "*" + URL-safe Base64 of the packed array if
+     *       the peer announced {@link Capabilities#FEATURE_PACKED}, else as arrays below</li>
      *   <li><b>User-defined Mapper:</b> Use custom mapper if provided</li>
-     *   <li><b>Auto Serialization:</b> For Serializable objects, use RawTypeMapper</li>
-     *   <li><b>Arrays:</b> Use Arrays.toString() format</li>
+     *   <li><b>Auto Serialization:</b> For Serializable objects, Java serialization, or the compact
+     *       format if the server agreed to it ({@link #serializer(int)})</li>
+     *   <li><b>Arrays:</b> String[] uses Arrays.toString() format, other arrays are serialized</li>
      *   <li><b>Primitives/Strings:</b> Use toString() then Base64</li>
      * </ol>
      *
      * @param param the parameter value
      * @param mappers optional user-defined mappers
+     * @param declaredType declared generic type of the parameter (may be null)
+     * @param features agreed feature bits
      * @return Base64-encoded parameter string (or special markers)
      */
-    private String encodeParam(Object param, Map<String, Mapper> mappers) {
+    private String encodeParam(Object param, Map<String, Mapper> mappers, Type declaredType, int features) {
         if (param == null) {
             return "~"; // Tilde marker for null (not in Base64 charset)
         }
+        // Use getCanonicalName() to match MapperHelper.DEFAULT_MAPPERS keys
+        Mapper mapper = getMapper(mappers, param.getClass());
+        return encodeParam(param, encodingOf(param.getClass(), mapper), mapper, declaredType, features);
+    }
 
+    private String encodeParam(Object param, RequestPlan.Encoding encoding, Mapper mapper, Type declaredType,
+                               int features) {
         String paramStr;
-
-        // Priority 1: User-defined Mapper
-        if (mappers != null) {
-            // Use getCanonicalName() to match MapperHelper.DEFAULT_MAPPERS keys
-            String mapperKey = param.getClass().getCanonicalName();
-            Mapper mapper = mappers.get(mapperKey);
-            if (mapper != null) {
+        switch (encoding) {
+            case MAPPER:
+                if (mapper instanceof BinaryMapper) {
+                    return toUrlSafeBase64((BinaryMapper) mapper, param, declaredType);
+                }
                 paramStr = mapper.objectToString(param);
                 if (paramStr == null) {
                     return "~";
@@ -247,43 +347,40 @@ public class ProtocolV2Codec implements ProtocolCodec {
                     return ""; // Empty string
                 }
                 return Base64.getEncoder().encodeToString(paramStr.getBytes());
-            }
-        }
 
-        // Priority 2: Auto Serialization for Serializable objects (except String and primitives)
-        if (param instanceof java.io.Serializable &&
-            !(param instanceof String) &&
-            !param.getClass().isArray() &&
-            !isWrapperType(param.getClass())) {
-            cn.huiwings.tcprest.mapper.RawTypeMapper rawMapper = new cn.huiwings.tcprest.mapper.RawTypeMapper();
-            // RawTypeMapper returns standard Base64 - convert to URL-safe Base64
-            String standardBase64 = rawMapper.objectToString(param);
-            if (standardBase64 == null) {
-                return "~";
-            }
-            // Convert standard Base64 to URL-safe: + → -, / → _, remove =
-            return standardBase64.replace('+', '-').replace('/', '_').replace("=", "");
-        }
+            case OBJECT_ARRAY:
+                checkArraySize(param);
+                // fall through: object arrays are serialized like any Serializable object
+            case SERIALIZED:
+                // Serialization bytes as URL-safe Base64 without padding
+                return toUrlSafeBase64(serializer(features, param), param, declaredType);
 
-        // Priority 3: Arrays
-        if (param.getClass().isArray()) {
-            paramStr = arrayToString(param);
-            // Object arrays: arrayToString already returns Base64 from RawTypeMapper - do not double-encode
-            Class<?> componentType = param.getClass().getComponentType();
-            boolean primitiveOrStringArray = componentType == int.class || componentType == long.class
-                || componentType == double.class || componentType == float.class
-                || componentType == byte.class || componentType == short.class
-                || componentType == boolean.class || componentType == char.class
-                || componentType == String.class;
-            if (!primitiveOrStringArray) {
-                if (paramStr == null || paramStr.isEmpty()) {
-                    return paramStr == null ? "~" : "";
+            case TEXT_ARRAY:
+                paramStr = arrayToString(param);
+                break;
+
+            case BINARY:
+                if ((features & Capabilities.FEATURE_BINARY) != 0) {
+                    return BinaryValues.toToken(param);
                 }
-                return paramStr.replace('+', '-').replace('/', '_').replace("=", "");
-            }
-        } else {
-            // Priority 4: Primitives and other types
-            paramStr = param.toString();
+                // older peers read byte[] as Arrays.toString() text
+                paramStr = arrayToString(BinaryValues.toBytes(param));
+                break;
+
+            case PACKED_ARRAY:
+                if ((features & Capabilities.FEATURE_PACKED) != 0) {
+                    return PackedArrays.toToken(param);
+                }
+                // older peers read one dimension as Arrays.toString() text, more as a serialized object array
+                if (param.getClass().getComponentType().isArray()) {
+                    return encodeParam(param, RequestPlan.Encoding.OBJECT_ARRAY, mapper, declaredType, features);
+                }
+                paramStr = arrayToString(param);
+                break;
+
+            default:
+                paramStr = param.toString();
+                break;
         }
 
         // Handle null or empty string
@@ -294,6 +391,130 @@ public class ProtocolV2Codec implements ProtocolCodec {
         return Base64.getEncoder().encodeToString(paramStr.getBytes());
     }
 
+    /**
+     * The mapper that writes auto-serialized values for a peer: the compact format if the peer announced
+     * {@link Capabilities#FEATURE_COMPACT}, Java serialization otherwise. Both are read by every
+     * {@link RawTypeMapper}, but older peers read only Java serialization.
+     *
+     * @param features feature bits agreed with the peer
+     * @return the mapper
+     * @since 2.0.0
+     */
+    protected static RawTypeMapper serializer(int features) {
+        return (features & Capabilities.FEATURE_COMPACT) != 0 ? COMPACT_MAPPER : AUTO_MAPPER;
+    }
+
+    /**
+     * {@link #serializer(int)} for a value: records that are not {@link java.io.Serializable} have no
+     * Java serialization form, so they are always written in the compact format.
+     */
+    protected static RawTypeMapper serializer(int features, Object value) {
+        return value instanceof java.io.Serializable ? serializer(features) : COMPACT_MAPPER;
+    }
+
+    /**
+     * Write a value with a binary mapper and encode the bytes as URL-safe Base64 without padding.
+     *
+     * @return the encoded bytes
+     * @throws ProtocolException if the mapper cannot write the value
+     */
+    private static String toUrlSafeBase64(BinaryMapper mapper, Object value, Type declaredType) {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(toByteArray(mapper, value, declaredType));
+        } catch (IOException e) {
+            logger.warning("Failed to write value of type " + value.getClass().getName() + ": " + e);
+            throw new ProtocolException("Failed to write value of type " + value.getClass().getName()
+                    + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Write a value with a binary mapper. A {@link CompactMapper} also gets the declared generic type of
+     * the value, which lets it write collections such as {@code List<Integer>} as typed sequences.
+     *
+     * @param mapper the mapper
+     * @param value the value
+     * @param declaredType declared generic type of the parameter or return value (may be null)
+     * @return the bytes
+     * @throws IOException if the value cannot be written
+     * @since 2.0.0
+     */
+    protected static byte[] toByteArray(BinaryMapper mapper, Object value, Type declaredType) throws IOException {
+        if (declaredType != null && mapper instanceof CompactMapper) {
+            return ((CompactMapper) mapper).toByteArray(value, declaredType);
+        }
+        return mapper.toByteArray(value);
+    }
+
+    /**
+     * Read a value written by a binary mapper from (URL-safe or standard) Base64.
+     */
+    private static Object fromBase64(BinaryMapper mapper, String standardBase64) {
+        try {
+            return mapper.readObject(ByteBuffer.wrap(Base64.getDecoder().decode(standardBase64)));
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalArgumentException("Failed to read " + mapper.getClass().getName() + " value: " + e, e);
+        }
+    }
+
+    /**
+     * Classify a value by its runtime class, following the encoding priorities of
+     * {@link #encodeParam(Object, Map, Type, int)}.
+     *
+     * @param type runtime class of the value (never primitive)
+     * @param mapper user-defined mapper for the class, or null
+     * @return the encoding
+     * @since 2.0.0
+     */
+    protected RequestPlan.Encoding encodingOf(Class<?> type, Mapper mapper) {
+        // byte[] and ByteBuffer travel as raw bytes, whatever mappers are registered
+        if (BinaryValues.isBinaryType(type)) {
+            return RequestPlan.Encoding.BINARY;
+        }
+        // primitive arrays of any dimension are packed, whatever mappers are registered
+        if (PackedArrays.isPackedType(type)) {
+            return RequestPlan.Encoding.PACKED_ARRAY;
+        }
+        // Priority 1: User-defined Mapper
+        if (mapper != null) {
+            return RequestPlan.Encoding.MAPPER;
+        }
+        // Priority 2: Auto Serialization for Serializable objects and records (except String and primitives)
+        if (ProtocolV2TypeSupport.isAutoSerializable(type) && type != String.class
+                && !type.isArray() && !isWrapperType(type)) {
+            return RequestPlan.Encoding.SERIALIZED;
+        }
+        // Priority 3: Arrays
+        if (type.isArray()) {
+            return isTextArray(type.getComponentType())
+                    ? RequestPlan.Encoding.TEXT_ARRAY : RequestPlan.Encoding.OBJECT_ARRAY;
+        }
+        // Priority 4: Primitives and other types
+        return RequestPlan.Encoding.TEXT;
+    }
+
+    /**
+     * @param componentType array component type
+     * @return true if arrays of the type are sent as {@code Arrays.toString()} text
+     */
+    protected static boolean isTextArray(Class<?> componentType) {
+        return componentType.isPrimitive() || componentType == String.class;
+    }
+
+    /**
+     * The class every non-null value of a declared type has, if the declaration fixes it: the wrapper
+     * of a primitive, a final class, or an array of such. Null for types values may subclass.
+     */
+    private static Class<?> exactRuntimeType(Class<?> declared) {
+        if (declared.isPrimitive()) {
+            return declared == void.class ? null : MethodType.methodType(declared).wrap().returnType();
+        }
+        if (declared.isArray()) {
+            return exactRuntimeType(declared.getComponentType()) != null ? declared : null;
+        }
+        return Modifier.isFinal(declared.getModifiers()) ? declared : null;
+    }
+
     /**
      * Convert URL-safe Base64 to standard Base64.
      *
@@ -321,7 +542,7 @@ public class ProtocolV2Codec implements ProtocolCodec {
      * @param clazz the class to check
      * @return true if wrapper type
      */
-    private boolean isWrapperType(Class<?> clazz) {
+    protected boolean isWrapperType(Class<?> clazz) {
         return clazz == Integer.class || clazz == Long.class || clazz == Double.class ||
                clazz == Float.class || clazz == Boolean.class || clazz == Byte.class ||
                clazz == Short.class || clazz == Character.class;
@@ -330,6 +551,9 @@ public class ProtocolV2Codec implements ProtocolCodec {
     /**
      * Convert array to string representation with safety checks.
      *
+     * <p>Requests and responses send primitive arrays packed ({@link PackedArrays}); the text form is
+     * what older peers send.</p>
+     *
      * <p><b>Supported array types:</b></p>
      * <ul>
      *   <li>Primitive arrays (int[], long[], etc.) - uses Arrays.toString()</li>
@@ -348,16 +572,24 @@ public class ProtocolV2Codec implements ProtocolCodec {
      * @return string representation
      * @throws IllegalArgumentException if array exceeds size limit
      */
-    private String arrayToString(Object array) {
+    protected String arrayToString(Object array) {
+        return arrayToString(array, 0);
+    }
+
+    /**
+     * Convert array to string representation, serializing object arrays with {@link #serializer(int)}.
+     *
+     * @param array the array object
+     * @param features feature bits agreed with the peer
+     * @return string representation
+     * @throws IllegalArgumentException if array exceeds size limit or cannot be serialized
+     * @since 2.0.0
+     */
+    protected String arrayToString(Object array, int features) {
         Class<?> componentType = array.getClass().getComponentType();
-        int length = java.lang.reflect.Array.getLength(array);
 
         // Safety check: array size limit
-        if (length > MAX_ARRAY_SIZE) {
-            throw new IllegalArgumentException(
-                "Array too large: " + length + " elements (max: " + MAX_ARRAY_SIZE + ")"
-            );
-        }
+        checkArraySize(array);
 
         // Primitive arrays - use Arrays.toString() for human-readable format
         if (componentType == int.class) {
@@ -380,10 +612,27 @@ public class ProtocolV2Codec implements ProtocolCodec {
             // String arrays - use Arrays.toString() for human-readable format
             return java.util.Arrays.toString((String[]) array);
         } else {
-            // Object arrays (including nested arrays) - use Java serialization
+            // Object arrays (including nested arrays) - use auto-serialization
             // This supports User[], Person[], int[][], User[][], etc.
-            cn.huiwings.tcprest.mapper.RawTypeMapper rawMapper = new cn.huiwings.tcprest.mapper.RawTypeMapper();
-            return rawMapper.objectToString(array);
+            try {
+                return Base64.getEncoder().encodeToString(serializer(features).toByteArray(array));
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Failed to serialize array of type "
+                        + array.getClass().getName() + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * @param array an array
+     * @throws IllegalArgumentException if the array has more than {@value MAX_ARRAY_SIZE} elements
+     */
+    protected static void checkArraySize(Object array) {
+        int length = java.lang.reflect.Array.getLength(array);
+        if (length > MAX_ARRAY_SIZE) {
+            throw new IllegalArgumentException(
+                "Array too large: " + length + " elements (max: " + MAX_ARRAY_SIZE + ")"
+            );
         }
     }
 
@@ -398,6 +647,32 @@ public class ProtocolV2Codec implements ProtocolCodec {
      * @throws Exception if status indicates error or decoding fails
      */
     public Object decode(String response, Class expectedType) throws Exception {
+        return decode(response, expectedType, getMapper(mappers, expectedType));
+    }
+
+    /**
+     * Decode response with the return type and mapper resolved by a plan.
+     *
+     * @param response the response string
+     * @param plan plan of the request the response answers
+     * @return decoded result
+     * @throws Exception if status indicates error or decoding fails
+     * @since 2.0.0
+     */
+    public Object decode(String response, RequestPlan plan) throws Exception {
+        return decode(response, plan.getReturnType(), plan.getReturnMapper());
+    }
+
+    /**
+     * Decode response with the mapper for the expected type already resolved.
+     *
+     * @param response the response string
+     * @param expectedType the expected return type
+     * @param mapper user-defined mapper for the expected type, or null
+     * @return decoded result
+     * @throws Exception if status indicates error or decoding fails
+     */
+    protected Object decode(String response, Class expectedType, Mapper mapper) throws Exception {
         if (response == null || response.isEmpty()) {
             return null;
         }
@@ -436,7 +711,7 @@ public class ProtocolV2Codec implements ProtocolCodec {
         // Handle different status codes
         switch (status) {
             case SUCCESS:
-                return decodeSuccessBody(bodyEncoded, expectedType);
+                return decodeSuccessBody(bodyEncoded, expectedType, mapper);
 
             case BUSINESS_EXCEPTION:
                 throw decodeException(bodyEncoded, true);
@@ -465,18 +740,14 @@ public class ProtocolV2Codec implements ProtocolCodec {
      *
      * @param body the response body
      * @param expectedType the expected return type
+     * @param mapper user-defined mapper for the expected type, or null
      * @return decoded object
      */
-    private Object decodeSuccessBody(String body, Class expectedType) {
+    private Object decodeSuccessBody(String body, Class expectedType, Mapper mapper) {
         if (body == null || body.isEmpty() || "null".equals(body)) {
             return null;
         }
 
-        // Handle "null" string marker (V2 protocol uses string "null")
-        if ("null".equals(body) || body.contains("null")) {
-            return null;
-        }
-
         // Extract Base64 content from {{...}}
         String base64Content;
         if (body.startsWith(ProtocolV2Constants.PARAM_WRAPPER_START) &&
@@ -486,44 +757,50 @@ public class ProtocolV2Codec implements ProtocolCodec {
             base64Content = body;
         }
 
+        // Raw bytes (byte[] or ByteBuffer result)
+        if (BinaryValues.isToken(base64Content)) {
+            return BinaryValues.fromToken(base64Content, expectedType);
+        }
+        // Packed primitive array
+        if (PackedArrays.isToken(base64Content)) {
+            return PackedArrays.fromToken(base64Content, expectedType);
+        }
+
         // Priority 1: User-defined Mapper
-        if (mappers != null && expectedType != null) {
-            // Use getCanonicalName() to match MapperHelper.DEFAULT_MAPPERS keys
-            Mapper mapper = mappers.get(expectedType.getCanonicalName());
-            if (mapper != null) {
-                // Convert URL-safe Base64 to standard first
-                String standardBase64 = convertUrlSafeToStandard(base64Content);
-
-                // RawTypeMapper expects Base64 string directly, other mappers expect decoded string
-                if (mapper instanceof cn.huiwings.tcprest.mapper.RawTypeMapper) {
-                    // RawTypeMapper handles Base64 decoding internally
-                    return mapper.stringToObject(standardBase64);
-                } else {
-                    // Other mappers expect decoded string
-                    String decoded = new String(Base64.getDecoder().decode(standardBase64));
-                    return mapper.stringToObject(decoded);
-                }
+        if (mapper != null) {
+            // Convert URL-safe Base64 to standard first
+            String standardBase64 = convertUrlSafeToStandard(base64Content);
+
+            // Binary mappers (including RawTypeMapper) read the bytes, other mappers expect decoded string
+            if (mapper instanceof BinaryMapper) {
+                return fromBase64((BinaryMapper) mapper, standardBase64);
+            } else {
+                // Other mappers expect decoded string
+                String decoded = new String(Base64.getDecoder().decode(standardBase64));
+                return mapper.stringToObject(decoded);
             }
         }
 
-        // Priority 2: Auto Deserialization for Serializable types
+        // Priority 2: Auto Deserialization for Serializable types and records
         if (expectedType != null &&
-            java.io.Serializable.class.isAssignableFrom(expectedType) &&
+            ProtocolV2TypeSupport.isAutoSerializable(expectedType) &&
             expectedType != String.class &&
             !expectedType.isArray() &&
             !isWrapperType(expectedType)) {
             // Convert URL-safe Base64 back to standard Base64
             String standardBase64 = convertUrlSafeToStandard(base64Content);
-            // RawTypeMapper expects standard Base64 string
-            cn.huiwings.tcprest.mapper.RawTypeMapper rawMapper = new cn.huiwings.tcprest.mapper.RawTypeMapper();
-            return rawMapper.stringToObject(standardBase64);
+            // Compact or Java serialization, as standard Base64; unreadable data is an error, not null
+            return fromBase64(AUTO_MAPPER, standardBase64);
         }
 
         // Priority 3: Decode from URL-safe Base64
         String standardBase64 = convertUrlSafeToStandard(base64Content);
         String decoded = new String(Base64.getDecoder().decode(standardBase64));
 
-        // Priority 4: Convert to expected type
+        // Priority 4: Convert to expected type; a ByteBuffer sent as byte[] text is wrapped
+        if (expectedType != null && BinaryValues.isBinaryType(expectedType)) {
+            return BinaryValues.fromBytes((byte[]) convertToType(decoded, byte[].class), expectedType);
+        }
         return convertToType(decoded, expectedType);
     }
 
@@ -584,7 +861,7 @@ public class ProtocolV2Codec implements ProtocolCodec {
      * @param isBusinessException true if business exception
      * @return original exception type if possible, semantic fallback otherwise
      */
-    private Exception recreateException(String exceptionString, boolean isBusinessException) {
+    protected Exception recreateException(String exceptionString, boolean isBusinessException) {
         // Step 1: Parse exception class name and message
         int colonIndex = exceptionString.indexOf(": ");
         if (colonIndex == -1) {
@@ -671,7 +948,7 @@ public class ProtocolV2Codec implements ProtocolCodec {
      * @param expectedType the expected type
      * @return converted object
      */
-    private Object convertToType(String value, Class expectedType) {
+    protected Object convertToType(String value, Class expectedType) {
         if (expectedType == null || expectedType == String.class) {
             return value;
         }
@@ -757,9 +1034,8 @@ public class ProtocolV2Codec implements ProtocolCodec {
             componentType != String.class) {
 
             // This is an Object array (User[], Person[], int[][], etc.)
-            // It was serialized by RawTypeMapper, so deserialize it
-            cn.huiwings.tcprest.mapper.RawTypeMapper rawMapper = new cn.huiwings.tcprest.mapper.RawTypeMapper();
-            Object array = rawMapper.stringToObject(value);
+            // It was auto-serialized, so deserialize it
+            Object array = fromBase64(AUTO_MAPPER, value);
 
             // Safety check: verify array size after deserialization
             if (array != null && array.getClass().isArray()) {
@@ -859,11 +1135,41 @@ public class ProtocolV2Codec implements ProtocolCodec {
      * @return encoded response string
      */
     public String encodeResponse(Object result, StatusCode status) {
+        return encodeResponse(result, null, status);
+    }
+
+    /**
+     * Encode response with status code (V2 format), for a result of a declared generic type.
+     *
+     * @param result the result object
+     * @param declaredType generic return type of the invoked method (may be null)
+     * @param status the status code
+     * @return encoded response string
+     * @since 2.0.0
+     */
+    public String encodeResponse(Object result, Type declaredType, StatusCode status) {
+        return encodeResponse(result, declaredType, status, 0);
+    }
+
+    /**
+     * Encode response with status code (V2 format), using only the wire features the request announced
+     * ({@link cn.huiwings.tcprest.server.Context#getFeatures()}).
+     *
+     * @param result the result object
+     * @param declaredType generic return type of the invoked method (may be null)
+     * @param status the status code
+     * @param features feature bits the client can read (0 for none)
+     * @return encoded response string
+     * @since 2.0.0
+     */
+    public String encodeResponse(Object result, Type declaredType, StatusCode status, int features) {
+        features &= Capabilities.SUPPORTED_FEATURES;
+
         // Step 1: Encode body with {{}} wrapper
-        String bodyString = encodeBodyToString(result);
+        String bodyString = encodeBodyToString(result, declaredType, features);
 
-        // Step 2: Build protocol message: V2|0|STATUS|{{BODY}}
-        String message = ProtocolV2Constants.PREFIX + COMPRESSION_DISABLED +
+        // Step 2: Build protocol message: V2|FEATURES|STATUS|{{BODY}}
+        String message = ProtocolV2Constants.PREFIX + features +
                         ProtocolV2Constants.SEPARATOR + status.getCode() +
                         ProtocolV2Constants.SEPARATOR + bodyString;
 
@@ -887,25 +1193,50 @@ public class ProtocolV2Codec implements ProtocolCodec {
      * <ol>
      *   <li><b>null:</b> return "null"</li>
      *   <li><b>User-defined Mapper:</b> Use custom mapper if provided</li>
-     *   <li><b>Auto Serialization:</b> For Serializable objects, use RawTypeMapper</li>
+     *   <li><b>Auto Serialization:</b> For Serializable objects, {@link #serializer(int)}</li>
      *   <li><b>Arrays:</b> Use Arrays.toString() format</li>
      *   <li><b>Others:</b> Use toString() then Base64</li>
      * </ol>
      *
      * @param obj the object to encode
+     * @param declaredType declared generic type of the object (may be null)
+     * @param features feature bits the client can read
      * @return encoded body string in format {{base64}}
      */
-    private String encodeBodyToString(Object obj) {
+    private String encodeBodyToString(Object obj, Type declaredType, int features) {
         if (obj == null) {
             return "null";
         }
 
         String value;
 
+        // byte[] and ByteBuffer: "!" + URL-safe Base64 of the bytes, or Arrays.toString() text for older clients
+        if (BinaryValues.isBinaryType(obj.getClass())) {
+            if ((features & Capabilities.FEATURE_BINARY) != 0) {
+                return ProtocolV2Constants.PARAM_WRAPPER_START + BinaryValues.toToken(obj)
+                        + ProtocolV2Constants.PARAM_WRAPPER_END;
+            }
+            String base64 = Base64.getEncoder().encodeToString(arrayToString(BinaryValues.toBytes(obj)).getBytes());
+            return ProtocolV2Constants.PARAM_WRAPPER_START + base64 + ProtocolV2Constants.PARAM_WRAPPER_END;
+        }
+        // Primitive arrays: "*" + URL-safe Base64 of the packed array, or the array forms older clients read
+        if (PackedArrays.isPackedType(obj.getClass())) {
+            if ((features & Capabilities.FEATURE_PACKED) != 0) {
+                return ProtocolV2Constants.PARAM_WRAPPER_START + PackedArrays.toToken(obj)
+                        + ProtocolV2Constants.PARAM_WRAPPER_END;
+            }
+            String base64 = Base64.getEncoder().encodeToString(arrayToString(obj, features).getBytes());
+            return ProtocolV2Constants.PARAM_WRAPPER_START + base64 + ProtocolV2Constants.PARAM_WRAPPER_END;
+        }
+
         // Priority 1: User-defined Mapper
         if (mappers != null) {
             // Use getCanonicalName() to match MapperHelper.DEFAULT_MAPPERS keys
             Mapper mapper = mappers.get(obj.getClass().getCanonicalName());
+            if (mapper instanceof BinaryMapper) {
+                String urlSafeBase64 = toUrlSafeBase64((BinaryMapper) mapper, obj, declaredType);
+                return ProtocolV2Constants.PARAM_WRAPPER_START + urlSafeBase64 + ProtocolV2Constants.PARAM_WRAPPER_END;
+            }
             if (mapper != null) {
                 value = mapper.objectToString(obj);
                 String base64 = Base64.getEncoder().encodeToString(value.getBytes());
@@ -913,22 +1244,19 @@ public class ProtocolV2Codec implements ProtocolCodec {
             }
         }
 
-        // Priority 2: Auto Serialization for Serializable objects
-        if (obj instanceof java.io.Serializable &&
+        // Priority 2: Auto Serialization for Serializable objects and records
+        if (ProtocolV2TypeSupport.isAutoSerializable(obj.getClass()) &&
             !(obj instanceof String) &&
             !obj.getClass().isArray() &&
             !isWrapperType(obj.getClass())) {
-            cn.huiwings.tcprest.mapper.RawTypeMapper rawMapper = new cn.huiwings.tcprest.mapper.RawTypeMapper();
-            String base64Serialized = rawMapper.objectToString(obj);
-            // Convert standard Base64 to URL-safe Base64
-            String urlSafeBase64 = base64Serialized.replace('+', '-').replace('/', '_').replace("=", "");
+            String urlSafeBase64 = toUrlSafeBase64(serializer(features, obj), obj, declaredType);
             // Wrap with {{}}
             return ProtocolV2Constants.PARAM_WRAPPER_START + urlSafeBase64 + ProtocolV2Constants.PARAM_WRAPPER_END;
         }
 
         // Priority 3: Arrays
         if (obj.getClass().isArray()) {
-            value = arrayToString(obj);
+            value = arrayToString(obj, features);
         } else {
             // Priority 4: Primitives and others
             value = obj.toString();
@@ -956,7 +1284,7 @@ public class ProtocolV2Codec implements ProtocolCodec {
         String bodyString = ProtocolV2Constants.PARAM_WRAPPER_START + base64 + ProtocolV2Constants.PARAM_WRAPPER_END;
 
         // Step 2: Build protocol message: V2|0|STATUS|BODY
-        String message = ProtocolV2Constants.PREFIX + COMPRESSION_DISABLED +
+        String message = ProtocolV2Constants.PREFIX + NO_FEATURES +
                         ProtocolV2Constants.SEPARATOR + status.getCode() +
                         ProtocolV2Constants.SEPARATOR + bodyString;
 
@@ -1047,7 +1375,7 @@ public class ProtocolV2Codec implements ProtocolCodec {
      * <p><b>V2 Mapper Support:</b> Protocol V2 supports intelligent type mapping:</p>
      * <ol>
      *   <li>User-defined mappers (if provided)</li>
-     *   <li>Auto serialization for Serializable objects (RawTypeMapper)</li>
+     *   <li>Auto serialization for Serializable objects (Java or compact serialization)</li>
      *   <li>Built-in conversion for primitives and arrays</li>
      * </ol>
      *
@@ -0,0 +1,143 @@
+package cn.huiwings.tcprest.codec.v2;
+
+import cn.huiwings.tcprest.mapper.Mapper;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * Everything about a request that depends only on the invoked method, computed once per method.
+ *
+ * <p>Built with {@link ProtocolV2Codec#plan(Class, Method, Map)}: the class and method names are
+ * validated, the meta ({@code ClassName/methodName(TYPE_SIGNATURE)}) is encoded for V2 and V3, and the
+ * encoding of every parameter whose runtime type is fixed by its declaration (primitives, final classes
+ * and arrays of them) is resolved together with its mapper. Parameters declared with an open type are
+ * classified per call, by their runtime class, exactly as {@link ProtocolV2Codec#encode} does.</p>
+ *
+ * <p>The generic parameter types are kept for serialized values: a parameter declared as
+ * {@code List<Integer>} is written as a typed sequence of ints.</p>
+ *
+ * <p>Plans are immutable and can be shared between threads. The class whitelist is still checked on
+ * every request, since the {@link cn.huiwings.tcprest.security.SecurityConfig} may change.</p>
+ *
+ * @since 2.0.0
+ */
+public final class RequestPlan {
+
+    /**
+     * How a parameter value is turned into bytes; the mapping priorities of {@link ProtocolV2Codec}.
+     */
+    public enum Encoding {
+        /** User-defined mapper */
+        MAPPER,
+        /** Serializable object, Java serialization */
+        SERIALIZED,
+        /** String array, {@code Arrays.toString()} */
+        TEXT_ARRAY,
+        /** Any other array, Java serialization */
+        OBJECT_ARRAY,
+        /** Anything else, {@code toString()} */
+        TEXT,
+        /** {@code byte[]} or {@code ByteBuffer}, raw bytes */
+        BINARY,
+        /** Primitive array of any dimension, packed little-endian */
+        PACKED_ARRAY
+    }
+
+    private final String className;
+    private final Method method;
+    private final String meta;
+    private final String metaToken;
+    private final byte[] metaBytes;
+    private final Encoding[] encodings;
+    private final Mapper[] parameterMappers;
+    private final Map<String, Mapper> mappers;
+    private final Mapper returnMapper;
+    private final Type[] declaredTypes;
+
+    RequestPlan(String className, Method method, String meta, String metaToken, byte[] metaBytes,
+                Encoding[] encodings, Mapper[] parameterMappers, Map<String, Mapper> mappers, Mapper returnMapper) {
+        this.className = className;
+        this.method = method;
+        this.meta = meta;
+        this.metaToken = metaToken;
+        this.metaBytes = metaBytes;
+        this.encodings = encodings;
+        this.parameterMappers = parameterMappers;
+        this.mappers = mappers;
+        this.returnMapper = returnMapper;
+        this.declaredTypes = method.getGenericParameterTypes();
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * @return {@code ClassName/methodName(TYPE_SIGNATURE)}
+     */
+    public String getMeta() {
+        return meta;
+    }
+
+    /**
+     * @return the meta as it appears in a V2 request: Base64, wrapped with {@code {{}}}
+     */
+    public String getMetaToken() {
+        return metaToken;
+    }
+
+    /**
+     * @return the meta as UTF-8 bytes, as it appears in a V3 request (do not modify)
+     */
+    public byte[] getMetaBytes() {
+        return metaBytes;
+    }
+
+    /**
+     * @param index parameter index
+     * @return the encoding of the parameter, or null if it depends on the runtime class of the value
+     */
+    public Encoding getEncoding(int index) {
+        return index < encodings.length ? encodings[index] : null;
+    }
+
+    /**
+     * @param index parameter index
+     * @return the generic declared type of the parameter, or null for an extra argument
+     */
+    public Type getDeclaredType(int index) {
+        return index < declaredTypes.length ? declaredTypes[index] : null;
+    }
+
+    /**
+     * @param index parameter index
+     * @return the mapper of the parameter when its encoding is {@link Encoding#MAPPER}
+     */
+    public Mapper getParameterMapper(int index) {
+        return parameterMappers[index];
+    }
+
+    /**
+     * @return mappers for parameters classified per call (may be null)
+     */
+    public Map<String, Mapper> getMappers() {
+        return mappers;
+    }
+
+    public Class<?> getReturnType() {
+        return method.getReturnType();
+    }
+
+    /**
+     * @return the codec's mapper for the return type, or null if there is none
+     */
+    public Mapper getReturnMapper() {
+        return returnMapper;
+    }
+}
@@ -0,0 +1,418 @@
+package cn.huiwings.tcprest.codec.v3;
+
+import cn.huiwings.tcprest.codec.v2.ProtocolV2Codec;
+import cn.huiwings.tcprest.codec.v2.RequestPlan;
+import cn.huiwings.tcprest.exception.ProtocolException;
+import cn.huiwings.tcprest.mapper.BinaryMapper;
+import cn.huiwings.tcprest.mapper.CompactMapper;
+import cn.huiwings.tcprest.mapper.Mapper;
+import cn.huiwings.tcprest.mapper.RawTypeMapper;
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.protocol.v2.BinaryValues;
+import cn.huiwings.tcprest.protocol.v2.PackedArrays;
+import cn.huiwings.tcprest.protocol.v2.ProtocolV2TypeSupport;
+import cn.huiwings.tcprest.protocol.v2.StatusCode;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Frames;
+import cn.huiwings.tcprest.security.SecurityConfig;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Protocol V3 Codec: binary, length-prefixed frames with raw parameter bytes.
+ *
+ * <p><b>Request:</b> meta ({@code ClassName/methodName(TYPE_SIGNATURE)}, as in V2) followed by one
+ * length-prefixed block per parameter. <b>Response:</b> status byte plus one block. See
+ * {@link ProtocolV3Constants} for the byte layout.</p>
+ *
+ * <p>Values are mapped with the same priorities as V2 (user-defined mapper, auto serialization,
+ * arrays, {@code toString()}), but nothing is Base64-encoded: text values are sent as UTF-8,
+ * serialized objects as plain serialization bytes, {@code byte[]}/{@code ByteBuffer} values as
+ * their raw bytes and primitive arrays packed little-endian. CHK and SIG are computed over the raw
+ * payload bytes.</p>
+ *
+ * <p>Extends {@link ProtocolV2Codec}, so one instance encodes and decodes both protocols; a V2 line
+ * handed to {@link #decodeResponse(byte[], Class)} is decoded as V2.</p>
+ *
+ * @author Weinan Li
+ * @since 2.0.0
+ */
+public class ProtocolV3Codec extends ProtocolV2Codec {
+
+    /**
+     * Create codec with default security (no checksum, no whitelist).
+     */
+    public ProtocolV3Codec() {
+        super();
+    }
+
+    /**
+     * Create codec with mappers support.
+     *
+     * @param mappers mapper registry (optional)
+     */
+    public ProtocolV3Codec(Map<String, Mapper> mappers) {
+        super(mappers);
+    }
+
+    /**
+     * Create codec with custom security configuration and mappers.
+     *
+     * @param securityConfig security configuration
+     * @param mappers mapper registry (optional)
+     */
+    public ProtocolV3Codec(SecurityConfig securityConfig, Map<String, Mapper> mappers) {
+        super(securityConfig, mappers);
+    }
+
+    /**
+     * Encode a request frame.
+     *
+     * @param clazz the interface class
+     * @param method the method to invoke
+     * @param params the method parameters
+     * @param mappers mapper registry (optional - for custom type mapping)
+     * @return complete frame, header included
+     */
+    public byte[] encodeRequest(Class clazz, Method method, Object[] params, Map<String, Mapper> mappers) {
+        return encodeRequest(plan(clazz, method, mappers), params);
+    }
+
+    /**
+     * Encode a request frame from a plan; only the parameter values are encoded. No negotiated features
+     * are announced or used.
+     *
+     * @param plan plan from {@link #plan(Class, Method, Map)}
+     * @param params the method parameters
+     * @return complete frame, header included
+     */
+    public byte[] encodeRequest(RequestPlan plan, Object[] params) {
+        return encodeRequest(plan, params, 0);
+    }
+
+    /**
+     * Encode a request frame from a plan, announcing the agreed wire features in the flags byte.
+     *
+     * @param plan plan from {@link #plan(Class, Method, Map)}
+     * @param params the method parameters
+     * @param features agreed feature bits ({@link Capabilities#getFeatures()}, 0 for none)
+     * @return complete frame, header included
+     */
+    public byte[] encodeRequest(RequestPlan plan, Object[] params, int features) {
+        features &= Capabilities.SUPPORTED_FEATURES;
+        String className = plan.getClassName();
+        if (!getSecurityConfig().isClassAllowed(className)) {
+            throw new cn.huiwings.tcprest.exception.SecurityException("Class not in whitelist: " + className);
+        }
+
+        int count = params == null ? 0 : params.length;
+        ProtocolV3Frames.Writer writer = new ProtocolV3Frames.Writer(128 + count * 32);
+        writer.writeByte(ProtocolV3Constants.VERSION).writeByte(features).writeByte(0);
+        writer.writeShortBytes(plan.getMetaBytes());
+        writer.writeShort(count);
+        for (int i = 0; i < count; i++) {
+            Object param = params[i];
+            RequestPlan.Encoding encoding = plan.getEncoding(i);
+            if (param == null || encoding == null) {
+                writeValue(writer, param, plan.getMappers(), plan.getDeclaredType(i), features);
+            } else {
+                writeValue(writer, param, encoding, plan.getParameterMapper(i), plan.getDeclaredType(i), features);
+            }
+        }
+        ProtocolV3Frames.appendSegments(writer, getSecurityConfig());
+        return writer.toFrame();
+    }
+
+    /**
+     * Encode a response frame.
+     *
+     * @param result the result object
+     * @param status the status code
+     * @return complete frame, header included
+     */
+    public byte[] encodeBinaryResponse(Object result, StatusCode status) {
+        return encodeBinaryResponse(result, null, status);
+    }
+
+    /**
+     * Encode a response frame for a result of a declared generic type.
+     *
+     * @param result the result object
+     * @param declaredType generic return type of the invoked method (may be null)
+     * @param status the status code
+     * @return complete frame, header included
+     */
+    public byte[] encodeBinaryResponse(Object result, Type declaredType, StatusCode status) {
+        return encodeBinaryResponse(result, declaredType, status, 0);
+    }
+
+    /**
+     * Encode a response frame using only the wire features the request announced; the flags byte
+     * tells the client which.
+     *
+     * @param result the result object
+     * @param declaredType generic return type of the invoked method (may be null)
+     * @param status the status code
+     * @param features feature bits the client can read (0 for none)
+     * @return complete frame, header included
+     */
+    public byte[] encodeBinaryResponse(Object result, Type declaredType, StatusCode status, int features) {
+        features &= Capabilities.SUPPORTED_FEATURES;
+        ProtocolV3Frames.Writer writer = responseWriter(status, features, 64);
+        writeValue(writer, result, mappers, declaredType, features);
+        ProtocolV3Frames.appendSegments(writer, getSecurityConfig());
+        return writer.toFrame();
+    }
+
+    /**
+     * Encode an exception response frame ({@code "ClassName: message"} as UTF-8, as in V2).
+     *
+     * @param exception the exception
+     * @param status the status code
+     * @return complete frame, header included
+     */
+    public byte[] encodeBinaryException(Throwable exception, StatusCode status) {
+        String exceptionStr = exception.getClass().getName() + ": " +
+                (exception.getMessage() != null ? exception.getMessage() : "");
+        return response(status, exceptionStr.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private byte[] response(StatusCode status, byte[] body) {
+        ProtocolV3Frames.Writer writer = responseWriter(status, 0, body == null ? 0 : body.length);
+        writer.writeBlock(body);
+        ProtocolV3Frames.appendSegments(writer, getSecurityConfig());
+        return writer.toFrame();
+    }
+
+    private static ProtocolV3Frames.Writer responseWriter(StatusCode status, int features, int bodyLength) {
+        ProtocolV3Frames.Writer writer = new ProtocolV3Frames.Writer(
+                ProtocolV3Constants.FRAME_HEADER_LENGTH + 16 + bodyLength);
+        return writer.writeByte(ProtocolV3Constants.VERSION)
+                .writeByte(ProtocolV3Constants.FLAG_RESPONSE | features)
+                .writeByte(status.getCode());
+    }
+
+    /**
+     * Decode a response payload. Bytes that do not start with the V3 version byte are decoded as a
+     * V2 response line.
+     *
+     * @param response the response payload (frame header stripped) or V2 line bytes
+     * @param expectedType the expected return type
+     * @return decoded result
+     * @throws Exception if status indicates error or decoding fails
+     */
+    public Object decodeResponse(byte[] response, Class expectedType) throws Exception {
+        return decodeResponse(response, expectedType, getMapper(mappers, expectedType));
+    }
+
+    /**
+     * Decode a response payload with the return type and mapper resolved by a plan.
+     *
+     * @param response the response payload (frame header stripped) or V2 line bytes
+     * @param plan plan of the request the response answers
+     * @return decoded result
+     * @throws Exception if status indicates error or decoding fails
+     */
+    public Object decodeResponse(byte[] response, RequestPlan plan) throws Exception {
+        return decodeResponse(response, plan.getReturnType(), plan.getReturnMapper());
+    }
+
+    private Object decodeResponse(byte[] response, Class expectedType, Mapper mapper) throws Exception {
+        if (response == null || response.length == 0) {
+            return null;
+        }
+        if (response[0] != ProtocolV3Constants.VERSION) {
+            return decode(new String(response, StandardCharsets.UTF_8), expectedType, mapper);
+        }
+
+        ProtocolV3Frames.Reader reader = new ProtocolV3Frames.Reader(response);
+        reader.readByte();
+        int flags = reader.readByte();
+        int statusCode = reader.readByte();
+        if ((flags & ProtocolV3Constants.FLAG_RESPONSE) == 0) {
+            throw new ProtocolException("Invalid V3 response: response flag not set");
+        }
+        int length = reader.readBlock();
+        int bodyStart = reader.position() - Math.max(length, 0);
+        ProtocolV3Frames.verifySegments(reader, getSecurityConfig());
+
+        StatusCode status = StatusCode.fromCode(statusCode);
+        switch (status) {
+            case SUCCESS:
+                return decodeValue(response, bodyStart, length, expectedType, mapper,
+                        flags & Capabilities.SUPPORTED_FEATURES);
+            case BUSINESS_EXCEPTION:
+                throw recreateException(text(response, bodyStart, length), true);
+            case SERVER_ERROR:
+            case PROTOCOL_ERROR:
+                throw recreateException(text(response, bodyStart, length), false);
+            default:
+                throw new IllegalStateException("Unknown status code: " + status);
+        }
+    }
+
+    /**
+     * Encode one value (parameter or result) with the V2 mapping priorities.
+     *
+     * @param value the value
+     * @param mappers user-defined mappers (optional)
+     * @param features feature bits agreed with the peer
+     * @return raw bytes, or null for a null value
+     */
+    protected byte[] encodeValue(Object value, Map<String, Mapper> mappers, int features) {
+        if (value == null) {
+            return null;
+        }
+        Mapper mapper = getMapper(mappers, value.getClass());
+        return encodeValue(value, encodingOf(value.getClass(), mapper), mapper, features);
+    }
+
+    /**
+     * Encode one non-null value whose encoding is already known.
+     *
+     * @param value the value
+     * @param encoding the encoding, from {@link #encodingOf(Class, Mapper)}
+     * @param mapper the mapper for {@link RequestPlan.Encoding#MAPPER}
+     * @param features feature bits agreed with the peer
+     * @return raw bytes, or null if the mapper maps the value to null
+     */
+    protected byte[] encodeValue(Object value, RequestPlan.Encoding encoding, Mapper mapper, int features) {
+        switch (encoding) {
+            case MAPPER:
+                if (mapper instanceof BinaryMapper) {
+                    return serialize((BinaryMapper) mapper, value);
+                }
+                String mapped = mapper.objectToString(value);
+                return mapped == null ? null : mapped.getBytes(StandardCharsets.UTF_8);
+            case SERIALIZED:
+                return serialize(serializer(features, value), value);
+            case TEXT_ARRAY:
+                return arrayToString(value).getBytes(StandardCharsets.UTF_8);
+            case OBJECT_ARRAY:
+                checkArraySize(value);
+                return serialize(serializer(features), value);
+            case BINARY:
+                if ((features & Capabilities.FEATURE_BINARY) != 0) {
+                    return BinaryValues.toBytes(value);
+                }
+                // older peers read byte[] as Arrays.toString() text
+                return arrayToString(BinaryValues.toBytes(value)).getBytes(StandardCharsets.UTF_8);
+            case PACKED_ARRAY:
+                if ((features & Capabilities.FEATURE_PACKED) != 0) {
+                    return PackedArrays.toBytes(value);
+                }
+                // older peers read one dimension as Arrays.toString() text, more as a serialized object array
+                if (value.getClass().getComponentType().isArray()) {
+                    return encodeValue(value, RequestPlan.Encoding.OBJECT_ARRAY, mapper, features);
+                }
+                return arrayToString(value).getBytes(StandardCharsets.UTF_8);
+            default:
+                return value.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private void writeValue(ProtocolV3Frames.Writer writer, Object value, Map<String, Mapper> mappers,
+                            Type declaredType, int features) {
+        if (value == null) {
+            writer.writeBlock((byte[]) null);
+            return;
+        }
+        Mapper mapper = getMapper(mappers, value.getClass());
+        writeValue(writer, value, encodingOf(value.getClass(), mapper), mapper, declaredType, features);
+    }
+
+    /**
+     * Write one non-null value as a block. Values written by a {@link BinaryMapper} (including Java
+     * serialization) are streamed into the frame, a {@link CompactMapper} with the declared type of the
+     * value; others are encoded with {@link #encodeValue}.
+     */
+    private void writeValue(ProtocolV3Frames.Writer writer, Object value, RequestPlan.Encoding encoding,
+                            Mapper mapper, Type declaredType, int features) {
+        if (encoding == RequestPlan.Encoding.BINARY && value instanceof ByteBuffer
+                && (features & Capabilities.FEATURE_BINARY) != 0) {
+            writer.writeBlock((ByteBuffer) value);
+            return;
+        }
+        BinaryMapper binary;
+        if (encoding == RequestPlan.Encoding.MAPPER && mapper instanceof BinaryMapper) {
+            binary = (BinaryMapper) mapper;
+        } else if (encoding == RequestPlan.Encoding.SERIALIZED || encoding == RequestPlan.Encoding.OBJECT_ARRAY) {
+            binary = serializer(features, value);
+        } else {
+            writer.writeBlock(encodeValue(value, encoding, mapper, features));
+            return;
+        }
+        if (encoding == RequestPlan.Encoding.OBJECT_ARRAY) {
+            checkArraySize(value);
+        }
+        try {
+            if (declaredType != null && binary instanceof CompactMapper) {
+                writer.writeBlock(out -> ((CompactMapper) binary).writeObject(value, declaredType, out));
+            } else {
+                writer.writeBlock(out -> binary.writeObject(value, out));
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to serialize " + value.getClass().getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Decode a result block for the expected type; the mirror image of {@link #encodeValue}.
+     *
+     * @param features feature bits the response announced in its flags
+     */
+    private Object decodeValue(byte[] buf, int offset, int length, Class expectedType, Mapper mapper, int features)
+            throws IOException, ClassNotFoundException {
+        if (length == ProtocolV3Constants.NULL_LENGTH) {
+            return null;
+        }
+        if (expectedType != null) {
+            if (BinaryValues.isBinaryType(expectedType)) {
+                byte[] bytes = (features & Capabilities.FEATURE_BINARY) != 0
+                        ? Arrays.copyOfRange(buf, offset, offset + length)
+                        : (byte[]) convertToType(text(buf, offset, length), byte[].class);
+                return BinaryValues.fromBytes(bytes, expectedType);
+            }
+            if (PackedArrays.isPackedType(expectedType) && (features & Capabilities.FEATURE_PACKED) != 0) {
+                return PackedArrays.fromBytes(buf, offset, length, expectedType);
+            }
+            if (mapper != null) {
+                if (mapper instanceof BinaryMapper) {
+                    return ((BinaryMapper) mapper).readObject(ByteBuffer.wrap(buf, offset, length));
+                }
+                return mapper.stringToObject(text(buf, offset, length));
+            }
+            if (expectedType.isArray() ? !isTextArray(expectedType.getComponentType())
+                    : isSerializedType(expectedType)) {
+                return RawTypeMapper.fromBytes(buf, offset, length);
+            }
+        }
+        return convertToType(text(buf, offset, length), expectedType);
+    }
+
+    private boolean isSerializedType(Class<?> type) {
+        return type != String.class && !isWrapperType(type) && !type.isPrimitive()
+                && (ProtocolV2TypeSupport.isAutoSerializable(type)
+                || type == java.util.List.class || type == java.util.Map.class || type == java.util.Set.class
+                || type == java.util.Queue.class || type == java.util.Deque.class
+                || type == java.util.Collection.class);
+    }
+
+    private static String text(byte[] buf, int offset, int length) {
+        return length <= 0 ? "" : new String(buf, offset, length, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] serialize(BinaryMapper mapper, Object value) {
+        try {
+            return mapper.toByteArray(value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to serialize " + value.getClass().getName() + ": " + e.getMessage(), e);
+        }
+    }
+}
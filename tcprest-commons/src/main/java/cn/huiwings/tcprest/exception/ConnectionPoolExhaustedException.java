@@ -0,0 +1,14 @@
+package cn.huiwings.tcprest.exception;
+
+/**
+ * Thrown when no pooled connection became available within
+ * {@link cn.huiwings.tcprest.client.ConnectionPoolConfig#getMaxWaitMillis()}.
+ *
+ * @since 2.0.0
+ */
+public class ConnectionPoolExhaustedException extends TimeoutException {
+
+    public ConnectionPoolExhaustedException(String message) {
+        super(message);
+    }
+}
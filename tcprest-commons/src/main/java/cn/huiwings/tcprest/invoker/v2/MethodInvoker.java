@@ -0,0 +1,22 @@
+package cn.huiwings.tcprest.invoker.v2;
+
+/**
+ * Calls one resource method.
+ *
+ * <p>Created once per {@link java.lang.reflect.Method} by {@link MethodInvokers} and cached by
+ * {@link ProtocolV2Invoker}. Exceptions thrown by the method are thrown as-is, never wrapped in
+ * {@link java.lang.reflect.InvocationTargetException}.</p>
+ *
+ * @since 2.0.0
+ */
+@FunctionalInterface
+public interface MethodInvoker {
+
+    /**
+     * @param target instance of the method's declaring class (ignored for static methods)
+     * @param args arguments matching the parameter types; primitives boxed
+     * @return the result, null for void methods
+     * @throws Throwable whatever the method throws
+     */
+    Object invoke(Object target, Object[] args) throws Throwable;
+}
@@ -0,0 +1,205 @@
+package cn.huiwings.tcprest.invoker.v2;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.logging.Logger;
+
+/**
+ * Creates {@link MethodInvoker}s for resource methods.
+ *
+ * <p><b>Strategies:</b></p>
+ * <ul>
+ *   <li>{@link Strategy#REFLECTION}: {@link Method#invoke}, the behavior before 2.0.0</li>
+ *   <li>{@link Strategy#METHOD_HANDLE}: a {@link MethodHandle} adapted to {@code (Object, Object[])Object}
+ *       with a spreader, so no {@link InvocationTargetException} is created and access checks happen once</li>
+ *   <li>{@link Strategy#GENERATED}: a class spun by {@link LambdaMetafactory} that calls the method
+ *       directly, unboxing each argument; the JIT can inline through it into the resource method</li>
+ * </ul>
+ *
+ * <p>Generated invokers cover instance methods with a return value and up to
+ * {@value #MAX_GENERATED_ARITY} parameters. Handles and generated invokers are only used for public
+ * methods of public classes, so they never reach a method that {@link Method#invoke} would refuse.
+ * {@link #forMethod(Method, Strategy)} falls back from the preferred strategy to the next simpler one
+ * when a strategy does not apply.</p>
+ *
+ * @since 2.0.0
+ */
+public final class MethodInvokers {
+
+    private static final Logger logger = Logger.getLogger(MethodInvokers.class.getName());
+
+    /**
+     * Largest parameter count with a generated invoker.
+     */
+    public static final int MAX_GENERATED_ARITY = 4;
+
+    private static final Class<?>[] ARITY_TYPES = {
+            Arity0.class, Arity1.class, Arity2.class, Arity3.class, Arity4.class
+    };
+
+    /**
+     * How resource methods are called.
+     */
+    public enum Strategy {
+        REFLECTION,
+        METHOD_HANDLE,
+        GENERATED
+    }
+
+    private MethodInvokers() {
+    }
+
+    /**
+     * Create an invoker with the preferred strategy, falling back to simpler strategies.
+     *
+     * @param method resource method
+     * @param preferred strategy to try first
+     * @return the invoker (never null; reflection always applies)
+     */
+    public static MethodInvoker forMethod(Method method, Strategy preferred) {
+        if (preferred == Strategy.GENERATED) {
+            MethodInvoker invoker = create(method, Strategy.GENERATED);
+            if (invoker != null) {
+                return invoker;
+            }
+        }
+        if (preferred != Strategy.REFLECTION) {
+            MethodInvoker invoker = create(method, Strategy.METHOD_HANDLE);
+            if (invoker != null) {
+                return invoker;
+            }
+        }
+        return create(method, Strategy.REFLECTION);
+    }
+
+    /**
+     * Create an invoker with exactly the given strategy.
+     *
+     * @param method resource method
+     * @param strategy strategy to use
+     * @return the invoker, or null if the strategy does not apply to the method
+     */
+    public static MethodInvoker create(Method method, Strategy strategy) {
+        if (method == null) {
+            throw new IllegalArgumentException("Method cannot be null");
+        }
+        if (strategy == Strategy.REFLECTION) {
+            return new ReflectionInvoker(method);
+        }
+        if (!Modifier.isPublic(method.getModifiers()) || !Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+            return null;
+        }
+        try {
+            return strategy == Strategy.GENERATED ? generate(method) : new HandleInvoker(spreader(method));
+        } catch (Throwable e) {
+            logger.fine("No " + strategy + " invoker for " + method + ": " + e);
+            return null;
+        }
+    }
+
+    private static MethodHandle spreader(Method method) throws IllegalAccessException {
+        int arity = method.getParameterCount();
+        MethodHandle handle = MethodHandles.lookup().unreflect(method);
+        if (Modifier.isStatic(method.getModifiers())) {
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+        return handle.asType(MethodType.genericMethodType(arity + 1))
+                .asSpreader(Object[].class, arity);
+    }
+
+    private static MethodInvoker generate(Method method) throws Throwable {
+        int arity = method.getParameterCount();
+        if (arity > MAX_GENERATED_ARITY || Modifier.isStatic(method.getModifiers())
+                || method.getReturnType() == void.class) {
+            return null;
+        }
+        // The spun class lives next to the resource class, so it needs a lookup with full access there
+        MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(method.getDeclaringClass(), MethodHandles.lookup());
+        MethodHandle impl = lookup.unreflect(method);
+        Class<?> arityType = ARITY_TYPES[arity];
+        CallSite site = LambdaMetafactory.metafactory(lookup, "invoke", MethodType.methodType(arityType),
+                MethodType.genericMethodType(arity + 1), impl, impl.type().wrap());
+        Object function = site.getTarget().invoke();
+        switch (arity) {
+            case 0:
+                Arity0 f0 = (Arity0) function;
+                return (target, args) -> f0.invoke(target);
+            case 1:
+                Arity1 f1 = (Arity1) function;
+                return (target, args) -> f1.invoke(target, args[0]);
+            case 2:
+                Arity2 f2 = (Arity2) function;
+                return (target, args) -> f2.invoke(target, args[0], args[1]);
+            case 3:
+                Arity3 f3 = (Arity3) function;
+                return (target, args) -> f3.invoke(target, args[0], args[1], args[2]);
+            default:
+                Arity4 f4 = (Arity4) function;
+                return (target, args) -> f4.invoke(target, args[0], args[1], args[2], args[3]);
+        }
+    }
+
+    private static final class ReflectionInvoker implements MethodInvoker {
+        private final Method method;
+
+        ReflectionInvoker(Method method) {
+            this.method = method;
+        }
+
+        @Override
+        public Object invoke(Object target, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static final class HandleInvoker implements MethodInvoker {
+        private final MethodHandle handle;
+
+        HandleInvoker(MethodHandle handle) {
+            this.handle = handle;
+        }
+
+        @Override
+        public Object invoke(Object target, Object[] args) throws Throwable {
+            return (Object) handle.invokeExact(target, args);
+        }
+    }
+
+    // Functional interfaces implemented by generated invokers. They are public only because the
+    // generated classes are defined in the resource's package; they are not meant to be used directly.
+
+    /** Target of generated invokers without parameters. */
+    public interface Arity0 {
+        Object invoke(Object target);
+    }
+
+    /** Target of generated invokers with one parameter. */
+    public interface Arity1 {
+        Object invoke(Object target, Object a0);
+    }
+
+    /** Target of generated invokers with two parameters. */
+    public interface Arity2 {
+        Object invoke(Object target, Object a0, Object a1);
+    }
+
+    /** Target of generated invokers with three parameters. */
+    public interface Arity3 {
+        Object invoke(Object target, Object a0, Object a1, Object a2);
+    }
+
+    /** Target of generated invokers with four parameters. */
+    public interface Arity4 {
+        Object invoke(Object target, Object a0, Object a1, Object a2, Object a3);
+    }
+}
@@ -5,8 +5,11 @@ import cn.huiwings.tcprest.exception.ProtocolException;
 import cn.huiwings.tcprest.invoker.Invoker;
 import cn.huiwings.tcprest.server.Context;
 
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Protocol v2 invoker that propagates exceptions instead of swallowing them.
@@ -22,6 +25,11 @@ import java.lang.reflect.Method;
  *   <li><b>Other exceptions</b>: Re-thrown as-is</li>
  * </ul>
  *
+ * <p><b>Method calls:</b> each target method gets a {@link MethodInvoker} on first use
+ * (a generated one by default, see {@link MethodInvokers}), which is cached for later calls.
+ * Arguments that do not exactly match the parameter types (e.g. an {@code Integer} for a
+ * {@code long} parameter) go through {@link Method#invoke}, which applies widening conversions.</p>
+ *
  * <p><b>Usage:</b></p>
  * <pre>
  * ProtocolV2Invoker invoker = new ProtocolV2Invoker();
@@ -39,6 +47,27 @@ import java.lang.reflect.Method;
  */
 public class ProtocolV2Invoker implements Invoker {
 
+    private final MethodInvokers.Strategy strategy;
+    private final ConcurrentMap<Method, Target> targets = new ConcurrentHashMap<>();
+
+    /**
+     * Create an invoker that calls methods through generated invokers.
+     */
+    public ProtocolV2Invoker() {
+        this(MethodInvokers.Strategy.GENERATED);
+    }
+
+    /**
+     * @param strategy how methods are called (see {@link MethodInvokers})
+     * @since 2.0.0
+     */
+    public ProtocolV2Invoker(MethodInvokers.Strategy strategy) {
+        if (strategy == null) {
+            throw new IllegalArgumentException("Strategy cannot be null");
+        }
+        this.strategy = strategy;
+    }
+
     /**
      * Invoke the target method and return result or throw exception.
      *
@@ -68,34 +97,92 @@ public class ProtocolV2Invoker implements Invoker {
             throw new ProtocolException("Target method is null");
         }
 
+        Target target = targets.computeIfAbsent(targetMethod, m -> new Target(m, MethodInvokers.forMethod(m, strategy)));
+        if (!target.accepts(targetInstance, params)) {
+            return invokeReflectively(targetMethod, targetInstance, params);
+        }
+        try {
+            return target.invoker.invoke(targetInstance, params);
+        } catch (IllegalAccessException e) {
+            // Reflection fallback refused access, as declared in interface
+            throw e;
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    private Object invokeReflectively(Method targetMethod, Object targetInstance, Object[] params)
+            throws IllegalAccessException {
         try {
             // Invoke the method - let exceptions propagate
             return targetMethod.invoke(targetInstance, params);
         } catch (InvocationTargetException e) {
             // Unwrap the real exception thrown by the method
-            Throwable cause = e.getCause();
-
-            if (cause instanceof BusinessException) {
-                // Re-throw business exceptions for proper categorization (RuntimeException)
-                throw (BusinessException) cause;
-            } else if (cause instanceof RuntimeException) {
-                // Re-throw runtime exceptions
-                throw (RuntimeException) cause;
-            } else if (cause instanceof Error) {
-                // Re-throw errors
-                throw (Error) cause;
-            } else {
-                // Wrap checked exceptions in RuntimeException
-                throw new RuntimeException("Method invocation failed", cause);
-            }
-        } catch (IllegalAccessException e) {
-            // Re-throw as declared in interface
-            throw e;
+            throw rethrow(e.getCause());
         } catch (IllegalArgumentException e) {
             throw new ProtocolException("Invalid arguments for method: " + targetMethod.getName(), e);
         }
     }
 
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof BusinessException) {
+            // Re-throw business exceptions for proper categorization (RuntimeException)
+            throw (BusinessException) cause;
+        } else if (cause instanceof RuntimeException) {
+            // Re-throw runtime exceptions
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            // Re-throw errors
+            throw (Error) cause;
+        } else {
+            // Wrap checked exceptions in RuntimeException
+            throw new RuntimeException("Method invocation failed", cause);
+        }
+    }
+
+    /**
+     * @return strategy used for new method invokers
+     * @since 2.0.0
+     */
+    public MethodInvokers.Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * A cached invoker with the argument types it can be called with.
+     */
+    private static final class Target {
+        private final MethodInvoker invoker;
+        private final Class<?> declaringClass;
+        private final Class<?>[] parameterTypes;
+        private final Class<?>[] argumentTypes;
+
+        Target(Method method, MethodInvoker invoker) {
+            this.invoker = invoker;
+            this.declaringClass = method.getDeclaringClass();
+            this.parameterTypes = method.getParameterTypes();
+            this.argumentTypes = MethodType.methodType(void.class, parameterTypes).wrap().parameterArray();
+        }
+
+        /**
+         * Whether the invoker can be called without conversions; Method.invoke handles the rest
+         * (widening) or reports them as invalid arguments.
+         */
+        boolean accepts(Object instance, Object[] params) {
+            int count = params == null ? 0 : params.length;
+            if (count != argumentTypes.length || !declaringClass.isInstance(instance)) {
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                Object param = params[i];
+                if (param == null ? parameterTypes[i].isPrimitive() : !argumentTypes[i].isInstance(param)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     /**
      * Create target instance from class.
      *
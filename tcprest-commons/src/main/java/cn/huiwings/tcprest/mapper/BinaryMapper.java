@@ -0,0 +1,141 @@
+package cn.huiwings.tcprest.mapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Mapper that converts objects to and from bytes instead of strings.
+ *
+ * <p>Protocol V3 writes the bytes straight into the request or response frame and reads them back
+ * from the frame buffer without copying. Protocol V2 Base64-encodes the bytes once (URL-safe, as for
+ * serialized objects) instead of Base64-encoding a string that may itself be Base64, as a
+ * string {@link Mapper} producing binary data has to.</p>
+ *
+ * <p>Register binary mappers like any other mapper. The {@link Mapper} methods are implemented as an
+ * adapter (the bytes as standard Base64), so code calling {@code objectToString}/{@code stringToObject}
+ * keeps working; {@link #of(Mapper)} adapts a string mapper the other way.</p>
+ *
+ * <pre>
+ * public class PointMapper implements BinaryMapper {
+ *     public void writeObject(Object object, OutputStream out) throws IOException {
+ *         Point p = (Point) object;
+ *         new DataOutputStream(out).writeLong(((long) p.x &lt;&lt; 32) | (p.y &amp; 0xffffffffL));
+ *     }
+ *
+ *     public Object readObject(ByteBuffer in) {
+ *         long v = in.getLong();
+ *         return new Point((int) (v &gt;&gt; 32), (int) v);
+ *     }
+ * }
+ * </pre>
+ *
+ * @since 2.0.0
+ * @see RawTypeMapper
+ */
+public interface BinaryMapper extends Mapper {
+
+    /**
+     * Write an object.
+     *
+     * @param object the object (never null; null values are encoded by the protocol)
+     * @param out destination; do not close it
+     * @throws IOException if the object cannot be written
+     */
+    void writeObject(Object object, OutputStream out) throws IOException;
+
+    /**
+     * Read an object written by {@link #writeObject(Object, OutputStream)}.
+     *
+     * @param in the bytes of one value, from its position to its limit; may be a view of a larger buffer
+     * @return the object
+     * @throws IOException if the bytes are malformed
+     * @throws ClassNotFoundException if a class named in the bytes cannot be loaded
+     */
+    Object readObject(ByteBuffer in) throws IOException, ClassNotFoundException;
+
+    /**
+     * @param object the object
+     * @return the bytes written by {@link #writeObject(Object, OutputStream)}
+     * @throws IOException if the object cannot be written
+     */
+    default byte[] toByteArray(Object object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        writeObject(object, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Adapter for the string form: the bytes as standard Base64.
+     */
+    @Override
+    default String objectToString(Object object) {
+        if (object == null) {
+            return null;
+        }
+        try {
+            return Base64.getEncoder().encodeToString(toByteArray(object));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Adapter for the string form: decodes standard Base64 and reads the bytes.
+     */
+    @Override
+    default Object stringToObject(String param) {
+        if (param == null) {
+            return null;
+        }
+        try {
+            return readObject(ByteBuffer.wrap(Base64.getDecoder().decode(param)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Adapt a mapper to bytes: a string mapper's text is carried as UTF-8.
+     *
+     * @param mapper a mapper
+     * @return the mapper itself if it is binary, otherwise an adapter
+     */
+    static BinaryMapper of(Mapper mapper) {
+        if (mapper instanceof BinaryMapper) {
+            return (BinaryMapper) mapper;
+        }
+        return new BinaryMapper() {
+            @Override
+            public void writeObject(Object object, OutputStream out) throws IOException {
+                String text = mapper.objectToString(object);
+                if (text != null) {
+                    out.write(text.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            @Override
+            public Object readObject(ByteBuffer in) {
+                byte[] bytes = new byte[in.remaining()];
+                in.get(bytes);
+                return mapper.stringToObject(new String(bytes, StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public String objectToString(Object object) {
+                return mapper.objectToString(object);
+            }
+
+            @Override
+            public Object stringToObject(String param) {
+                return mapper.stringToObject(param);
+            }
+        };
+    }
+}
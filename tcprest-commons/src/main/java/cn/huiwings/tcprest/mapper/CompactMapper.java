@@ -0,0 +1,59 @@
+package cn.huiwings.tcprest.mapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+
+/**
+ * Auto-serialization mapper writing the {@link CompactSerializer} format.
+ *
+ * <p>The codecs auto-serialize collections and {@link java.io.Serializable} types with this mapper for
+ * peers that agreed to {@link cn.huiwings.tcprest.protocol.Capabilities#FEATURE_COMPACT}, and with Java
+ * serialization otherwise. Object trees of plain DTOs, collections and arrays are written compactly;
+ * everything else falls back to Java serialization, inside or instead of the compact stream.</p>
+ *
+ * <p>Reading is inherited from {@link RawTypeMapper}, which accepts both formats. Peers that predate
+ * the format cannot read it, so register this mapper for a type only if every peer is up to date.</p>
+ *
+ * <p>The codecs pass the declared generic type of parameters and return values to the typed variants
+ * of the write methods, so that {@code List<Integer>} or {@code Map<String, Long>} is written as a typed
+ * sequence.</p>
+ *
+ * @since 2.0.0
+ */
+public class CompactMapper extends RawTypeMapper {
+
+    @Override
+    public void writeObject(Object object, OutputStream out) throws IOException {
+        CompactSerializer.write(object, out);
+    }
+
+    @Override
+    public byte[] toByteArray(Object object) throws IOException {
+        return CompactSerializer.toBytes(object);
+    }
+
+    /**
+     * Write a value of a declared generic type.
+     *
+     * @param object the value (may be null)
+     * @param declaredType declared type of the value, such as {@code List<Integer>} (may be null)
+     * @param out destination (left open)
+     * @throws IOException if the value cannot be written
+     */
+    public void writeObject(Object object, Type declaredType, OutputStream out) throws IOException {
+        CompactSerializer.write(object, declaredType, out);
+    }
+
+    /**
+     * Write a value of a declared generic type to a new array.
+     *
+     * @param object the value (may be null)
+     * @param declaredType declared type of the value, such as {@code List<Integer>} (may be null)
+     * @return the bytes
+     * @throws IOException if the value cannot be written
+     */
+    public byte[] toByteArray(Object object, Type declaredType) throws IOException {
+        return CompactSerializer.toBytes(object, declaredType);
+    }
+}
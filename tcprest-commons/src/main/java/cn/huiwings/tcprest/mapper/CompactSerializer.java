@@ -0,0 +1,1537 @@
+package cn.huiwings.tcprest.mapper;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.InvalidObjectException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.IntFunction;
+
+/**
+ * Compact binary format for auto-serialized values, written by {@link CompactMapper} and read by
+ * {@link RawTypeMapper#fromBytes(byte[], int, int)} next to Java serialization.
+ *
+ * <p>Java serialization writes a full class descriptor for every class in every message. This format
+ * describes a class once per JVM, by reflection: the fields Java serialization would write (non-static,
+ * non-transient, superclass fields first, each class's fields by name), plus a fingerprint of their
+ * names, types and the serialVersionUID. A message carries the class name and fingerprint only the
+ * first time the class appears in it, and repeated strings (including class names) as table indexes.
+ * Primitive fields are written without tags, integers as zigzag varints.</p>
+ *
+ * <p><b>Format:</b> {@code 0xC5 0x01}, then one value: a tag byte followed by</p>
+ * <ul>
+ *   <li>boxed primitives and strings - the value</li>
+ *   <li>enums - class and constant name</li>
+ *   <li>arrays - component class, length and elements</li>
+ *   <li>{@code ArrayList}, {@code LinkedList}, {@code ArrayDeque}, {@code HashSet}, {@code LinkedHashSet},
+ *       {@code HashMap}, {@code LinkedHashMap}, and {@code TreeSet}/{@code TreeMap} in natural order -
+ *       class, size and elements (key and value for maps)</li>
+ *   <li>other {@link Serializable} classes - class and fields in schema order</li>
+ *   <li>records, {@link Serializable} or not - class and components in declaration order</li>
+ * </ul>
+ *
+ * <p>Records are compiled once into accessor and canonical constructor method handles; reading a record
+ * goes through its canonical constructor, so its validation runs as with Java serialization.</p>
+ *
+ * <p><b>Typed sequences:</b> when the declared generic type of a collection or map is known - a method
+ * parameter or return type such as {@code List<Integer>} or {@code Map<String, Long>}, or the generic
+ * type of a field or record component - and every element is of that boxed primitive type or
+ * {@code String} (no nulls), the element kind is written once after the class and the elements follow
+ * without tags: a run of varints, fixed-width floats, or strings. A map may pack its keys, its values or
+ * both. The kind is in the stream, so readers need no type information.</p>
+ *
+ * <p>The fast path covers object trees. Classes with their own serialization logic ({@code writeObject},
+ * {@code writeReplace}, {@code readResolve}, {@link Externalizable}, and classes whose fields cannot be
+ * made accessible) are embedded as Java serialization. A graph where an object is reachable
+ * twice (a shared reference or a cycle), or that nests deeper than {@value #MAX_DEPTH} levels, is written
+ * entirely as Java serialization, so object identity is preserved exactly as before.</p>
+ *
+ * <p>Reading applies the class filter of {@link RawTypeMapper}, only instantiates {@link Serializable}
+ * classes (without running their constructors, as Java serialization does) and records, and rejects a
+ * class whose local fingerprint differs from the sender's.</p>
+ *
+ * @since 2.0.0
+ * @see CompactMapper
+ */
+public final class CompactSerializer {
+
+    static final byte MAGIC = (byte) 0xC5;
+    static final byte VERSION = 1;
+
+    /** Maximum nesting of arrays, collections and objects before falling back to Java serialization. */
+    static final int MAX_DEPTH = 512;
+
+    private static final int MAX_STRINGS = 1 << 16;
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte BYTE = 3;
+    private static final byte SHORT = 4;
+    private static final byte CHAR = 5;
+    private static final byte INT = 6;
+    private static final byte LONG = 7;
+    private static final byte FLOAT = 8;
+    private static final byte DOUBLE = 9;
+    private static final byte STRING = 10;
+    private static final byte ENUM = 11;
+    private static final byte ARRAY = 12;
+    private static final byte COLLECTION = 13;
+    private static final byte MAP = 14;
+    private static final byte OBJECT = 15;
+    private static final byte JAVA = 16;
+    private static final byte PACKED = 17;
+    private static final byte PACKED_MAP = 18;
+
+    private static final Map<Class<?>, IntFunction<? extends Collection<Object>>> COLLECTIONS = new HashMap<>();
+    private static final Map<Class<?>, IntFunction<? extends Map<Object, Object>>> MAPS = new HashMap<>();
+    private static final Map<String, Class<?>> PRIMITIVES = new HashMap<>();
+
+    static {
+        COLLECTIONS.put(ArrayList.class, ArrayList::new);
+        COLLECTIONS.put(LinkedList.class, n -> new LinkedList<>());
+        COLLECTIONS.put(ArrayDeque.class, ArrayDeque::new);
+        COLLECTIONS.put(HashSet.class, n -> new HashSet<>(capacity(n)));
+        COLLECTIONS.put(LinkedHashSet.class, n -> new LinkedHashSet<>(capacity(n)));
+        COLLECTIONS.put(TreeSet.class, n -> new TreeSet<>());
+        MAPS.put(HashMap.class, n -> new HashMap<>(capacity(n)));
+        MAPS.put(LinkedHashMap.class, n -> new LinkedHashMap<>(capacity(n)));
+        MAPS.put(TreeMap.class, n -> new TreeMap<>());
+        for (Class<?> type : new Class<?>[]{boolean.class, byte.class, short.class, char.class, int.class,
+                long.class, float.class, double.class}) {
+            PRIMITIVES.put(type.getName(), type);
+        }
+    }
+
+    /** Class lookups by name, valid for the context class loader that made them; never pins a loader. */
+    private static final ConcurrentMap<String, Resolved> RESOLVED = new ConcurrentHashMap<>();
+
+    /**
+     * {@code sun.reflect.ReflectionFactory} and its {@code newConstructorForSerialization(Class)}, looked up
+     * reflectively since the jdk.unsupported module may be absent (jlink images, some runtimes). When
+     * either is null, classes without a record shape are embedded as Java serialization.
+     */
+    private static final Object REFLECTION_FACTORY;
+    private static final Method NEW_CONSTRUCTOR_FOR_SERIALIZATION;
+
+    static {
+        Object factory = null;
+        Method method = null;
+        try {
+            Class<?> type = Class.forName("sun.reflect.ReflectionFactory");
+            factory = type.getMethod("getReflectionFactory").invoke(null);
+            method = type.getMethod("newConstructorForSerialization", Class.class);
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            factory = null;
+            method = null;
+        }
+        REFLECTION_FACTORY = factory;
+        NEW_CONSTRUCTOR_FOR_SERIALIZATION = method;
+    }
+
+    private static final ClassValue<Schema> SCHEMAS = new ClassValue<Schema>() {
+        @Override
+        protected Schema computeValue(Class<?> type) {
+            return Schema.of(type);
+        }
+    };
+
+    private CompactSerializer() {
+    }
+
+    /**
+     * Serialize a value, falling back to Java serialization for graphs outside the fast path.
+     *
+     * @param value the value (may be null)
+     * @return compact bytes, or Java serialization bytes
+     * @throws IOException if the value is not serializable
+     */
+    public static byte[] toBytes(Object value) throws IOException {
+        return toBytes(value, null);
+    }
+
+    /**
+     * Serialize a value of a declared generic type, packing collections whose element types it names.
+     *
+     * @param value the value (may be null)
+     * @param declaredType the declared type of the value, such as a method's generic return type (may be null)
+     * @return compact bytes, or Java serialization bytes
+     * @throws IOException if the value is not serializable
+     */
+    public static byte[] toBytes(Object value, Type declaredType) throws IOException {
+        Writer writer = new Writer();
+        if (writer.write(value, declaredType)) {
+            return Arrays.copyOf(writer.buf, writer.pos);
+        }
+        return RawTypeMapper.toBytes(value);
+    }
+
+    /**
+     * Serialize a value to a stream, falling back to Java serialization for graphs outside the fast path.
+     *
+     * @param value the value (may be null)
+     * @param out destination (left open)
+     * @throws IOException if the value is not serializable or the stream fails
+     */
+    public static void write(Object value, OutputStream out) throws IOException {
+        write(value, null, out);
+    }
+
+    /**
+     * Serialize a value of a declared generic type to a stream, packing collections whose element types
+     * it names.
+     *
+     * @param value the value (may be null)
+     * @param declaredType the declared type of the value, such as a method's generic parameter type (may be null)
+     * @param out destination (left open)
+     * @throws IOException if the value is not serializable or the stream fails
+     */
+    public static void write(Object value, Type declaredType, OutputStream out) throws IOException {
+        Writer writer = new Writer();
+        if (writer.write(value, declaredType)) {
+            out.write(writer.buf, 0, writer.pos);
+            return;
+        }
+        ObjectOutputStream os = new ObjectOutputStream(out);
+        os.writeObject(value);
+        os.flush();
+    }
+
+    /**
+     * @param data source array
+     * @param offset start of the value
+     * @param length number of bytes
+     * @return true if the bytes start with the compact format header
+     */
+    public static boolean isCompact(byte[] data, int offset, int length) {
+        return length > 0 && data[offset] == MAGIC;
+    }
+
+    /**
+     * Read a value written in the compact format.
+     *
+     * @param data source array
+     * @param offset start of the value (the format header)
+     * @param length number of bytes
+     * @return the value
+     * @throws IOException if the data is malformed, or a class is rejected or does not match the sender's
+     * @throws ClassNotFoundException if a class is missing
+     */
+    public static Object read(byte[] data, int offset, int length) throws IOException, ClassNotFoundException {
+        if (length < 2 || data[offset] != MAGIC) {
+            throw new StreamCorruptedException("Not a compact serialization stream");
+        }
+        if (data[offset + 1] != VERSION) {
+            throw new StreamCorruptedException("Unsupported compact serialization version: " + data[offset + 1]);
+        }
+        Reader reader = new Reader(data, offset + 2, offset + length);
+        Object value = reader.value(0);
+        if (reader.pos != reader.limit) {
+            throw new StreamCorruptedException((reader.limit - reader.pos) + " trailing bytes");
+        }
+        return value;
+    }
+
+    private static int capacity(int size) {
+        return size < 3 ? size + 1 : (int) Math.min((long) size * 4 / 3 + 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Element type named by a declared {@code java.util} collection or map type, such as {@code Long} in
+     * {@code Map<String, Long>}, or null if the declaration does not name one.
+     *
+     * @param declared declared type of the collection or map (may be null)
+     * @param owner {@link Collection} or {@link Map}
+     * @param index type argument index
+     */
+    private static Type typeArgument(Type declared, Class<?> owner, int index) {
+        if (!(declared instanceof ParameterizedType)) {
+            return null;
+        }
+        ParameterizedType parameterized = (ParameterizedType) declared;
+        Type raw = parameterized.getRawType();
+        // java.util collections and maps are parameterized by their element (key, value) types only
+        if (!(raw instanceof Class) || !((Class<?>) raw).getName().startsWith("java.util.")
+                || !owner.isAssignableFrom((Class<?>) raw)) {
+            return null;
+        }
+        Type[] arguments = parameterized.getActualTypeArguments();
+        if (arguments.length != (owner == Map.class ? 2 : 1)) {
+            return null;
+        }
+        Type argument = arguments[index];
+        if (argument instanceof WildcardType) {
+            WildcardType wildcard = (WildcardType) argument;
+            return wildcard.getLowerBounds().length == 0 ? wildcard.getUpperBounds()[0] : null;
+        }
+        return argument;
+    }
+
+    /**
+     * @return the declared type if it can guide the writer (a parameterized or generic array type), else null
+     */
+    private static Type generic(Type declared) {
+        return declared instanceof ParameterizedType || declared instanceof GenericArrayType ? declared : null;
+    }
+
+    /**
+     * Raised by the writer for graphs outside the fast path; the message is then written with Java
+     * serialization instead.
+     */
+    private static final class Fallback extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final Fallback INSTANCE = new Fallback();
+
+        private Fallback() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final class Writer {
+        byte[] buf = new byte[256];
+        int pos;
+        private final HashMap<String, Integer> strings = new HashMap<>();
+        private final IdentityHashMap<Class<?>, Integer> classes = new IdentityHashMap<>();
+        private final IdentityHashMap<Class<?>, Integer> schemas = new IdentityHashMap<>();
+        private IdentityHashMap<Object, Boolean> seen;
+
+        /**
+         * @return false if the value must be written with Java serialization instead
+         */
+        boolean write(Object value, Type declaredType) throws IOException {
+            put(MAGIC);
+            put(VERSION);
+            try {
+                value(value, generic(declaredType), 0);
+                return true;
+            } catch (Fallback e) {
+                return false;
+            }
+        }
+
+        /**
+         * @param declared declared generic type of the value, or null
+         */
+        void value(Object value, Type declared, int depth) throws IOException {
+            if (value == null) {
+                put(NULL);
+                return;
+            }
+            Class<?> type = value.getClass();
+            byte kind = kindOf(type);
+            if (kind != NULL) {
+                put(kind);
+                scalar(kind, value);
+            } else if (type == Boolean.class) {
+                put((Boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Enum) {
+                put(ENUM);
+                classRef(((Enum<?>) value).getDeclaringClass());
+                string(((Enum<?>) value).name());
+            } else {
+                reference(value, type, declared, depth);
+            }
+        }
+
+        /**
+         * @return the tag of a value written by {@link #scalar}: a string or boxed number or char, else NULL
+         */
+        private static byte kindOf(Type type) {
+            if (type == String.class) {
+                return STRING;
+            } else if (type == Integer.class) {
+                return INT;
+            } else if (type == Long.class) {
+                return LONG;
+            } else if (type == Double.class) {
+                return DOUBLE;
+            } else if (type == Float.class) {
+                return FLOAT;
+            } else if (type == Short.class) {
+                return SHORT;
+            } else if (type == Byte.class) {
+                return BYTE;
+            } else if (type == Character.class) {
+                return CHAR;
+            }
+            return NULL;
+        }
+
+        /**
+         * Write a value of a kind from {@link #kindOf}, without its tag.
+         */
+        private void scalar(byte kind, Object value) {
+            switch (kind) {
+                case STRING:
+                    string((String) value);
+                    break;
+                case INT:
+                    varint(zigzag((Integer) value));
+                    break;
+                case LONG:
+                    varlong(zigzag((Long) value));
+                    break;
+                case DOUBLE:
+                    fixed64(Double.doubleToRawLongBits((Double) value));
+                    break;
+                case FLOAT:
+                    fixed32(Float.floatToRawIntBits((Float) value));
+                    break;
+                case SHORT:
+                    varint(zigzag((Short) value));
+                    break;
+                case BYTE:
+                    put((Byte) value);
+                    break;
+                default:
+                    varint((Character) value);
+                    break;
+            }
+        }
+
+        /**
+         * @return true if every element is non-null and exactly of the given class
+         */
+        private static boolean allOf(Iterable<?> elements, Type type) {
+            for (Object element : elements) {
+                if (element == null || element.getClass() != type) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void reference(Object value, Class<?> type, Type declared, int depth) throws IOException {
+            if (depth >= MAX_DEPTH) {
+                throw Fallback.INSTANCE;
+            }
+            if (seen == null) {
+                seen = new IdentityHashMap<>();
+            }
+            if (seen.put(value, Boolean.TRUE) != null) {
+                throw Fallback.INSTANCE;
+            }
+            if (type.isArray()) {
+                array(value, type.getComponentType(), declared, depth);
+            } else if (COLLECTIONS.containsKey(type) && !(value instanceof SortedSet
+                    && ((SortedSet<?>) value).comparator() != null)) {
+                collection((Collection<?>) value, type, declared, depth);
+            } else if (MAPS.containsKey(type) && !(value instanceof SortedMap
+                    && ((SortedMap<?, ?>) value).comparator() != null)) {
+                map((Map<?, ?>) value, type, declared, depth);
+            } else {
+                Schema schema = SCHEMAS.get(type);
+                if (schema.isCompact()) {
+                    object(value, schema, depth);
+                } else if (value instanceof Serializable) {
+                    byte[] bytes = RawTypeMapper.toBytes(value);
+                    put(JAVA);
+                    varint(bytes.length);
+                    put(bytes, 0, bytes.length);
+                } else {
+                    throw new NotSerializableException(type.getName());
+                }
+            }
+        }
+
+        private void array(Object array, Class<?> component, Type declared, int depth) throws IOException {
+            put(ARRAY);
+            classRef(component);
+            if (component == byte.class) {
+                byte[] values = (byte[]) array;
+                varint(values.length);
+                put(values, 0, values.length);
+            } else if (component == int.class) {
+                int[] values = (int[]) array;
+                varint(values.length);
+                for (int v : values) {
+                    varint(zigzag(v));
+                }
+            } else if (component == long.class) {
+                long[] values = (long[]) array;
+                varint(values.length);
+                for (long v : values) {
+                    varlong(zigzag(v));
+                }
+            } else if (component == double.class) {
+                double[] values = (double[]) array;
+                varint(values.length);
+                for (double v : values) {
+                    fixed64(Double.doubleToRawLongBits(v));
+                }
+            } else if (component == float.class) {
+                float[] values = (float[]) array;
+                varint(values.length);
+                for (float v : values) {
+                    fixed32(Float.floatToRawIntBits(v));
+                }
+            } else if (component == boolean.class) {
+                boolean[] values = (boolean[]) array;
+                varint(values.length);
+                for (boolean v : values) {
+                    put(v ? TRUE : FALSE);
+                }
+            } else if (component == short.class) {
+                short[] values = (short[]) array;
+                varint(values.length);
+                for (short v : values) {
+                    varint(zigzag(v));
+                }
+            } else if (component == char.class) {
+                char[] values = (char[]) array;
+                varint(values.length);
+                for (char v : values) {
+                    varint(v);
+                }
+            } else {
+                Object[] values = (Object[]) array;
+                Type element = declared instanceof GenericArrayType
+                        ? generic(((GenericArrayType) declared).getGenericComponentType()) : null;
+                varint(values.length);
+                for (Object v : values) {
+                    value(v, element, depth + 1);
+                }
+            }
+        }
+
+        private void collection(Collection<?> collection, Class<?> type, Type declared, int depth)
+                throws IOException {
+            Type elementType = typeArgument(declared, Collection.class, 0);
+            byte kind = kindOf(elementType);
+            if (kind != NULL && !allOf(collection, elementType)) {
+                kind = NULL;
+            }
+            if (kind != NULL) {
+                put(PACKED);
+                classRef(type);
+                put(kind);
+                run(collection, kind, elementType);
+                return;
+            }
+            put(COLLECTION);
+            classRef(type);
+            Type element = generic(elementType);
+            int size = collection.size();
+            varint(size);
+            int count = 0;
+            for (Object e : collection) {
+                if (++count > size) {
+                    throw new ConcurrentModificationException();
+                }
+                value(e, element, depth + 1);
+            }
+            if (count != size) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        /**
+         * Write the size and untagged elements of a typed sequence, one loop per common kind.
+         */
+        private void run(Collection<?> collection, byte kind, Type elementType) {
+            int size = collection.size();
+            varint(size);
+            int count = 0;
+            switch (kind) {
+                case INT:
+                    for (Object e : collection) {
+                        checkElement(e, elementType, ++count, size);
+                        varint(zigzag((Integer) e));
+                    }
+                    break;
+                case LONG:
+                    for (Object e : collection) {
+                        checkElement(e, elementType, ++count, size);
+                        varlong(zigzag((Long) e));
+                    }
+                    break;
+                case STRING:
+                    for (Object e : collection) {
+                        checkElement(e, elementType, ++count, size);
+                        string((String) e);
+                    }
+                    break;
+                default:
+                    for (Object e : collection) {
+                        checkElement(e, elementType, ++count, size);
+                        scalar(kind, e);
+                    }
+                    break;
+            }
+            if (count != size) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        /**
+         * Elements of a typed sequence were checked before writing; a change means concurrent modification.
+         */
+        private static void checkElement(Object element, Type elementType, int count, int size) {
+            if (count > size || element == null || element.getClass() != elementType) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        private void map(Map<?, ?> map, Class<?> type, Type declared, int depth) throws IOException {
+            Type keyType = typeArgument(declared, Map.class, 0);
+            Type valueType = typeArgument(declared, Map.class, 1);
+            byte keyKind = kindOf(keyType);
+            byte valueKind = kindOf(valueType);
+            if (keyKind != NULL && !allOf(map.keySet(), keyType)) {
+                keyKind = NULL;
+            }
+            if (valueKind != NULL && !allOf(map.values(), valueType)) {
+                valueKind = NULL;
+            }
+            Type key = generic(keyType);
+            Type val = generic(valueType);
+            if (keyKind != NULL || valueKind != NULL) {
+                put(PACKED_MAP);
+                classRef(type);
+                put(keyKind);
+                put(valueKind);
+            } else {
+                put(MAP);
+                classRef(type);
+            }
+            int size = map.size();
+            varint(size);
+            int count = 0;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (++count > size) {
+                    throw new ConcurrentModificationException();
+                }
+                entryPart(entry.getKey(), keyKind, keyType, key, depth);
+                entryPart(entry.getValue(), valueKind, valueType, val, depth);
+            }
+            if (count != size) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        private void entryPart(Object value, byte kind, Type type, Type declared, int depth) throws IOException {
+            if (kind == NULL) {
+                value(value, declared, depth + 1);
+            } else if (value != null && value.getClass() == type) {
+                scalar(kind, value);
+            } else {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        private void object(Object value, Schema schema, int depth) throws IOException {
+            put(OBJECT);
+            Integer index = schemas.get(schema.type);
+            if (index != null) {
+                varint(index + 1);
+            } else {
+                schemas.put(schema.type, schemas.size());
+                varint(0);
+                string(schema.type.getName());
+                fixed32(schema.fingerprint);
+            }
+            if (schema.accessors != null) {
+                components(value, schema, depth);
+                return;
+            }
+            Field[] fields = schema.fields;
+            char[] kinds = schema.kinds;
+            Type[] generics = schema.generics;
+            try {
+                for (int i = 0; i < fields.length; i++) {
+                    Field field = fields[i];
+                    switch (kinds[i]) {
+                        case 'I':
+                            varint(zigzag(field.getInt(value)));
+                            break;
+                        case 'J':
+                            varlong(zigzag(field.getLong(value)));
+                            break;
+                        case 'Z':
+                            put(field.getBoolean(value) ? TRUE : FALSE);
+                            break;
+                        case 'D':
+                            fixed64(Double.doubleToRawLongBits(field.getDouble(value)));
+                            break;
+                        case 'F':
+                            fixed32(Float.floatToRawIntBits(field.getFloat(value)));
+                            break;
+                        case 'B':
+                            put(field.getByte(value));
+                            break;
+                        case 'S':
+                            varint(zigzag(field.getShort(value)));
+                            break;
+                        case 'C':
+                            varint(field.getChar(value));
+                            break;
+                        default:
+                            value(field.get(value), generics == null ? null : generics[i], depth + 1);
+                            break;
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new InvalidClassException(schema.type.getName(), e.getMessage());
+            }
+        }
+
+        /**
+         * Write the components of a record positionally, read through its accessors.
+         */
+        private void components(Object record, Schema schema, int depth) throws IOException {
+            MethodHandle[] accessors = schema.accessors;
+            char[] kinds = schema.kinds;
+            Type[] generics = schema.generics;
+            for (int i = 0; i < accessors.length; i++) {
+                Object component;
+                try {
+                    component = (Object) accessors[i].invokeExact(record);
+                } catch (Throwable e) {
+                    throw new InvalidObjectException("Accessor of " + schema.type.getName() + " failed: " + e);
+                }
+                switch (kinds[i]) {
+                    case 'I':
+                        varint(zigzag((Integer) component));
+                        break;
+                    case 'J':
+                        varlong(zigzag((Long) component));
+                        break;
+                    case 'Z':
+                        put((Boolean) component ? TRUE : FALSE);
+                        break;
+                    case 'D':
+                        fixed64(Double.doubleToRawLongBits((Double) component));
+                        break;
+                    case 'F':
+                        fixed32(Float.floatToRawIntBits((Float) component));
+                        break;
+                    case 'B':
+                        put((Byte) component);
+                        break;
+                    case 'S':
+                        varint(zigzag((Short) component));
+                        break;
+                    case 'C':
+                        varint((Character) component);
+                        break;
+                    default:
+                        value(component, generics == null ? null : generics[i], depth + 1);
+                        break;
+                }
+            }
+        }
+
+        private void classRef(Class<?> type) {
+            Integer index = classes.get(type);
+            if (index != null) {
+                varint(index + 1);
+                return;
+            }
+            classes.put(type, classes.size());
+            varint(0);
+            string(type.getName());
+        }
+
+        private void string(String s) {
+            Integer index = strings.get(s);
+            if (index != null) {
+                varint((index << 1) | 1);
+                return;
+            }
+            if (strings.size() < MAX_STRINGS) {
+                strings.put(s, strings.size());
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length << 1);
+            put(bytes, 0, bytes.length);
+        }
+
+        private static int zigzag(int v) {
+            return (v << 1) ^ (v >> 31);
+        }
+
+        private static long zigzag(long v) {
+            return (v << 1) ^ (v >> 63);
+        }
+
+        private void varint(int v) {
+            ensure(5);
+            while ((v & ~0x7F) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        private void varlong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        private void fixed32(int v) {
+            ensure(4);
+            buf[pos++] = (byte) (v >>> 24);
+            buf[pos++] = (byte) (v >>> 16);
+            buf[pos++] = (byte) (v >>> 8);
+            buf[pos++] = (byte) v;
+        }
+
+        private void fixed64(long v) {
+            fixed32((int) (v >>> 32));
+            fixed32((int) v);
+        }
+
+        private void put(byte b) {
+            ensure(1);
+            buf[pos++] = b;
+        }
+
+        private void put(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buf, pos, length);
+            pos += length;
+        }
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+            }
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] buf;
+        int pos;
+        final int limit;
+        private final List<String> strings = new ArrayList<>();
+        private final List<Class<?>> classes = new ArrayList<>();
+        private final List<Schema> schemas = new ArrayList<>();
+
+        Reader(byte[] buf, int pos, int limit) {
+            this.buf = buf;
+            this.pos = pos;
+            this.limit = limit;
+        }
+
+        Object value(int depth) throws IOException, ClassNotFoundException {
+            return value(get(), depth);
+        }
+
+        private Object value(byte tag, int depth) throws IOException, ClassNotFoundException {
+            switch (tag) {
+                case NULL:
+                    return null;
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case BYTE:
+                    return get();
+                case SHORT:
+                    return (short) unzigzag(varint());
+                case CHAR:
+                    return (char) varint();
+                case INT:
+                    return unzigzag(varint());
+                case LONG:
+                    return unzigzag(varlong());
+                case FLOAT:
+                    return Float.intBitsToFloat(fixed32());
+                case DOUBLE:
+                    return Double.longBitsToDouble(fixed64());
+                case STRING:
+                    return string();
+                case ENUM:
+                    return enumConstant(classRef());
+                case ARRAY:
+                    return array(classRef(), enter(depth));
+                case COLLECTION:
+                    return collection(classRef(), enter(depth));
+                case MAP:
+                    return map(classRef(), enter(depth));
+                case OBJECT:
+                    return object(schemaRef(), enter(depth));
+                case PACKED:
+                    return packed(classRef());
+                case PACKED_MAP:
+                    return packedMap(classRef(), enter(depth));
+                case JAVA:
+                    int length = count(1);
+                    Object value = RawTypeMapper.fromBytes(buf, pos, length);
+                    pos += length;
+                    return value;
+                default:
+                    throw new StreamCorruptedException("Unknown compact serialization tag: " + tag);
+            }
+        }
+
+        private static int enter(int depth) throws StreamCorruptedException {
+            if (depth >= MAX_DEPTH) {
+                throw new StreamCorruptedException("Nesting deeper than " + MAX_DEPTH + " levels");
+            }
+            return depth + 1;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object enumConstant(Class<?> type) throws IOException {
+            if (!type.isEnum()) {
+                throw new InvalidClassException(type.getName(), "not an enum");
+            }
+            String name = string();
+            try {
+                return Enum.valueOf((Class) type, name);
+            } catch (IllegalArgumentException e) {
+                throw new InvalidObjectException("No enum constant " + type.getName() + "." + name);
+            }
+        }
+
+        private Object array(Class<?> component, int depth) throws IOException, ClassNotFoundException {
+            if (component == byte.class) {
+                int n = count(1);
+                byte[] values = Arrays.copyOfRange(buf, pos, pos + n);
+                pos += n;
+                return values;
+            } else if (component == int.class) {
+                int[] values = new int[count(1)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = unzigzag(varint());
+                }
+                return values;
+            } else if (component == long.class) {
+                long[] values = new long[count(1)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = unzigzag(varlong());
+                }
+                return values;
+            } else if (component == double.class) {
+                double[] values = new double[count(8)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = Double.longBitsToDouble(fixed64());
+                }
+                return values;
+            } else if (component == float.class) {
+                float[] values = new float[count(4)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = Float.intBitsToFloat(fixed32());
+                }
+                return values;
+            } else if (component == boolean.class) {
+                boolean[] values = new boolean[count(1)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = get() == TRUE;
+                }
+                return values;
+            } else if (component == short.class) {
+                short[] values = new short[count(1)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = (short) unzigzag(varint());
+                }
+                return values;
+            } else if (component == char.class) {
+                char[] values = new char[count(1)];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = (char) varint();
+                }
+                return values;
+            }
+            Object[] values = (Object[]) java.lang.reflect.Array.newInstance(component, count(1));
+            for (int i = 0; i < values.length; i++) {
+                values[i] = value(depth);
+            }
+            return values;
+        }
+
+        private Collection<Object> collection(Class<?> type, int depth) throws IOException, ClassNotFoundException {
+            IntFunction<? extends Collection<Object>> factory = COLLECTIONS.get(type);
+            if (factory == null) {
+                throw new InvalidClassException(type.getName(), "not a supported collection");
+            }
+            int size = count(1);
+            Collection<Object> collection = factory.apply(size);
+            for (int i = 0; i < size; i++) {
+                collection.add(value(depth));
+            }
+            return collection;
+        }
+
+        private Map<Object, Object> map(Class<?> type, int depth) throws IOException, ClassNotFoundException {
+            IntFunction<? extends Map<Object, Object>> factory = MAPS.get(type);
+            if (factory == null) {
+                throw new InvalidClassException(type.getName(), "not a supported map");
+            }
+            int size = count(2);
+            Map<Object, Object> map = factory.apply(size);
+            for (int i = 0; i < size; i++) {
+                Object key = value(depth);
+                map.put(key, value(depth));
+            }
+            return map;
+        }
+
+        private Collection<Object> packed(Class<?> type) throws IOException, ClassNotFoundException {
+            IntFunction<? extends Collection<Object>> factory = COLLECTIONS.get(type);
+            if (factory == null) {
+                throw new InvalidClassException(type.getName(), "not a supported collection");
+            }
+            byte kind = kind(false);
+            int size = count(1);
+            Collection<Object> collection = factory.apply(size);
+            switch (kind) {
+                case INT:
+                    for (int i = 0; i < size; i++) {
+                        collection.add(unzigzag(varint()));
+                    }
+                    break;
+                case LONG:
+                    for (int i = 0; i < size; i++) {
+                        collection.add(unzigzag(varlong()));
+                    }
+                    break;
+                case STRING:
+                    for (int i = 0; i < size; i++) {
+                        collection.add(string());
+                    }
+                    break;
+                default:
+                    for (int i = 0; i < size; i++) {
+                        collection.add(value(kind, 0));
+                    }
+                    break;
+            }
+            return collection;
+        }
+
+        private Map<Object, Object> packedMap(Class<?> type, int depth) throws IOException, ClassNotFoundException {
+            IntFunction<? extends Map<Object, Object>> factory = MAPS.get(type);
+            if (factory == null) {
+                throw new InvalidClassException(type.getName(), "not a supported map");
+            }
+            byte keyKind = kind(true);
+            byte valueKind = kind(true);
+            int size = count(2);
+            Map<Object, Object> map = factory.apply(size);
+            for (int i = 0; i < size; i++) {
+                Object key = keyKind == NULL ? value(depth) : value(keyKind, depth);
+                map.put(key, valueKind == NULL ? value(depth) : value(valueKind, depth));
+            }
+            return map;
+        }
+
+        /**
+         * Read the element kind of a typed sequence: the tag of a string or boxed number or char, or NULL
+         * for tagged elements where allowed.
+         */
+        private byte kind(boolean tagged) throws StreamCorruptedException {
+            byte kind = get();
+            if ((kind < BYTE || kind > STRING) && !(tagged && kind == NULL)) {
+                throw new StreamCorruptedException("Invalid element kind: " + kind);
+            }
+            return kind;
+        }
+
+        private Object object(Schema schema, int depth) throws IOException, ClassNotFoundException {
+            if (schema.canonical != null) {
+                return record(schema, depth);
+            }
+            Object value;
+            try {
+                value = schema.constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new InvalidClassException(schema.type.getName(), "cannot instantiate: " + e);
+            }
+            Field[] fields = schema.fields;
+            char[] kinds = schema.kinds;
+            try {
+                for (int i = 0; i < fields.length; i++) {
+                    Field field = fields[i];
+                    switch (kinds[i]) {
+                        case 'I':
+                            field.setInt(value, unzigzag(varint()));
+                            break;
+                        case 'J':
+                            field.setLong(value, unzigzag(varlong()));
+                            break;
+                        case 'Z':
+                            field.setBoolean(value, get() == TRUE);
+                            break;
+                        case 'D':
+                            field.setDouble(value, Double.longBitsToDouble(fixed64()));
+                            break;
+                        case 'F':
+                            field.setFloat(value, Float.intBitsToFloat(fixed32()));
+                            break;
+                        case 'B':
+                            field.setByte(value, get());
+                            break;
+                        case 'S':
+                            field.setShort(value, (short) unzigzag(varint()));
+                            break;
+                        case 'C':
+                            field.setChar(value, (char) varint());
+                            break;
+                        default:
+                            field.set(value, value(depth));
+                            break;
+                    }
+                }
+            } catch (IllegalAccessException | IllegalArgumentException e) {
+                throw new InvalidObjectException("Cannot restore " + schema.type.getName() + ": " + e.getMessage());
+            }
+            return value;
+        }
+
+        /**
+         * Read the components of a record and pass them to its canonical constructor.
+         */
+        private Object record(Schema schema, int depth) throws IOException, ClassNotFoundException {
+            char[] kinds = schema.kinds;
+            Object[] components = new Object[kinds.length];
+            for (int i = 0; i < kinds.length; i++) {
+                switch (kinds[i]) {
+                    case 'I':
+                        components[i] = unzigzag(varint());
+                        break;
+                    case 'J':
+                        components[i] = unzigzag(varlong());
+                        break;
+                    case 'Z':
+                        components[i] = get() == TRUE;
+                        break;
+                    case 'D':
+                        components[i] = Double.longBitsToDouble(fixed64());
+                        break;
+                    case 'F':
+                        components[i] = Float.intBitsToFloat(fixed32());
+                        break;
+                    case 'B':
+                        components[i] = get();
+                        break;
+                    case 'S':
+                        components[i] = (short) unzigzag(varint());
+                        break;
+                    case 'C':
+                        components[i] = (char) varint();
+                        break;
+                    default:
+                        components[i] = value(depth);
+                        break;
+                }
+            }
+            try {
+                return (Object) schema.canonical.invokeExact(components);
+            } catch (ClassCastException e) {
+                throw new InvalidObjectException("Cannot restore " + schema.type.getName() + ": " + e.getMessage());
+            } catch (Throwable e) {
+                // the canonical constructor rejected the components
+                InvalidObjectException invalid = new InvalidObjectException(
+                        "Cannot restore " + schema.type.getName() + ": " + e);
+                invalid.initCause(e);
+                throw invalid;
+            }
+        }
+
+        private Class<?> classRef() throws IOException, ClassNotFoundException {
+            int ref = varint();
+            if (ref != 0) {
+                return indexed(classes, ref - 1);
+            }
+            Class<?> type = resolve(string());
+            classes.add(type);
+            return type;
+        }
+
+        private Schema schemaRef() throws IOException, ClassNotFoundException {
+            int ref = varint();
+            if (ref != 0) {
+                return indexed(schemas, ref - 1);
+            }
+            String name = string();
+            int fingerprint = fixed32();
+            Class<?> type = resolve(name);
+            Schema schema = SCHEMAS.get(type);
+            if (!schema.isCompact()) {
+                throw new InvalidClassException(name, "not serializable in compact form");
+            }
+            if (schema.fingerprint != fingerprint) {
+                throw new InvalidClassException(name, "local class incompatible: fields, components or serialVersionUID differ");
+            }
+            schemas.add(schema);
+            return schema;
+        }
+
+        private static <T> T indexed(List<T> table, int index) throws StreamCorruptedException {
+            if (index < 0 || index >= table.size()) {
+                throw new StreamCorruptedException("Invalid table reference: " + index);
+            }
+            return table.get(index);
+        }
+
+        private static Class<?> resolve(String name) throws IOException, ClassNotFoundException {
+            Class<?> primitive = PRIMITIVES.get(name);
+            if (primitive != null) {
+                return primitive;
+            }
+            if (RawTypeMapper.isRejectedClass(name)) {
+                throw new InvalidClassException(name, "rejected by deserialization filter");
+            }
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            Resolved cached = RESOLVED.get(name);
+            if (cached != null && cached.loader.get() == loader) {
+                Class<?> type = cached.type.get();
+                if (type != null) {
+                    return type;
+                }
+            }
+            Class<?> type = null;
+            if (loader != null) {
+                try {
+                    type = Class.forName(name, false, loader);
+                } catch (ClassNotFoundException e) {
+                    // fall through to the loader of this library
+                }
+            }
+            if (type == null) {
+                type = Class.forName(name, false, CompactSerializer.class.getClassLoader());
+            }
+            RESOLVED.put(name, new Resolved(loader, type));
+            return type;
+        }
+
+        private String string() throws IOException {
+            int header = varint();
+            if ((header & 1) != 0) {
+                return indexed(strings, header >>> 1);
+            }
+            int length = header >>> 1;
+            if (length > limit - pos) {
+                throw new StreamCorruptedException("String length " + length + " exceeds remaining bytes");
+            }
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            if (strings.size() < MAX_STRINGS) {
+                strings.add(s);
+            }
+            return s;
+        }
+
+        /**
+         * Read an element count and check that the remaining bytes can hold that many elements.
+         */
+        private int count(int minElementSize) throws StreamCorruptedException {
+            int n = varint();
+            if (n < 0 || n > (limit - pos) / minElementSize) {
+                throw new StreamCorruptedException("Element count " + n + " exceeds remaining bytes");
+            }
+            return n;
+        }
+
+        private static int unzigzag(int v) {
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        private static long unzigzag(long v) {
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        private int varint() throws StreamCorruptedException {
+            int result = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = get();
+                result |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+            throw new StreamCorruptedException("Malformed varint");
+        }
+
+        private long varlong() throws StreamCorruptedException {
+            long result = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                byte b = get();
+                result |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+            throw new StreamCorruptedException("Malformed varint");
+        }
+
+        private int fixed32() throws StreamCorruptedException {
+            if (limit - pos < 4) {
+                throw new StreamCorruptedException("Unexpected end of data");
+            }
+            int v = ((buf[pos] & 0xFF) << 24) | ((buf[pos + 1] & 0xFF) << 16) | ((buf[pos + 2] & 0xFF) << 8)
+                    | (buf[pos + 3] & 0xFF);
+            pos += 4;
+            return v;
+        }
+
+        private long fixed64() throws StreamCorruptedException {
+            return ((long) fixed32() << 32) | (fixed32() & 0xFFFFFFFFL);
+        }
+
+        private byte get() throws StreamCorruptedException {
+            if (pos >= limit) {
+                throw new StreamCorruptedException("Unexpected end of data");
+            }
+            return buf[pos++];
+        }
+    }
+
+    private static final class Resolved {
+        final WeakReference<ClassLoader> loader;
+        final WeakReference<Class<?>> type;
+
+        Resolved(ClassLoader loader, Class<?> type) {
+            this.loader = new WeakReference<>(loader);
+            this.type = new WeakReference<>(type);
+        }
+    }
+
+    /**
+     * Serialized form of a class: its fields (or record components) in wire order and how to create an
+     * instance.
+     */
+    private static final class Schema {
+        private static final String[] CUSTOM_METHODS = {"writeObject", "readObject", "readObjectNoData"};
+        private static final String[] REPLACE_METHODS = {"writeReplace", "readResolve"};
+
+        final Class<?> type;
+        final Field[] fields;
+        /** JVM descriptor character of each field or component type; 'L' for references. */
+        final char[] kinds;
+        /** Declared parameterized or generic array type of each reference field or component, or null if none. */
+        final Type[] generics;
+        final int fingerprint;
+        /** Serialization constructor of a class, or null. */
+        final Constructor<?> constructor;
+        /** Record component accessors, each {@code (Object)Object}, or null. */
+        final MethodHandle[] accessors;
+        /** Record canonical constructor spread over the components, {@code (Object[])Object}, or null. */
+        final MethodHandle canonical;
+
+        private Schema(Class<?> type, Field[] fields, char[] kinds, Type[] generics, int fingerprint,
+                       Constructor<?> constructor, MethodHandle[] accessors, MethodHandle canonical) {
+            this.type = type;
+            this.fields = fields;
+            this.kinds = kinds;
+            this.generics = generics;
+            this.fingerprint = fingerprint;
+            this.constructor = constructor;
+            this.accessors = accessors;
+            this.canonical = canonical;
+        }
+
+        /**
+         * @return false if values of the class are embedded as Java serialization (or not serializable)
+         */
+        boolean isCompact() {
+            return constructor != null || canonical != null;
+        }
+
+        static Schema of(Class<?> type) {
+            Schema none = new Schema(type, new Field[0], new char[0], null, 0, null, null, null);
+            if (type.isRecord()) {
+                boolean replaced = Serializable.class.isAssignableFrom(type) && declaresAny(type, REPLACE_METHODS);
+                return replaced ? none : ofRecord(type, none);
+            }
+            if (!Serializable.class.isAssignableFrom(type) || Externalizable.class.isAssignableFrom(type)
+                    || type.isEnum() || type.isArray() || type.isInterface() || type.isHidden()
+                    || Proxy.isProxyClass(type) || Modifier.isAbstract(type.getModifiers())) {
+                return none;
+            }
+            List<Class<?>> hierarchy = new ArrayList<>();
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                if (declaresAny(c, REPLACE_METHODS)) {
+                    return none;
+                }
+                if (Serializable.class.isAssignableFrom(c)) {
+                    if (declaresAny(c, CUSTOM_METHODS) || declaresField(c, "serialPersistentFields")) {
+                        return none;
+                    }
+                    hierarchy.add(0, c);
+                }
+            }
+
+            List<Field> fields = new ArrayList<>();
+            try {
+                for (Class<?> c : hierarchy) {
+                    Field[] declared = c.getDeclaredFields();
+                    Arrays.sort(declared, Comparator.comparing(Field::getName));
+                    for (Field field : declared) {
+                        int modifiers = field.getModifiers();
+                        if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                            field.setAccessible(true);
+                            fields.add(field);
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                // InaccessibleObjectException: the class lives in a module that does not open it
+                return none;
+            }
+            Constructor<?> constructor = serializationConstructor(type);
+            if (constructor == null) {
+                return none;
+            }
+
+            Field[] fieldArray = fields.toArray(new Field[0]);
+            char[] kinds = new char[fieldArray.length];
+            Type[] generics = new Type[fieldArray.length];
+            StringBuilder signature = new StringBuilder(type.getName());
+            for (int i = 0; i < fieldArray.length; i++) {
+                Class<?> fieldType = fieldArray[i].getType();
+                kinds[i] = fieldType.isPrimitive() ? descriptor(fieldType) : 'L';
+                generics[i] = generic(fieldArray[i].getGenericType());
+                signature.append(';').append(fieldArray[i].getName()).append(':').append(fieldType.getName());
+            }
+            long serialVersionUID = ObjectStreamClass.lookup(type).getSerialVersionUID();
+            int fingerprint = 31 * signature.toString().hashCode() + Long.hashCode(serialVersionUID);
+            return new Schema(type, fieldArray, kinds, nullIfEmpty(generics), fingerprint, constructor, null, null);
+        }
+
+        /**
+         * @return the constructor Java serialization would use for the class (the no-arg constructor of its
+         * first non-serializable superclass), or null if the reflection factory is unavailable
+         */
+        private static Constructor<?> serializationConstructor(Class<?> type) {
+            if (NEW_CONSTRUCTOR_FOR_SERIALIZATION == null) {
+                return null;
+            }
+            try {
+                return (Constructor<?>) NEW_CONSTRUCTOR_FOR_SERIALIZATION.invoke(REFLECTION_FACTORY, type);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Compile a record: one accessor per component and the canonical constructor, which validates
+         * the components on reading. Records need not be {@link Serializable}.
+         */
+        private static Schema ofRecord(Class<?> type, Schema none) {
+            RecordComponent[] components = type.getRecordComponents();
+            Class<?>[] componentTypes = new Class<?>[components.length];
+            MethodHandle[] accessors = new MethodHandle[components.length];
+            char[] kinds = new char[components.length];
+            Type[] generics = new Type[components.length];
+            StringBuilder signature = new StringBuilder(type.getName());
+            MethodHandle canonical;
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+                for (int i = 0; i < components.length; i++) {
+                    componentTypes[i] = components[i].getType();
+                    accessors[i] = lookup.unreflect(components[i].getAccessor())
+                            .asType(MethodType.methodType(Object.class, Object.class));
+                    kinds[i] = componentTypes[i].isPrimitive() ? descriptor(componentTypes[i]) : 'L';
+                    generics[i] = generic(components[i].getGenericType());
+                    signature.append(';').append(components[i].getName()).append(':')
+                            .append(componentTypes[i].getName());
+                }
+                canonical = lookup.findConstructor(type, MethodType.methodType(void.class, componentTypes))
+                        .asSpreader(Object[].class, components.length)
+                        .asType(MethodType.methodType(Object.class, Object[].class));
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // IllegalAccessException: the record lives in a module that does not open it
+                return none;
+            }
+            return new Schema(type, null, kinds, nullIfEmpty(generics), signature.toString().hashCode(), null,
+                    accessors, canonical);
+        }
+
+        private static Type[] nullIfEmpty(Type[] generics) {
+            for (Type generic : generics) {
+                if (generic != null) {
+                    return generics;
+                }
+            }
+            return null;
+        }
+
+        private static char descriptor(Class<?> primitive) {
+            if (primitive == int.class) {
+                return 'I';
+            } else if (primitive == long.class) {
+                return 'J';
+            } else if (primitive == boolean.class) {
+                return 'Z';
+            } else if (primitive == double.class) {
+                return 'D';
+            } else if (primitive == float.class) {
+                return 'F';
+            } else if (primitive == byte.class) {
+                return 'B';
+            } else if (primitive == short.class) {
+                return 'S';
+            }
+            return 'C';
+        }
+
+        private static boolean declaresAny(Class<?> type, String[] names) {
+            for (Method method : type.getDeclaredMethods()) {
+                if (!Modifier.isStatic(method.getModifiers())) {
+                    for (String name : names) {
+                        if (name.equals(method.getName())) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static boolean declaresField(Class<?> type, String name) {
+            for (Field field : type.getDeclaredFields()) {
+                if (field.getName().equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -1,10 +1,17 @@
 package cn.huiwings.tcprest.mapper;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 /**
+ * Transfers an exception as its message only (no stack trace); as bytes, the message in UTF-8.
+ *
  * @author Weinan Li
  * @created_at 08 20 2012
  */
-public class ExceptionMapper implements Mapper {
+public class ExceptionMapper implements BinaryMapper {
     @Override
     public Object stringToObject(String param) {
         return new Exception(param);
@@ -14,4 +21,17 @@ public class ExceptionMapper implements Mapper {
     public String objectToString(Object object) {
         return ((Exception) object).getMessage();
     }
+
+    @Override
+    public void writeObject(Object object, OutputStream out) throws IOException {
+        String message = ((Exception) object).getMessage();
+        if (message != null) {
+            out.write(message.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Override
+    public Object readObject(ByteBuffer in) {
+        return new Exception(StandardCharsets.UTF_8.decode(in).toString());
+    }
 }
@@ -20,7 +20,7 @@ package cn.huiwings.tcprest.mapper;
  * <ol>
  *   <li><b>User-defined Mapper</b> (highest priority) - registered via this interface</li>
  *   <li><b>Collection interfaces</b> - List, Map, Set (built-in support)</li>
- *   <li><b>Auto-serialization</b> - {@link java.io.Serializable} types via {@link RawTypeMapper}</li>
+ *   <li><b>Auto-serialization</b> - {@link java.io.Serializable} types via {@link CompactMapper}</li>
  *   <li><b>Built-in types</b> - primitives, wrappers, String, arrays</li>
  * </ol>
  *
@@ -67,7 +67,7 @@ package cn.huiwings.tcprest.mapper;
  *
  * <p><b>Built-in Mappers:</b></p>
  * <ul>
- *   <li>{@link RawTypeMapper} - Java serialization for {@link java.io.Serializable} types</li>
+ *   <li>{@link RawTypeMapper} - Java serialization for {@link java.io.Serializable} types; {@link CompactMapper} writes the compact format</li>
  *   <li>{@link ExceptionMapper} - Exception message transfer (security: no stack traces)</li>
  * </ul>
  *
@@ -16,7 +16,8 @@ import java.util.*;
  *
  * <p><b>Included Mappers:</b></p>
  * <ul>
- *   <li>{@link RawTypeMapper} - For collections (List, Set, Map, Queue) and custom Serializable objects</li>
+ *   <li>{@link RawTypeMapper} - For collections (List, Set, Map, Queue); reads Java serialization and the
+ *       compact format, writes Java serialization</li>
  *   <li>{@link ExceptionMapper} - For exception message transfer (security: no stack traces)</li>
  * </ul>
  *
@@ -33,7 +34,8 @@ public class MapperHelper {
     public static final HashMap<String, Mapper> DEFAULT_MAPPERS = new HashMap<String, Mapper>();
 
     static {
-        // Collection mappers (use Java serialization for complex types)
+        // Collection mappers (Java serialization, which every peer reads; the codecs write the compact
+        // format themselves where the peer agreed to it)
         DEFAULT_MAPPERS.put(Collection.class.getCanonicalName(), new RawTypeMapper());
         DEFAULT_MAPPERS.put(Set.class.getCanonicalName(), new RawTypeMapper());
         DEFAULT_MAPPERS.put(List.class.getCanonicalName(), new RawTypeMapper());
@@ -1,6 +1,7 @@
 package cn.huiwings.tcprest.mapper;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.Base64;
 
 /**
@@ -66,12 +67,16 @@ import java.util.Base64;
  * </ul>
  *
  * <p><b>Format:</b></p>
- * <p>Output is standard Java serialization Base64-encoded:</p>
+ * <p>As a {@link BinaryMapper} the output is plain Java serialization bytes; the string form is the
+ * same bytes Base64-encoded:</p>
  * <pre>
  * Binary serialization → Base64 encoding → String
  * rO0ABXNyABFjb20uZXhhbXBsZS5Vc2VyAAAAAAAAAAECAAJJAANhZ2VMAANuYW1l...
  * </pre>
  *
+ * <p>Reading also accepts the {@link CompactSerializer} format. The built-in auto-serialization writes
+ * that format ({@link CompactMapper}) only to peers that agreed to it in the capability handshake.</p>
+ *
  * <p><b>Limitations:</b></p>
  * <ul>
  *   <li><b>Java-only</b> - Not compatible with non-Java clients</li>
@@ -103,7 +108,7 @@ import java.util.Base64;
  * @see java.io.Serializable
  * @see cn.huiwings.tcprest.parser.v2.ProtocolV2Parser
  */
-public class RawTypeMapper implements Mapper {
+public class RawTypeMapper implements BinaryMapper {
     /**
      * Deserialize Base64-encoded Java serialization data back to object.
      *
@@ -129,8 +134,13 @@ public class RawTypeMapper implements Mapper {
     private static final ObjectInputFilter DESERIALIZATION_FILTER = info -> {
         Class<?> serialClass = info.serialClass();
         if (serialClass == null) return ObjectInputFilter.Status.ALLOWED;
-        String name = serialClass.getName();
-        boolean reject = name.equals("java.lang.ProcessBuilder")
+        return isRejectedClass(serialClass.getName())
+                ? ObjectInputFilter.Status.REJECTED : ObjectInputFilter.Status.UNDECIDED;
+    };
+
+    /** Class names refused by {@link #DESERIALIZATION_FILTER} and by {@link CompactSerializer}. */
+    static boolean isRejectedClass(String name) {
+        return name.equals("java.lang.ProcessBuilder")
                 || name.equals("java.lang.Runtime")
                 || name.startsWith("javax.management.")
                 || name.startsWith("java.util.prefs.")
@@ -138,8 +148,7 @@ public class RawTypeMapper implements Mapper {
                 || name.startsWith("javax.swing.")
                 || name.startsWith("com.sun.")
                 || name.startsWith("sun.");
-        return reject ? ObjectInputFilter.Status.REJECTED : ObjectInputFilter.Status.UNDECIDED;
-    };
+    }
 
     /**
      * CodeQL java/unsafe-deserialization: mitigated via {@link #DESERIALIZATION_FILTER}.
@@ -148,10 +157,8 @@ public class RawTypeMapper implements Mapper {
     @Override
     public Object stringToObject(String param) {
         try {
-            ByteArrayInputStream source = new ByteArrayInputStream(Base64.getDecoder().decode(param));
-            ObjectInputStream is = new ObjectInputStream(source);
-            is.setObjectInputFilter(DESERIALIZATION_FILTER);
-            return is.readObject();
+            byte[] data = Base64.getDecoder().decode(param);
+            return fromBytes(data, 0, data.length);
         } catch (IOException e) {
             e.printStackTrace();
         } catch (ClassNotFoundException e) {
@@ -191,15 +198,81 @@ public class RawTypeMapper implements Mapper {
     @Override
     public String objectToString(Object object) {
         try {
-            ByteArrayOutputStream target = new ByteArrayOutputStream();
-            ObjectOutputStream os = new ObjectOutputStream(target);
-            os.writeObject(object);
-            os.flush();
-            os.close();
-            return Base64.getEncoder().encodeToString(target.toByteArray());
+            return Base64.getEncoder().encodeToString(toByteArray(object));
         } catch (IOException e) {
             e.printStackTrace();
         }
         return null;
     }
+
+    /**
+     * Write plain Java serialization bytes.
+     *
+     * @param object the object to serialize
+     * @param out destination (left open)
+     * @throws IOException if the object graph is not serializable
+     * @since 2.0.0
+     */
+    @Override
+    public void writeObject(Object object, OutputStream out) throws IOException {
+        ObjectOutputStream os = new ObjectOutputStream(out);
+        os.writeObject(object);
+        os.flush();
+    }
+
+    /**
+     * Read plain Java serialization bytes, applying the class filter of {@link #fromBytes}.
+     *
+     * @param in serialized object, from position to limit
+     * @return deserialized object
+     * @throws IOException if the data is malformed or a class is rejected
+     * @throws ClassNotFoundException if a class is missing
+     * @since 2.0.0
+     */
+    @Override
+    public Object readObject(ByteBuffer in) throws IOException, ClassNotFoundException {
+        if (in.hasArray()) {
+            Object result = fromBytes(in.array(), in.arrayOffset() + in.position(), in.remaining());
+            in.position(in.limit());
+            return result;
+        }
+        byte[] data = new byte[in.remaining()];
+        in.get(data);
+        return fromBytes(data, 0, data.length);
+    }
+
+    /**
+     * Serialize an object to plain Java serialization bytes (no Base64), as carried by Protocol V3.
+     *
+     * @param object the object to serialize
+     * @return serialization bytes
+     * @throws IOException if the object graph is not serializable
+     */
+    public static byte[] toBytes(Object object) throws IOException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        ObjectOutputStream os = new ObjectOutputStream(target);
+        os.writeObject(object);
+        os.close();
+        return target.toByteArray();
+    }
+
+    /**
+     * Deserialize Java serialization bytes, or bytes in the {@link CompactSerializer} format written by
+     * {@link CompactMapper}, applying the same class filter as {@link #stringToObject(String)}.
+     *
+     * @param data source array
+     * @param offset start of the serialized object
+     * @param length number of bytes
+     * @return deserialized object
+     * @throws IOException if the data is malformed or a class is rejected
+     * @throws ClassNotFoundException if a class is missing
+     */
+    public static Object fromBytes(byte[] data, int offset, int length) throws IOException, ClassNotFoundException {
+        if (CompactSerializer.isCompact(data, offset, length)) {
+            return CompactSerializer.read(data, offset, length);
+        }
+        ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(data, offset, length));
+        is.setObjectInputFilter(DESERIALIZATION_FILTER);
+        return is.readObject();
+    }
 }
@@ -2,6 +2,10 @@ package cn.huiwings.tcprest.parser.v2;
 
 import cn.huiwings.tcprest.exception.ProtocolException;
 import cn.huiwings.tcprest.parser.RequestParser;
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.protocol.v2.BinaryValues;
+import cn.huiwings.tcprest.protocol.v2.DispatchTable;
+import cn.huiwings.tcprest.protocol.v2.PackedArrays;
 import cn.huiwings.tcprest.protocol.v2.ProtocolV2Constants;
 import cn.huiwings.tcprest.protocol.v2.TypeSignatureUtil;
 import cn.huiwings.tcprest.security.ProtocolSecurity;
@@ -58,7 +62,12 @@ import java.util.Base64;
 public class ProtocolV2Parser implements RequestParser {
 
     private SecurityConfig securityConfig;
-    private java.util.Map<String, cn.huiwings.tcprest.mapper.Mapper> mappers;
+    protected java.util.Map<String, cn.huiwings.tcprest.mapper.Mapper> mappers;
+    private volatile DispatchTable dispatchTable = DispatchTable.EMPTY;
+
+    // Stateless; reads Java serialization and the compact format
+    private static final cn.huiwings.tcprest.mapper.RawTypeMapper SERIALIZED_READER =
+            new cn.huiwings.tcprest.mapper.RawTypeMapper();
 
     /**
      * Create parser with default security (no checksum, no whitelist).
@@ -114,6 +123,22 @@ public class ProtocolV2Parser implements RequestParser {
         return securityConfig;
     }
 
+    /**
+     * Set the table of registered resource methods (built by the server on registration).
+     *
+     * @param dispatchTable dispatch table (null = empty)
+     */
+    public void setDispatchTable(DispatchTable dispatchTable) {
+        this.dispatchTable = dispatchTable != null ? dispatchTable : DispatchTable.EMPTY;
+    }
+
+    /**
+     * @return the current dispatch table
+     */
+    public DispatchTable getDispatchTable() {
+        return dispatchTable;
+    }
+
     /**
      * Parse context from V2 request.
      *
@@ -128,7 +153,8 @@ public class ProtocolV2Parser implements RequestParser {
      * </ul>
      *
      * <p>Uses the type signature to find the exact method, solving the
-     * overloading problem.</p>
+     * overloading problem. Methods of registered resources are found with one lookup
+     * in the {@link DispatchTable}.</p>
      *
      * @param request the v2 request string
      * @return Context object with extracted information
@@ -183,7 +209,7 @@ public class ProtocolV2Parser implements RequestParser {
             String metaWrapped = parts[2];
             String paramsArray = parts.length > 3 ? parts[3] : "[]";
 
-            // Step 4: Unwrap and decode metadata from {{base64(...)}}
+            // Step 4: Unwrap metadata from {{base64(...)}}
             if (!metaWrapped.startsWith(ProtocolV2Constants.PARAM_WRAPPER_START) ||
                 !metaWrapped.endsWith(ProtocolV2Constants.PARAM_WRAPPER_END)) {
                 throw new ProtocolException("Invalid metadata format, expected {{...}}: " + metaWrapped);
@@ -193,71 +219,20 @@ public class ProtocolV2Parser implements RequestParser {
                 ProtocolV2Constants.PARAM_WRAPPER_START.length(),
                 metaWrapped.length() - ProtocolV2Constants.PARAM_WRAPPER_END.length()
             );
-            String meta = ProtocolSecurity.decodeComponent(metaBase64);
-
-            // Step 5: Parse class name and method signature
-            int slashIndex = meta.indexOf(ProtocolV2Constants.CLASS_METHOD_SEPARATOR);
-            if (slashIndex == -1) {
-                throw new ProtocolException("Missing class/method separator: " + meta);
-            }
-
-            String className = meta.substring(0, slashIndex);
-            String methodPart = meta.substring(slashIndex + 1);
-
-            // Step 6: Validate class name and method name
-            // Parse method name and signature
-            // Format: methodName(SIGNATURE)
-            int firstParenIndex = methodPart.indexOf('(');
-            if (firstParenIndex == -1) {
-                throw new ProtocolException("Missing method signature: " + methodPart);
-            }
-
-            String methodName = methodPart.substring(0, firstParenIndex);
-
-            // Validate class name
-            if (!ProtocolSecurity.isValidClassName(className)) {
-                throw new cn.huiwings.tcprest.exception.SecurityException(
-                    "Invalid class name format (possible injection attempt): " + className
-                );
-            }
-
-            // Check class whitelist if enabled
-            if (!securityConfig.isClassAllowed(className)) {
-                throw new cn.huiwings.tcprest.exception.SecurityException(
-                    "Class not in whitelist: " + className
-                );
-            }
-
-            // Validate method name
-            if (!ProtocolSecurity.isValidMethodName(methodName)) {
-                throw new cn.huiwings.tcprest.exception.SecurityException(
-                    "Invalid method name format (possible injection attempt): " + methodName
-                );
-            }
-
-            // Step 7: Parse signature
-            // Find the signature (between first '(' and first ')')
-            int signatureEnd = methodPart.indexOf(')', firstParenIndex);
-            if (signatureEnd == -1) {
-                throw new ProtocolException("Malformed method signature: " + methodPart);
-            }
-
-            String signature = methodPart.substring(firstParenIndex, signatureEnd + 1);
-
-            // Step 8: Load class
-            Class<?> clazz = Class.forName(className);
 
-            // Step 9: Find method by signature
-            Method method = TypeSignatureUtil.findMethodBySignature(clazz, methodName, signature);
+            // Step 5: Resolve the target method, by token in the dispatch table if possible
+            DispatchTable.Entry entry = dispatchTable.getByToken(metaBase64);
+            entry = entry != null ? checkAllowed(entry) : resolve(ProtocolSecurity.decodeComponent(metaBase64));
 
-            // Step 10: Parse parameters from array format
-            Object[] params = parseParametersArray(paramsArray, method.getParameterTypes());
+            // Step 6: Parse parameters from array format
+            Object[] params = parseParametersArray(paramsArray, entry);
 
-            // Step 11: Create and return context
+            // Step 7: Create and return context
             Context context = new Context();
-            context.setTargetClass(clazz);
-            context.setTargetMethod(method);
+            context.setTargetClass(entry.getTargetClass());
+            context.setTargetMethod(entry.getMethod());
             context.setParams(params);
+            context.setFeatures(parseFeatures(parts[ProtocolV2Constants.REQUEST_FEATURES_INDEX]));
 
             return context;
         } catch (ClassNotFoundException | NoSuchMethodException e) {
@@ -275,17 +250,112 @@ public class ProtocolV2Parser implements RequestParser {
         }
     }
 
+    /**
+     * Resolve decoded metadata {@code ClassName/methodName(TYPE_SIGNATURE)} to its target method.
+     *
+     * <p>Methods of registered resources come straight from the {@link DispatchTable}. Anything else is
+     * validated (class name format, whitelist, method name format), loaded and looked up by signature;
+     * metadata that cannot be resolved is remembered by the table and rejected without class loading
+     * next time.</p>
+     *
+     * @param meta decoded metadata
+     * @return the resolved target
+     * @throws ClassNotFoundException if the class cannot be found
+     * @throws NoSuchMethodException if the method cannot be found
+     * @throws ProtocolException if the metadata is malformed
+     */
+    protected DispatchTable.Entry resolve(String meta) throws ClassNotFoundException, NoSuchMethodException {
+        DispatchTable table = dispatchTable;
+        DispatchTable.Entry entry = table.get(meta);
+        if (entry != null) {
+            return checkAllowed(entry);
+        }
+
+        // Parse class name and method signature: ClassName/methodName(SIGNATURE)
+        int slashIndex = meta.indexOf(ProtocolV2Constants.CLASS_METHOD_SEPARATOR);
+        if (slashIndex == -1) {
+            throw new ProtocolException("Missing class/method separator: " + meta);
+        }
+
+        String className = meta.substring(0, slashIndex);
+        String methodPart = meta.substring(slashIndex + 1);
+
+        int firstParenIndex = methodPart.indexOf('(');
+        if (firstParenIndex == -1) {
+            throw new ProtocolException("Missing method signature: " + methodPart);
+        }
+
+        String methodName = methodPart.substring(0, firstParenIndex);
+
+        // Validate class name
+        if (!ProtocolSecurity.isValidClassName(className)) {
+            throw new cn.huiwings.tcprest.exception.SecurityException(
+                "Invalid class name format (possible injection attempt): " + className
+            );
+        }
+
+        // Check class whitelist if enabled
+        if (!securityConfig.isClassAllowed(className)) {
+            throw new cn.huiwings.tcprest.exception.SecurityException(
+                "Class not in whitelist: " + className
+            );
+        }
+
+        // Validate method name
+        if (!ProtocolSecurity.isValidMethodName(methodName)) {
+            throw new cn.huiwings.tcprest.exception.SecurityException(
+                "Invalid method name format (possible injection attempt): " + methodName
+            );
+        }
+
+        // Find the signature (between first '(' and first ')')
+        int signatureEnd = methodPart.indexOf(')', firstParenIndex);
+        if (signatureEnd == -1) {
+            throw new ProtocolException("Malformed method signature: " + methodPart);
+        }
+
+        String signature = methodPart.substring(firstParenIndex, signatureEnd + 1);
+
+        // Known failure: reject without loading classes again
+        Exception failure = table.getFailure(meta);
+        if (failure instanceof ClassNotFoundException) {
+            throw (ClassNotFoundException) failure;
+        } else if (failure instanceof NoSuchMethodException) {
+            throw (NoSuchMethodException) failure;
+        }
+
+        try {
+            Class<?> clazz = Class.forName(className);
+            Method method = TypeSignatureUtil.findMethodBySignature(clazz, methodName, signature);
+            return DispatchTable.entry(clazz, method, mappers);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            table.recordFailure(meta, e);
+            throw e;
+        }
+    }
+
+    private DispatchTable.Entry checkAllowed(DispatchTable.Entry entry) {
+        String className = entry.getTargetClass().getName();
+        if (!securityConfig.isClassAllowed(className)) {
+            throw new cn.huiwings.tcprest.exception.SecurityException(
+                "Class not in whitelist: " + className
+            );
+        }
+        return entry;
+    }
+
     /**
      * Parse parameter array into object array.
      *
      * <p><b>Format:</b> [base64_1,base64_2,base64_3]</p>
      *
      * @param paramsArray the parameters array string (e.g., "[p1,p2,p3]")
-     * @param paramTypes the expected parameter types
+     * @param entry the resolved target method
      * @return array of parameter objects
      * @throws ProtocolException if parsing fails
      */
-    private Object[] parseParametersArray(String paramsArray, Class<?>[] paramTypes) throws ProtocolException {
+    private Object[] parseParametersArray(String paramsArray, DispatchTable.Entry entry) throws ProtocolException {
+        Class<?>[] paramTypes = entry.getParameterTypes();
         try {
             if (paramsArray == null || paramsArray.isEmpty()) {
                 paramsArray = "[]";
@@ -327,7 +397,8 @@ public class ProtocolV2Parser implements RequestParser {
             Object[] params = new Object[paramTypes.length];
 
             for (int i = 0; i < paramParts.length; i++) {
-                params[i] = parseParameter(paramParts[i].trim(), paramTypes[i]);
+                params[i] = parseParameter(paramParts[i].trim(), paramTypes[i],
+                        entry.getParameterKind(i), entry.getParameterMapper(i));
             }
 
             return params;
@@ -339,6 +410,25 @@ public class ProtocolV2Parser implements RequestParser {
         }
     }
 
+    /**
+     * Read the feature flags of a request ({@code V2|FEATURES|...}). Older clients always send "0";
+     * anything that is not a small decimal number announces no features.
+     *
+     * @param field the flags field
+     * @return feature bits this server supports too
+     */
+    protected static int parseFeatures(String field) {
+        if (field.isEmpty() || field.length() > 3) {
+            return 0;
+        }
+        for (int i = 0; i < field.length(); i++) {
+            if (field.charAt(i) < '0' || field.charAt(i) > '9') {
+                return 0;
+            }
+        }
+        return Integer.parseInt(field) & Capabilities.SUPPORTED_FEATURES;
+    }
+
     /**
      * Parse a single parameter with intelligent type mapping.
      *
@@ -346,18 +436,22 @@ public class ProtocolV2Parser implements RequestParser {
      * <ol>
      *   <li><b>Null marker:</b> "~" → null (tilde, not in Base64 charset)</li>
      *   <li><b>Empty string:</b> "" → "" (consecutive commas in array)</li>
-     *   <li><b>User-defined Mapper:</b> Use custom mapper if provided</li>
-     *   <li><b>Common collection interfaces:</b> List, Map, Set, etc. → auto-deserialization via RawTypeMapper</li>
-     *   <li><b>Auto Deserialization:</b> For Serializable types, use RawTypeMapper</li>
-     *   <li><b>Built-in conversion:</b> For primitives, arrays, and other types</li>
+     *   <li><b>Binary marker:</b> "!" + URL-safe Base64 → byte[] or ByteBuffer ({@link BinaryValues});
+     *       without the marker the bytes are Arrays.toString() text, as older clients send them</li>
+     *   <li><b>Declared type:</b> the {@link DispatchTable.ParameterKind} resolved for the parameter
+     *       (primitives and String, object arrays, user-defined mapper, collection interfaces,
+     *       Serializable types, fallback to text)</li>
      * </ol>
      *
      * @param paramStr the parameter string (base64-encoded or special marker)
      * @param paramType the expected parameter type
+     * @param kind how the parameter is decoded
+     * @param mapper registered mapper for the parameter type, null if built-in rules apply
      * @return parsed parameter object
      * @throws ProtocolException if parsing fails
      */
-    private Object parseParameter(String paramStr, Class<?> paramType) throws ProtocolException {
+    private Object parseParameter(String paramStr, Class<?> paramType, DispatchTable.ParameterKind kind,
+                                  cn.huiwings.tcprest.mapper.Mapper mapper) throws ProtocolException {
         try {
             if (paramStr == null) {
                 throw new ProtocolException("Parameter cannot be null");
@@ -373,56 +467,46 @@ public class ProtocolV2Parser implements RequestParser {
                 return null;
             }
 
-            // Priority 1: Primitives, wrappers, String, primitive arrays, String[] (fast path).
-            // Wire format is Base64(toString) or Base64("[...]"); decode once then convertToType.
-            if (paramType == String.class || isWrapperType(paramType) || paramType.isPrimitive() ||
-                (paramType.isArray() && isPrimitiveOrStringComponent(paramType.getComponentType()))) {
-                String standardBase64 = convertUrlSafeToStandard(paramStr);
-                String decoded = new String(Base64.getDecoder().decode(standardBase64));
-                return convertToType(decoded, paramType);
+            // Raw bytes: byte[] or ByteBuffer
+            if (BinaryValues.isToken(paramStr)) {
+                return BinaryValues.fromToken(paramStr, paramType);
             }
 
-            // Priority 2: Object arrays (e.g. PersonDto[]) - serialized as Base64 by client, not "[...]" format.
-            if (paramType.isArray()) {
-                String standardBase64 = convertUrlSafeToStandard(paramStr);
-                cn.huiwings.tcprest.mapper.RawTypeMapper rawMapper = new cn.huiwings.tcprest.mapper.RawTypeMapper();
-                return rawMapper.stringToObject(standardBase64);
+            // Packed primitive array
+            if (PackedArrays.isToken(paramStr)) {
+                return PackedArrays.fromToken(paramStr, paramType);
             }
 
-            // Priority 3: User-defined Mapper
-            if (mappers != null) {
-                cn.huiwings.tcprest.mapper.Mapper mapper = mappers.get(paramType.getCanonicalName());
-                if (mapper != null) {
-                    String standardBase64 = convertUrlSafeToStandard(paramStr);
-                    if (mapper instanceof cn.huiwings.tcprest.mapper.RawTypeMapper) {
-                        return mapper.stringToObject(standardBase64);
+            String standardBase64 = convertUrlSafeToStandard(paramStr);
+            switch (kind) {
+                case SERIALIZED:
+                    // Object arrays, collections, Serializable types and RawTypeMapper: compact or Java
+                    // serialization; unreadable bytes fail the request instead of passing null
+                    return (mapper instanceof cn.huiwings.tcprest.mapper.BinaryMapper
+                            ? (cn.huiwings.tcprest.mapper.BinaryMapper) mapper : SERIALIZED_READER)
+                            .readObject(java.nio.ByteBuffer.wrap(Base64.getDecoder().decode(standardBase64)));
+                case MAPPER:
+                    if (mapper instanceof cn.huiwings.tcprest.mapper.BinaryMapper) {
+                        return ((cn.huiwings.tcprest.mapper.BinaryMapper) mapper)
+                                .readObject(java.nio.ByteBuffer.wrap(Base64.getDecoder().decode(standardBase64)));
                     }
-                    String decoded = new String(Base64.getDecoder().decode(standardBase64));
-                    return mapper.stringToObject(decoded);
-                }
-            }
-
-            // Priority 4: Common collection interfaces (List, Map, Set, Deque, etc.)
-            if (isCommonCollectionInterface(paramType)) {
-                String standardBase64 = convertUrlSafeToStandard(paramStr);
-                cn.huiwings.tcprest.mapper.RawTypeMapper rawMapper = new cn.huiwings.tcprest.mapper.RawTypeMapper();
-                return rawMapper.stringToObject(standardBase64);
-            }
-
-            // Priority 5: Auto Deserialization for Serializable types (non-array)
-            if (java.io.Serializable.class.isAssignableFrom(paramType) &&
-                paramType != String.class &&
-                !paramType.isArray() &&
-                !isWrapperType(paramType)) {
-                String standardBase64 = convertUrlSafeToStandard(paramStr);
-                cn.huiwings.tcprest.mapper.RawTypeMapper rawMapper = new cn.huiwings.tcprest.mapper.RawTypeMapper();
-                return rawMapper.stringToObject(standardBase64);
+                    return mapper.stringToObject(new String(Base64.getDecoder().decode(standardBase64)));
+                case BINARY:
+                    // Clients without the binary feature send Arrays.toString() text of the bytes
+                    return BinaryValues.fromBytes((byte[]) convertToType(
+                            new String(Base64.getDecoder().decode(standardBase64)), byte[].class), paramType);
+                case PACKED_ARRAY:
+                    // Clients without the packed feature send multi-dimensional arrays serialized
+                    if (paramType.getComponentType().isArray()) {
+                        return SERIALIZED_READER.readObject(
+                                java.nio.ByteBuffer.wrap(Base64.getDecoder().decode(standardBase64)));
+                    }
+                    // and one dimension as Arrays.toString() text
+                    return convertToType(new String(Base64.getDecoder().decode(standardBase64)), paramType);
+                default:
+                    // Wire format is Base64(toString) or Base64("[...]"); decode once then convertToType
+                    return convertToType(new String(Base64.getDecoder().decode(standardBase64)), paramType);
             }
-
-            // Priority 6: Fallback — decode and convert (e.g. unknown types → string)
-            String standardBase64 = convertUrlSafeToStandard(paramStr);
-            String decoded = new String(Base64.getDecoder().decode(standardBase64));
-            return convertToType(decoded, paramType);
         } catch (Exception e) {
             if (e instanceof ProtocolException) {
                 throw (ProtocolException) e;
@@ -458,13 +542,13 @@ public class ProtocolV2Parser implements RequestParser {
      * @param clazz the class to check
      * @return true if wrapper type
      */
-    private boolean isWrapperType(Class<?> clazz) {
+    protected boolean isWrapperType(Class<?> clazz) {
         return clazz == Integer.class || clazz == Long.class || clazz == Double.class ||
                clazz == Float.class || clazz == Boolean.class || clazz == Byte.class ||
                clazz == Short.class || clazz == Character.class;
     }
 
-    private boolean isPrimitiveOrStringComponent(Class<?> componentType) {
+    protected boolean isPrimitiveOrStringComponent(Class<?> componentType) {
         return componentType == int.class || componentType == long.class
             || componentType == double.class || componentType == float.class
             || componentType == byte.class || componentType == short.class
@@ -495,7 +579,7 @@ public class ProtocolV2Parser implements RequestParser {
      * @param clazz the class to check
      * @return true if it's a common collection interface
      */
-    private boolean isCommonCollectionInterface(Class<?> clazz) {
+    protected boolean isCommonCollectionInterface(Class<?> clazz) {
         return clazz == java.util.List.class ||
                clazz == java.util.Map.class ||
                clazz == java.util.Set.class ||
@@ -511,7 +595,7 @@ public class ProtocolV2Parser implements RequestParser {
      * @param targetType the target type
      * @return converted object
      */
-    private Object convertToType(String value, Class<?> targetType) {
+    protected Object convertToType(String value, Class<?> targetType) {
         if (value == null) {
             return null;
         }
@@ -597,6 +681,24 @@ public class ProtocolV2Parser implements RequestParser {
                 array[i] = Boolean.parseBoolean(parts[i].trim());
             }
             return array;
+        } else if (componentType == byte.class) {
+            byte[] array = new byte[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                array[i] = Byte.parseByte(parts[i].trim());
+            }
+            return array;
+        } else if (componentType == short.class) {
+            short[] array = new short[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                array[i] = Short.parseShort(parts[i].trim());
+            }
+            return array;
+        } else if (componentType == float.class) {
+            float[] array = new float[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                array[i] = Float.parseFloat(parts[i].trim());
+            }
+            return array;
         } else if (componentType == String.class) {
             String[] array = new String[parts.length];
             for (int i = 0; i < parts.length; i++) {
@@ -0,0 +1,170 @@
+package cn.huiwings.tcprest.parser.v3;
+
+import cn.huiwings.tcprest.exception.ProtocolException;
+import cn.huiwings.tcprest.mapper.BinaryMapper;
+import cn.huiwings.tcprest.mapper.Mapper;
+import cn.huiwings.tcprest.mapper.RawTypeMapper;
+import cn.huiwings.tcprest.parser.v2.ProtocolV2Parser;
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.protocol.v2.BinaryValues;
+import cn.huiwings.tcprest.protocol.v2.DispatchTable;
+import cn.huiwings.tcprest.protocol.v2.PackedArrays;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Frames;
+import cn.huiwings.tcprest.security.SecurityConfig;
+import cn.huiwings.tcprest.server.Context;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Protocol V3 Request Parser.
+ *
+ * <p>Parses binary request payloads produced by {@link cn.huiwings.tcprest.codec.v3.ProtocolV3Codec}.
+ * Validation (class/method names, whitelist, CHK, SIG) and the per-parameter decoding priorities are
+ * those of {@link ProtocolV2Parser}; only the encoding differs: parameters arrive as raw UTF-8 text
+ * or plain Java serialization bytes, read in place without Base64 or string splitting.</p>
+ *
+ * <p>Extends {@link ProtocolV2Parser}, so {@link #parse(String)} still parses V2 lines.</p>
+ *
+ * @author Weinan Li
+ * @since 2.0.0
+ */
+public class ProtocolV3Parser extends ProtocolV2Parser {
+
+    /**
+     * Create parser with default security (no checksum, no whitelist).
+     */
+    public ProtocolV3Parser() {
+        super();
+    }
+
+    /**
+     * Create parser with mappers support.
+     *
+     * @param mappers mapper registry (optional)
+     */
+    public ProtocolV3Parser(Map<String, Mapper> mappers) {
+        super(mappers);
+    }
+
+    /**
+     * Create parser with custom security configuration and mappers.
+     *
+     * @param securityConfig security configuration
+     * @param mappers mapper registry (optional)
+     */
+    public ProtocolV3Parser(SecurityConfig securityConfig, Map<String, Mapper> mappers) {
+        super(securityConfig, mappers);
+    }
+
+    /**
+     * Parse context from a V3 request payload.
+     *
+     * @param payload the request payload (frame header stripped)
+     * @return Context object with extracted information
+     * @throws ClassNotFoundException if class cannot be found
+     * @throws NoSuchMethodException if method cannot be found
+     * @throws ProtocolException if parsing fails
+     */
+    public Context parse(byte[] payload) throws ClassNotFoundException, NoSuchMethodException {
+        try {
+            if (payload == null || payload.length < ProtocolV3Constants.PAYLOAD_HEADER_LENGTH) {
+                throw new ProtocolException("V3 request too short");
+            }
+            ProtocolV3Frames.Reader reader = new ProtocolV3Frames.Reader(payload);
+            int version = reader.readByte();
+            if (version != ProtocolV3Constants.VERSION) {
+                throw new ProtocolException("Not a V3 request: version " + version);
+            }
+            int flags = reader.readByte();
+            if ((flags & ProtocolV3Constants.FLAG_RESPONSE) != 0) {
+                throw new ProtocolException("Not a V3 request: response flag set");
+            }
+            reader.readByte(); // status, unused in requests
+
+            // Step 1: Metadata; validated and resolved after the segments are verified
+            String meta = reader.readShortString(StandardCharsets.UTF_8);
+
+            // Step 3: Locate parameter blocks, then verify CHK/SIG before decoding any of them
+            int count = reader.readShort();
+            int[] offsets = new int[count];
+            int[] lengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                lengths[i] = reader.readBlock();
+                offsets[i] = reader.position() - Math.max(lengths[i], 0);
+            }
+            ProtocolV3Frames.verifySegments(reader, getSecurityConfig());
+
+            // Step 4: Resolve method and decode parameters
+            DispatchTable.Entry entry = resolve(meta);
+            Class<?>[] paramTypes = entry.getParameterTypes();
+            if (paramTypes.length != count) {
+                throw new ProtocolException(
+                    "Parameter count mismatch: expected " + paramTypes.length + ", got " + count
+                );
+            }
+            int features = flags & Capabilities.SUPPORTED_FEATURES;
+            Object[] params = new Object[count];
+            for (int i = 0; i < count; i++) {
+                params[i] = parseParameter(payload, offsets[i], lengths[i], paramTypes[i],
+                        entry.getParameterKind(i), entry.getParameterMapper(i), features);
+            }
+
+            Context context = new Context();
+            context.setTargetClass(entry.getTargetClass());
+            context.setTargetMethod(entry.getMethod());
+            context.setParams(params);
+            context.setFeatures(features);
+            return context;
+        } catch (ClassNotFoundException | NoSuchMethodException | ProtocolException
+                 | cn.huiwings.tcprest.exception.SecurityException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ProtocolException("Failed to parse v3 request: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Decode one parameter block with the V2 priorities ({@link DispatchTable.ParameterKind}). Binary
+     * values and primitive arrays are raw or packed bytes only if the request flags announce
+     * {@link Capabilities#FEATURE_BINARY} and {@link Capabilities#FEATURE_PACKED}; otherwise they are in the
+     * text and serialized forms older clients send.
+     */
+    private Object parseParameter(byte[] buf, int offset, int length, Class<?> paramType,
+                                  DispatchTable.ParameterKind kind, Mapper mapper, int features) throws Exception {
+        if (length == ProtocolV3Constants.NULL_LENGTH) {
+            return null;
+        }
+        if (kind == DispatchTable.ParameterKind.BINARY) {
+            byte[] bytes = (features & Capabilities.FEATURE_BINARY) != 0
+                    ? Arrays.copyOfRange(buf, offset, offset + length)
+                    : (byte[]) convertToType(new String(buf, offset, length, StandardCharsets.UTF_8), byte[].class);
+            return BinaryValues.fromBytes(bytes, paramType);
+        }
+        if (kind == DispatchTable.ParameterKind.PACKED_ARRAY) {
+            if ((features & Capabilities.FEATURE_PACKED) != 0) {
+                return PackedArrays.fromBytes(buf, offset, length, paramType);
+            }
+            if (paramType.getComponentType().isArray()) {
+                return RawTypeMapper.fromBytes(buf, offset, length);
+            }
+        }
+        if (length == 0) {
+            return "";
+        }
+        switch (kind) {
+            case SERIALIZED:
+                return RawTypeMapper.fromBytes(buf, offset, length);
+            case MAPPER:
+                if (mapper instanceof BinaryMapper) {
+                    return ((BinaryMapper) mapper).readObject(ByteBuffer.wrap(buf, offset, length));
+                }
+                return mapper.stringToObject(new String(buf, offset, length, StandardCharsets.UTF_8));
+            default:
+                return convertToType(new String(buf, offset, length, StandardCharsets.UTF_8), paramType);
+        }
+    }
+}
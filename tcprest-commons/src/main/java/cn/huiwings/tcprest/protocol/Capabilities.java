@@ -0,0 +1,338 @@
+package cn.huiwings.tcprest.protocol;
+
+import cn.huiwings.tcprest.exception.ProtocolException;
+import cn.huiwings.tcprest.security.SecurityConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Wire features agreed once per connection by the optional capability handshake.
+ *
+ * <p><b>Format:</b></p>
+ * <pre>
+ * Offer:  TCPREST|HELLO|1|version=3,2;features=compact,binary,packed;checksum=CRC32;signature=NONE;maxFrame=16777216
+ * Answer: TCPREST|HELLO|1|version=3;features=compact,binary,packed;checksum=CRC32;signature=NONE;maxFrame=1048576
+ * </pre>
+ *
+ * <p>The client lists the protocol versions it can use, in order of preference, the wire features it
+ * can read, its checksum and signature settings and the largest frame it accepts. The server answers
+ * with the first version it supports too, the features both sides know, the checksum and signature modes
+ * it requires, and the smaller frame limit. Unknown keys and feature names are ignored, so new features
+ * can be offered to a mixed fleet: servers that do not know them simply leave them out of their answer.</p>
+ *
+ * <p><b>Features</b> are value encodings newer than the baseline V2 format. Each request announces the
+ * features its sender can read ({@code V2|<features>|...}, or the low bits of the V3 flags byte), and a
+ * server writes only those into the response, so a feature is used only between peers that both have it.
+ * Clients announce the features of their latest agreement with the host, and none without a handshake.</p>
+ *
+ * <p>The handshake line never starts with {@code V2|} or the V3 frame magic, so servers recognise it by
+ * its prefix. A server that predates the handshake answers it with a V2 {@code PROTOCOL_ERROR} response,
+ * which clients read as {@link #LEGACY}. Requests keep announcing their own features and trailers, so
+ * servers need no per-connection state to serve them.</p>
+ *
+ * @since 2.0.0
+ */
+public final class Capabilities {
+
+    /**
+     * Prefix of both handshake lines; the trailing number is the handshake format version.
+     */
+    public static final String HELLO_PREFIX = "TCPREST|HELLO|1|";
+
+    /** Feature bit: serialized objects in the compact format ({@link cn.huiwings.tcprest.mapper.CompactMapper}). */
+    public static final int FEATURE_COMPACT = 0x01;
+
+    /** Feature bit: {@code byte[]} and {@code ByteBuffer} as raw bytes ({@link cn.huiwings.tcprest.protocol.v2.BinaryValues}). */
+    public static final int FEATURE_BINARY = 0x02;
+
+    /** Feature bit: primitive arrays packed little-endian ({@link cn.huiwings.tcprest.protocol.v2.PackedArrays}). */
+    public static final int FEATURE_PACKED = 0x04;
+
+    /**
+     * Every feature this version reads and writes. Bits stay below the V3 response flag.
+     */
+    public static final int SUPPORTED_FEATURES = FEATURE_COMPACT | FEATURE_BINARY | FEATURE_PACKED;
+
+    /**
+     * What a server that does not understand the handshake supports: Protocol V2 without features.
+     * Checksum and signature modes are unknown (null).
+     */
+    public static final Capabilities LEGACY = new Capabilities(Collections.singletonList(2), 0,
+            null, null, Integer.MAX_VALUE);
+
+    /** Handshake names of the feature bits, lowest bit first. */
+    private static final String[] FEATURE_NAMES = {"compact", "binary", "packed"};
+
+    private static final String VERSION = "version";
+    private static final String FEATURES = "features";
+    private static final String CHECKSUM = "checksum";
+    private static final String SIGNATURE = "signature";
+    private static final String MAX_FRAME = "maxFrame";
+
+    private final List<Integer> versions;
+    private final int features;
+    private final String checksum;
+    private final String signature;
+    private final int maxFrameLength;
+
+    private Capabilities(List<Integer> versions, int features, String checksum, String signature,
+                         int maxFrameLength) {
+        this.versions = Collections.unmodifiableList(versions);
+        this.features = features;
+        this.checksum = checksum;
+        this.signature = signature;
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    /**
+     * @param line a received line
+     * @return true if the line is a handshake offer or answer
+     */
+    public static boolean isHello(String line) {
+        return line != null && line.startsWith(HELLO_PREFIX);
+    }
+
+    /**
+     * Build a client offer.
+     *
+     * @param protocolV3 whether the client can send Protocol V3 frames
+     * @param securityConfig client security settings (null = none)
+     * @param maxFrameLength largest frame the client accepts
+     * @return the offer, with all {@link #SUPPORTED_FEATURES}
+     */
+    public static Capabilities offer(boolean protocolV3, SecurityConfig securityConfig, int maxFrameLength) {
+        List<Integer> versions = new ArrayList<>(2);
+        if (protocolV3) {
+            versions.add(3);
+        }
+        versions.add(2);
+        return new Capabilities(versions, SUPPORTED_FEATURES, checksumName(securityConfig),
+                signatureName(securityConfig), maxFrameLength);
+    }
+
+    /**
+     * Answer an offer on the server side.
+     *
+     * @param protocolV3 whether the server accepts Protocol V3 frames
+     * @param securityConfig server security settings (null = none)
+     * @param maxFrameLength largest frame the server accepts
+     * @return the agreed capabilities
+     */
+    public Capabilities answer(boolean protocolV3, SecurityConfig securityConfig, int maxFrameLength) {
+        int version = 2;
+        for (int offered : versions) {
+            if (offered == 2 || (offered == 3 && protocolV3)) {
+                version = offered;
+                break;
+            }
+        }
+        return new Capabilities(Collections.singletonList(version), features & SUPPORTED_FEATURES,
+                checksumName(securityConfig), signatureName(securityConfig),
+                Math.min(this.maxFrameLength, maxFrameLength));
+    }
+
+    /**
+     * Parse a handshake line.
+     *
+     * @param line offer or answer
+     * @return parsed capabilities
+     * @throws ProtocolException if the line is not a well-formed handshake
+     */
+    public static Capabilities parse(String line) {
+        if (!isHello(line)) {
+            throw new ProtocolException("Not a capability handshake");
+        }
+        List<Integer> versions = new ArrayList<>();
+        int features = 0;
+        String checksum = null;
+        String signature = null;
+        int maxFrameLength = Integer.MAX_VALUE;
+        try {
+            for (String entry : line.substring(HELLO_PREFIX.length()).split(";")) {
+                int eq = entry.indexOf('=');
+                if (eq <= 0) {
+                    continue;
+                }
+                String key = entry.substring(0, eq);
+                String value = entry.substring(eq + 1);
+                switch (key) {
+                    case VERSION:
+                        for (String v : value.split(",")) {
+                            versions.add(Integer.parseInt(v.trim()));
+                        }
+                        break;
+                    case FEATURES:
+                        features = parseFeatures(value);
+                        break;
+                    case CHECKSUM:
+                        checksum = value;
+                        break;
+                    case SIGNATURE:
+                        signature = value;
+                        break;
+                    case MAX_FRAME:
+                        maxFrameLength = Integer.parseInt(value);
+                        break;
+                    default:
+                        // Unknown capability from a newer peer
+                        break;
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Malformed capability handshake: " + e.getMessage());
+        }
+        if (versions.isEmpty()) {
+            versions.add(2);
+        }
+        if (maxFrameLength <= 0) {
+            throw new ProtocolException("Invalid maxFrame in capability handshake: " + maxFrameLength);
+        }
+        return new Capabilities(versions, features, checksum, signature, maxFrameLength);
+    }
+
+    /**
+     * @param value comma-separated feature names; unknown names are ignored
+     * @return feature bits
+     */
+    private static int parseFeatures(String value) {
+        int features = 0;
+        for (String name : value.split(",")) {
+            for (int bit = 0; bit < FEATURE_NAMES.length; bit++) {
+                if (FEATURE_NAMES[bit].equals(name.trim())) {
+                    features |= 1 << bit;
+                }
+            }
+        }
+        return features;
+    }
+
+    /**
+     * @return the handshake line (without newline)
+     */
+    public String toLine() {
+        StringBuilder sb = new StringBuilder(HELLO_PREFIX).append(VERSION).append('=');
+        for (int i = 0; i < versions.size(); i++) {
+            sb.append(i > 0 ? "," : "").append(versions.get(i));
+        }
+        if (features != 0) {
+            sb.append(';').append(FEATURES).append('=');
+            String separator = "";
+            for (int bit = 0; bit < FEATURE_NAMES.length; bit++) {
+                if ((features & (1 << bit)) != 0) {
+                    sb.append(separator).append(FEATURE_NAMES[bit]);
+                    separator = ",";
+                }
+            }
+        }
+        if (checksum != null) {
+            sb.append(';').append(CHECKSUM).append('=').append(checksum);
+        }
+        if (signature != null) {
+            sb.append(';').append(SIGNATURE).append('=').append(signature);
+        }
+        if (maxFrameLength != Integer.MAX_VALUE) {
+            sb.append(';').append(MAX_FRAME).append('=').append(maxFrameLength);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Check that a client configuration satisfies an answer: a server that requires a checksum or
+     * signature mode must get exactly that mode. A client without a checksum adopts a required CRC32,
+     * which needs no key. HMAC and signatures need secrets the handshake cannot carry, and a checksum
+     * the client is configured for is never replaced, so any other difference fails.
+     *
+     * @param securityConfig client security settings (null = none)
+     * @return the checksum the client must use ({@link SecurityConfig.ChecksumAlgorithm#CRC32} when adopted)
+     * @throws cn.huiwings.tcprest.exception.SecurityException if the server requires another mode
+     */
+    public SecurityConfig.ChecksumAlgorithm checkSecurity(SecurityConfig securityConfig) {
+        String clientChecksum = checksumName(securityConfig);
+        SecurityConfig.ChecksumAlgorithm agreed = securityConfig == null
+                ? SecurityConfig.ChecksumAlgorithm.NONE : securityConfig.getChecksumAlgorithm();
+        if (SecurityConfig.ChecksumAlgorithm.CRC32.name().equals(checksum)
+                && agreed == SecurityConfig.ChecksumAlgorithm.NONE) {
+            agreed = SecurityConfig.ChecksumAlgorithm.CRC32;
+        } else if (checksum != null && !"NONE".equals(checksum) && !checksum.equals(clientChecksum)) {
+            throw new cn.huiwings.tcprest.exception.SecurityException(
+                    "Server requires checksum " + checksum + ", client is configured for " + clientChecksum);
+        }
+        String clientSignature = signatureName(securityConfig);
+        if (signature != null && !"NONE".equals(signature) && !signature.equals(clientSignature)) {
+            throw new cn.huiwings.tcprest.exception.SecurityException(
+                    "Server requires signature " + signature + ", client is configured for " + clientSignature);
+        }
+        return agreed;
+    }
+
+    /**
+     * @return the preferred (for an answer: the agreed) protocol version
+     */
+    public int getVersion() {
+        return versions.get(0);
+    }
+
+    /**
+     * @return offered versions in order of preference (one entry in an answer)
+     */
+    public List<Integer> getVersions() {
+        return versions;
+    }
+
+    /**
+     * @return feature bits ({@link #FEATURE_COMPACT}, ...): offered, or for an answer agreed
+     */
+    public int getFeatures() {
+        return features;
+    }
+
+    /**
+     * @param feature a feature bit
+     * @return true if the feature is offered, or for an answer agreed
+     */
+    public boolean supports(int feature) {
+        return (features & feature) == feature;
+    }
+
+    /**
+     * @return checksum algorithm name ({@link SecurityConfig.ChecksumAlgorithm}), or null if not announced
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * @return signature algorithm name, or null if not announced
+     */
+    public String getSignature() {
+        return signature;
+    }
+
+    /**
+     * @return largest frame in bytes ({@link Integer#MAX_VALUE} if not announced)
+     */
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    private static String checksumName(SecurityConfig config) {
+        return config == null ? SecurityConfig.ChecksumAlgorithm.NONE.name() : config.getChecksumAlgorithm().name();
+    }
+
+    private static String signatureName(SecurityConfig config) {
+        if (config == null) {
+            return SecurityConfig.SignatureAlgorithm.NONE.name();
+        }
+        if (config.getCustomSignatureAlgorithmName() != null) {
+            return config.getCustomSignatureAlgorithmName();
+        }
+        return config.getSignatureAlgorithm().name();
+    }
+
+    @Override
+    public String toString() {
+        return toLine();
+    }
+}
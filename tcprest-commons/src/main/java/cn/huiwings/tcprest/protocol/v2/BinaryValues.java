@@ -0,0 +1,90 @@
+package cn.huiwings.tcprest.protocol.v2;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Raw binary values: {@code byte[]} and {@link ByteBuffer} parameters and results.
+ *
+ * <p>As {@code Arrays.toString()} text a 1 MB blob would be several MB of decimal text, parsed back
+ * through string splitting. Binary values instead travel as their bytes: in a V2
+ * line as {@link ProtocolV2Constants#BINARY_MARKER} plus URL-safe Base64, in a V3 frame as the raw
+ * block. A buffer contributes the bytes between its position and limit; heap, direct and read-only
+ * buffers are all supported and never modified. Values are read back as {@code byte[]}, or as a heap
+ * {@link ByteBuffer} when one is declared.</p>
+ *
+ * @since 2.0.0
+ */
+public final class BinaryValues {
+
+    private BinaryValues() {
+    }
+
+    /**
+     * @param type a declared or runtime class
+     * @return true for {@code byte[]} and {@link ByteBuffer} types
+     */
+    public static boolean isBinaryType(Class<?> type) {
+        return type == byte[].class || ByteBuffer.class.isAssignableFrom(type);
+    }
+
+    /**
+     * @param value a {@code byte[]} or {@link ByteBuffer}
+     * @return the bytes (the array itself for a {@code byte[]}; a copy of the remaining bytes of a buffer)
+     */
+    public static byte[] toBytes(Object value) {
+        if (value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        ByteBuffer buffer = (ByteBuffer) value;
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * @param value a {@code byte[]} or {@link ByteBuffer}
+     * @return the V2 token: marker plus URL-safe Base64 without padding
+     */
+    public static String toToken(Object value) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        if (value instanceof byte[]) {
+            return ProtocolV2Constants.BINARY_MARKER + encoder.encodeToString((byte[]) value);
+        }
+        // encodes the remaining bytes of any buffer kind; the duplicate keeps the caller's position
+        ByteBuffer encoded = encoder.encode(((ByteBuffer) value).duplicate());
+        return ProtocolV2Constants.BINARY_MARKER + new String(encoded.array(), 0, encoded.limit(),
+                StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @param token a V2 parameter or body
+     * @return true if it is a binary token
+     */
+    public static boolean isToken(String token) {
+        return token.startsWith(ProtocolV2Constants.BINARY_MARKER);
+    }
+
+    /**
+     * Decode a V2 binary token.
+     *
+     * @param token marker plus URL-safe Base64
+     * @param type declared type
+     * @return the value
+     * @throws IllegalArgumentException if the token is not valid Base64
+     */
+    public static Object fromToken(String token, Class<?> type) {
+        return fromBytes(Base64.getUrlDecoder().decode(token.substring(ProtocolV2Constants.BINARY_MARKER.length())),
+                type);
+    }
+
+    /**
+     * @param bytes the bytes (not copied)
+     * @param type declared type
+     * @return a {@link ByteBuffer} wrapping the bytes if the type is one, else the bytes
+     */
+    public static Object fromBytes(byte[] bytes, Class<?> type) {
+        return type == ByteBuffer.class ? ByteBuffer.wrap(bytes) : bytes;
+    }
+}
@@ -0,0 +1,257 @@
+package cn.huiwings.tcprest.protocol.v2;
+
+import cn.huiwings.tcprest.mapper.Mapper;
+import cn.huiwings.tcprest.mapper.RawTypeMapper;
+import cn.huiwings.tcprest.security.ProtocolSecurity;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Request metadata compiled into method lookups when resources are registered.
+ *
+ * <p>Every method reachable through a registered resource (the resource class itself and the
+ * interfaces it implements) is indexed under its wire metadata {@code ClassName/methodName(SIGNATURE)},
+ * both decoded and as the URL-safe Base64 token clients send in V2 lines. A request for a registered
+ * method is then a single hash lookup, with no Base64 decoding, name validation, class loading or
+ * method scan; parameter decoding rules are also resolved up front ({@link ParameterKind}).</p>
+ *
+ * <p>Metadata not in the table is resolved the original way by the parser. When that fails the
+ * metadata is remembered in a bounded negative cache, so repeated requests for unknown classes or
+ * methods are rejected without touching the class loader again.</p>
+ *
+ * <p>A table is immutable apart from its negative cache. The server builds a new one whenever
+ * resources or mappers change and hands it to the parser.</p>
+ *
+ * @since 2.0.0
+ */
+public final class DispatchTable {
+
+    /**
+     * Upper bound of the negative cache; when reached, the cache is cleared.
+     */
+    public static final int NEGATIVE_CACHE_SIZE = 1024;
+
+    /**
+     * Table without entries, used before any resource is registered.
+     */
+    public static final DispatchTable EMPTY = new DispatchTable(
+            Collections.<String, Entry>emptyMap(), Collections.<String, Entry>emptyMap());
+
+    private final Map<String, Entry> byMeta;
+    private final Map<String, Entry> byToken;
+    private final Map<String, Exception> unknown = new ConcurrentHashMap<>();
+
+    private DispatchTable(Map<String, Entry> byMeta, Map<String, Entry> byToken) {
+        this.byMeta = byMeta;
+        this.byToken = byToken;
+    }
+
+    /**
+     * Compile a table for the given resource types.
+     *
+     * <p>Methods are indexed in the order {@link TypeSignatureUtil#findMethodBySignature} searches
+     * them (declared methods first, then inherited public ones), so a table hit resolves to the
+     * same method as a lookup by signature.</p>
+     *
+     * @param resourceTypes registered resource classes and singleton classes
+     * @param mappers mapper registry used for parameter decoding (may be null)
+     * @return the table
+     */
+    public static DispatchTable build(Collection<Class<?>> resourceTypes, Map<String, Mapper> mappers) {
+        Map<String, Entry> byMeta = new HashMap<>();
+        for (Class<?> resourceType : resourceTypes) {
+            index(resourceType, mappers, byMeta);
+            for (Class<?> ifc : resourceType.getInterfaces()) {
+                index(ifc, mappers, byMeta);
+            }
+        }
+        Map<String, Entry> byToken = new HashMap<>(byMeta.size() * 2);
+        for (Map.Entry<String, Entry> e : byMeta.entrySet()) {
+            byToken.put(ProtocolSecurity.encodeComponent(e.getKey()), e.getValue());
+        }
+        return new DispatchTable(byMeta, byToken);
+    }
+
+    private static void index(Class<?> type, Map<String, Mapper> mappers, Map<String, Entry> byMeta) {
+        String prefix = type.getName() + ProtocolV2Constants.CLASS_METHOD_SEPARATOR;
+        for (Method method : type.getDeclaredMethods()) {
+            putIfAbsent(byMeta, prefix, type, method, mappers);
+        }
+        for (Method method : type.getMethods()) {
+            putIfAbsent(byMeta, prefix, type, method, mappers);
+        }
+    }
+
+    private static void putIfAbsent(Map<String, Entry> byMeta, String prefix, Class<?> type, Method method,
+                                    Map<String, Mapper> mappers) {
+        String meta = prefix + method.getName() + TypeSignatureUtil.getMethodSignature(method);
+        if (!byMeta.containsKey(meta)) {
+            byMeta.put(meta, new Entry(type, method, mappers));
+        }
+    }
+
+    /**
+     * Prepare a target that is not in a table (a class resolved by name at request time).
+     *
+     * @param targetClass class named in the metadata
+     * @param method resolved method
+     * @param mappers mapper registry (may be null)
+     * @return the entry
+     */
+    public static Entry entry(Class<?> targetClass, Method method, Map<String, Mapper> mappers) {
+        return new Entry(targetClass, method, mappers);
+    }
+
+    /**
+     * @param meta decoded metadata {@code ClassName/methodName(SIGNATURE)}
+     * @return the entry, or null if the method is not reachable through a registered resource
+     */
+    public Entry get(String meta) {
+        return byMeta.get(meta);
+    }
+
+    /**
+     * @param token URL-safe Base64 metadata token as sent in V2 lines (without the {@code {{ }}} wrapper)
+     * @return the entry, or null if the token is not known
+     */
+    public Entry getByToken(String token) {
+        return byToken.get(token);
+    }
+
+    /**
+     * @param meta decoded metadata
+     * @return the exception an earlier lookup of this metadata failed with, or null
+     */
+    public Exception getFailure(String meta) {
+        return unknown.get(meta);
+    }
+
+    /**
+     * Remember that metadata could not be resolved.
+     *
+     * @param meta decoded metadata
+     * @param failure the {@link ClassNotFoundException} or {@link NoSuchMethodException} it failed with
+     */
+    public void recordFailure(String meta, Exception failure) {
+        if (unknown.size() >= NEGATIVE_CACHE_SIZE) {
+            unknown.clear();
+        }
+        unknown.put(meta, failure);
+    }
+
+    /**
+     * @return number of indexed methods
+     */
+    public int size() {
+        return byMeta.size();
+    }
+
+    /**
+     * How a parameter is decoded, following the V2 mapper priorities.
+     */
+    public enum ParameterKind {
+        /** Primitives, wrappers, String, String arrays and unknown types: text converted to the type. */
+        TEXT,
+        /** Object arrays, collection interfaces, Serializable types and RawTypeMapper: compact or Java serialization. */
+        SERIALIZED,
+        /** User-defined mapper: text handed to {@link Mapper#stringToObject(String)}. */
+        MAPPER,
+        /** {@code byte[]} and {@link ByteBuffer}: raw bytes ({@link BinaryValues}). */
+        BINARY,
+        /** Primitive arrays of any dimension: packed bytes ({@link PackedArrays}). */
+        PACKED_ARRAY
+    }
+
+    /**
+     * Classify a parameter type.
+     *
+     * @param type declared parameter type
+     * @param mappers mapper registry (may be null)
+     * @return how values of the type are decoded
+     */
+    public static ParameterKind parameterKind(Class<?> type, Map<String, Mapper> mappers) {
+        if (type == byte[].class || type == ByteBuffer.class) {
+            return ParameterKind.BINARY;
+        }
+        if (PackedArrays.isPackedType(type)) {
+            return ParameterKind.PACKED_ARRAY;
+        }
+        if (type == String.class || ProtocolV2TypeSupport.isWrapperType(type) || type.isPrimitive()) {
+            return ParameterKind.TEXT;
+        }
+        if (type.isArray()) {
+            Class<?> component = type.getComponentType();
+            return component.isPrimitive() || component == String.class ? ParameterKind.TEXT : ParameterKind.SERIALIZED;
+        }
+        Mapper mapper = mappers != null ? mappers.get(type.getCanonicalName()) : null;
+        if (mapper != null) {
+            return mapper instanceof RawTypeMapper ? ParameterKind.SERIALIZED : ParameterKind.MAPPER;
+        }
+        if (ProtocolV2TypeSupport.isCommonCollectionInterface(type) || ProtocolV2TypeSupport.isAutoSerializable(type)) {
+            return ParameterKind.SERIALIZED;
+        }
+        return ParameterKind.TEXT;
+    }
+
+    /**
+     * A resolved request target: the class named in the metadata, the method, and how each
+     * parameter is decoded.
+     */
+    public static final class Entry {
+        private final Class<?> targetClass;
+        private final Method method;
+        private final Class<?>[] parameterTypes;
+        private final ParameterKind[] parameterKinds;
+        private final Mapper[] parameterMappers;
+
+        Entry(Class<?> targetClass, Method method, Map<String, Mapper> mappers) {
+            this.targetClass = targetClass;
+            this.method = method;
+            this.parameterTypes = method.getParameterTypes();
+            this.parameterKinds = new ParameterKind[parameterTypes.length];
+            this.parameterMappers = new Mapper[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                Class<?> type = parameterTypes[i];
+                parameterKinds[i] = parameterKind(type, mappers);
+                Mapper mapper = mappers != null ? mappers.get(type.getCanonicalName()) : null;
+                if (parameterKinds[i] == ParameterKind.MAPPER
+                        || (parameterKinds[i] == ParameterKind.SERIALIZED && !type.isArray()
+                            && mapper instanceof RawTypeMapper)) {
+                    parameterMappers[i] = mapper;
+                }
+            }
+        }
+
+        public Class<?> getTargetClass() {
+            return targetClass;
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+
+        /**
+         * @return parameter types (shared, do not modify)
+         */
+        public Class<?>[] getParameterTypes() {
+            return parameterTypes;
+        }
+
+        public ParameterKind getParameterKind(int index) {
+            return parameterKinds[index];
+        }
+
+        /**
+         * @return the registered mapper that decodes the parameter, or null if built-in rules apply
+         */
+        public Mapper getParameterMapper(int index) {
+            return parameterMappers[index];
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package cn.huiwings.tcprest.protocol.v2;
+
+/**
+ * Utility for the optional correlation-ID envelope used on multiplexed connections.
+ *
+ * <p><b>Format:</b></p>
+ * <pre>
+ * Handshake: V2|MUX|1                 (client → server, echoed back by the server)
+ * Request:   #17|V2|0|{{...}}|[...]   (any V2 request, unchanged, behind "#id|")
+ * Response:  #17|V2|0|0|{{...}}       (V2 response carrying the request's id)
+ * </pre>
+ *
+ * <p>The envelope sits outside the V2 frame, so checksums and signatures are unaffected.
+ * Once a connection is multiplexed, many requests may be in flight and responses may arrive
+ * in any order; the id pairs them up. Connections that never send the handshake keep the plain
+ * one-response-per-request semantics, so old clients and servers interoperate unchanged.</p>
+ *
+ * @since 2.0.0
+ */
+public final class MultiplexFrames {
+
+    private MultiplexFrames() {
+        // Utility class, prevent instantiation
+    }
+
+    /**
+     * @param line a received line
+     * @return true if the line is the multiplexing handshake
+     */
+    public static boolean isHello(String line) {
+        return ProtocolV2Constants.MUX_HELLO.equals(line);
+    }
+
+    /**
+     * @param line a received line
+     * @return true if the line carries a correlation-ID envelope
+     */
+    public static boolean isMultiplexed(String line) {
+        return line != null && line.startsWith(ProtocolV2Constants.MUX_ID_PREFIX);
+    }
+
+    /**
+     * Wrap a V2 frame in a correlation-ID envelope.
+     *
+     * @param id    correlation ID
+     * @param frame V2 request or response
+     * @return {@code #id|frame}
+     */
+    public static String wrap(long id, String frame) {
+        return ProtocolV2Constants.MUX_ID_PREFIX + id + ProtocolV2Constants.SEPARATOR + frame;
+    }
+
+    /**
+     * Extract the correlation ID.
+     *
+     * @param line multiplexed line
+     * @return correlation ID
+     * @throws IllegalArgumentException if the envelope is malformed
+     */
+    public static long parseId(String line) {
+        int sep = separatorIndex(line);
+        try {
+            long id = Long.parseLong(line.substring(ProtocolV2Constants.MUX_ID_PREFIX.length(), sep));
+            if (id < 0) {
+                throw new IllegalArgumentException("Negative correlation ID: " + id);
+            }
+            return id;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed correlation ID in multiplexed frame", e);
+        }
+    }
+
+    /**
+     * Extract the V2 frame behind the envelope.
+     *
+     * @param line multiplexed line
+     * @return V2 request or response
+     * @throws IllegalArgumentException if the envelope is malformed
+     */
+    public static String unwrap(String line) {
+        return line.substring(separatorIndex(line) + 1);
+    }
+
+    private static int separatorIndex(String line) {
+        if (!isMultiplexed(line)) {
+            throw new IllegalArgumentException("Not a multiplexed frame");
+        }
+        int sep = line.indexOf(ProtocolV2Constants.SEPARATOR);
+        if (sep <= ProtocolV2Constants.MUX_ID_PREFIX.length()) {
+            throw new IllegalArgumentException("Missing correlation ID in multiplexed frame");
+        }
+        return sep;
+    }
+}
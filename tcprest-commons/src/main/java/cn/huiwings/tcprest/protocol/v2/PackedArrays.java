@@ -0,0 +1,455 @@
+package cn.huiwings.tcprest.protocol.v2;
+
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants;
+
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Packed primitive arrays: {@code int[]}, {@code double[]}, {@code long[][]} and every other array
+ * whose innermost component is primitive (except {@code byte[]}, see {@link BinaryValues}).
+ *
+ * <p>The text form ({@code Arrays.toString()}, split and parsed element by element) is several times
+ * larger than the values and capped at {@code MAX_ARRAY_SIZE} elements. Packed arrays are bytes: in a
+ * V2 line {@link ProtocolV2Constants#PACKED_ARRAY_MARKER} plus URL-safe Base64, in a V3 frame the raw
+ * block. They are decoded straight into an array of the declared type, and limited by size in bytes
+ * ({@link #MAX_BYTES}) instead of element count. Peers use them only if both announced the packed
+ * feature ({@link cn.huiwings.tcprest.protocol.Capabilities#FEATURE_PACKED}).</p>
+ *
+ * <p><b>Format:</b> the element type as its descriptor character ({@code I}, {@code J}, {@code D}, ...)
+ * and the number of dimensions, then the array. An array is a varint of length + 1 (0 for a null
+ * sub-array); for one dimension the elements follow, otherwise the sub-arrays:</p>
+ * <ul>
+ *   <li>{@code double}, {@code float}, {@code short}, {@code char} - little-endian, fixed width</li>
+ *   <li>{@code int}, {@code long} - a mode byte, then fixed-width little-endian values, or the
+ *       differences between neighbours as zigzag varints when that is smaller (sorted ids, counters)</li>
+ *   <li>{@code boolean} - eight per byte; {@code byte} - as is</li>
+ * </ul>
+ *
+ * @since 2.0.0
+ */
+public final class PackedArrays {
+
+    /**
+     * Largest packed array, in bytes (and largest V2 token, in chars), that is written or read: the largest
+     * frame any transport accepts, so a larger array could never be delivered. Transports with smaller
+     * frames announce them in the capability handshake, and clients check whole requests against that.
+     */
+    public static final int MAX_BYTES = ProtocolV3Constants.MAX_FRAME_LENGTH;
+
+    private static final byte FIXED = 0;
+    private static final byte DELTA = 1;
+
+    private PackedArrays() {
+    }
+
+    /**
+     * @param type a declared or runtime class
+     * @return true for arrays of any dimension with a primitive innermost component, except {@code byte[]}
+     */
+    public static boolean isPackedType(Class<?> type) {
+        if (!type.isArray() || type == byte[].class) {
+            return false;
+        }
+        return elementType(type).isPrimitive();
+    }
+
+    /**
+     * @param array a packed array type value
+     * @return the packed bytes
+     * @throws IllegalArgumentException if the array packs to more than {@link #MAX_BYTES} bytes
+     */
+    public static byte[] toBytes(Object array) {
+        Class<?> element = elementType(array.getClass());
+        int dimensions = dimensions(array.getClass());
+        long size = 2 + fixedSize(array, element, dimensions);
+        if (size > MAX_BYTES) {
+            throw new IllegalArgumentException("Array too large: " + size + " bytes (max: " + MAX_BYTES + ")");
+        }
+        Writer writer = new Writer((int) size);
+        writer.buf[writer.pos++] = (byte) descriptor(element);
+        writer.buf[writer.pos++] = (byte) dimensions;
+        writer.array(array, element, dimensions);
+        return writer.pos == writer.buf.length ? writer.buf : Arrays.copyOf(writer.buf, writer.pos);
+    }
+
+    /**
+     * @param array a packed array type value
+     * @return the V2 token: marker plus URL-safe Base64 without padding
+     * @throws IllegalArgumentException if the token would be longer than {@link #MAX_BYTES} chars
+     */
+    public static String toToken(Object array) {
+        byte[] bytes = toBytes(array);
+        long length = 1 + ((long) bytes.length * 4 + 2) / 3;
+        if (length > MAX_BYTES) {
+            throw new IllegalArgumentException("Array too large: " + length + " chars encoded (max: " + MAX_BYTES + ")");
+        }
+        byte[] encoded = Base64.getUrlEncoder().withoutPadding().encode(bytes);
+        return ProtocolV2Constants.PACKED_ARRAY_MARKER + new String(encoded, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @param token a V2 parameter or body
+     * @return true if it is a packed array token
+     */
+    public static boolean isToken(String token) {
+        return token.startsWith(ProtocolV2Constants.PACKED_ARRAY_MARKER);
+    }
+
+    /**
+     * Decode a V2 packed array token.
+     *
+     * @param token marker plus URL-safe Base64
+     * @param type declared type
+     * @return the array
+     * @throws IllegalArgumentException if the token is malformed or does not match the type
+     */
+    public static Object fromToken(String token, Class<?> type) {
+        byte[] bytes = Base64.getUrlDecoder().decode(token.substring(ProtocolV2Constants.PACKED_ARRAY_MARKER.length()));
+        return fromBytes(bytes, 0, bytes.length, type);
+    }
+
+    /**
+     * Decode packed bytes into an array of the declared type.
+     *
+     * @param buf buffer
+     * @param offset start of the packed bytes
+     * @param length number of packed bytes
+     * @param type declared type, a packed array type
+     * @return the array
+     * @throws IllegalArgumentException if the bytes are malformed or do not match the type
+     */
+    public static Object fromBytes(byte[] buf, int offset, int length, Class<?> type) {
+        if (length > MAX_BYTES) {
+            throw new IllegalArgumentException("Array too large: " + length + " bytes (max: " + MAX_BYTES + ")");
+        }
+        if (!isPackedType(type)) {
+            throw new IllegalArgumentException("Not a packed array type: " + type.getName());
+        }
+        if (length < 2 || buf[offset] != descriptor(elementType(type)) || buf[offset + 1] != dimensions(type)) {
+            throw new IllegalArgumentException("Packed array does not match declared type " + type.getName());
+        }
+        Reader reader = new Reader(buf, offset + 2, offset + length);
+        Object array = reader.array(type, dimensions(type));
+        if (reader.pos != reader.end) {
+            throw new IllegalArgumentException("Trailing bytes after packed array");
+        }
+        return array;
+    }
+
+    private static Class<?> elementType(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        return type;
+    }
+
+    private static int dimensions(Class<?> type) {
+        int dimensions = 0;
+        while (type.isArray()) {
+            type = type.getComponentType();
+            dimensions++;
+        }
+        return dimensions;
+    }
+
+    private static char descriptor(Class<?> element) {
+        return Array.newInstance(element, 0).getClass().getName().charAt(1);
+    }
+
+    private static int width(Class<?> element) {
+        if (element == double.class || element == long.class) {
+            return 8;
+        } else if (element == int.class || element == float.class) {
+            return 4;
+        } else if (element == short.class || element == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    /**
+     * Size of an array with every element at fixed width, the largest it is written with.
+     */
+    private static long fixedSize(Object array, Class<?> element, int dimensions) {
+        if (array == null) {
+            return 1;
+        }
+        int length = Array.getLength(array);
+        long size = varintSize(length + 1L);
+        if (dimensions > 1) {
+            for (Object sub : (Object[]) array) {
+                size += fixedSize(sub, element, dimensions - 1);
+            }
+            return size;
+        }
+        if (element == boolean.class) {
+            return size + (length + 7L) / 8;
+        }
+        return size + (element == int.class || element == long.class ? 1 : 0) + (long) length * width(element);
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static final class Writer {
+        final byte[] buf;
+        final ByteBuffer le;
+        int pos;
+
+        Writer(int capacity) {
+            buf = new byte[capacity];
+            le = ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        void array(Object array, Class<?> element, int dimensions) {
+            if (array == null) {
+                buf[pos++] = 0;
+                return;
+            }
+            int length = Array.getLength(array);
+            varint(length + 1L);
+            if (dimensions > 1) {
+                for (Object sub : (Object[]) array) {
+                    array(sub, element, dimensions - 1);
+                }
+                return;
+            }
+            le.position(pos);
+            if (element == double.class) {
+                le.asDoubleBuffer().put((double[]) array);
+            } else if (element == int.class) {
+                ints((int[]) array);
+                return;
+            } else if (element == long.class) {
+                longs((long[]) array);
+                return;
+            } else if (element == float.class) {
+                le.asFloatBuffer().put((float[]) array);
+            } else if (element == short.class) {
+                le.asShortBuffer().put((short[]) array);
+            } else if (element == char.class) {
+                le.asCharBuffer().put((char[]) array);
+            } else if (element == byte.class) {
+                System.arraycopy(array, 0, buf, pos, length);
+            } else {
+                booleans((boolean[]) array);
+                return;
+            }
+            pos += length * width(element);
+        }
+
+        /**
+         * Deltas as varints, abandoned for fixed width once they could grow past it.
+         */
+        private void ints(int[] values) {
+            int start = pos;
+            int limit = start + 1 + 4 * values.length;
+            buf[pos++] = DELTA;
+            int previous = 0;
+            for (int v : values) {
+                if (pos + 5 > limit) {
+                    buf[start] = FIXED;
+                    le.position(start + 1);
+                    le.asIntBuffer().put(values);
+                    pos = limit;
+                    return;
+                }
+                int delta = v - previous;
+                varint(((delta << 1) ^ (delta >> 31)) & 0xFFFFFFFFL);
+                previous = v;
+            }
+        }
+
+        private void longs(long[] values) {
+            int start = pos;
+            int limit = start + 1 + 8 * values.length;
+            buf[pos++] = DELTA;
+            long previous = 0;
+            for (long v : values) {
+                if (pos + 10 > limit) {
+                    buf[start] = FIXED;
+                    le.position(start + 1);
+                    le.asLongBuffer().put(values);
+                    pos = limit;
+                    return;
+                }
+                long delta = v - previous;
+                varint((delta << 1) ^ (delta >> 63));
+                previous = v;
+            }
+        }
+
+        private void booleans(boolean[] values) {
+            for (int i = 0; i < values.length; i += 8) {
+                int bits = 0;
+                for (int j = 0; j < 8 && i + j < values.length; j++) {
+                    if (values[i + j]) {
+                        bits |= 1 << j;
+                    }
+                }
+                buf[pos++] = (byte) bits;
+            }
+        }
+
+        private void varint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+    }
+
+    private static final class Reader {
+        final byte[] buf;
+        final ByteBuffer le;
+        final int end;
+        int pos;
+
+        Reader(byte[] buf, int pos, int end) {
+            this.buf = buf;
+            this.le = ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN);
+            this.pos = pos;
+            this.end = end;
+        }
+
+        Object array(Class<?> type, int dimensions) {
+            long header = varint();
+            if (header == 0) {
+                return null;
+            }
+            Class<?> component = type.getComponentType();
+            if (dimensions > 1) {
+                Object[] array = (Object[]) Array.newInstance(component, count(header - 1, 1));
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = array(component, dimensions - 1);
+                }
+                return array;
+            }
+            if (component == int.class || component == long.class) {
+                return component == int.class ? ints(header - 1) : longs(header - 1);
+            }
+            if (component == boolean.class) {
+                int bytes = count((header - 1 + 7) / 8, 1);
+                if (header - 1 > 8L * bytes) {
+                    throw new IllegalArgumentException("Packed boolean array length out of range");
+                }
+                boolean[] array = new boolean[(int) (header - 1)];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = (buf[pos + (i >> 3)] & (1 << (i & 7))) != 0;
+                }
+                pos += bytes;
+                return array;
+            }
+            int length = count(header - 1, width(component));
+            le.position(pos);
+            Object array;
+            if (component == double.class) {
+                double[] values = new double[length];
+                le.asDoubleBuffer().get(values);
+                array = values;
+            } else if (component == float.class) {
+                float[] values = new float[length];
+                le.asFloatBuffer().get(values);
+                array = values;
+            } else if (component == short.class) {
+                short[] values = new short[length];
+                le.asShortBuffer().get(values);
+                array = values;
+            } else if (component == char.class) {
+                char[] values = new char[length];
+                le.asCharBuffer().get(values);
+                array = values;
+            } else {
+                array = Arrays.copyOfRange(buf, pos, pos + length);
+            }
+            pos += length * width(component);
+            return array;
+        }
+
+        private int[] ints(long length) {
+            byte mode = mode();
+            int[] values = new int[count(length, mode == FIXED ? 4 : 1)];
+            if (mode == FIXED) {
+                le.position(pos);
+                le.asIntBuffer().get(values);
+                pos += 4 * values.length;
+                return values;
+            }
+            int previous = 0;
+            for (int i = 0; i < values.length; i++) {
+                long zigzag = varint();
+                if (zigzag > 0xFFFFFFFFL) {
+                    throw new IllegalArgumentException("Packed int out of range");
+                }
+                previous += (int) (zigzag >>> 1) ^ -(int) (zigzag & 1);
+                values[i] = previous;
+            }
+            return values;
+        }
+
+        private long[] longs(long length) {
+            byte mode = mode();
+            long[] values = new long[count(length, mode == FIXED ? 8 : 1)];
+            if (mode == FIXED) {
+                le.position(pos);
+                le.asLongBuffer().get(values);
+                pos += 8 * values.length;
+                return values;
+            }
+            long previous = 0;
+            for (int i = 0; i < values.length; i++) {
+                long zigzag = varint();
+                previous += (zigzag >>> 1) ^ -(zigzag & 1);
+                values[i] = previous;
+            }
+            return values;
+        }
+
+        private byte mode() {
+            count(1, 1);
+            byte mode = buf[pos++];
+            if (mode != FIXED && mode != DELTA) {
+                throw new IllegalArgumentException("Unknown packed array mode: " + mode);
+            }
+            return mode;
+        }
+
+        /**
+         * Check that {@code length} elements of at least {@code width} bytes fit in the remaining input.
+         */
+        private int count(long length, int width) {
+            if (length > end - pos || length * width > end - pos) {
+                throw new IllegalArgumentException("Packed array length " + length + " exceeds the "
+                        + (end - pos) + " remaining bytes");
+            }
+            return (int) length;
+        }
+
+        private long varint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= end) {
+                    throw new IllegalArgumentException("Truncated packed array");
+                }
+                byte b = buf[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in packed array");
+        }
+    }
+}
@@ -5,10 +5,15 @@ package cn.huiwings.tcprest.protocol.v2;
  *
  * <p><b>Protocol v2 Simplified Format (2026-02-19):</b></p>
  * <pre>
- * Request:  V2|COMPRESSION|{{base64(META)}}|[param1,param2,param3]
- * Response: V2|COMPRESSION|STATUS|{{base64(BODY)}}
+ * Request:  V2|FEATURES|{{base64(META)}}|[param1,param2,param3]
+ * Response: V2|FEATURES|STATUS|{{base64(BODY)}}
  * </pre>
  *
+ * <p>FEATURES is the decimal bit set of {@link cn.huiwings.tcprest.protocol.Capabilities} features: in a
+ * request those the client can read, in a response those the body may use. It was the never-used
+ * compression flag, so {@code 0} (no features) is what every older peer sends and older servers ignore
+ * the field.</p>
+ *
  * <p><b>Key Features:</b></p>
  * <ul>
  *   <li>JSON-style array format for parameters: [p1,p2,p3]</li>
@@ -70,6 +75,18 @@ public final class ProtocolV2Constants {
      */
     public static final String PARAM_SEPARATOR = ",";
 
+    /**
+     * Prefix of a raw binary value ({@code byte[]} or {@code ByteBuffer}): "!" followed by the bytes as
+     * URL-safe Base64 without padding. Not in the Base64 charset, like the "~" null marker.
+     */
+    public static final String BINARY_MARKER = "!";
+
+    /**
+     * Prefix of a packed primitive array ({@code int[]}, {@code double[][]}, ...): "*" followed by the
+     * packed bytes as URL-safe Base64 without padding. See {@link PackedArrays}.
+     */
+    public static final String PACKED_ARRAY_MARKER = "*";
+
     /**
      * Base64 parameter wrapper start: "{{"
      */
@@ -86,9 +103,15 @@ public final class ProtocolV2Constants {
     public static final int REQUEST_VERSION_INDEX = 0;
 
     /**
-     * Index of compression flag in request array
+     * Index of the feature flags in request array
+     */
+    public static final int REQUEST_FEATURES_INDEX = 1;
+
+    /**
+     * @deprecated the field carries feature flags, use {@link #REQUEST_FEATURES_INDEX}
      */
-    public static final int REQUEST_COMPRESSION_INDEX = 1;
+    @Deprecated
+    public static final int REQUEST_COMPRESSION_INDEX = REQUEST_FEATURES_INDEX;
 
     /**
      * Index of method call in request array
@@ -96,9 +119,15 @@ public final class ProtocolV2Constants {
     public static final int REQUEST_METHOD_CALL_INDEX = 2;
 
     /**
-     * Index of compression flag in response array
+     * Index of the feature flags in response array
      */
-    public static final int RESPONSE_COMPRESSION_INDEX = 1;
+    public static final int RESPONSE_FEATURES_INDEX = 1;
+
+    /**
+     * @deprecated the field carries feature flags, use {@link #RESPONSE_FEATURES_INDEX}
+     */
+    @Deprecated
+    public static final int RESPONSE_COMPRESSION_INDEX = RESPONSE_FEATURES_INDEX;
 
     /**
      * Index of status code in response array
@@ -120,6 +149,18 @@ public final class ProtocolV2Constants {
      */
     public static final int MIN_RESPONSE_PARTS = 4;
 
+    /**
+     * Handshake line a client sends to switch a connection to multiplexed mode: "V2|MUX|1".
+     * A server supporting multiplexing echoes it back; older servers answer with a PROTOCOL_ERROR response.
+     */
+    public static final String MUX_HELLO = "V2|MUX|1";
+
+    /**
+     * Prefix of the correlation-ID envelope on multiplexed connections: "#".
+     * A multiplexed frame is {@code #<id>|<V2 request or response>}.
+     */
+    public static final String MUX_ID_PREFIX = "#";
+
     private ProtocolV2Constants() {
         // Utility class, prevent instantiation
     }
@@ -2,12 +2,16 @@ package cn.huiwings.tcprest.protocol.v2;
 
 import cn.huiwings.tcprest.codec.ProtocolCodec;
 import cn.huiwings.tcprest.codec.v2.ProtocolV2Codec;
+import cn.huiwings.tcprest.codec.v3.ProtocolV3Codec;
 import cn.huiwings.tcprest.invoker.v2.ProtocolV2Invoker;
 import cn.huiwings.tcprest.mapper.Mapper;
 import cn.huiwings.tcprest.parser.RequestParser;
 import cn.huiwings.tcprest.parser.v2.ProtocolV2Parser;
+import cn.huiwings.tcprest.parser.v3.ProtocolV3Parser;
+import cn.huiwings.tcprest.server.Context;
 import cn.huiwings.tcprest.security.SecurityConfig;
 
+import java.lang.reflect.Type;
 import java.util.Map;
 
 /**
@@ -15,6 +19,9 @@ import java.util.Map;
  * Centralizes V2 component creation and security config so the server does not
  * depend on concrete V2 implementation types.
  *
+ * <p>The parser and codec are the Protocol V3 implementations, which extend the V2 ones, so the
+ * same components serve V2 lines and V3 binary frames.</p>
+ *
  * @since 1.1.0
  */
 public final class ProtocolV2ServerComponents {
@@ -33,9 +40,9 @@ public final class ProtocolV2ServerComponents {
      * Create V2 parser, invoker, and codec; apply security config to parser and codec if non-null.
      */
     public static ProtocolV2ServerComponents create(Map<String, Mapper> mappers, SecurityConfig securityConfig) {
-        RequestParser p = new ProtocolV2Parser(mappers);
+        RequestParser p = new ProtocolV3Parser(mappers);
         ProtocolV2Invoker inv = new ProtocolV2Invoker();
-        ProtocolCodec c = new ProtocolV2Codec(mappers);
+        ProtocolCodec c = new ProtocolV3Codec(mappers);
         if (securityConfig != null) {
             ((ProtocolV2Parser) p).setSecurityConfig(securityConfig);
             ((ProtocolV2Codec) c).setSecurityConfig(securityConfig);
@@ -61,6 +68,13 @@ public final class ProtocolV2ServerComponents {
         }
     }
 
+    /**
+     * Install the table of registered resource methods (rebuilt by the server on registration).
+     */
+    public void setDispatchTable(DispatchTable dispatchTable) {
+        ((ProtocolV2Parser) parser).setDispatchTable(dispatchTable);
+    }
+
     /**
      * Encode a successful response.
      */
@@ -68,10 +82,59 @@ public final class ProtocolV2ServerComponents {
         return ((ProtocolV2Codec) codec).encodeResponse(result, status);
     }
 
+    /**
+     * Encode a successful response for a result of a declared generic type (the method's return type).
+     */
+    public String encodeResponse(Object result, Type declaredType, StatusCode status) {
+        return ((ProtocolV2Codec) codec).encodeResponse(result, declaredType, status);
+    }
+
+    /**
+     * Encode a successful response using only the wire features the request announced.
+     */
+    public String encodeResponse(Object result, Type declaredType, StatusCode status, int features) {
+        return ((ProtocolV2Codec) codec).encodeResponse(result, declaredType, status, features);
+    }
+
     /**
      * Encode an exception as a V2 error response.
      */
     public String encodeException(Throwable error, StatusCode status) {
         return ((ProtocolV2Codec) codec).encodeException(error, status);
     }
+
+    /**
+     * Parse a V3 request payload.
+     */
+    public Context parseBinary(byte[] payload) throws ClassNotFoundException, NoSuchMethodException {
+        return ((ProtocolV3Parser) parser).parse(payload);
+    }
+
+    /**
+     * Encode a successful response as a V3 frame.
+     */
+    public byte[] encodeBinaryResponse(Object result, StatusCode status) {
+        return ((ProtocolV3Codec) codec).encodeBinaryResponse(result, status);
+    }
+
+    /**
+     * Encode a successful response as a V3 frame for a result of a declared generic type.
+     */
+    public byte[] encodeBinaryResponse(Object result, Type declaredType, StatusCode status) {
+        return ((ProtocolV3Codec) codec).encodeBinaryResponse(result, declaredType, status);
+    }
+
+    /**
+     * Encode a successful response as a V3 frame using only the wire features the request announced.
+     */
+    public byte[] encodeBinaryResponse(Object result, Type declaredType, StatusCode status, int features) {
+        return ((ProtocolV3Codec) codec).encodeBinaryResponse(result, declaredType, status, features);
+    }
+
+    /**
+     * Encode an exception as a V3 error frame.
+     */
+    public byte[] encodeBinaryException(Throwable error, StatusCode status) {
+        return ((ProtocolV3Codec) codec).encodeBinaryException(error, status);
+    }
 }
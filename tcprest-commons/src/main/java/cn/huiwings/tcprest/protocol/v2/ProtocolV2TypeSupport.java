@@ -22,7 +22,7 @@ public final class ProtocolV2TypeSupport {
     /**
      * Collect fully qualified type names that are not supported (no Serializable, no mapper).
      * Matches Protocol V2 semantics: primitives, String, wrappers, collection interfaces,
-     * primitive/String arrays are supported; other types need Serializable or mapper.
+     * primitive/String arrays and {@link java.nio.ByteBuffer} are supported; other types need Serializable, a record, or a mapper.
      *
      * @param resourceClass the resource class to scan (methods' params and return types)
      * @param mappers       mapper registry (may be null)
@@ -69,7 +69,7 @@ public final class ProtocolV2TypeSupport {
         if (isWrapperType(type)) {
             return true;
         }
-        if (isCommonCollectionInterface(type)) {
+        if (isCommonCollectionInterface(type) || BinaryValues.isBinaryType(type)) {
             return true;
         }
         if (type.isArray()) {
@@ -77,20 +77,32 @@ public final class ProtocolV2TypeSupport {
             if (component.isPrimitive() || component == String.class) {
                 return true;
             }
-            return java.io.Serializable.class.isAssignableFrom(component)
+            return isAutoSerializable(component)
                 || (mappers != null && mappers.containsKey(component.getCanonicalName()));
         }
-        return java.io.Serializable.class.isAssignableFrom(type)
+        return isAutoSerializable(type)
             || (mappers != null && mappers.containsKey(type.getCanonicalName()));
     }
 
-    private static boolean isWrapperType(Class<?> clazz) {
+    /**
+     * Whether values of the type are auto-serialized when no mapper is registered:
+     * {@link java.io.Serializable} classes and records (which need not be Serializable).
+     *
+     * @param type a class
+     * @return true for Serializable types and records
+     * @since 2.0.0
+     */
+    public static boolean isAutoSerializable(Class<?> type) {
+        return java.io.Serializable.class.isAssignableFrom(type) || type.isRecord();
+    }
+
+    static boolean isWrapperType(Class<?> clazz) {
         return clazz == Integer.class || clazz == Long.class || clazz == Double.class
             || clazz == Float.class || clazz == Boolean.class || clazz == Byte.class
             || clazz == Short.class || clazz == Character.class;
     }
 
-    private static boolean isCommonCollectionInterface(Class<?> clazz) {
+    static boolean isCommonCollectionInterface(Class<?> clazz) {
         return clazz == java.util.List.class || clazz == java.util.Map.class
             || clazz == java.util.Set.class || clazz == java.util.Queue.class
             || clazz == java.util.Deque.class || clazz == java.util.Collection.class;
@@ -0,0 +1,67 @@
+package cn.huiwings.tcprest.protocol.v3;
+
+/**
+ * Constants for the Protocol V3 binary frame.
+ *
+ * <p><b>Frame:</b></p>
+ * <pre>
+ * 0x00 | int32 payload length | payload
+ *
+ * payload  := version(0x03) | flags | status | body | segment*
+ * flags    := 0x80 on responses | feature bits (requests: readable by the client, responses: used)
+ * request  := u16 meta length | meta (UTF-8 "ClassName/methodName(TYPE_SIGNATURE)")
+ *             | u16 param count | block*
+ * response := block
+ * block    := int32 length (-1 = null) | raw bytes
+ * segment  := u16 length | ASCII ("CHK:value" or "SIG:ALG:base64")
+ * </pre>
+ *
+ * <p>The leading zero byte never starts a V2 line, so servers tell V3 frames from V2 lines by the
+ * first byte and serve both on the same port and connection. Parameters travel as raw bytes: text
+ * values as UTF-8, serialized objects as plain Java serialization, with no Base64 layer.</p>
+ *
+ * <p>Integers are big-endian. Multi-byte values follow {@link java.io.DataOutputStream}.</p>
+ *
+ * @since 2.0.0
+ */
+public final class ProtocolV3Constants {
+
+    /**
+     * First byte of every V3 frame; V2 lines always start with a printable character.
+     */
+    public static final byte FRAME_MAGIC = 0x00;
+
+    /**
+     * Frame header: magic byte plus int32 payload length.
+     */
+    public static final int FRAME_HEADER_LENGTH = 5;
+
+    /**
+     * Payload header: version, flags and status bytes.
+     */
+    public static final int PAYLOAD_HEADER_LENGTH = 3;
+
+    /**
+     * Protocol version byte.
+     */
+    public static final byte VERSION = 3;
+
+    /**
+     * Flag bit set on responses. The low bits carry {@link cn.huiwings.tcprest.protocol.Capabilities}
+     * feature flags.
+     */
+    public static final int FLAG_RESPONSE = 0x80;
+
+    /**
+     * Block length marking a null value.
+     */
+    public static final int NULL_LENGTH = -1;
+
+    /**
+     * Largest payload accepted, in bytes.
+     */
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    private ProtocolV3Constants() {
+    }
+}
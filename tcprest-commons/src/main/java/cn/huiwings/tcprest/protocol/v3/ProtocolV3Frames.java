@@ -0,0 +1,436 @@
+package cn.huiwings.tcprest.protocol.v3;
+
+import cn.huiwings.tcprest.exception.ProtocolException;
+import cn.huiwings.tcprest.protocol.TcpRestProtocol;
+import cn.huiwings.tcprest.security.ProtocolSecurity;
+import cn.huiwings.tcprest.security.SecurityConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reading and writing Protocol V3 frames.
+ *
+ * <p>{@link Writer} builds a frame in a single growable array, leaving room for the frame header so
+ * the finished frame is written without another copy. {@link Reader} walks a payload in place. The
+ * static helpers read frames and V2 lines from blocking streams, for transports that serve both
+ * protocols on one connection.</p>
+ *
+ * @see ProtocolV3Constants
+ * @since 2.0.0
+ */
+public final class ProtocolV3Frames {
+
+    private ProtocolV3Frames() {
+    }
+
+    /**
+     * Read the payload of a frame whose magic byte has already been consumed.
+     *
+     * @param in input stream
+     * @return payload bytes
+     * @throws EOFException if the stream ends inside the frame
+     * @throws ProtocolException if the length is invalid
+     */
+    public static byte[] readPayload(InputStream in) throws IOException {
+        int b1 = in.read();
+        int b2 = in.read();
+        int b3 = in.read();
+        int b4 = in.read();
+        if ((b1 | b2 | b3 | b4) < 0) {
+            throw new EOFException("Connection closed inside V3 frame header");
+        }
+        int length = checkLength((b1 << 24) | (b2 << 16) | (b3 << 8) | b4);
+        byte[] payload = in.readNBytes(length);
+        if (payload.length < length) {
+            throw new EOFException("Connection closed inside V3 frame: " + payload.length + " of " + length + " bytes");
+        }
+        return payload;
+    }
+
+    /**
+     * Read a newline-terminated V2 line whose first byte has already been consumed.
+     *
+     * @param in input stream
+     * @param first the first byte of the line
+     * @return the line without its terminator
+     */
+    public static String readLine(InputStream in, int first) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b = first;
+        while (b != '\n' && b != -1) {
+            line.write(b);
+            b = in.read();
+        }
+        byte[] bytes = line.toByteArray();
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read one response: the payload of a V3 frame, or the bytes of a V2 line when the server
+     * answered in V2 (for instance a rejection written before the request was read).
+     * {@link cn.huiwings.tcprest.codec.v3.ProtocolV3Codec#decodeResponse} accepts both.
+     *
+     * @param in input stream
+     * @return response bytes, or null if the stream ended before a response
+     */
+    public static byte[] readResponse(InputStream in) throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+        if (first == ProtocolV3Constants.FRAME_MAGIC) {
+            return readPayload(in);
+        }
+        return readLine(in, first).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a big-endian int32.
+     *
+     * @param buf source
+     * @param offset position of the first byte
+     * @return the value
+     */
+    public static int readInt(byte[] buf, int offset) {
+        return ((buf[offset] & 0xFF) << 24) | ((buf[offset + 1] & 0xFF) << 16)
+                | ((buf[offset + 2] & 0xFF) << 8) | (buf[offset + 3] & 0xFF);
+    }
+
+    /**
+     * Validate a payload length read from the wire.
+     *
+     * @param length declared payload length
+     * @return the length
+     * @throws ProtocolException if negative, too short for a payload header or above {@link ProtocolV3Constants#MAX_FRAME_LENGTH}
+     */
+    public static int checkLength(int length) {
+        if (length < ProtocolV3Constants.PAYLOAD_HEADER_LENGTH || length > ProtocolV3Constants.MAX_FRAME_LENGTH) {
+            throw new ProtocolException("Invalid V3 frame length: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Append the CHK and SIG segments the configuration asks for. CHK covers the payload written so
+     * far; SIG covers the payload including the CHK segment, as in V2.
+     *
+     * @param writer frame whose body is complete
+     * @param config security configuration (null = none)
+     */
+    public static void appendSegments(Writer writer, SecurityConfig config) {
+        String checksum = ProtocolSecurity.calculateChecksum(writer.array(), ProtocolV3Constants.FRAME_HEADER_LENGTH,
+                writer.payloadLength(), config);
+        if (!checksum.isEmpty()) {
+            writer.writeShortString(checksum, StandardCharsets.US_ASCII);
+        }
+        String signature = ProtocolSecurity.calculateSignature(writer.array(), ProtocolV3Constants.FRAME_HEADER_LENGTH,
+                writer.payloadLength(), config);
+        if (!signature.isEmpty()) {
+            writer.writeShortString(signature, StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * Read the trailing segments after the body and verify them against the configuration: a
+     * checksum is required when checksums are enabled, a signature when signatures are enabled.
+     *
+     * @param reader reader positioned at the end of the body
+     * @param config security configuration (null = none)
+     * @throws cn.huiwings.tcprest.exception.SecurityException if verification fails
+     * @throws ProtocolException if the trailer is malformed
+     */
+    public static void verifySegments(Reader reader, SecurityConfig config) {
+        int chkAt = -1;
+        int sigAt = -1;
+        String chk = "";
+        String sig = "";
+        while (reader.hasRemaining()) {
+            int start = reader.position();
+            String segment = reader.readShortString(StandardCharsets.US_ASCII);
+            if (segment.startsWith(TcpRestProtocol.CHECKSUM_PREFIX) && chkAt < 0 && sigAt < 0) {
+                chk = segment;
+                chkAt = start;
+            } else if (segment.startsWith(TcpRestProtocol.SIGNATURE_PREFIX) && sigAt < 0) {
+                sig = segment;
+                sigAt = start;
+            } else {
+                throw new ProtocolException("Unexpected V3 trailer segment at byte " + start);
+            }
+        }
+        if (config == null) {
+            return;
+        }
+        if (config.isChecksumEnabled()) {
+            if (chkAt < 0) {
+                throw new cn.huiwings.tcprest.exception.SecurityException(
+                        "Checksum " + config.getChecksumAlgorithm() + " required, but message did not provide one");
+            }
+            if (!ProtocolSecurity.verifyChecksum(reader.array(), 0, chkAt, chk, config)) {
+                throw new cn.huiwings.tcprest.exception.SecurityException(
+                        "Checksum verification failed - message may have been tampered with");
+            }
+        }
+        int signedLength = sigAt >= 0 ? sigAt : reader.position();
+        ProtocolSecurity.verifySignatureSegment(reader.array(), 0, signedLength, sig, config);
+    }
+
+    /**
+     * Content of a block streamed by {@link Writer#writeBlock(BlockContent)}.
+     */
+    @FunctionalInterface
+    public interface BlockContent {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Builds one frame. The payload starts at {@link ProtocolV3Constants#FRAME_HEADER_LENGTH};
+     * {@link #toFrame()} fills in the header.
+     */
+    public static final class Writer {
+        private byte[] buf;
+        private int count = ProtocolV3Constants.FRAME_HEADER_LENGTH;
+
+        /**
+         * @param capacity initial capacity in bytes
+         */
+        public Writer(int capacity) {
+            buf = new byte[Math.max(capacity, 64)];
+        }
+
+        public Writer writeByte(int v) {
+            ensure(1);
+            buf[count++] = (byte) v;
+            return this;
+        }
+
+        public Writer writeShort(int v) {
+            if (v < 0 || v > 0xFFFF) {
+                throw new IllegalArgumentException("Value does not fit in 16 bits: " + v);
+            }
+            ensure(2);
+            buf[count++] = (byte) (v >>> 8);
+            buf[count++] = (byte) v;
+            return this;
+        }
+
+        public Writer writeInt(int v) {
+            ensure(4);
+            putInt(count, v);
+            count += 4;
+            return this;
+        }
+
+        /**
+         * Write a length-prefixed block ({@link ProtocolV3Constants#NULL_LENGTH} for null).
+         */
+        public Writer writeBlock(byte[] bytes) {
+            if (bytes == null) {
+                return writeInt(ProtocolV3Constants.NULL_LENGTH);
+            }
+            writeInt(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, count, bytes.length);
+            count += bytes.length;
+            return this;
+        }
+
+        /**
+         * Write the remaining bytes of a buffer (heap, direct or read-only) as a length-prefixed block,
+         * leaving its position unchanged.
+         */
+        public Writer writeBlock(ByteBuffer bytes) {
+            int length = bytes.remaining();
+            writeInt(length);
+            ensure(length);
+            bytes.duplicate().get(buf, count, length);
+            count += length;
+            return this;
+        }
+
+        /**
+         * Write a length-prefixed block whose content is streamed into the frame, without an
+         * intermediate array; the length is filled in afterwards.
+         *
+         * @param content writes the block content
+         * @throws IOException if the content cannot be written
+         */
+        public Writer writeBlock(BlockContent content) throws IOException {
+            int lengthAt = count;
+            writeInt(0);
+            content.writeTo(new OutputStream() {
+                @Override
+                public void write(int b) {
+                    writeByte(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    ensure(len);
+                    System.arraycopy(b, off, buf, count, len);
+                    count += len;
+                }
+            });
+            putInt(lengthAt, count - lengthAt - 4);
+            return this;
+        }
+
+        /**
+         * Write a u16-length-prefixed string.
+         */
+        public Writer writeShortString(String s, Charset charset) {
+            return writeShortBytes(s.getBytes(charset));
+        }
+
+        /**
+         * Write u16-length-prefixed bytes, such as a string encoded in advance.
+         */
+        public Writer writeShortBytes(byte[] bytes) {
+            writeShort(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, count, bytes.length);
+            count += bytes.length;
+            return this;
+        }
+
+        /**
+         * @return the backing array; the payload is {@code [FRAME_HEADER_LENGTH, size())}
+         */
+        public byte[] array() {
+            return buf;
+        }
+
+        /**
+         * @return bytes written, including the reserved frame header
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * @return payload length so far
+         */
+        public int payloadLength() {
+            return count - ProtocolV3Constants.FRAME_HEADER_LENGTH;
+        }
+
+        /**
+         * Fill in the frame header.
+         *
+         * @return the complete frame
+         */
+        public byte[] toFrame() {
+            buf[0] = ProtocolV3Constants.FRAME_MAGIC;
+            putInt(1, payloadLength());
+            return count == buf.length ? buf : Arrays.copyOf(buf, count);
+        }
+
+        private void putInt(int pos, int v) {
+            buf[pos] = (byte) (v >>> 24);
+            buf[pos + 1] = (byte) (v >>> 16);
+            buf[pos + 2] = (byte) (v >>> 8);
+            buf[pos + 3] = (byte) v;
+        }
+
+        private void ensure(int n) {
+            if (count + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + n));
+            }
+        }
+    }
+
+    /**
+     * Reads a payload in place. Out-of-range reads throw {@link ProtocolException}.
+     */
+    public static final class Reader {
+        private final byte[] buf;
+        private final int limit;
+        private int pos;
+
+        /**
+         * @param payload payload bytes (without the frame header)
+         */
+        public Reader(byte[] payload) {
+            this.buf = payload;
+            this.limit = payload.length;
+        }
+
+        public int readByte() {
+            require(1);
+            return buf[pos++] & 0xFF;
+        }
+
+        public int readShort() {
+            require(2);
+            int v = ((buf[pos] & 0xFF) << 8) | (buf[pos + 1] & 0xFF);
+            pos += 2;
+            return v;
+        }
+
+        public int readInt() {
+            require(4);
+            int v = ProtocolV3Frames.readInt(buf, pos);
+            pos += 4;
+            return v;
+        }
+
+        /**
+         * Read a block header and skip its bytes.
+         *
+         * @return block length, or {@link ProtocolV3Constants#NULL_LENGTH}; the bytes start at
+         *         {@link #position()} minus the length
+         */
+        public int readBlock() {
+            int length = readInt();
+            if (length == ProtocolV3Constants.NULL_LENGTH) {
+                return length;
+            }
+            if (length < 0) {
+                throw new ProtocolException("Invalid V3 block length: " + length);
+            }
+            require(length);
+            pos += length;
+            return length;
+        }
+
+        /**
+         * Read a u16-length-prefixed string.
+         */
+        public String readShortString(Charset charset) {
+            int length = readShort();
+            require(length);
+            String s = new String(buf, pos, length, charset);
+            pos += length;
+            return s;
+        }
+
+        public byte[] array() {
+            return buf;
+        }
+
+        public int position() {
+            return pos;
+        }
+
+        public boolean hasRemaining() {
+            return pos < limit;
+        }
+
+        private void require(int n) {
+            if (limit - pos < n) {
+                throw new ProtocolException("Truncated V3 payload at byte " + pos);
+            }
+        }
+    }
+}
@@ -9,6 +9,7 @@ import java.nio.charset.StandardCharsets;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -132,12 +133,30 @@ public class ProtocolSecurity {
         if (config == null || !config.isChecksumEnabled()) {
             return "";
         }
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        return calculateChecksum(bytes, 0, bytes.length, config);
+    }
+
+    /**
+     * Calculates checksum over raw bytes (Protocol V3).
+     *
+     * @param data message bytes
+     * @param offset start of the checksummed range
+     * @param length length of the range
+     * @param config security configuration
+     * @return checksum string in format "CHK:value", or empty string if checksum disabled
+     * @throws SecurityException if checksum calculation fails
+     */
+    public static String calculateChecksum(byte[] data, int offset, int length, SecurityConfig config) {
+        if (config == null || !config.isChecksumEnabled()) {
+            return "";
+        }
 
         switch (config.getChecksumAlgorithm()) {
             case CRC32:
-                return CHECKSUM_PREFIX + calculateCRC32(message);
+                return CHECKSUM_PREFIX + calculateCRC32(data, offset, length);
             case HMAC_SHA256:
-                return CHECKSUM_PREFIX + calculateHMAC(message, config.getHmacSecret());
+                return CHECKSUM_PREFIX + calculateHMAC(data, offset, length, config.getHmacSecret());
             default:
                 return "";
         }
@@ -169,6 +188,30 @@ public class ProtocolSecurity {
         return expectedChecksum.equals(receivedChecksum);
     }
 
+    /**
+     * Verifies a checksum over raw bytes (Protocol V3).
+     *
+     * @param data message bytes
+     * @param offset start of the checksummed range
+     * @param length length of the range
+     * @param receivedChecksum received checksum in format "CHK:value"
+     * @param config security configuration
+     * @return true if checksum is valid or disabled
+     * @throws SecurityException if the checksum is missing or malformed
+     */
+    public static boolean verifyChecksum(byte[] data, int offset, int length, String receivedChecksum, SecurityConfig config) {
+        if (config == null || !config.isChecksumEnabled()) {
+            return true;
+        }
+        if (receivedChecksum == null || receivedChecksum.isEmpty()) {
+            throw new SecurityException("Checksum enabled but not provided in message");
+        }
+        if (!receivedChecksum.startsWith(CHECKSUM_PREFIX)) {
+            throw new SecurityException("Invalid checksum format, expected CHK:value");
+        }
+        return calculateChecksum(data, offset, length, config).equals(receivedChecksum);
+    }
+
     /**
      * Splits a protocol message into content and checksum.
      *
@@ -276,10 +319,15 @@ public class ProtocolSecurity {
         if (message == null || privateKey == null) {
             throw new IllegalArgumentException("Message and privateKey cannot be null");
         }
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        return sign(bytes, 0, bytes.length, privateKey);
+    }
+
+    private static String sign(byte[] data, int offset, int length, PrivateKey privateKey) {
         try {
             Signature sig = Signature.getInstance("SHA256withRSA");
             sig.initSign(privateKey);
-            sig.update(message.getBytes(StandardCharsets.UTF_8));
+            sig.update(data, offset, length);
             byte[] signatureBytes = sig.sign();
             return Base64.getEncoder().encodeToString(signatureBytes);
         } catch (Exception e) {
@@ -299,11 +347,19 @@ public class ProtocolSecurity {
         if (message == null || signatureBase64 == null || publicKey == null) {
             return false;
         }
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        return verifySignature(bytes, 0, bytes.length, signatureBase64, publicKey);
+    }
+
+    private static boolean verifySignature(byte[] data, int offset, int length, String signatureBase64, PublicKey publicKey) {
+        if (signatureBase64 == null || publicKey == null) {
+            return false;
+        }
         try {
             byte[] signatureBytes = Base64.getDecoder().decode(signatureBase64);
             Signature sig = Signature.getInstance("SHA256withRSA");
             sig.initVerify(publicKey);
-            sig.update(message.getBytes(StandardCharsets.UTF_8));
+            sig.update(data, offset, length);
             return sig.verify(signatureBytes);
         } catch (Exception e) {
             return false;
@@ -399,6 +455,92 @@ public class ProtocolSecurity {
         throw new SecurityException("Unsupported signature algorithm: " + (value.contains(":") ? value.substring(0, value.indexOf(':')) : value));
     }
 
+    /**
+     * Builds the SIG segment over raw bytes (Protocol V3). Custom handlers receive the bytes through
+     * {@link SignatureHandler#sign(byte[], Object)}.
+     *
+     * @param data message bytes
+     * @param offset start of the signed range
+     * @param length length of the range
+     * @param config security configuration
+     * @return "SIG:ALG:base64" or "" if signature disabled
+     */
+    public static String calculateSignature(byte[] data, int offset, int length, SecurityConfig config) {
+        if (config == null || !config.isSignatureEnabled()) {
+            return "";
+        }
+        String customName = config.getCustomSignatureAlgorithmName();
+        if (customName != null) {
+            SignatureHandler handler = getSignatureHandler(customName);
+            Object keyConfig = config.getSigningKeyConfig();
+            if (handler == null || keyConfig == null) {
+                return "";
+            }
+            String signatureBase64 = handler.sign(Arrays.copyOfRange(data, offset, offset + length), keyConfig);
+            return TcpRestProtocol.SIGNATURE_PREFIX + customName + ":" + signatureBase64;
+        }
+        if (config.getSignatureAlgorithm() != SecurityConfig.SignatureAlgorithm.RSA_SHA256) {
+            return "";
+        }
+        PrivateKey key = config.getSigningPrivateKey();
+        if (key == null) {
+            return "";
+        }
+        return TcpRestProtocol.SIGNATURE_PREFIX + SIG_RSA_PREFIX + sign(data, offset, length, key);
+    }
+
+    /**
+     * Verifies the SIG segment against raw bytes (Protocol V3).
+     *
+     * @param data message bytes
+     * @param offset start of the signed range
+     * @param length length of the range
+     * @param sigSegment full segment e.g. "SIG:RSA:base64..."
+     * @param config security configuration
+     * @throws SecurityException if signature required but invalid or unsupported algorithm
+     */
+    public static void verifySignatureSegment(byte[] data, int offset, int length, String sigSegment, SecurityConfig config) {
+        if (config == null || !config.isSignatureEnabled()) {
+            return;
+        }
+        if (sigSegment == null || sigSegment.isEmpty()) {
+            throw new SecurityException("Signature enabled but not provided in message");
+        }
+        if (!sigSegment.startsWith(TcpRestProtocol.SIGNATURE_PREFIX)) {
+            throw new SecurityException("Invalid signature format, expected SIG:value");
+        }
+        String value = sigSegment.substring(TcpRestProtocol.SIGNATURE_PREFIX.length());
+        if (value.startsWith(SIG_RSA_PREFIX)) {
+            PublicKey key = config.getVerificationPublicKey();
+            if (key == null) {
+                throw new SecurityException("Signature verification key not configured");
+            }
+            if (!verifySignature(data, offset, length, value.substring(SIG_RSA_PREFIX.length()), key)) {
+                throw new SecurityException("Signature verification failed - message may have been tampered or wrong key");
+            }
+            return;
+        }
+        int colon = value.indexOf(':');
+        if (colon > 0) {
+            String algo = value.substring(0, colon);
+            SignatureHandler handler = getSignatureHandler(algo);
+            if (handler != null) {
+                Object keyConfig = config.getVerificationKeyConfig();
+                if (keyConfig == null) {
+                    throw new SecurityException("Signature verification key not configured for " + algo);
+                }
+                if (!handler.verify(Arrays.copyOfRange(data, offset, offset + length), value.substring(colon + 1), keyConfig)) {
+                    throw new SecurityException("Signature verification failed - message may have been tampered or wrong key");
+                }
+                return;
+            }
+        }
+        if (value.startsWith("GPG:")) {
+            throw new SecurityException("GPG signature not supported in commons; use optional tcprest-pgp module");
+        }
+        throw new SecurityException("Unsupported signature algorithm: " + (colon > 0 ? value.substring(0, colon) : value));
+    }
+
     /**
      * Validates that a class name matches Java naming conventions.
      *
@@ -442,16 +584,16 @@ public class ProtocolSecurity {
     /**
      * Calculates CRC32 checksum.
      */
-    private static String calculateCRC32(String message) {
+    private static String calculateCRC32(byte[] data, int offset, int length) {
         CRC32 crc = new CRC32();
-        crc.update(message.getBytes(StandardCharsets.UTF_8));
+        crc.update(data, offset, length);
         return Long.toHexString(crc.getValue());
     }
 
     /**
      * Calculates HMAC-SHA256.
      */
-    private static String calculateHMAC(String message, String secret) {
+    private static String calculateHMAC(byte[] data, int offset, int length, String secret) {
         try {
             Mac mac = Mac.getInstance("HmacSHA256");
             SecretKeySpec secretKey = new SecretKeySpec(
@@ -459,7 +601,8 @@ public class ProtocolSecurity {
                     "HmacSHA256"
             );
             mac.init(secretKey);
-            byte[] hmacBytes = mac.doFinal(message.getBytes(StandardCharsets.UTF_8));
+            mac.update(data, offset, length);
+            byte[] hmacBytes = mac.doFinal();
 
             // Convert to hex string
             StringBuilder sb = new StringBuilder();
@@ -168,6 +168,27 @@ public class SecurityConfig {
         return this;
     }
 
+    /**
+     * Creates an independent copy, e.g. to change one setting for a single peer.
+     *
+     * @return a new configuration with the same settings
+     * @since 2.0.0
+     */
+    public SecurityConfig copy() {
+        SecurityConfig copy = new SecurityConfig();
+        copy.checksumAlgorithm = checksumAlgorithm;
+        copy.hmacSecret = hmacSecret;
+        copy.signatureAlgorithm = signatureAlgorithm;
+        copy.signingPrivateKey = signingPrivateKey;
+        copy.verificationPublicKey = verificationPublicKey;
+        copy.customSignatureAlgorithmName = customSignatureAlgorithmName;
+        copy.signingKeyConfig = signingKeyConfig;
+        copy.verificationKeyConfig = verificationKeyConfig;
+        copy.enableClassWhitelist = enableClassWhitelist;
+        copy.allowedClasses = new HashSet<>(allowedClasses);
+        return copy;
+    }
+
     /**
      * Enables class name whitelist validation.
      *
@@ -1,5 +1,7 @@
 package cn.huiwings.tcprest.security;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * SPI for custom signature algorithms (e.g. GPG/OpenPGP).
  * Commons implements RSA only; optional modules (e.g. tcprest-pgp) register a handler for "GPG".
@@ -35,4 +37,28 @@ public interface SignatureHandler {
      * @return true if valid
      */
     boolean verify(String message, String signatureBase64, Object verificationKeyConfig);
+
+    /**
+     * Sign raw message bytes (Protocol V3). The default maps each byte to one char (ISO-8859-1)
+     * and delegates to {@link #sign(String, Object)}; handlers that sign bytes natively may override.
+     *
+     * @param message payload bytes to sign
+     * @param signingKeyConfig opaque key config
+     * @return Base64-encoded signature
+     */
+    default String sign(byte[] message, Object signingKeyConfig) {
+        return sign(new String(message, StandardCharsets.ISO_8859_1), signingKeyConfig);
+    }
+
+    /**
+     * Verify a signature over raw message bytes (Protocol V3). Must match {@link #sign(byte[], Object)}.
+     *
+     * @param message original payload bytes
+     * @param signatureBase64 Base64-encoded signature (no algorithm prefix)
+     * @param verificationKeyConfig opaque key config
+     * @return true if valid
+     */
+    default boolean verify(byte[] message, String signatureBase64, Object verificationKeyConfig) {
+        return verify(new String(message, StandardCharsets.ISO_8859_1), signatureBase64, verificationKeyConfig);
+    }
 }
@@ -9,14 +9,24 @@ import java.util.logging.Logger;
 import cn.huiwings.tcprest.mapper.Mapper;
 import cn.huiwings.tcprest.mapper.MapperHelper;
 import cn.huiwings.tcprest.parser.RequestParser;
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.protocol.v2.DispatchTable;
+import cn.huiwings.tcprest.protocol.v2.MultiplexFrames;
 import cn.huiwings.tcprest.protocol.v2.ProtocolV2ServerComponents;
 import cn.huiwings.tcprest.protocol.v2.ProtocolV2TypeSupport;
 import cn.huiwings.tcprest.protocol.v2.StatusCode;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants;
 import cn.huiwings.tcprest.security.SecurityConfig;
 
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
 
 /**
  * Abstract base class for TcpRest server implementations.
@@ -24,7 +34,15 @@ import java.util.Map;
  * <p>Provides common functionality for resource management, mapper configuration,
  * and Protocol V2 request processing.</p>
  *
- * <p><b>Protocol Support:</b> Protocol V2 only (V1 removed in version 2.0.0)</p>
+ * <p><b>Protocol Support:</b> Protocol V2 lines and, unless disabled with
+ * {@link #setProtocolV3Enabled(boolean)}, Protocol V3 binary frames (V1 removed in version 2.0.0).
+ * Clients may open a connection with a capability handshake ({@link Capabilities}), answered by
+ * {@link #processHandshake(String)}.</p>
+ *
+ * <p><b>Dispatch:</b> registered resources are compiled into a {@link DispatchTable} whenever resources
+ * or mappers change, so requests for their methods are resolved with a single lookup. The instance
+ * serving a request is found in a {@link ResourceIndex} snapshot, rebuilt when resources change and
+ * read by request threads without locking.</p>
  *
  * @author Weinan Li
  * @created_at 08 26 2012
@@ -37,12 +55,22 @@ public abstract class AbstractTcpRestServer implements TcpRestServer {
 
     protected volatile String status = TcpRestServerStatus.CLOSED;
 
-    public final Map<String, Class> resourceClasses = new HashMap<String, Class>();
+    public final Map<String, Class> resourceClasses = new LinkedHashMap<String, Class>();
+
+    public final Map<String, Object> singletonResources = new LinkedHashMap<String, Object>();
+
+    /** Instance providers of {@link #resourceClasses}, same keys; guarded by the resourceClasses lock. */
+    private final Map<String, ResourceProvider> resourceProviders = new LinkedHashMap<>();
 
-    public final Map<String, Object> singletonResources = new HashMap<String, Object>();
+    /** Snapshot of the two maps above that requests are served from; replaced on every change. */
+    private volatile ResourceIndex resourceIndex = ResourceIndex.EMPTY;
 
     protected CompressionConfig compressionConfig = new CompressionConfig(); // Default: disabled
 
+    protected KeepAliveConfig keepAliveConfig = new KeepAliveConfig(); // Default: one request per connection
+
+    protected WorkerPoolConfig workerPoolConfig = new WorkerPoolConfig(); // Default: process on I/O threads
+
     /**
      * Protocol V2 components - initialized when server starts.
      * <p>Initialized in {@link #initializeProtocolComponents()} when server starts (in up() method).</p>
@@ -50,12 +78,21 @@ public abstract class AbstractTcpRestServer implements TcpRestServer {
      */
     private volatile ProtocolV2ServerComponents protocolComponents;
 
+    /** Serializes dispatch table rebuilds so the newest registration state is installed last. */
+    private final Object dispatchTableLock = new Object();
+
+    /** Serializes resource index rebuilds for the same reason. */
+    private final Object resourceIndexLock = new Object();
+
     /**
      * When true, addResource/addSingletonResource throw if any DTO type is neither
      * Serializable nor has a mapper. When false (default), only a warning is logged.
      */
     private boolean strictTypeCheck = false;
 
+    /** Whether V3 binary frames are served; transports detect them by their first byte. */
+    private volatile boolean protocolV3Enabled = true;
+
     /** Optional registry: when set, register on up() and deregister on down(). */
     private ServiceRegistry serviceRegistry;
     private String registryServiceName;
@@ -81,6 +118,39 @@ public abstract class AbstractTcpRestServer implements TcpRestServer {
         if (resourceClass == null) {
             return;
         }
+        addResource(ResourceProvider.of(resourceClass));
+    }
+
+    @Override
+    public void addResource(Class resourceClass, ResourceScope scope) {
+        if (resourceClass == null) {
+            return;
+        }
+        addResource(ResourceProvider.of(resourceClass, scope, ResourceScope.DEFAULT_POOL_SIZE));
+    }
+
+    @Override
+    public void addPooledResource(Class resourceClass, int poolSize) {
+        if (resourceClass == null) {
+            return;
+        }
+        addResource(ResourceProvider.of(resourceClass, ResourceScope.POOLED, poolSize));
+    }
+
+    @Override
+    public <T> void addShardedResource(Class<T> resourceClass, Supplier<? extends T> supplier, ShardMerger merger) {
+        if (resourceClass == null || supplier == null) {
+            return;
+        }
+        addResource(new ShardedResourceProvider(resourceClass, supplier, merger));
+    }
+
+    private void addResource(ResourceProvider provider) {
+        Class resourceClass = provider.getResourceClass();
+        if (provider.getScope() == ResourceScope.SHARDED && TcpRestServerStatus.RUNNING.equals(status)
+                && !invokesOnBlockingThreads()) {
+            throw new IllegalStateException(shardedRefusal(resourceClass));
+        }
 
         // Adding multiple instances of same class is meaningless. So every TcpRestServer implementation
         // should check and overwrite existing instances of same class and give out warning each time a
@@ -89,17 +159,20 @@ public abstract class AbstractTcpRestServer implements TcpRestServer {
             if (resourceClasses.containsKey(resourceClass.getCanonicalName())) {
                 logger.warning("Resource already exists for: " + resourceClass.getCanonicalName());
             }
-            deleteResource(resourceClass);
             resourceClasses.put(resourceClass.getCanonicalName(), resourceClass);
+            resourceProviders.put(resourceClass.getCanonicalName(), provider);
         }
         validateResourceTypes(resourceClass);
+        rebuildResourceIndex();
     }
 
     @Override
     public void deleteResource(Class resourceClass) {
         synchronized (resourceClasses) {
             resourceClasses.remove(resourceClass.getCanonicalName());
+            resourceProviders.remove(resourceClass.getCanonicalName());
         }
+        rebuildResourceIndex();
     }
 
     @Override
@@ -108,10 +181,10 @@ public abstract class AbstractTcpRestServer implements TcpRestServer {
             return;
         }
         synchronized (singletonResources) {
-            deleteSingletonResource(instance);
             singletonResources.put(instance.getClass().getCanonicalName(), instance);
         }
         validateResourceTypes(instance.getClass());
+        rebuildResourceIndex();
     }
 
     @Override
@@ -119,16 +192,48 @@ public abstract class AbstractTcpRestServer implements TcpRestServer {
         synchronized (singletonResources) {
             singletonResources.remove(instance.getClass().getCanonicalName());
         }
+        rebuildResourceIndex();
     }
 
     @Override
     public Map<String, Class> getResourceClasses() {
-        return new HashMap<String, Class>(resourceClasses);
+        synchronized (resourceClasses) {
+            return new HashMap<String, Class>(resourceClasses);
+        }
     }
 
     @Override
     public Map<String, Object> getSingletonResources() {
-        return new HashMap<String, Object>(singletonResources);
+        synchronized (singletonResources) {
+            return new HashMap<String, Object>(singletonResources);
+        }
+    }
+
+    /**
+     * @return the snapshot of registered resources requests are currently served from
+     * @since 2.0.0
+     */
+    public ResourceIndex getResourceIndex() {
+        return resourceIndex;
+    }
+
+    /**
+     * Publish a new {@link ResourceIndex} built from the registered resources, then rebuild the
+     * dispatch table from it. Called whenever resources change.
+     */
+    protected void rebuildResourceIndex() {
+        synchronized (resourceIndexLock) {
+            List<ResourceProvider> providers;
+            synchronized (resourceClasses) {
+                providers = new ArrayList<>(resourceProviders.values());
+            }
+            List<Object> singletons;
+            synchronized (singletonResources) {
+                singletons = new ArrayList<>(singletonResources.values());
+            }
+            resourceIndex = ResourceIndex.build(providers, singletons);
+        }
+        rebuildDispatchTable();
     }
 
     /**
@@ -144,13 +249,70 @@ public abstract class AbstractTcpRestServer implements TcpRestServer {
      * }
      * </pre>
      */
+    /**
+     * Whether resource methods run on threads that may wait, such as worker pool threads. Servers that
+     * invoke them on shared event loops return false, and then refuse {@link ResourceScope#SHARDED}
+     * resources: a request waiting for a busy shard would hold every connection of its event loop.
+     *
+     * @return true unless resource methods run on shared event loops
+     */
+    protected boolean invokesOnBlockingThreads() {
+        return true;
+    }
+
+    /**
+     * Refuse to start with sharded resources when resource methods would run on shared event loops.
+     * Called by servers that override {@link #invokesOnBlockingThreads()}, before they start.
+     *
+     * @throws IllegalStateException if a sharded resource is registered and the server cannot wait for it
+     */
+    protected void checkShardedResources() {
+        if (invokesOnBlockingThreads()) {
+            return;
+        }
+        synchronized (resourceClasses) {
+            for (ResourceProvider provider : resourceProviders.values()) {
+                if (provider.getScope() == ResourceScope.SHARDED) {
+                    throw new IllegalStateException(shardedRefusal(provider.getResourceClass()));
+                }
+            }
+        }
+    }
+
+    private static String shardedRefusal(Class<?> resourceClass) {
+        return "Sharded resource " + resourceClass.getName()
+                + " requires the worker pool: requests waiting for a shard would block the event loop";
+    }
+
     protected void initializeProtocolComponents() {
         if (protocolComponents == null) {
             protocolComponents = ProtocolV2ServerComponents.create(mappers, securityConfig);
+            rebuildDispatchTable();
             logger.info("Protocol V2 components initialized");
         }
     }
 
+    /**
+     * Compile the registered resources into a new {@link DispatchTable} and install it in the parser.
+     * Called whenever resources or mappers change; a no-op until protocol components exist.
+     */
+    protected void rebuildDispatchTable() {
+        synchronized (dispatchTableLock) {
+            ProtocolV2ServerComponents components = protocolComponents;
+            if (components == null) {
+                return;
+            }
+            List<Class<?>> types = resourceIndex.getTypes();
+            Map<String, Mapper> mapperSnapshot;
+            synchronized (mappers) {
+                mapperSnapshot = new HashMap<>(mappers);
+            }
+            DispatchTable table = DispatchTable.build(types, mapperSnapshot);
+            components.setDispatchTable(table);
+            logger.fine("Dispatch table rebuilt: " + table.size() + " methods");
+        }
+    }
+
     /**
      * Process Protocol V2 request with comprehensive exception handling.
      *
@@ -183,16 +345,12 @@ public abstract class AbstractTcpRestServer implements TcpRestServer {
             // Parse request into context
             Context context = protocolComponents.getParser().parse(request);
 
-            // Resolve resource instance
-            Class<?> targetClass = context.getTargetClass();
-            Object instance = ResourceResolver.findResourceInstance(targetClass, this, logger);
-            context.setTargetInstance(instance);
-
-            // Invoke method
-            Object result = protocolComponents.getInvoker().invoke(context);
+            // Resolve resource instance and invoke method
+            Object result = invokeResource(context);
 
-            // Encode success response
-            return protocolComponents.encodeResponse(result, StatusCode.SUCCESS);
+            // Encode success response with the features the client can read
+            return protocolComponents.encodeResponse(result, returnType(context), StatusCode.SUCCESS,
+                    context.getFeatures());
 
         } catch (BusinessException e) {
             // Business exception - expected error from business logic
@@ -216,6 +374,132 @@ public abstract class AbstractTcpRestServer implements TcpRestServer {
         }
     }
 
+    /**
+     * Process a Protocol V3 request payload with the same exception handling as {@link #processRequest(String)}.
+     *
+     * @param payload request payload (frame header stripped)
+     * @return complete V3 response frame
+     * @throws Exception if request processing fails critically
+     * @see cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants
+     */
+    protected byte[] processBinaryRequest(byte[] payload) throws Exception {
+        if (protocolComponents == null) {
+            logger.warning("Protocol components not initialized - initializing now. " +
+                       "Consider calling initializeProtocolComponents() in up() method.");
+            initializeProtocolComponents();
+        }
+        if (!protocolV3Enabled) {
+            logger.severe("Protocol error: V3 request on a server with Protocol V3 disabled");
+            return protocolComponents.encodeBinaryException(
+                    new ProtocolException("Protocol V3 is disabled on this server"), StatusCode.PROTOCOL_ERROR);
+        }
+
+        try {
+            Context context = protocolComponents.parseBinary(payload);
+            Object result = invokeResource(context);
+            return protocolComponents.encodeBinaryResponse(result, returnType(context), StatusCode.SUCCESS,
+                    context.getFeatures());
+
+        } catch (BusinessException e) {
+            logger.warning("Business exception: " + e.getMessage());
+            return protocolComponents.encodeBinaryException(e, StatusCode.BUSINESS_EXCEPTION);
+
+        } catch (cn.huiwings.tcprest.exception.SecurityException e) {
+            logger.severe("Security violation: " + e.getMessage());
+            return protocolComponents.encodeBinaryException(e, StatusCode.PROTOCOL_ERROR);
+
+        } catch (ProtocolException e) {
+            logger.severe("Protocol error: " + e.getMessage());
+            return protocolComponents.encodeBinaryException(e, StatusCode.PROTOCOL_ERROR);
+
+        } catch (Exception e) {
+            logger.severe("Server error: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+            return protocolComponents.encodeBinaryException(e, StatusCode.SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Find the instance serving a parsed request, invoke the method on it and hand the instance
+     * back to its provider ({@link ResourceScope}). Merged reads of sharded resources run on every shard.
+     */
+    private Object invokeResource(Context context) throws Exception {
+        ResourceIndex index = resourceIndex;
+        Class<?> targetClass = context.getTargetClass();
+        ResourceProvider provider = index.getProvider(targetClass.getName());
+        if (provider instanceof ShardedResourceProvider
+                && ((ShardedResourceProvider) provider).isMerged(context.getTargetMethod())) {
+            return ((ShardedResourceProvider) provider).invokeMerged(context, protocolComponents.getInvoker());
+        }
+        Object instance = index.findInstance(targetClass);
+        try {
+            context.setTargetInstance(instance);
+            return protocolComponents.getInvoker().invoke(context);
+        } finally {
+            index.release(targetClass, instance);
+        }
+    }
+
+    /**
+     * @return generic return type of the invoked method, which lets the codec write collections such as
+     *         {@code List<Integer>} as typed sequences
+     */
+    private static Type returnType(Context context) {
+        Method method = context.getTargetMethod();
+        return method != null ? method.getGenericReturnType() : null;
+    }
+
+    /**
+     * Answer a capability handshake: the first offered version this server supports, the offered
+     * features it knows, the checksum and signature modes it requires and the smaller frame limit.
+     * A malformed handshake yields a V2 PROTOCOL_ERROR response.
+     *
+     * @param line handshake offer ({@link Capabilities#isHello(String)})
+     * @return handshake answer line
+     */
+    protected String processHandshake(String line) {
+        if (protocolComponents == null) {
+            initializeProtocolComponents();
+        }
+        try {
+            Capabilities agreed = Capabilities.parse(line)
+                    .answer(protocolV3Enabled, securityConfig, getMaxFrameLength());
+            logger.fine("Capability handshake: " + agreed);
+            return agreed.toLine();
+        } catch (ProtocolException e) {
+            logger.severe("Protocol error: " + e.getMessage());
+            return encodeErrorResponse(e, StatusCode.PROTOCOL_ERROR);
+        }
+    }
+
+    /**
+     * Largest request frame this transport accepts, announced in the capability handshake.
+     *
+     * @return frame limit in bytes
+     */
+    protected int getMaxFrameLength() {
+        return ProtocolV3Constants.MAX_FRAME_LENGTH;
+    }
+
+    /**
+     * Process a multiplexed line ({@code #id|V2...}) and return the response wrapped with the same id.
+     * A malformed envelope yields an unwrapped PROTOCOL_ERROR response.
+     *
+     * @param line multiplexed request line
+     * @return multiplexed response line
+     * @throws Exception if response encoding fails
+     * @see MultiplexFrames
+     */
+    protected String processMultiplexedRequest(String line) throws Exception {
+        long id;
+        try {
+            id = MultiplexFrames.parseId(line);
+        } catch (IllegalArgumentException e) {
+            logger.severe("Protocol error: " + e.getMessage());
+            return encodeErrorResponse(new ProtocolException(e.getMessage()), StatusCode.PROTOCOL_ERROR);
+        }
+        return MultiplexFrames.wrap(id, processRequest(MultiplexFrames.unwrap(line)));
+    }
+
     /**
      * Encode an exception as a V2 error response. For use by transport layers (e.g. UDP handler).
      *
@@ -230,6 +514,48 @@ public abstract class AbstractTcpRestServer implements TcpRestServer {
         return protocolComponents.encodeException(error, status);
     }
 
+    /**
+     * Encode a request rejected by a full worker pool as a V2 SERVER_ERROR response.
+     *
+     * @param e the rejection
+     * @return V2 response string
+     */
+    protected String encodeRejection(RejectedExecutionException e) {
+        return encodeErrorResponse(new RejectedExecutionException("Server busy: request rejected by worker pool", e),
+                StatusCode.SERVER_ERROR);
+    }
+
+    /**
+     * Encode a V3 request rejected by a full worker pool as a V3 SERVER_ERROR frame.
+     *
+     * @param e the rejection
+     * @return V3 response frame
+     */
+    protected byte[] encodeBinaryRejection(RejectedExecutionException e) {
+        if (protocolComponents == null) {
+            throw new IllegalStateException("Protocol components not initialized");
+        }
+        return protocolComponents.encodeBinaryException(
+                new RejectedExecutionException("Server busy: request rejected by worker pool", e), StatusCode.SERVER_ERROR);
+    }
+
+    /**
+     * @return true if Protocol V3 binary frames are served (default)
+     */
+    public boolean isProtocolV3Enabled() {
+        return protocolV3Enabled;
+    }
+
+    /**
+     * Enable or disable Protocol V3. When disabled, V3 frames are answered with a V3 PROTOCOL_ERROR;
+     * V2 lines are always served.
+     *
+     * @param protocolV3Enabled whether to serve V3 frames
+     */
+    public void setProtocolV3Enabled(boolean protocolV3Enabled) {
+        this.protocolV3Enabled = protocolV3Enabled;
+    }
+
     @Override
     public Map<String, Mapper> getMappers() {
         // We don't want user to modify the mappers by getMappers.
@@ -242,6 +568,7 @@ public abstract class AbstractTcpRestServer implements TcpRestServer {
         synchronized (mappers) {
             mappers.put(canonicalName, mapper);
         }
+        rebuildDispatchTable();
     }
 
     @Override
@@ -276,6 +603,55 @@ public abstract class AbstractTcpRestServer implements TcpRestServer {
         logger.info("Compression disabled");
     }
 
+    @Override
+    public KeepAliveConfig getKeepAliveConfig() {
+        return keepAliveConfig;
+    }
+
+    @Override
+    public void setKeepAliveConfig(KeepAliveConfig keepAliveConfig) {
+        if (keepAliveConfig == null) {
+            throw new IllegalArgumentException("Keep-alive config cannot be null");
+        }
+        this.keepAliveConfig = keepAliveConfig;
+        logger.info("Keep-alive configured: " + keepAliveConfig);
+    }
+
+    /**
+     * Enable keep-alive with default settings.
+     */
+    @Override
+    public void enableKeepAlive() {
+        this.keepAliveConfig.setEnabled(true);
+        logger.info("Keep-alive enabled with default settings");
+    }
+
+    /**
+     * Worker pool for request processing. Honored by servers that separate I/O threads from
+     * processing (see the server's documentation); takes effect on the next {@link #up()}.
+     *
+     * @return worker pool configuration
+     */
+    public WorkerPoolConfig getWorkerPoolConfig() {
+        return workerPoolConfig;
+    }
+
+    public void setWorkerPoolConfig(WorkerPoolConfig workerPoolConfig) {
+        if (workerPoolConfig == null) {
+            throw new IllegalArgumentException("Worker pool config cannot be null");
+        }
+        this.workerPoolConfig = workerPoolConfig;
+        logger.info("Worker pool configured: " + workerPoolConfig);
+    }
+
+    /**
+     * Enable the worker pool with default settings.
+     */
+    public void enableWorkerPool() {
+        this.workerPoolConfig.setEnabled(true);
+        logger.info("Worker pool enabled with default settings");
+    }
+
     /**
      * Get resource instance by class name.
      *
@@ -284,14 +660,10 @@ public abstract class AbstractTcpRestServer implements TcpRestServer {
      */
     @Override
     public Object getResource(String className) {
-        // Check singleton resources first
-        Object singleton = singletonResources.get(className);
-        if (singleton != null) {
-            return singleton;
-        }
-
         // Resource classes require instantiation (handled by invoker)
-        return null;
+        synchronized (singletonResources) {
+            return singletonResources.get(className);
+        }
     }
 
     /**
@@ -302,8 +674,14 @@ public abstract class AbstractTcpRestServer implements TcpRestServer {
      */
     @Override
     public boolean hasResource(String className) {
-        return singletonResources.containsKey(className) ||
-               resourceClasses.containsKey(className);
+        synchronized (singletonResources) {
+            if (singletonResources.containsKey(className)) {
+                return true;
+            }
+        }
+        synchronized (resourceClasses) {
+            return resourceClasses.containsKey(className);
+        }
     }
 
     private SecurityConfig securityConfig;
@@ -102,6 +102,13 @@ public class Context {
      */
     private Object[] paramTypes;
 
+    /**
+     * Wire features the client announced it can read ({@link cn.huiwings.tcprest.protocol.Capabilities}).
+     * <p>The response is encoded with these only; 0 for clients that announce none.</p>
+     * <p>Set by: {@link cn.huiwings.tcprest.parser.RequestParser}</p>
+     */
+    private int features;
+
     /**
      * Creates a new empty Context.
      * <p>Fields are populated incrementally by RequestParser and Server.</p>
@@ -198,4 +205,24 @@ public class Context {
     public void setTargetInstance(Object targetInstance) {
         this.targetInstance = targetInstance;
     }
+
+    /**
+     * Gets the wire features the client announced.
+     *
+     * @return feature bits ({@link cn.huiwings.tcprest.protocol.Capabilities#FEATURE_COMPACT}, ...)
+     * @since 2.0.0
+     */
+    public int getFeatures() {
+        return features;
+    }
+
+    /**
+     * Sets the wire features the client announced.
+     *
+     * @param features feature bits
+     * @since 2.0.0
+     */
+    public void setFeatures(int features) {
+        this.features = features;
+    }
 }
@@ -0,0 +1,115 @@
+package cn.huiwings.tcprest.server;
+
+/**
+ * Configuration for persistent (keep-alive) connections on TCP servers.
+ *
+ * <p>When disabled (default), every connection serves exactly one request and is closed
+ * after the response is written. When enabled, a connection serves many newline-framed
+ * V2 requests in order (pipelining): requests may be written back-to-back without
+ * waiting for responses, and responses are written in request order.</p>
+ *
+ * <p>A keep-alive connection is closed by the server when:</p>
+ * <ul>
+ *   <li>the client closes it (EOF)</li>
+ *   <li>no request arrives within {@link #getIdleTimeoutMillis()}</li>
+ *   <li>{@link #getMaxRequestsPerConnection()} responses have been written</li>
+ * </ul>
+ *
+ * @author Weinan Li
+ */
+public class KeepAliveConfig {
+
+    /**
+     * Default idle timeout in milliseconds (60 seconds).
+     */
+    public static final int DEFAULT_IDLE_TIMEOUT_MILLIS = 60 * 1000;
+
+    /**
+     * Default maximum number of requests served per connection.
+     */
+    public static final int DEFAULT_MAX_REQUESTS_PER_CONNECTION = 1000;
+
+    /**
+     * Enable/disable keep-alive. Default: false (one request per connection)
+     */
+    private boolean enabled = false;
+
+    /**
+     * Close the connection when no request arrives within this many milliseconds.
+     * 0 means no idle timeout (use with care).
+     * Default: {@value #DEFAULT_IDLE_TIMEOUT_MILLIS}
+     */
+    private int idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+
+    /**
+     * Close the connection after this many responses have been written.
+     * 0 means unlimited.
+     * Default: {@value #DEFAULT_MAX_REQUESTS_PER_CONNECTION}
+     */
+    private int maxRequestsPerConnection = DEFAULT_MAX_REQUESTS_PER_CONNECTION;
+
+    public KeepAliveConfig() {
+    }
+
+    public KeepAliveConfig(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public KeepAliveConfig(boolean enabled, int idleTimeoutMillis, int maxRequestsPerConnection) {
+        this.enabled = enabled;
+        setIdleTimeoutMillis(idleTimeoutMillis);
+        setMaxRequestsPerConnection(maxRequestsPerConnection);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(int idleTimeoutMillis) {
+        if (idleTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Idle timeout must be non-negative");
+        }
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public int getMaxRequestsPerConnection() {
+        return maxRequestsPerConnection;
+    }
+
+    public void setMaxRequestsPerConnection(int maxRequestsPerConnection) {
+        if (maxRequestsPerConnection < 0) {
+            throw new IllegalArgumentException("Max requests per connection must be non-negative");
+        }
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+    }
+
+    /**
+     * Whether the connection should stay open after writing its {@code servedRequests}-th response.
+     *
+     * @param servedRequests number of responses written on the connection so far (including the current one)
+     * @return true if the connection may serve another request
+     */
+    public boolean shouldKeepOpen(int servedRequests) {
+        if (!enabled) {
+            return false;
+        }
+        return maxRequestsPerConnection == 0 || servedRequests < maxRequestsPerConnection;
+    }
+
+    @Override
+    public String toString() {
+        return "KeepAliveConfig{" +
+                "enabled=" + enabled +
+                ", idleTimeoutMillis=" + idleTimeoutMillis +
+                ", maxRequestsPerConnection=" + maxRequestsPerConnection +
+                '}';
+    }
+}
@@ -0,0 +1,20 @@
+package cn.huiwings.tcprest.server;
+
+/**
+ * Reset hook for resources with {@link ResourceScope#POOLED} scope.
+ *
+ * <p>{@link #reset()} is called after each request, before the instance goes back to the pool, so
+ * the next request does not see state left by the previous one. An instance whose reset fails is
+ * discarded instead of pooled.</p>
+ *
+ * @since 2.0.0
+ */
+public interface ResettableResource {
+
+    /**
+     * Clear per-request state.
+     *
+     * @throws Exception if the instance cannot be reused
+     */
+    void reset() throws Exception;
+}
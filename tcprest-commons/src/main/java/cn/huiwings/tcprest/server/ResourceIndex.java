@@ -0,0 +1,158 @@
+package cn.huiwings.tcprest.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the registered resources, indexed by the class names requests refer to.
+ *
+ * <p>Every registered resource class and singleton is indexed under its own name and the names of the
+ * interfaces it implements, so finding the instance for a request is a single hash lookup. The index
+ * gives the same answers as the search in {@link ResourceResolver}:</p>
+ * <ol>
+ *   <li>a singleton whose class is the requested class</li>
+ *   <li>the first resource class that is or implements the requested class (its singleton if one is
+ *       registered, otherwise an instance from its {@link ResourceProvider})</li>
+ *   <li>the first singleton implementing the requested interface</li>
+ *   <li>otherwise a new instance of the requested class</li>
+ * </ol>
+ *
+ * <p>{@link AbstractTcpRestServer} builds a new snapshot on every registration change and publishes it
+ * through a volatile field; request threads read it without locking or copying. Instances obtained
+ * with {@link #findInstance(Class)} are handed back with {@link #release(Class, Object)}.</p>
+ *
+ * @since 2.0.0
+ */
+public final class ResourceIndex {
+
+    /**
+     * Index without resources.
+     */
+    public static final ResourceIndex EMPTY = build(Collections.<ResourceProvider>emptyList(), Collections.emptyList());
+
+    private final List<Class<?>> types;
+    private final Map<String, Target> byName;
+
+    private ResourceIndex(List<Class<?>> types, Map<String, Target> byName) {
+        this.types = types;
+        this.byName = byName;
+    }
+
+    /**
+     * Build an index.
+     *
+     * @param providers providers of registered resource classes, in registration order
+     * @param singletons singleton instances, in registration order
+     * @return the index
+     */
+    public static ResourceIndex build(Collection<ResourceProvider> providers, Collection<Object> singletons) {
+        List<Class<?>> types = new ArrayList<>(providers.size() + singletons.size());
+        Map<String, Target> byName = new HashMap<>();
+        Map<Class<?>, Target> singletonTargets = new HashMap<>();
+
+        for (Object singleton : singletons) {
+            Target target = new Target(singleton, null);
+            singletonTargets.put(singleton.getClass(), target);
+            byName.put(singleton.getClass().getName(), target);
+        }
+        for (ResourceProvider provider : providers) {
+            Class<?> resourceClass = provider.getResourceClass();
+            types.add(resourceClass);
+            Target target = singletonTargets.get(resourceClass);
+            if (target == null) {
+                target = new Target(null, provider);
+            }
+            byName.putIfAbsent(resourceClass.getName(), target);
+            for (Class<?> ifc : resourceClass.getInterfaces()) {
+                byName.putIfAbsent(ifc.getName(), target);
+            }
+        }
+        for (Object singleton : singletons) {
+            types.add(singleton.getClass());
+            Target target = singletonTargets.get(singleton.getClass());
+            for (Class<?> ifc : singleton.getClass().getInterfaces()) {
+                byName.putIfAbsent(ifc.getName(), target);
+            }
+        }
+        return new ResourceIndex(Collections.unmodifiableList(types), byName);
+    }
+
+    /**
+     * Find or create the instance serving a request for the given class.
+     *
+     * @param targetClass class or interface named in the request
+     * @return the singleton, or an instance of the implementation class according to its scope
+     * @throws Exception if a new instance cannot be created
+     */
+    public Object findInstance(Class<?> targetClass) throws Exception {
+        Target target = byName.get(targetClass.getName());
+        if (target == null) {
+            return targetClass.getDeclaredConstructor().newInstance();
+        }
+        return target.provider != null ? target.provider.acquire() : target.singleton;
+    }
+
+    /**
+     * Hand back an instance after the request it was found for has been invoked.
+     *
+     * @param targetClass class or interface the instance was found for
+     * @param instance the instance returned by {@link #findInstance(Class)}
+     */
+    public void release(Class<?> targetClass, Object instance) {
+        Target target = byName.get(targetClass.getName());
+        if (target != null && target.provider != null && instance != null) {
+            target.provider.release(instance);
+        }
+    }
+
+    /**
+     * @param className class or interface name
+     * @return the singleton serving the name, or null if it is served by new instances or not registered
+     */
+    public Object getSingleton(String className) {
+        Target target = byName.get(className);
+        return target != null ? target.singleton : null;
+    }
+
+    /**
+     * @param className class or interface name
+     * @return the provider of the resource class serving the name, or null if it is served by a
+     *         singleton or not registered
+     */
+    public ResourceProvider getProvider(String className) {
+        Target target = byName.get(className);
+        return target != null ? target.provider : null;
+    }
+
+    /**
+     * @param className class or interface name
+     * @return the class of the instances serving the name, or null if not registered
+     */
+    public Class<?> getImplementationClass(String className) {
+        Target target = byName.get(className);
+        return target != null ? target.implementationClass : null;
+    }
+
+    /**
+     * @return resource classes followed by singleton classes, for building a dispatch table
+     */
+    public List<Class<?>> getTypes() {
+        return types;
+    }
+
+    private static final class Target {
+        private final Object singleton;
+        private final ResourceProvider provider;
+        private final Class<?> implementationClass;
+
+        Target(Object singleton, ResourceProvider provider) {
+            this.singleton = singleton;
+            this.provider = provider;
+            this.implementationClass = singleton != null ? singleton.getClass() : provider.getResourceClass();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package cn.huiwings.tcprest.server;
+
+import cn.huiwings.tcprest.annotations.Scope;
+
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.logging.Logger;
+
+/**
+ * Supplies the instances serving a registered resource class, according to its {@link ResourceScope}.
+ *
+ * <p>A provider lives as long as the registration, so singletons, per-thread instances and pools
+ * survive {@link ResourceIndex} rebuilds. Every {@link #acquire()} is paired with a {@link #release(Object)}
+ * once the request has been invoked.</p>
+ *
+ * @since 2.0.0
+ */
+public abstract class ResourceProvider {
+
+    private static final Logger logger = Logger.getLogger(ResourceProvider.class.getName());
+
+    private final Class<?> resourceClass;
+    private final Constructor<?> constructor;
+
+    ResourceProvider(Class<?> resourceClass) {
+        this.resourceClass = resourceClass;
+        this.constructor = defaultConstructor(resourceClass);
+    }
+
+    /**
+     * Create a provider with the scope declared by {@link Scope} on the class, or
+     * {@link ResourceScope#PER_REQUEST} if the class has no annotation.
+     *
+     * @param resourceClass resource class
+     * @return the provider
+     */
+    public static ResourceProvider of(Class<?> resourceClass) {
+        Scope scope = resourceClass.getAnnotation(Scope.class);
+        return scope != null
+                ? of(resourceClass, scope.value(), scope.poolSize())
+                : of(resourceClass, ResourceScope.PER_REQUEST, ResourceScope.DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * @param resourceClass resource class
+     * @param scope instance lifetime
+     * @param poolSize idle instances kept for {@link ResourceScope#POOLED}
+     * @return the provider
+     */
+    public static ResourceProvider of(Class<?> resourceClass, ResourceScope scope, int poolSize) {
+        if (resourceClass == null || scope == null) {
+            throw new IllegalArgumentException("Resource class and scope cannot be null");
+        }
+        switch (scope) {
+            case SINGLETON:
+                return new SingletonProvider(resourceClass);
+            case PER_THREAD:
+                return new PerThreadProvider(resourceClass);
+            case SHARDED:
+                return new ShardedResourceProvider(resourceClass, null, null);
+            case POOLED:
+                if (poolSize < 1) {
+                    throw new IllegalArgumentException("Pool size must be positive: " + poolSize);
+                }
+                return new PooledProvider(resourceClass, poolSize);
+            default:
+                return new PerRequestProvider(resourceClass);
+        }
+    }
+
+    /**
+     * @return an instance to serve one request
+     * @throws Exception if a new instance cannot be created
+     */
+    public abstract Object acquire() throws Exception;
+
+    /**
+     * Hand back an instance obtained from {@link #acquire()} after the request.
+     *
+     * @param instance the instance
+     */
+    public void release(Object instance) {
+    }
+
+    public abstract ResourceScope getScope();
+
+    public Class<?> getResourceClass() {
+        return resourceClass;
+    }
+
+    /**
+     * @return a new instance from the default constructor
+     * @throws Exception if the class cannot be instantiated
+     */
+    Object newInstance() throws Exception {
+        if (constructor == null) {
+            // Throws the same NoSuchMethodException a lookup at request time would
+            return resourceClass.getDeclaredConstructor().newInstance();
+        }
+        return constructor.newInstance();
+    }
+
+    private static Constructor<?> defaultConstructor(Class<?> type) {
+        try {
+            return type.getDeclaredConstructor();
+        } catch (NoSuchMethodException | SecurityException e) {
+            return null;
+        }
+    }
+
+    private static final class PerRequestProvider extends ResourceProvider {
+        PerRequestProvider(Class<?> resourceClass) {
+            super(resourceClass);
+        }
+
+        @Override
+        public Object acquire() throws Exception {
+            return newInstance();
+        }
+
+        @Override
+        public ResourceScope getScope() {
+            return ResourceScope.PER_REQUEST;
+        }
+    }
+
+    private static final class SingletonProvider extends ResourceProvider {
+        private volatile Object instance;
+
+        SingletonProvider(Class<?> resourceClass) {
+            super(resourceClass);
+        }
+
+        @Override
+        public Object acquire() throws Exception {
+            Object result = instance;
+            if (result == null) {
+                synchronized (this) {
+                    result = instance;
+                    if (result == null) {
+                        result = newInstance();
+                        instance = result;
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public ResourceScope getScope() {
+            return ResourceScope.SINGLETON;
+        }
+    }
+
+    private static final class PerThreadProvider extends ResourceProvider {
+        private final ThreadLocal<Object> instances = new ThreadLocal<>();
+
+        PerThreadProvider(Class<?> resourceClass) {
+            super(resourceClass);
+        }
+
+        @Override
+        public Object acquire() throws Exception {
+            Object result = instances.get();
+            if (result == null) {
+                result = newInstance();
+                instances.set(result);
+            }
+            return result;
+        }
+
+        @Override
+        public ResourceScope getScope() {
+            return ResourceScope.PER_THREAD;
+        }
+    }
+
+    private static final class PooledProvider extends ResourceProvider {
+        private final ArrayBlockingQueue<Object> idle;
+
+        PooledProvider(Class<?> resourceClass, int poolSize) {
+            super(resourceClass);
+            this.idle = new ArrayBlockingQueue<>(poolSize);
+        }
+
+        @Override
+        public Object acquire() throws Exception {
+            Object result = idle.poll();
+            return result != null ? result : newInstance();
+        }
+
+        @Override
+        public void release(Object instance) {
+            if (instance instanceof ResettableResource) {
+                try {
+                    ((ResettableResource) instance).reset();
+                } catch (Exception e) {
+                    logger.warning("Discarding " + getResourceClass().getName() + " instance, reset failed: " + e);
+                    return;
+                }
+            }
+            idle.offer(instance);
+        }
+
+        @Override
+        public ResourceScope getScope() {
+            return ResourceScope.POOLED;
+        }
+    }
+}
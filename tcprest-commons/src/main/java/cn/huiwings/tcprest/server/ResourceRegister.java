@@ -1,6 +1,7 @@
 package cn.huiwings.tcprest.server;
 
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * Interface for resource registration and lookup.
@@ -14,12 +15,44 @@ import java.util.Map;
 public interface ResourceRegister {
 
     /**
-     * Register a resource class. A new instance will be created per request.
+     * Register a resource class. A new instance will be created per request, unless the class
+     * declares another scope with {@link cn.huiwings.tcprest.annotations.Scope}.
      *
      * @param resourceClass the resource class to register
      */
     void addResource(Class resourceClass);
 
+    /**
+     * Register a resource class with the given instance scope, overriding any
+     * {@link cn.huiwings.tcprest.annotations.Scope} annotation.
+     *
+     * @param resourceClass the resource class to register
+     * @param scope how instances are created and reused
+     * @since 2.0.0
+     */
+    void addResource(Class resourceClass, ResourceScope scope);
+
+    /**
+     * Register a resource class whose instances are borrowed from a pool ({@link ResourceScope#POOLED}).
+     *
+     * @param resourceClass the resource class to register
+     * @param poolSize maximum number of idle instances kept
+     * @since 2.0.0
+     */
+    void addPooledResource(Class resourceClass, int poolSize);
+
+    /**
+     * Register a resource class served by a fixed number of shards ({@link ResourceScope#SHARDED}).
+     * Unlike {@link #addSingletonResource(Object)}, concurrent requests never share an instance.
+     *
+     * @param resourceClass the resource class to register (its interfaces are served)
+     * @param supplier creates each shard
+     * @param merger runs read methods on all instances and merges the results (may be null)
+     * @param <T> resource type
+     * @since 2.0.0
+     */
+    <T> void addShardedResource(Class<T> resourceClass, Supplier<? extends T> supplier, ShardMerger merger);
+
     /**
      * Remove a resource class registration.
      *
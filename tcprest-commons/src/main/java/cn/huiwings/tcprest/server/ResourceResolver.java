@@ -30,6 +30,9 @@ import java.util.Map;
  * 5. If no implementation found, create instance from target class directly
  * </pre>
  *
+ * <p>For {@link AbstractTcpRestServer} both lookups are answered from its {@link ResourceIndex}, which
+ * the server itself uses when serving requests; other registers are searched linearly.</p>
+ *
  * <p><b>Usage in TcpRest:</b></p>
  * <ul>
  *   <li>Used by {@link cn.huiwings.tcprest.parser.RequestParser} for resource lookup and instance creation</li>
@@ -77,6 +80,10 @@ public final class ResourceResolver {
             ResourceRegister resourceRegister,
             Logger logger) throws Exception {
 
+        if (resourceRegister instanceof AbstractTcpRestServer) {
+            return ((AbstractTcpRestServer) resourceRegister).getResourceIndex().findInstance(targetClass);
+        }
+
         String targetClassName = targetClass.getName();
         Logger log = (logger != null) ? logger : DEFAULT_LOGGER;
 
@@ -133,6 +140,10 @@ public final class ResourceResolver {
             ResourceRegister resourceRegister,
             Logger logger) {
 
+        if (resourceRegister instanceof AbstractTcpRestServer) {
+            return ((AbstractTcpRestServer) resourceRegister).getResourceIndex().getImplementationClass(interfaceName);
+        }
+
         Logger log = (logger != null) ? logger : DEFAULT_LOGGER;
 
         // Check resource classes
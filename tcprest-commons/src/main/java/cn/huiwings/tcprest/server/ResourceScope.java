@@ -0,0 +1,40 @@
+package cn.huiwings.tcprest.server;
+
+/**
+ * Lifetime of the instances serving a resource class registered with
+ * {@link ResourceRegister#addResource(Class)}.
+ *
+ * <p>Chosen with the {@link cn.huiwings.tcprest.annotations.Scope} annotation on the resource class or
+ * with {@link ResourceRegister#addResource(Class, ResourceScope)}; the default is {@link #PER_REQUEST}.</p>
+ *
+ * @since 2.0.0
+ */
+public enum ResourceScope {
+
+    /** One instance, created on the first request and shared by all requests. */
+    SINGLETON,
+
+    /** A new instance for every request (the behavior before 2.0.0). */
+    PER_REQUEST,
+
+    /** One instance per server thread, reused by the requests that thread serves. */
+    PER_THREAD,
+
+    /**
+     * Instances borrowed from a bounded pool for the duration of a request. Idle instances are
+     * reset ({@link ResettableResource}) when returned; when the pool is empty a new instance is
+     * created, and when it is full a returned instance is discarded.
+     */
+    POOLED,
+
+    /**
+     * A fixed number of instances, each serving one request at a time, with requests routed by the thread
+     * that executes them; see {@link ShardedResourceProvider} and {@link ResourceRegister#addShardedResource}.
+     */
+    SHARDED;
+
+    /**
+     * Idle instances kept by a {@link #POOLED} resource unless configured otherwise.
+     */
+    public static final int DEFAULT_POOL_SIZE = 16;
+}
@@ -0,0 +1,79 @@
+package cn.huiwings.tcprest.server;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Read hook for sharded resources ({@link ResourceScope#SHARDED}).
+ *
+ * <p>Calls to a method the merger {@link #merges(Method) merges} are run on every shard instead of the
+ * shard of the calling thread, and the results combined into one. This is how a sharded counter or
+ * cache answers reads such as "total count" while its writes stay thread-confined.</p>
+ *
+ * <p>Merged methods run on the requesting thread and read shards owned by other threads, so the state
+ * they read must be safely published (volatile or atomic fields, concurrent collections).</p>
+ *
+ * @since 2.0.0
+ */
+public interface ShardMerger {
+
+    /**
+     * @param method the invoked resource method
+     * @return true if the method is run on every shard and its results merged
+     */
+    boolean merges(Method method);
+
+    /**
+     * @param method the invoked resource method
+     * @param results the method's result on each shard, in shard creation order
+     * @return the result returned to the client
+     */
+    Object merge(Method method, List<Object> results);
+
+    /**
+     * Merger that adds up the numeric results of the named methods ({@code int}, {@code long} or
+     * {@code double}, boxed or not).
+     *
+     * @param methodNames names of the methods to merge
+     * @return the merger
+     */
+    static ShardMerger summing(String... methodNames) {
+        Set<String> names = new HashSet<>(Arrays.asList(methodNames));
+        return new ShardMerger() {
+            @Override
+            public boolean merges(Method method) {
+                return names.contains(method.getName());
+            }
+
+            @Override
+            public Object merge(Method method, List<Object> results) {
+                Class<?> type = method.getReturnType();
+                if (type == int.class || type == Integer.class) {
+                    int sum = 0;
+                    for (Object result : results) {
+                        sum += result != null ? ((Number) result).intValue() : 0;
+                    }
+                    return sum;
+                }
+                if (type == long.class || type == Long.class) {
+                    long sum = 0;
+                    for (Object result : results) {
+                        sum += result != null ? ((Number) result).longValue() : 0;
+                    }
+                    return sum;
+                }
+                if (type == double.class || type == Double.class) {
+                    double sum = 0;
+                    for (Object result : results) {
+                        sum += result != null ? ((Number) result).doubleValue() : 0;
+                    }
+                    return sum;
+                }
+                throw new IllegalStateException("Cannot sum results of " + method);
+            }
+        };
+    }
+}
@@ -0,0 +1,173 @@
+package cn.huiwings.tcprest.server;
+
+import cn.huiwings.tcprest.invoker.Invoker;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Provider of {@link ResourceScope#SHARDED} resources: a fixed number of instances (shards), each
+ * created by a supplier the first time it is needed and serving one request at a time.
+ *
+ * <p>A request starts at the shard picked by the id of the thread executing it and takes the first free
+ * one, so on a fixed thread set (workers, event loops) each thread keeps using the same shard, writes
+ * never contend and instances need no synchronization. The shard count does not grow with the number of
+ * threads, so servers that run each request on a new thread (virtual threads, cached pools) stay bounded;
+ * when every shard is busy the request waits for its own. Reads that must see all shards are handled by an
+ * optional {@link ShardMerger}, and take each shard in turn like any other request.</p>
+ *
+ * <p>Because requests may wait, servers that invoke resources on shared event loops refuse sharded
+ * resources unless their worker pool is enabled.</p>
+ *
+ * @since 2.0.0
+ */
+public final class ShardedResourceProvider extends ResourceProvider {
+
+    /**
+     * Shards per resource unless configured otherwise: one per thread of a default worker pool.
+     */
+    public static final int DEFAULT_SHARDS = WorkerPoolConfig.DEFAULT_THREADS;
+
+    private final Supplier<?> supplier;
+    private final ShardMerger merger;
+    private final Object[] instances;
+    private final Semaphore[] permits;
+    private final List<Object> shards = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param resourceClass resource class (indexed with its interfaces)
+     * @param supplier creates one shard; null to use the default constructor
+     * @param merger read hook (may be null)
+     */
+    ShardedResourceProvider(Class<?> resourceClass, Supplier<?> supplier, ShardMerger merger) {
+        this(resourceClass, supplier, merger, DEFAULT_SHARDS);
+    }
+
+    /**
+     * @param resourceClass resource class (indexed with its interfaces)
+     * @param supplier creates one shard; null to use the default constructor
+     * @param merger read hook (may be null)
+     * @param shardCount maximum number of shards
+     */
+    ShardedResourceProvider(Class<?> resourceClass, Supplier<?> supplier, ShardMerger merger, int shardCount) {
+        super(resourceClass);
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        }
+        this.supplier = supplier;
+        this.merger = merger;
+        this.instances = new Object[shardCount];
+        this.permits = new Semaphore[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            permits[i] = new Semaphore(1);
+        }
+    }
+
+    @Override
+    public Object acquire() throws Exception {
+        int home = (int) (Thread.currentThread().getId() % permits.length);
+        for (int i = 0; i < permits.length; i++) {
+            int index = (home + i) % permits.length;
+            if (permits[index].tryAcquire()) {
+                return shard(index);
+            }
+        }
+        permits[home].acquire();
+        return shard(home);
+    }
+
+    /**
+     * Instance of a shard whose permit the caller holds, created on first use.
+     */
+    private Object shard(int index) throws Exception {
+        Object shard = instances[index];
+        if (shard == null) {
+            try {
+                shard = supplier != null ? supplier.get() : newInstance();
+            } catch (Exception | Error e) {
+                permits[index].release();
+                throw e;
+            }
+            if (shard == null) {
+                permits[index].release();
+                throw new IllegalStateException("Shard supplier returned null for " + getResourceClass().getName());
+            }
+            instances[index] = shard;
+            shards.add(shard);
+        }
+        return shard;
+    }
+
+    @Override
+    public void release(Object instance) {
+        int index = indexOf(instance);
+        if (index >= 0) {
+            permits[index].release();
+        }
+    }
+
+    /**
+     * @return the shard index of an instance, or -1 if it is not a shard
+     */
+    private int indexOf(Object instance) {
+        for (int i = 0; i < instances.length; i++) {
+            if (instances[i] == instance) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public ResourceScope getScope() {
+        return ResourceScope.SHARDED;
+    }
+
+    /**
+     * @param method the invoked resource method
+     * @return true if calls to the method are merged across shards
+     */
+    public boolean isMerged(Method method) {
+        return merger != null && merger.merges(method);
+    }
+
+    /**
+     * Run a merged method on every shard and merge the results. With no shard created yet, one is
+     * created first so there is always a result to merge. Each shard is invoked while holding its permit,
+     * so it never runs concurrently with a request it is serving.
+     *
+     * @param context parsed request (its target instance is overwritten)
+     * @param invoker invoker running the method on each shard
+     * @return the merged result
+     * @throws Exception if the method fails on a shard
+     */
+    public Object invokeMerged(Context context, Invoker invoker) throws Exception {
+        if (shards.isEmpty()) {
+            release(acquire());
+        }
+        List<Object> results = new ArrayList<>(shards.size());
+        for (Object shard : shards) {
+            Semaphore permit = permits[indexOf(shard)];
+            permit.acquire();
+            try {
+                context.setTargetInstance(shard);
+                results.add(invoker.invoke(context));
+            } finally {
+                permit.release();
+            }
+        }
+        return merger.merge(context.getTargetMethod(), results);
+    }
+
+    /**
+     * @return all shards created so far, in creation order
+     */
+    public List<Object> getShards() {
+        return Collections.unmodifiableList(shards);
+    }
+}
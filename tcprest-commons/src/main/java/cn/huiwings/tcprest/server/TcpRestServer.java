@@ -47,6 +47,21 @@ public interface TcpRestServer extends ResourceRegister, MapperRegister {
      */
     void disableCompression();
 
+    /**
+     * Get keep-alive configuration
+     */
+    KeepAliveConfig getKeepAliveConfig();
+
+    /**
+     * Set keep-alive configuration. Must be called before {@link #up()}.
+     */
+    void setKeepAliveConfig(KeepAliveConfig keepAliveConfig);
+
+    /**
+     * Enable keep-alive with default idle timeout and max-requests-per-connection
+     */
+    void enableKeepAlive();
+
     /**
      * Set security configuration
      */
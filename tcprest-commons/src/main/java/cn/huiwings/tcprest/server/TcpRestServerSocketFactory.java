@@ -58,6 +58,25 @@ public class TcpRestServerSocketFactory {
             return new ServerSocket(port, DEFAULT_BACKLOG, addr);
         }
 
+        javax.net.ssl.SSLContext context = getSSLContext(sslParams);
+
+        ServerSocketFactory factory = context.getServerSocketFactory();
+        ServerSocket _socket = factory.createServerSocket(port, DEFAULT_BACKLOG, addr);
+        ((SSLServerSocket) _socket).setNeedClientAuth(sslParams.isNeedClientAuth());
+        return _socket;
+    }
+
+    /**
+     * Create a server-side TLS context from SSL parameters: key material from the key store,
+     * peer certificates validated against the trust store.
+     *
+     * <p>Used directly by servers that drive an {@link javax.net.ssl.SSLEngine} themselves.</p>
+     *
+     * @param sslParams SSL parameters
+     * @return initialized SSL context
+     * @throws Exception if the key store cannot be loaded or the context cannot be initialized
+     */
+    public static javax.net.ssl.SSLContext getSSLContext(SSLParams sslParams) throws Exception {
 //        System.setProperty("javax.net.debug", "ssl,handshake");
         System.setProperty("javax.net.ssl.trustStore", PropertyProcessor.getFilePath(sslParams.getTrustStorePath()));
         javax.net.ssl.SSLContext context = javax.net.ssl.SSLContext.getInstance("TLS");
@@ -68,10 +87,6 @@ public class TcpRestServerSocketFactory {
         kf.init(ks, sslParams.getKeyStoreKeyPass().toCharArray());
 
         context.init(kf.getKeyManagers(), null, null);
-
-        ServerSocketFactory factory = context.getServerSocketFactory();
-        ServerSocket _socket = factory.createServerSocket(port, DEFAULT_BACKLOG, addr);
-        ((SSLServerSocket) _socket).setNeedClientAuth(sslParams.isNeedClientAuth());
-        return _socket;
+        return context;
     }
 }
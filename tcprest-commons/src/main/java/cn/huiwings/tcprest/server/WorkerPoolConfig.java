@@ -0,0 +1,149 @@
+package cn.huiwings.tcprest.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Configuration for running request processing (parse, invoke, encode) on a worker pool
+ * instead of the server's I/O threads.
+ *
+ * <p>When disabled (default), servers invoke resources on the thread that read the request.
+ * When enabled, a slow resource method occupies a worker, not an I/O thread, so other
+ * connections keep being served. Requests beyond {@link #getThreads()} busy workers wait in a
+ * queue of {@link #getQueueCapacity()}; when that is full the request is rejected and answered
+ * with a V2 {@code SERVER_ERROR} response.</p>
+ *
+ * <p>A custom executor (e.g. {@code Executors.newVirtualThreadPerTaskExecutor()} on Java 21+)
+ * may be supplied with {@link #setExecutor(ExecutorService)}; it is used as-is, is not shut down
+ * by the server, and its own rejection policy applies.</p>
+ *
+ * @author Weinan Li
+ */
+public class WorkerPoolConfig {
+
+    /**
+     * Default number of worker threads.
+     */
+    public static final int DEFAULT_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * Default number of requests waiting for a worker.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * Enable/disable the worker pool. Default: false (process on I/O threads)
+     */
+    private boolean enabled = false;
+
+    /**
+     * Number of worker threads.
+     * Default: {@link #DEFAULT_THREADS}
+     */
+    private int threads = DEFAULT_THREADS;
+
+    /**
+     * Requests that may wait for a worker before new ones are rejected.
+     * 0 means no queue: a request is rejected unless a worker is free.
+     * Default: {@value #DEFAULT_QUEUE_CAPACITY}
+     */
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    /**
+     * Caller-owned executor used instead of the built-in pool (optional).
+     */
+    private ExecutorService executor;
+
+    public WorkerPoolConfig() {
+    }
+
+    public WorkerPoolConfig(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public WorkerPoolConfig(boolean enabled, int threads, int queueCapacity) {
+        this.enabled = enabled;
+        setThreads(threads);
+        setQueueCapacity(queueCapacity);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Worker threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException("Queue capacity must be non-negative");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Use a caller-owned executor instead of the built-in bounded pool. Implies enabled.
+     *
+     * @param executor executor for request processing (null = built-in pool)
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        if (executor != null) {
+            this.enabled = true;
+        }
+    }
+
+    /**
+     * Create the built-in bounded pool. Rejected requests raise
+     * {@link java.util.concurrent.RejectedExecutionException}.
+     *
+     * @param threadNamePrefix worker thread name prefix
+     * @return new executor, owned by the caller
+     */
+    public ExecutorService createExecutor(String threadNamePrefix) {
+        BlockingQueue<Runnable> queue = queueCapacity == 0
+                ? new SynchronousQueue<>()
+                : new ArrayBlockingQueue<>(queueCapacity);
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, queue, r -> {
+            Thread t = new Thread(r, threadNamePrefix + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Override
+    public String toString() {
+        return "WorkerPoolConfig{" +
+                "enabled=" + enabled +
+                ", threads=" + threads +
+                ", queueCapacity=" + queueCapacity +
+                ", customExecutor=" + (executor != null) +
+                '}';
+    }
+}
@@ -0,0 +1,62 @@
+package cn.huiwings.tcprest.client;
+
+import cn.huiwings.tcprest.codec.v2.ProtocolV2Codec;
+import cn.huiwings.tcprest.protocol.v2.StatusCode;
+import cn.huiwings.tcprest.test.Benchmarks;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Client-side cost of a tiny call through a dynamic proxy and through a generated stub. The transport
+ * returns a canned response, so the numbers cover dispatch, request encoding and response decoding only.
+ */
+public class ClientStubBenchmarkTest {
+
+    private static final int WARMUP_ITERATIONS = 100_000;
+    private static final int ITERATIONS = 500_000;
+
+    @Test(groups = "benchmark")
+    public void benchmarkProxyVsStub() throws Throwable {
+        String response = new ProtocolV2Codec().encodeResponse(42, StatusCode.SUCCESS);
+
+        Adder proxy = (Adder) Proxy.newProxyInstance(Adder.class.getClassLoader(), new Class<?>[]{Adder.class},
+                handler(response));
+        Adder stub = (Adder) ClientStubs.create(Adder.class, handler(response));
+
+        Benchmarks.Table table = Benchmarks.table("Client Stub Benchmark: add(II)I", TimeUnit.NANOSECONDS,
+                "Client", 13, "ns/op");
+        run(table, "Proxy", proxy);
+        run(table, "Generated", stub);
+    }
+
+    private void run(Benchmarks.Table table, String name, Adder client) throws Throwable {
+        assertEquals(client.add(17, 25), 42);
+        table.measure(name, WARMUP_ITERATIONS, ITERATIONS, i -> client.add(i, 1));
+    }
+
+    private static TcpRestClientProxy handler(String response) {
+        TcpRestClient transport = new TcpRestClient() {
+            @Override
+            public String sendRequest(String request, int timeout) {
+                return response;
+            }
+
+            @Override
+            public String getDeletgatedClassName() {
+                return Adder.class.getCanonicalName();
+            }
+        };
+        TcpRestClientProxy handler = new TcpRestClientProxy(Adder.class.getCanonicalName(), transport, null, null,
+                null, null, null);
+        handler.preparePlans(Adder.class);
+        return handler;
+    }
+
+    public interface Adder {
+        int add(int a, int b);
+    }
+}
@@ -0,0 +1,224 @@
+package cn.huiwings.tcprest.client;
+
+import cn.huiwings.tcprest.codec.v2.ProtocolV2Codec;
+import cn.huiwings.tcprest.parser.v2.ProtocolV2Parser;
+import cn.huiwings.tcprest.protocol.v2.StatusCode;
+import cn.huiwings.tcprest.server.Context;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for generated client stubs, calling an in-memory V2 server: argument boxing for every
+ * primitive type, result unboxing, exception propagation and local Object methods.
+ */
+public class ClientStubsTest {
+
+    @Test
+    public void testPrimitivesAndReferences() throws Exception {
+        StubService client = stub(StubService.class, new StubServiceImpl());
+
+        assertFalse(Proxy.isProxyClass(client.getClass()));
+        assertTrue(client.getClass().isHidden());
+        assertEquals(client.add(17, 25), 42);
+        assertEquals(client.scale(1000L, 1.5, 2f), 3000.0);
+        assertEquals(client.pack(true, 'x', (byte) 3, (short) 4), 7L + 'x');
+        assertEquals(client.echo("hello"), "hello");
+        assertNull(client.echo(null));
+        assertEquals(client.sum(new int[]{1, 2, 3}), 6);
+        assertEquals(client.range(3), new long[]{0, 1, 2});
+    }
+
+    @Test
+    public void testVoidMethod() throws Exception {
+        StubServiceImpl impl = new StubServiceImpl();
+        StubService client = stub(StubService.class, impl);
+
+        client.ping();
+        client.ping();
+
+        assertEquals(impl.pings.get(), 2);
+    }
+
+    @Test(expectedExceptions = QuotaException.class, expectedExceptionsMessageRegExp = "no quota for 5")
+    public void testDeclaredExceptionNotWrapped() throws Exception {
+        stub(StubService.class, new StubServiceImpl()).reserve(5);
+    }
+
+    @Test
+    public void testUndeclaredCheckedExceptionWrapped() throws Exception {
+        StubService client = stub(StubService.class, new StubServiceImpl());
+        try {
+            client.risky();
+            fail("Expected UndeclaredThrowableException");
+        } catch (UndeclaredThrowableException e) {
+            assertTrue(e.getUndeclaredThrowable() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void testObjectMethodsAreLocal() throws Exception {
+        LoopbackClient transport = new LoopbackClient(StubService.class, new StubServiceImpl());
+        StubService client = (StubService) ClientStubs.create(StubService.class, handler(StubService.class, transport));
+
+        assertEquals(client, client);
+        assertEquals(client.hashCode(), System.identityHashCode(client));
+        assertNotNull(client.toString());
+        assertEquals(transport.requests, 0);
+    }
+
+    @Test
+    public void testNonPublicInterfaceAndClassReuse() throws Exception {
+        PackageService first = stub(PackageService.class, (PackageService) () -> "inside");
+        PackageService second = stub(PackageService.class, (PackageService) () -> "inside");
+
+        assertEquals(first.name(), "inside");
+        assertSame(first.getClass(), second.getClass());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, T target) {
+        Object stub = ClientStubs.create(type, handler(type, new LoopbackClient(type, target)));
+        assertNotNull(stub, "stub generation failed for " + type.getName());
+        return (T) stub;
+    }
+
+    private static TcpRestClientProxy handler(Class<?> type, TcpRestClient transport) {
+        TcpRestClientProxy handler = new TcpRestClientProxy(type.getCanonicalName(), transport, null, null, null,
+                null, null);
+        handler.preparePlans(type);
+        return handler;
+    }
+
+    /**
+     * Decodes V2 requests and invokes the target directly, without sockets.
+     */
+    static class LoopbackClient implements TcpRestClient {
+        private final Class<?> type;
+        private final Object target;
+        private final ProtocolV2Parser parser = new ProtocolV2Parser();
+        private final ProtocolV2Codec codec = new ProtocolV2Codec();
+        int requests;
+
+        LoopbackClient(Class<?> type, Object target) {
+            this.type = type;
+            this.target = target;
+        }
+
+        @Override
+        public String sendRequest(String request, int timeout) throws Exception {
+            requests++;
+            Context context = parser.parse(request);
+            context.getTargetMethod().setAccessible(true);
+            try {
+                Object result = context.getTargetMethod().invoke(target, context.getParams());
+                return codec.encodeResponse(result, StatusCode.SUCCESS);
+            } catch (InvocationTargetException e) {
+                return codec.encodeException(e.getCause(), StatusCode.BUSINESS_EXCEPTION);
+            }
+        }
+
+        @Override
+        public String getDeletgatedClassName() {
+            return type.getCanonicalName();
+        }
+    }
+
+    public interface StubService {
+        int add(int a, int b);
+
+        double scale(long value, double ratio, float factor);
+
+        long pack(boolean flag, char c, byte b, short s);
+
+        String echo(String value);
+
+        int sum(int[] values);
+
+        long[] range(int n);
+
+        void ping();
+
+        void reserve(int n) throws QuotaException;
+
+        int risky();
+    }
+
+    interface PackageService {
+        String name();
+    }
+
+    public static class QuotaException extends Exception {
+        public QuotaException(String message) {
+            super(message);
+        }
+    }
+
+    public static class StubServiceImpl implements StubService {
+        final AtomicInteger pings = new AtomicInteger();
+
+        @Override
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        @Override
+        public double scale(long value, double ratio, float factor) {
+            return value * ratio * factor;
+        }
+
+        @Override
+        public long pack(boolean flag, char c, byte b, short s) {
+            return (flag ? c : 0) + b + s;
+        }
+
+        @Override
+        public String echo(String value) {
+            return value;
+        }
+
+        @Override
+        public int sum(int[] values) {
+            int sum = 0;
+            for (int value : values) {
+                sum += value;
+            }
+            return sum;
+        }
+
+        @Override
+        public long[] range(int n) {
+            long[] values = new long[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = i;
+            }
+            return values;
+        }
+
+        @Override
+        public void ping() {
+            pings.incrementAndGet();
+        }
+
+        @Override
+        public void reserve(int n) throws QuotaException {
+            throw new QuotaException("no quota for " + n);
+        }
+
+        @Override
+        public int risky() {
+            throw sneaky(new IOException("disk gone"));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <E extends Throwable> RuntimeException sneaky(Throwable e) throws E {
+            throw (E) e;
+        }
+    }
+}
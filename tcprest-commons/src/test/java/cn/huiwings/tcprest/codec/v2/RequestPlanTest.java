@@ -0,0 +1,174 @@
+package cn.huiwings.tcprest.codec.v2;
+
+import cn.huiwings.tcprest.codec.v3.ProtocolV3Codec;
+import cn.huiwings.tcprest.mapper.Mapper;
+import cn.huiwings.tcprest.parser.v2.ProtocolV2Parser;
+import cn.huiwings.tcprest.parser.v3.ProtocolV3Parser;
+import cn.huiwings.tcprest.protocol.v2.StatusCode;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants;
+import cn.huiwings.tcprest.security.SecurityConfig;
+import cn.huiwings.tcprest.server.Context;
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for RequestPlan: encodings resolved from declared types, and requests encoded from a plan
+ * that match and round-trip like requests encoded per call.
+ */
+public class RequestPlanTest {
+
+    private final ProtocolV3Codec codec = new ProtocolV3Codec();
+
+    @Test
+    public void testEncodingsFromDeclaredTypes() throws Exception {
+        Method method = PlanService.class.getMethod("mixed", int.class, String.class, long[].class,
+                Point.class, List.class);
+
+        RequestPlan plan = codec.plan(PlanService.class, method, null);
+
+        assertEquals(plan.getMeta(), PlanService.class.getName() + "/mixed(ILjava/lang/String;[JL"
+                + Point.class.getName().replace('.', '/') + ";Ljava/util/List;)");
+        assertEquals(plan.getEncoding(0), RequestPlan.Encoding.TEXT);
+        assertEquals(plan.getEncoding(1), RequestPlan.Encoding.TEXT);
+        assertEquals(plan.getEncoding(2), RequestPlan.Encoding.PACKED_ARRAY);
+        assertEquals(plan.getEncoding(3), RequestPlan.Encoding.SERIALIZED);
+        assertNull(plan.getEncoding(4), "List parameters are classified per call");
+        assertEquals(plan.getReturnType(), Point.class);
+    }
+
+    @Test
+    public void testMapperResolvedOnce() throws Exception {
+        Method method = PlanService.class.getMethod("tagged", Tag.class);
+        Map<String, Mapper> mappers = Collections.<String, Mapper>singletonMap(Tag.class.getCanonicalName(),
+                new TagMapper());
+
+        RequestPlan plan = codec.plan(PlanService.class, method, mappers);
+        String encoded = codec.encode(plan, new Object[]{new Tag("blue")});
+
+        assertEquals(plan.getEncoding(0), RequestPlan.Encoding.MAPPER);
+        assertTrue(encoded.endsWith("|[" + Base64.getEncoder().encodeToString("tag:blue".getBytes()) + "]"));
+        assertEquals(encoded, codec.encode(PlanService.class, method, new Object[]{new Tag("blue")}, mappers));
+    }
+
+    @Test
+    public void testV2PlanReusedAcrossCalls() throws Exception {
+        Method method = PlanService.class.getMethod("mixed", int.class, String.class, long[].class,
+                Point.class, List.class);
+        RequestPlan plan = codec.plan(PlanService.class, method, null);
+        ProtocolV2Parser parser = new ProtocolV2Parser();
+
+        for (int i = 0; i < 3; i++) {
+            Object[] params = {i, "v" + i, new long[]{i, i + 1}, new Point(i, -i),
+                    new ArrayList<>(Arrays.asList("a" + i))};
+            String request = codec.encode(plan, params);
+            assertEquals(request, codec.encode(PlanService.class, method, params, null));
+
+            Context context = parser.parse(request);
+            assertEquals(context.getTargetMethod(), method);
+            assertEquals(context.getParams()[0], i);
+            assertEquals(context.getParams()[1], "v" + i);
+            assertEquals((long[]) context.getParams()[2], new long[]{i, i + 1});
+            assertEquals(context.getParams()[3], new Point(i, -i));
+            assertEquals(context.getParams()[4], Arrays.asList("a" + i));
+        }
+    }
+
+    @Test
+    public void testV3PlanRoundTrip() throws Exception {
+        Method method = PlanService.class.getMethod("mixed", int.class, String.class, long[].class,
+                Point.class, List.class);
+        RequestPlan plan = codec.plan(PlanService.class, method, null);
+        Object[] params = {7, null, new long[]{1, 2}, new Point(3, 4), null};
+
+        byte[] frame = codec.encodeRequest(plan, params);
+        assertEquals(frame, codec.encodeRequest(PlanService.class, method, params, null));
+
+        Context context = new ProtocolV3Parser().parse(
+                Arrays.copyOfRange(frame, ProtocolV3Constants.FRAME_HEADER_LENGTH, frame.length));
+        assertEquals(context.getParams()[0], 7);
+        assertNull(context.getParams()[1]);
+        assertEquals(context.getParams()[3], new Point(3, 4));
+        assertNull(context.getParams()[4]);
+    }
+
+    @Test
+    public void testDecodeWithPlan() throws Exception {
+        Method method = PlanService.class.getMethod("mixed", int.class, String.class, long[].class,
+                Point.class, List.class);
+        RequestPlan plan = codec.plan(PlanService.class, method, null);
+
+        assertEquals(codec.decode(codec.encodeResponse(new Point(1, 2), StatusCode.SUCCESS), plan), new Point(1, 2));
+        byte[] frame = codec.encodeBinaryResponse(new Point(5, 6), StatusCode.SUCCESS);
+        assertEquals(codec.decodeResponse(Arrays.copyOfRange(frame, ProtocolV3Constants.FRAME_HEADER_LENGTH,
+                frame.length), plan), new Point(5, 6));
+    }
+
+    @Test(expectedExceptions = cn.huiwings.tcprest.exception.SecurityException.class)
+    public void testWhitelistCheckedPerCall() throws Exception {
+        SecurityConfig config = new SecurityConfig();
+        ProtocolV2Codec securedCodec = new ProtocolV2Codec(config);
+        Method method = PlanService.class.getMethod("tagged", Tag.class);
+        RequestPlan plan = securedCodec.plan(PlanService.class, method, null);
+        securedCodec.encode(plan, new Object[]{null});
+
+        config.enableClassWhitelist().allowClass("com.example.Other");
+        securedCodec.encode(plan, new Object[]{null});
+    }
+
+    public interface PlanService {
+        Point mixed(int a, String s, long[] values, Point point, List<String> names);
+
+        String tagged(Tag tag);
+    }
+
+    public static final class Point implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final int x;
+        final int y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Point && ((Point) o).x == x && ((Point) o).y == y;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * x + y;
+        }
+    }
+
+    public static final class Tag {
+        final String name;
+
+        Tag(String name) {
+            this.name = name;
+        }
+    }
+
+    public static class TagMapper implements Mapper {
+        @Override
+        public Object stringToObject(String param) {
+            return new Tag(param.substring(4));
+        }
+
+        @Override
+        public String objectToString(Object object) {
+            return "tag:" + ((Tag) object).name;
+        }
+    }
+}
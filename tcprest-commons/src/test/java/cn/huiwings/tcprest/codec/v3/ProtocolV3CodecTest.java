@@ -0,0 +1,187 @@
+package cn.huiwings.tcprest.codec.v3;
+
+import cn.huiwings.tcprest.exception.BusinessException;
+import cn.huiwings.tcprest.exception.ProtocolException;
+import cn.huiwings.tcprest.parser.v3.ProtocolV3Parser;
+import cn.huiwings.tcprest.protocol.v2.StatusCode;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Frames;
+import cn.huiwings.tcprest.security.SecurityConfig;
+import cn.huiwings.tcprest.server.Context;
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for ProtocolV3Codec and ProtocolV3Parser: request frames round-trip through the parser,
+ * response frames through the codec.
+ */
+public class ProtocolV3CodecTest {
+
+    private final ProtocolV3Codec codec = new ProtocolV3Codec();
+    private final ProtocolV3Parser parser = new ProtocolV3Parser();
+
+    // ========== Requests ==========
+
+    @Test
+    public void testRequest_frameHeader() throws Exception {
+        Method method = TestService.class.getMethod("add", int.class, int.class);
+
+        byte[] frame = codec.encodeRequest(TestService.class, method, new Object[]{1, 2}, null);
+
+        assertEquals(frame[0], ProtocolV3Constants.FRAME_MAGIC);
+        assertEquals(ProtocolV3Frames.readInt(frame, 1), frame.length - ProtocolV3Constants.FRAME_HEADER_LENGTH);
+        assertEquals(frame[5], ProtocolV3Constants.VERSION);
+    }
+
+    @Test
+    public void testRequest_primitives() throws Exception {
+        Method method = TestService.class.getMethod("add", int.class, int.class);
+
+        Context context = parser.parse(payload(codec.encodeRequest(TestService.class, method, new Object[]{1, 2}, null)));
+
+        assertEquals(context.getTargetClass(), TestService.class);
+        assertEquals(context.getTargetMethod(), method);
+        assertEquals(context.getParams(), new Object[]{1, 2});
+    }
+
+    @Test
+    public void testRequest_stringNullAndEmpty() throws Exception {
+        Method method = TestService.class.getMethod("join", String.class, String.class, String.class);
+
+        Context context = parser.parse(payload(
+                codec.encodeRequest(TestService.class, method, new Object[]{"héllo|{{x}}\n", null, ""}, null)));
+
+        assertEquals(context.getParams()[0], "héllo|{{x}}\n");
+        assertNull(context.getParams()[1]);
+        assertEquals(context.getParams()[2], "");
+    }
+
+    @Test
+    public void testRequest_arraysAndObjects() throws Exception {
+        Method method = TestService.class.getMethod("complex", int[].class, List.class, Point.class);
+        List<String> list = new ArrayList<>(Arrays.asList("a", "b"));
+
+        Context context = parser.parse(payload(codec.encodeRequest(TestService.class, method,
+                new Object[]{new int[]{1, 2, 3}, list, new Point(3, 4)}, null)));
+
+        assertEquals((int[]) context.getParams()[0], new int[]{1, 2, 3});
+        assertEquals(context.getParams()[1], list);
+        assertEquals(context.getParams()[2], new Point(3, 4));
+    }
+
+    @Test
+    public void testRequest_checksumRoundTrip() throws Exception {
+        SecurityConfig config = new SecurityConfig().enableHMAC("secret");
+        Method method = TestService.class.getMethod("add", int.class, int.class);
+
+        byte[] frame = new ProtocolV3Codec(config, null).encodeRequest(TestService.class, method, new Object[]{1, 2}, null);
+        Context context = new ProtocolV3Parser(config, null).parse(payload(frame));
+
+        assertEquals(context.getParams(), new Object[]{1, 2});
+    }
+
+    @Test(expectedExceptions = cn.huiwings.tcprest.exception.SecurityException.class)
+    public void testRequest_tamperedPayloadRejected() throws Exception {
+        SecurityConfig config = new SecurityConfig().enableCRC32();
+        Method method = TestService.class.getMethod("add", int.class, int.class);
+        byte[] payload = payload(new ProtocolV3Codec(config, null)
+                .encodeRequest(TestService.class, method, new Object[]{1, 2}, null));
+
+        // The second parameter is the first ASCII '2' in the payload: flip it to '3'
+        for (int i = 0; i < payload.length; i++) {
+            if (payload[i] == '2') {
+                payload[i] = '3';
+                break;
+            }
+        }
+        new ProtocolV3Parser(config, null).parse(payload);
+    }
+
+    @Test(expectedExceptions = cn.huiwings.tcprest.exception.SecurityException.class)
+    public void testRequest_missingChecksumRejected() throws Exception {
+        Method method = TestService.class.getMethod("add", int.class, int.class);
+        byte[] payload = payload(codec.encodeRequest(TestService.class, method, new Object[]{1, 2}, null));
+
+        new ProtocolV3Parser(new SecurityConfig().enableCRC32(), null).parse(payload);
+    }
+
+    @Test(expectedExceptions = ProtocolException.class)
+    public void testRequest_truncatedPayloadRejected() throws Exception {
+        Method method = TestService.class.getMethod("add", int.class, int.class);
+        byte[] payload = payload(codec.encodeRequest(TestService.class, method, new Object[]{1, 2}, null));
+
+        parser.parse(Arrays.copyOf(payload, payload.length - 1));
+    }
+
+    // ========== Responses ==========
+
+    @Test
+    public void testResponse_values() throws Exception {
+        assertEquals(decode(codec.encodeBinaryResponse(42, StatusCode.SUCCESS), int.class), 42);
+        assertEquals(decode(codec.encodeBinaryResponse("text", StatusCode.SUCCESS), String.class), "text");
+        assertEquals(decode(codec.encodeBinaryResponse(new Point(1, 2), StatusCode.SUCCESS), Point.class), new Point(1, 2));
+        assertEquals((String[]) decode(codec.encodeBinaryResponse(new String[]{"x", "y"}, StatusCode.SUCCESS),
+                String[].class), new String[]{"x", "y"});
+        assertNull(decode(codec.encodeBinaryResponse(null, StatusCode.SUCCESS), String.class));
+    }
+
+    @Test
+    public void testResponse_businessException() throws Exception {
+        byte[] frame = codec.encodeBinaryException(new BusinessException("out of stock"), StatusCode.BUSINESS_EXCEPTION);
+        try {
+            decode(frame, String.class);
+            fail("Expected BusinessException");
+        } catch (BusinessException e) {
+            assertTrue(e.getMessage().contains("out of stock"));
+        }
+    }
+
+    @Test
+    public void testResponse_v2LineAccepted() throws Exception {
+        String line = codec.encodeResponse("from v2", StatusCode.SUCCESS);
+
+        assertEquals(codec.decodeResponse(line.getBytes("UTF-8"), String.class), "from v2");
+    }
+
+    private Object decode(byte[] frame, Class<?> type) throws Exception {
+        return codec.decodeResponse(payload(frame), type);
+    }
+
+    private static byte[] payload(byte[] frame) {
+        return Arrays.copyOfRange(frame, ProtocolV3Constants.FRAME_HEADER_LENGTH, frame.length);
+    }
+
+    public interface TestService {
+        int add(int a, int b);
+        String join(String a, String b, String c);
+        String complex(int[] numbers, List<String> names, Point point);
+    }
+
+    public static class Point implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final int x;
+        final int y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Point && ((Point) o).x == x && ((Point) o).y == y;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * x + y;
+        }
+    }
+}
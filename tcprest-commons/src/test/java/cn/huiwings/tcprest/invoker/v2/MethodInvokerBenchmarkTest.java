@@ -0,0 +1,54 @@
+package cn.huiwings.tcprest.invoker.v2;
+
+import cn.huiwings.tcprest.test.Benchmarks;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Performance comparison of the method invoker strategies on primitive-heavy signatures.
+ * These tests print ns/op for reflection, method handles and generated invokers.
+ */
+public class MethodInvokerBenchmarkTest {
+
+    private static final int WARMUP_ITERATIONS = 200_000;
+    private static final int ITERATIONS = 2_000_000;
+
+    @Test(groups = "benchmark")
+    public void benchmarkAddTwoInts() throws Throwable {
+        Method method = Arithmetic.class.getMethod("add", int.class, int.class);
+        run("Method Invoker Benchmark: add(II)I", method, new Object[]{17, 25}, 42);
+    }
+
+    @Test(groups = "benchmark")
+    public void benchmarkFourPrimitives() throws Throwable {
+        Method method = Arithmetic.class.getMethod("scale", long.class, int.class, double.class, boolean.class);
+        run("Method Invoker Benchmark: scale(JIDZ)J", method, new Object[]{1000L, 3, 1.5, true}, 4500L);
+    }
+
+    private void run(String title, Method method, Object[] args, Object expected) throws Throwable {
+        Arithmetic target = new Arithmetic();
+        Benchmarks.Table table = Benchmarks.table(title, TimeUnit.NANOSECONDS, "Strategy", 13, "ns/op");
+
+        for (MethodInvokers.Strategy strategy : MethodInvokers.Strategy.values()) {
+            MethodInvoker invoker = MethodInvokers.create(method, strategy);
+            assertEquals(invoker.invoke(target, args), expected);
+            table.measure(strategy.toString(), WARMUP_ITERATIONS, ITERATIONS,
+                    i -> invoker.invoke(target, args).hashCode());
+        }
+    }
+
+    public static class Arithmetic {
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        public long scale(long value, int factor, double ratio, boolean round) {
+            double scaled = value * factor * ratio;
+            return round ? Math.round(scaled) : (long) scaled;
+        }
+    }
+}
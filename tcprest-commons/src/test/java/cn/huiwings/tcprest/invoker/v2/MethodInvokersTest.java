@@ -0,0 +1,130 @@
+package cn.huiwings.tcprest.invoker.v2;
+
+import cn.huiwings.tcprest.exception.BusinessException;
+import cn.huiwings.tcprest.server.Context;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Method;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for MethodInvokers: every strategy calls the same method with the same results and
+ * exceptions, and unsupported methods fall back to a simpler strategy.
+ */
+public class MethodInvokersTest {
+
+    private static final MethodInvokers.Strategy[] STRATEGIES = MethodInvokers.Strategy.values();
+
+    @Test
+    public void testAllStrategiesAgree() throws Throwable {
+        Calculator calculator = new Calculator();
+        Method add = Calculator.class.getMethod("add", int.class, int.class);
+        Method sum = Calculator.class.getMethod("sum", long.class, int.class, double.class, boolean.class);
+        Method name = Calculator.class.getMethod("name");
+
+        for (MethodInvokers.Strategy strategy : STRATEGIES) {
+            assertEquals(MethodInvokers.create(add, strategy).invoke(calculator, new Object[]{2, 3}), 5, strategy.name());
+            assertEquals(MethodInvokers.create(sum, strategy).invoke(calculator, new Object[]{1L, 2, 0.5, true}),
+                    3.5, strategy.name());
+            assertEquals(MethodInvokers.create(name, strategy).invoke(calculator, null), "calc", strategy.name());
+        }
+    }
+
+    @Test
+    public void testExceptionsNotWrapped() throws Exception {
+        Method fail = Calculator.class.getMethod("fail", String.class);
+
+        for (MethodInvokers.Strategy strategy : STRATEGIES) {
+            try {
+                MethodInvokers.forMethod(fail, strategy).invoke(new Calculator(), new Object[]{"boom"});
+                fail("Expected BusinessException");
+            } catch (Throwable e) {
+                assertTrue(e instanceof BusinessException, strategy + ": " + e);
+                assertEquals(e.getMessage(), "boom");
+            }
+        }
+    }
+
+    @Test
+    public void testGeneratedNotApplicable() throws Exception {
+        Method reset = Calculator.class.getMethod("reset");
+        Method twice = Calculator.class.getMethod("twice", int.class);
+        Method many = Calculator.class.getMethod("many", int.class, int.class, int.class, int.class, int.class);
+
+        assertNull(MethodInvokers.create(reset, MethodInvokers.Strategy.GENERATED));
+        assertNull(MethodInvokers.create(twice, MethodInvokers.Strategy.GENERATED));
+        assertNull(MethodInvokers.create(many, MethodInvokers.Strategy.GENERATED));
+        assertNotNull(MethodInvokers.create(many, MethodInvokers.Strategy.METHOD_HANDLE));
+    }
+
+    @Test
+    public void testFallback() throws Throwable {
+        Calculator calculator = new Calculator();
+        Method reset = Calculator.class.getMethod("reset");
+        Method twice = Calculator.class.getMethod("twice", int.class);
+        Method many = Calculator.class.getMethod("many", int.class, int.class, int.class, int.class, int.class);
+
+        assertNull(MethodInvokers.forMethod(reset, MethodInvokers.Strategy.GENERATED).invoke(calculator, new Object[0]));
+        assertEquals(MethodInvokers.forMethod(twice, MethodInvokers.Strategy.GENERATED).invoke(null, new Object[]{4}), 8);
+        assertEquals(MethodInvokers.forMethod(many, MethodInvokers.Strategy.GENERATED)
+                .invoke(calculator, new Object[]{1, 2, 3, 4, 5}), 15);
+    }
+
+    @Test
+    public void testNonPublicClassUsesReflection() throws Exception {
+        Method method = Hidden.class.getMethod("value");
+
+        assertNull(MethodInvokers.create(method, MethodInvokers.Strategy.METHOD_HANDLE));
+        assertNull(MethodInvokers.create(method, MethodInvokers.Strategy.GENERATED));
+        assertNotNull(MethodInvokers.forMethod(method, MethodInvokers.Strategy.GENERATED));
+    }
+
+    @Test
+    public void testProtocolV2InvokerWidensArguments() throws Exception {
+        // Integer for a long parameter: not an exact match, so Method.invoke converts it
+        Context context = new Context();
+        context.setTargetInstance(new Calculator());
+        context.setTargetMethod(Calculator.class.getMethod("sum", long.class, int.class, double.class, boolean.class));
+        context.setParams(new Object[]{1, 2, 0.5, false});
+
+        for (MethodInvokers.Strategy strategy : STRATEGIES) {
+            assertEquals(new ProtocolV2Invoker(strategy).invoke(context), 3.5, strategy.name());
+        }
+    }
+
+    public static class Calculator {
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        public double sum(long a, int b, double c, boolean d) {
+            return a + b + c;
+        }
+
+        public String name() {
+            return "calc";
+        }
+
+        public void reset() {
+        }
+
+        public static int twice(int a) {
+            return a * 2;
+        }
+
+        public int many(int a, int b, int c, int d, int e) {
+            return a + b + c + d + e;
+        }
+
+        public String fail(String message) {
+            throw new BusinessException(message);
+        }
+    }
+
+    static class Hidden {
+        public int value() {
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package cn.huiwings.tcprest.mapper;
+
+import cn.huiwings.tcprest.codec.v3.ProtocolV3Codec;
+import cn.huiwings.tcprest.exception.ProtocolException;
+import cn.huiwings.tcprest.parser.v2.ProtocolV2Parser;
+import cn.huiwings.tcprest.parser.v3.ProtocolV3Parser;
+import cn.huiwings.tcprest.protocol.v2.StatusCode;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants;
+import cn.huiwings.tcprest.server.Context;
+import org.testng.annotations.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for BinaryMapper: the built-in binary mappers, the string adapters, and binary mappers
+ * carried by the V2 and V3 codecs and parsers.
+ */
+public class BinaryMapperTest {
+
+    private final Map<String, Mapper> mappers = Collections.<String, Mapper>singletonMap(
+            Point.class.getCanonicalName(), new PointMapper());
+
+    @Test
+    public void testRawTypeMapperReadsSlice() throws Exception {
+        RawTypeMapper mapper = new RawTypeMapper();
+        byte[] bytes = mapper.toByteArray(new Label("x"));
+        byte[] padded = new byte[bytes.length + 8];
+        System.arraycopy(bytes, 0, padded, 4, bytes.length);
+
+        ByteBuffer slice = ByteBuffer.wrap(padded, 4, bytes.length);
+
+        assertEquals(mapper.readObject(slice), new Label("x"));
+        assertFalse(slice.hasRemaining());
+        assertEquals(bytes, RawTypeMapper.toBytes(new Label("x")));
+        assertEquals(mapper.objectToString(new Label("x")), Base64.getEncoder().encodeToString(bytes));
+    }
+
+    @Test
+    public void testExceptionMapperKeepsMessage() throws Exception {
+        ExceptionMapper mapper = new ExceptionMapper();
+
+        Object decoded = mapper.readObject(ByteBuffer.wrap(mapper.toByteArray(new Exception("héllo"))));
+
+        assertEquals(((Exception) decoded).getMessage(), "héllo");
+        assertEquals(mapper.objectToString(new Exception("text")), "text");
+    }
+
+    @Test
+    public void testStringMapperAdapter() throws Exception {
+        Mapper text = new Mapper() {
+            @Override
+            public Object stringToObject(String param) {
+                return new Label(param);
+            }
+
+            @Override
+            public String objectToString(Object object) {
+                return ((Label) object).name;
+            }
+        };
+        BinaryMapper adapter = BinaryMapper.of(text);
+
+        assertEquals(adapter.toByteArray(new Label("ü")), "ü".getBytes("UTF-8"));
+        assertEquals(adapter.readObject(ByteBuffer.wrap("ü".getBytes("UTF-8"))), new Label("ü"));
+        assertSame(BinaryMapper.of(adapter), adapter);
+    }
+
+    @Test
+    public void testDefaultStringFormIsBase64() throws Exception {
+        PointMapper mapper = new PointMapper();
+
+        String text = mapper.objectToString(new Point(3, -4));
+
+        assertEquals(Base64.getDecoder().decode(text).length, 8);
+        assertEquals(mapper.stringToObject(text), new Point(3, -4));
+    }
+
+    @Test
+    public void testV2RequestAndResponse() throws Exception {
+        ProtocolV3Codec codec = new ProtocolV3Codec(null, mappers);
+        Method method = Geometry.class.getMethod("mirror", Point.class);
+
+        String request = codec.encode(Geometry.class, method, new Object[]{new Point(1, 2)}, mappers);
+        Context context = new ProtocolV2Parser(mappers).parse(request);
+
+        assertEquals(context.getParams()[0], new Point(1, 2));
+        // 8 bytes, Base64-encoded once
+        assertTrue(request.contains("|[" + Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(new PointMapper().toByteArray(new Point(1, 2))) + "]"));
+        assertEquals(codec.decode(codec.encodeResponse(new Point(2, 1), StatusCode.SUCCESS), Point.class),
+                new Point(2, 1));
+    }
+
+    @Test
+    public void testV3RequestAndResponse() throws Exception {
+        ProtocolV3Codec codec = new ProtocolV3Codec(null, mappers);
+        Method method = Geometry.class.getMethod("mirror", Point.class);
+
+        byte[] frame = codec.encodeRequest(Geometry.class, method, new Object[]{new Point(5, 6)}, mappers);
+        Context context = new ProtocolV3Parser(mappers).parse(payload(frame));
+
+        assertEquals(context.getParams()[0], new Point(5, 6));
+        byte[] response = codec.encodeBinaryResponse(new Point(6, 5), StatusCode.SUCCESS);
+        assertEquals(codec.decodeResponse(payload(response), Point.class), new Point(6, 5));
+    }
+
+    @Test
+    public void testUnwritableValueFailsInsteadOfSendingNull() throws Exception {
+        Map<String, Mapper> failing = Collections.<String, Mapper>singletonMap(Point.class.getCanonicalName(),
+                new PointMapper() {
+                    @Override
+                    public void writeObject(Object object, OutputStream out) throws IOException {
+                        throw new IOException("disk on fire");
+                    }
+                });
+        ProtocolV3Codec codec = new ProtocolV3Codec(null, failing);
+        Method method = Geometry.class.getMethod("mirror", Point.class);
+
+        try {
+            codec.encode(Geometry.class, method, new Object[]{new Point(1, 2)}, failing);
+            fail("Expected ProtocolException");
+        } catch (ProtocolException e) {
+            assertTrue(e.getMessage().contains("disk on fire"), e.getMessage());
+        }
+        try {
+            codec.encodeResponse(new Point(2, 1), StatusCode.SUCCESS);
+            fail("Expected ProtocolException");
+        } catch (ProtocolException e) {
+            assertTrue(e.getCause() instanceof IOException, "cause: " + e.getCause());
+        }
+    }
+
+    @Test
+    public void testRawTypeMapperForConcreteClass() throws Exception {
+        Map<String, Mapper> raw = Collections.<String, Mapper>singletonMap(Label.class.getCanonicalName(),
+                new RawTypeMapper());
+        ProtocolV3Codec codec = new ProtocolV3Codec(null, raw);
+        Method method = Geometry.class.getMethod("rename", Label.class);
+
+        String request = codec.encode(Geometry.class, method, new Object[]{new Label("a")}, raw);
+
+        assertEquals(new ProtocolV2Parser(raw).parse(request).getParams()[0], new Label("a"));
+        assertEquals(codec.decode(codec.encodeResponse(new Label("b"), StatusCode.SUCCESS), Label.class),
+                new Label("b"));
+    }
+
+    private static byte[] payload(byte[] frame) {
+        return Arrays.copyOfRange(frame, ProtocolV3Constants.FRAME_HEADER_LENGTH, frame.length);
+    }
+
+    public interface Geometry {
+        Point mirror(Point point);
+
+        Label rename(Label label);
+    }
+
+    public static final class Point {
+        final int x;
+        final int y;
+
+        public Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Point && ((Point) o).x == x && ((Point) o).y == y;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * x + y;
+        }
+    }
+
+    public static final class Label implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final String name;
+
+        Label(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Label && ((Label) o).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+
+    public static class PointMapper implements BinaryMapper {
+        @Override
+        public void writeObject(Object object, OutputStream out) throws IOException {
+            Point point = (Point) object;
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(point.x);
+            data.writeInt(point.y);
+            data.flush();
+        }
+
+        @Override
+        public Object readObject(ByteBuffer in) {
+            return new Point(in.getInt(), in.getInt());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package cn.huiwings.tcprest.mapper;
+
+import cn.huiwings.tcprest.test.Benchmarks;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Size and round-trip cost of a small DTO graph with Java serialization and with the compact format.
+ */
+public class CompactSerializerBenchmarkTest {
+
+    private static final int WARMUP_ITERATIONS = 100_000;
+    private static final int ITERATIONS = 200_000;
+
+    @Test(groups = "benchmark")
+    public void benchmarkJavaVsCompact() throws Throwable {
+        Benchmarks.Table table = Benchmarks.table("Serializer Benchmark: Order with 2 lines", TimeUnit.NANOSECONDS,
+                "Format", 13, "bytes", "ns/op (write + read)");
+        run(table, "Java", new RawTypeMapper());
+        run(table, "Compact", new CompactMapper());
+    }
+
+    private void run(Benchmarks.Table table, String name, BinaryMapper mapper) throws Throwable {
+        Object order = CompactSerializerTest.sampleOrder();
+        byte[] bytes = mapper.toByteArray(order);
+        assertEquals(RawTypeMapper.fromBytes(bytes, 0, bytes.length), order);
+        table.measure(name, WARMUP_ITERATIONS, ITERATIONS, i -> {
+            byte[] written = mapper.toByteArray(order);
+            return RawTypeMapper.fromBytes(written, 0, written.length).hashCode();
+        }, bytes.length);
+    }
+}
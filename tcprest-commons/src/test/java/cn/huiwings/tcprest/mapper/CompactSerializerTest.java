@@ -0,0 +1,325 @@
+package cn.huiwings.tcprest.mapper;
+
+import cn.huiwings.tcprest.codec.v2.ProtocolV2Codec;
+import cn.huiwings.tcprest.parser.v2.ProtocolV2Parser;
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.protocol.v2.StatusCode;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InvalidClassException;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the compact serialization format: round trips, the Java serialization fallbacks, and
+ * rejection of malformed or foreign input.
+ */
+public class CompactSerializerTest {
+
+    @Test
+    public void testObjectTreeRoundTrip() throws Exception {
+        Order order = sampleOrder();
+
+        byte[] bytes = CompactSerializer.toBytes(order);
+        Order decoded = (Order) RawTypeMapper.fromBytes(bytes, 0, bytes.length);
+
+        assertEquals(bytes[0], CompactSerializer.MAGIC);
+        assertEquals(decoded, order);
+        assertNull(decoded.note, "transient fields are not written");
+        assertEquals(decoded.id, order.id, "fields of serializable superclasses are written");
+        assertEquals(decoded.createdBy, null, "fields of non-serializable superclasses are not written");
+        assertEquals(decoded.lines.getClass(), ArrayList.class);
+        assertEquals(decoded.attributes.getClass(), LinkedHashMap.class);
+        assertEquals(new ArrayList<>(decoded.attributes.keySet()), Arrays.asList("z", "a"));
+    }
+
+    @Test
+    public void testSmallerThanJavaSerialization() throws Exception {
+        List<Line> lines = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            lines.add(new Line("SKU-" + i, i, Status.OPEN));
+        }
+
+        int compactOrder = CompactSerializer.toBytes(sampleOrder()).length;
+        int javaOrder = RawTypeMapper.toBytes(sampleOrder()).length;
+        int compactLines = CompactSerializer.toBytes(lines).length;
+        int javaLines = RawTypeMapper.toBytes(lines).length;
+
+        // class descriptors dominate small messages
+        assertTrue(compactOrder * 2 < javaOrder, "compact " + compactOrder + " bytes vs Java " + javaOrder);
+        assertTrue(compactLines < javaLines, "compact " + compactLines + " bytes vs Java " + javaLines);
+    }
+
+    @Test
+    public void testValuesAndArrays() throws Exception {
+        Object[] values = {null, true, (byte) -1, (short) -300, 'é', Integer.MIN_VALUE, Long.MAX_VALUE, 1.5f,
+                -0.25, "", "日本", Status.CLOSED, new int[]{-1, 0, 1 << 30}, new long[]{Long.MIN_VALUE},
+                new double[]{Double.NaN}, new float[]{-1f}, new boolean[]{true, false}, new short[]{-2},
+                new char[]{'a'}, new byte[]{1, 2, 3}, new String[]{"a", null, "a"}, new int[][]{{1}, {2, 3}},
+                new TreeSet<>(Arrays.asList(3, 1, 2)), new LinkedList<>(Arrays.asList("x"))};
+
+        byte[] bytes = CompactSerializer.toBytes(values);
+        Object[] decoded = (Object[]) CompactSerializer.read(bytes, 0, bytes.length);
+
+        assertEquals(decoded.length, values.length);
+        for (int i = 0; i < values.length; i++) {
+            assertTrue(Objects.deepEquals(decoded[i], values[i]), "value " + i + ": " + decoded[i]);
+            if (values[i] != null) {
+                assertEquals(decoded[i].getClass(), values[i].getClass());
+            }
+        }
+    }
+
+    @Test
+    public void testCustomSerializationEmbedded() throws Exception {
+        Priced priced = new Priced(new BigDecimal("12.50"), Collections.singletonList("tag"));
+
+        byte[] bytes = CompactSerializer.toBytes(priced);
+
+        assertEquals(bytes[0], CompactSerializer.MAGIC);
+        assertEquals(RawTypeMapper.fromBytes(bytes, 0, bytes.length), priced);
+    }
+
+    @Test
+    public void testSharedReferencesUseJavaSerialization() throws Exception {
+        Line line = new Line("shared", 1, Status.OPEN);
+        List<Line> lines = new ArrayList<>(Arrays.asList(line, line));
+        Node cycle = new Node("a");
+        cycle.next = new Node("b");
+        cycle.next.next = cycle;
+
+        byte[] shared = CompactSerializer.toBytes(lines);
+        byte[] cyclic = CompactSerializer.toBytes(cycle);
+
+        assertFalse(CompactSerializer.isCompact(shared, 0, shared.length));
+        @SuppressWarnings("unchecked")
+        List<Line> decoded = (List<Line>) RawTypeMapper.fromBytes(shared, 0, shared.length);
+        assertSame(decoded.get(0), decoded.get(1));
+        Node node = (Node) RawTypeMapper.fromBytes(cyclic, 0, cyclic.length);
+        assertSame(node.next.next, node);
+    }
+
+    @Test
+    public void testStreamMatchesBytes() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new CompactMapper().writeObject(sampleOrder(), out);
+
+        assertEquals(out.toByteArray(), CompactSerializer.toBytes(sampleOrder()));
+    }
+
+    @Test
+    public void testJavaSerializationStillReadable() throws Exception {
+        byte[] serialized = RawTypeMapper.toBytes(sampleOrder());
+        CompactMapper mapper = new CompactMapper();
+
+        assertEquals(RawTypeMapper.fromBytes(serialized, 0, serialized.length), sampleOrder());
+        assertEquals(mapper.stringToObject(Base64.getEncoder().encodeToString(serialized)), sampleOrder());
+    }
+
+    @Test
+    public void testMalformedInputRejected() throws Exception {
+        byte[] bytes = CompactSerializer.toBytes(sampleOrder());
+
+        expectThrows(StreamCorruptedException.class, () -> CompactSerializer.read(bytes, 0, bytes.length - 3));
+        byte[] hugeCount = {CompactSerializer.MAGIC, CompactSerializer.VERSION, 12, 0, 6, 'i', 'n', 't',
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0x7F};
+        expectThrows(StreamCorruptedException.class, () -> CompactSerializer.read(hugeCount, 0, hugeCount.length));
+    }
+
+    @Test
+    public void testRejectedAndMismatchedClasses() throws Exception {
+        byte[] rejected = objectHeader("sun.misc.Unsafe", 0);
+        expectThrows(InvalidClassException.class, () -> CompactSerializer.read(rejected, 0, rejected.length));
+
+        byte[] mismatched = objectHeader(Node.class.getName(), 42);
+        InvalidClassException e = expectThrows(InvalidClassException.class,
+                () -> CompactSerializer.read(mismatched, 0, mismatched.length));
+        assertTrue(e.getMessage().contains("incompatible"), e.getMessage());
+    }
+
+    @Test
+    public void testV2RoundTrip() throws Exception {
+        ProtocolV2Codec codec = new ProtocolV2Codec();
+        Method method = OrderService.class.getMethod("submit", Order.class, List.class);
+
+        String request = codec.encode(OrderService.class, method,
+                new Object[]{sampleOrder(), new ArrayList<>(Arrays.asList("a", "b"))}, MapperHelper.DEFAULT_MAPPERS);
+        Object[] params = new ProtocolV2Parser(MapperHelper.DEFAULT_MAPPERS).parse(request).getParams();
+
+        assertEquals(params[0], sampleOrder());
+        assertEquals(params[1], Arrays.asList("a", "b"));
+        assertEquals(codec.decode(codec.encodeResponse(sampleOrder(), StatusCode.SUCCESS), Order.class),
+                sampleOrder());
+    }
+
+    @Test
+    public void testCompactOnlyWhenNegotiated() throws Exception {
+        ProtocolV2Codec codec = new ProtocolV2Codec();
+
+        // Peers that did not announce the compact feature get Java serialization ("rO0" in Base64)
+        String legacy = codec.encodeResponse(sampleOrder(), StatusCode.SUCCESS);
+        assertTrue(legacy.startsWith("V2|0|0|{{rO0"), legacy);
+        assertEquals(codec.decode(legacy, Order.class), sampleOrder());
+        String compact = codec.encodeResponse(sampleOrder(), null, StatusCode.SUCCESS, Capabilities.FEATURE_COMPACT);
+        assertTrue(compact.length() < legacy.length());
+        assertEquals(codec.decode(compact, Order.class), sampleOrder());
+    }
+
+    @Test
+    public void testUnreadableBodyThrows() {
+        ProtocolV2Codec codec = new ProtocolV2Codec();
+        String garbage = Base64.getEncoder().encodeToString("not a value".getBytes(StandardCharsets.UTF_8));
+
+        expectThrows(IllegalArgumentException.class, () -> codec.decode("V2|0|0|{{" + garbage + "}}", Order.class));
+    }
+
+    private static byte[] objectHeader(String className, int fingerprint) {
+        byte[] name = className.getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[5 + name.length + 4];
+        bytes[0] = CompactSerializer.MAGIC;
+        bytes[1] = CompactSerializer.VERSION;
+        bytes[2] = 15; // OBJECT
+        bytes[3] = 0; // new schema
+        bytes[4] = (byte) (name.length << 1);
+        System.arraycopy(name, 0, bytes, 5, name.length);
+        bytes[bytes.length - 1] = (byte) fingerprint;
+        return bytes;
+    }
+
+    static Order sampleOrder() {
+        Order order = new Order(7L, "alice");
+        order.lines.add(new Line("SKU-1", 2, Status.OPEN));
+        order.lines.add(new Line("SKU-2", -1, Status.CLOSED));
+        order.attributes.put("z", 1.5);
+        order.attributes.put("a", null);
+        order.note = "not sent";
+        return order;
+    }
+
+    public interface OrderService {
+        Order submit(Order order, List<String> tags);
+    }
+
+    public enum Status {
+        OPEN, CLOSED {
+            @Override
+            public String toString() {
+                return "closed";
+            }
+        }
+    }
+
+    /** Not serializable: its fields are left to its no-arg constructor, as in Java serialization. */
+    public static class Audited {
+        String createdBy;
+
+        public Audited() {
+        }
+    }
+
+    public static class Entity extends Audited implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final long id;
+
+        Entity(long id) {
+            this.id = id;
+            this.createdBy = "system";
+        }
+    }
+
+    public static final class Order extends Entity {
+        private static final long serialVersionUID = 1L;
+        final String customer;
+        final List<Line> lines = new ArrayList<>();
+        final Map<String, Double> attributes = new LinkedHashMap<>();
+        transient String note;
+
+        Order(long id, String customer) {
+            super(id);
+            this.customer = customer;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Order && ((Order) o).id == id && ((Order) o).customer.equals(customer)
+                    && ((Order) o).lines.equals(lines) && ((Order) o).attributes.equals(attributes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, customer, lines);
+        }
+    }
+
+    public static final class Line implements Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String sku;
+        private final int quantity;
+        private final Status status;
+
+        Line(String sku, int quantity, Status status) {
+            this.sku = sku;
+            this.quantity = quantity;
+            this.status = status;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Line && ((Line) o).sku.equals(sku) && ((Line) o).quantity == quantity
+                    && ((Line) o).status == status;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sku, quantity, status);
+        }
+    }
+
+    public static final class Priced implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final BigDecimal price;
+        final List<String> tags;
+
+        Priced(BigDecimal price, List<String> tags) {
+            this.price = price;
+            this.tags = tags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Priced && ((Priced) o).price.equals(price) && ((Priced) o).tags.equals(tags);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(price, tags);
+        }
+    }
+
+    public static final class Node implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final String name;
+        Node next;
+
+        Node(String name) {
+            this.name = name;
+        }
+    }
+}
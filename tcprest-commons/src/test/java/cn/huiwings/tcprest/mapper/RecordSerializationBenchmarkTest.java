@@ -0,0 +1,59 @@
+package cn.huiwings.tcprest.mapper;
+
+import cn.huiwings.tcprest.test.Benchmarks;
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Size and round-trip cost of records with Java serialization ({@link RawTypeMapper}) and with the
+ * compact format's compiled record encoders: nested records, and a record holding a list of records.
+ */
+public class RecordSerializationBenchmarkTest {
+
+    private static final int WARMUP_ITERATIONS = 100_000;
+    private static final int ITERATIONS = 200_000;
+
+    @Test(groups = "benchmark")
+    public void benchmarkRecords() throws Throwable {
+        Order nested = new Order(1L, new Party("Alice", new Location("Main St 1", "Berlin")), new ArrayList<>());
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            items.add(new Item("SKU-" + i, i + 1, 100L * i));
+        }
+        Order withList = new Order(2L, nested.party(), items);
+
+        Benchmarks.Table table = Benchmarks.table("Record Serializer Benchmark", TimeUnit.NANOSECONDS,
+                "Case", 20, "bytes", "ns/op (write + read)");
+        run(table, "Nested / Java", new RawTypeMapper(), nested);
+        run(table, "Nested / Compact", new CompactMapper(), nested);
+        run(table, "10 items / Java", new RawTypeMapper(), withList);
+        run(table, "10 items / Compact", new CompactMapper(), withList);
+    }
+
+    private void run(Benchmarks.Table table, String name, BinaryMapper mapper, Object value) throws Throwable {
+        byte[] bytes = mapper.toByteArray(value);
+        assertEquals(RawTypeMapper.fromBytes(bytes, 0, bytes.length), value);
+        table.measure(name, WARMUP_ITERATIONS, ITERATIONS, i -> {
+            byte[] written = mapper.toByteArray(value);
+            return RawTypeMapper.fromBytes(written, 0, written.length).hashCode();
+        }, bytes.length);
+    }
+
+    public record Location(String street, String city) implements Serializable {
+    }
+
+    public record Party(String name, Location location) implements Serializable {
+    }
+
+    public record Item(String sku, int quantity, long cents) implements Serializable {
+    }
+
+    public record Order(long id, Party party, List<Item> items) implements Serializable {
+    }
+}
@@ -0,0 +1,147 @@
+package cn.huiwings.tcprest.mapper;
+
+import cn.huiwings.tcprest.codec.v3.ProtocolV3Codec;
+import cn.huiwings.tcprest.parser.v2.ProtocolV2Parser;
+import cn.huiwings.tcprest.parser.v3.ProtocolV3Parser;
+import cn.huiwings.tcprest.protocol.v2.DispatchTable;
+import cn.huiwings.tcprest.protocol.v2.ProtocolV2TypeSupport;
+import cn.huiwings.tcprest.protocol.v2.StatusCode;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants;
+import org.testng.annotations.Test;
+
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for records in the compact format and in the V2/V3 codecs: records need not be Serializable,
+ * components are written positionally and restored through the canonical constructor.
+ */
+public class RecordSerializationTest {
+
+    private final Map<String, Mapper> mappers = MapperHelper.DEFAULT_MAPPERS;
+
+    @Test
+    public void testNestedRecordsRoundTrip() throws Exception {
+        Invoice invoice = sampleInvoice();
+
+        byte[] bytes = CompactSerializer.toBytes(invoice);
+
+        assertTrue(CompactSerializer.isCompact(bytes, 0, bytes.length));
+        assertEquals(RawTypeMapper.fromBytes(bytes, 0, bytes.length), invoice);
+    }
+
+    @Test
+    public void testPrimitiveAndNullComponents() throws Exception {
+        Primitives value = new Primitives(true, (byte) -2, (short) 300, 'ß', -7, Long.MIN_VALUE, 0.5f, -1e300, null);
+
+        byte[] bytes = CompactSerializer.toBytes(value);
+
+        assertEquals(CompactSerializer.read(bytes, 0, bytes.length), value);
+    }
+
+    @Test
+    public void testSerializableRecordUsesCompactForm() throws Exception {
+        Tag tag = new Tag("blue");
+
+        byte[] bytes = CompactSerializer.toBytes(tag);
+
+        assertTrue(CompactSerializer.isCompact(bytes, 0, bytes.length));
+        assertTrue(bytes.length < RawTypeMapper.toBytes(tag).length);
+        assertEquals(CompactSerializer.read(bytes, 0, bytes.length), tag);
+    }
+
+    @Test
+    public void testCanonicalConstructorValidatesInput() throws Exception {
+        byte[] bytes = CompactSerializer.toBytes(new Range(1, 2));
+        // components are the last two varints: zigzag(1) = 2, zigzag(2) = 4
+        bytes[bytes.length - 2] = 4;
+        bytes[bytes.length - 1] = 2;
+
+        InvalidObjectException e = expectThrows(InvalidObjectException.class,
+                () -> CompactSerializer.read(bytes, 0, bytes.length));
+        assertTrue(e.getCause() instanceof IllegalArgumentException, String.valueOf(e.getCause()));
+    }
+
+    @Test
+    public void testRecordTypesSupported() {
+        assertTrue(ProtocolV2TypeSupport.isTypeSupported(Invoice.class, null));
+        assertTrue(ProtocolV2TypeSupport.isTypeSupported(Money[].class, null));
+        assertEquals(DispatchTable.parameterKind(Invoice.class, null), DispatchTable.ParameterKind.SERIALIZED);
+    }
+
+    @Test
+    public void testV2RequestAndResponse() throws Exception {
+        ProtocolV3Codec codec = new ProtocolV3Codec(null, mappers);
+        Method method = Billing.class.getMethod("total", Invoice.class);
+
+        String request = codec.encode(Billing.class, method, new Object[]{sampleInvoice()}, mappers);
+
+        assertEquals(new ProtocolV2Parser(mappers).parse(request).getParams()[0], sampleInvoice());
+        Money money = new Money(1234, "EUR");
+        assertEquals(codec.decode(codec.encodeResponse(money, StatusCode.SUCCESS), Money.class), money);
+    }
+
+    @Test
+    public void testV3RequestAndResponse() throws Exception {
+        ProtocolV3Codec codec = new ProtocolV3Codec(null, mappers);
+        Method method = Billing.class.getMethod("total", Invoice.class);
+
+        byte[] frame = codec.encodeRequest(Billing.class, method, new Object[]{sampleInvoice()}, mappers);
+
+        assertEquals(new ProtocolV3Parser(mappers).parse(payload(frame)).getParams()[0], sampleInvoice());
+        Money money = new Money(-5, "JPY");
+        byte[] response = codec.encodeBinaryResponse(money, StatusCode.SUCCESS);
+        assertEquals(codec.decodeResponse(payload(response), Money.class), money);
+    }
+
+    private static byte[] payload(byte[] frame) {
+        return Arrays.copyOfRange(frame, ProtocolV3Constants.FRAME_HEADER_LENGTH, frame.length);
+    }
+
+    static Invoice sampleInvoice() {
+        List<LineItem> items = new ArrayList<>();
+        items.add(new LineItem("SKU-1", 2, new Money(1999, "EUR")));
+        items.add(new LineItem("SKU-2", 1, new Money(500, "EUR")));
+        return new Invoice(42L, new Customer("Alice", new Address("Main St 1", "Berlin")), items);
+    }
+
+    public interface Billing {
+        Money total(Invoice invoice);
+    }
+
+    public record Money(long cents, String currency) {
+    }
+
+    public record Address(String street, String city) {
+    }
+
+    public record Customer(String name, Address address) {
+    }
+
+    public record LineItem(String sku, int quantity, Money price) {
+    }
+
+    public record Invoice(long id, Customer customer, List<LineItem> items) {
+    }
+
+    public record Tag(String name) implements Serializable {
+    }
+
+    public record Range(int lo, int hi) {
+        public Range {
+            if (lo > hi) {
+                throw new IllegalArgumentException("lo > hi");
+            }
+        }
+    }
+
+    record Primitives(boolean z, byte b, short s, char c, int i, long j, float f, double d, String text) {
+    }
+}
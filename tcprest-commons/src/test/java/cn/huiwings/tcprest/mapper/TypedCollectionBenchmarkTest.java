@@ -0,0 +1,65 @@
+package cn.huiwings.tcprest.mapper;
+
+import cn.huiwings.tcprest.test.Benchmarks;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Size and round-trip cost of {@code List<Integer>} and {@code Map<String, Long>} with Java serialization,
+ * the compact format without type information, and typed sequences from the declared generic type.
+ */
+public class TypedCollectionBenchmarkTest {
+
+    private static final int WARMUP_ITERATIONS = 20_000;
+    private static final int ITERATIONS = 50_000;
+
+    @Test(groups = "benchmark")
+    public void benchmarkTypedCollections() throws Throwable {
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            list.add(i * 7919 % 100_000);
+        }
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.put("key-" + i, i * 1_000_003L);
+        }
+        Type listType = Api.class.getMethod("list").getGenericReturnType();
+        Type mapType = Api.class.getMethod("map").getGenericReturnType();
+
+        Benchmarks.Table table = Benchmarks.table("Typed Collection Benchmark", TimeUnit.NANOSECONDS,
+                "Case", 26, "bytes", "ns/op (write + read)");
+        run(table, "List<Integer> / Java", list, null, true);
+        run(table, "List<Integer> / Compact", list, null, false);
+        run(table, "List<Integer> / Typed", list, listType, false);
+        run(table, "Map<String,Long> / Java", map, null, true);
+        run(table, "Map<String,Long> / Compact", map, null, false);
+        run(table, "Map<String,Long> / Typed", map, mapType, false);
+    }
+
+    private void run(Benchmarks.Table table, String name, Object value, Type declared, boolean java) throws Throwable {
+        byte[] bytes = write(value, declared, java);
+        assertEquals(RawTypeMapper.fromBytes(bytes, 0, bytes.length), value);
+        table.measure(name, WARMUP_ITERATIONS, ITERATIONS, i -> {
+            byte[] written = write(value, declared, java);
+            return RawTypeMapper.fromBytes(written, 0, written.length).hashCode();
+        }, bytes.length);
+    }
+
+    private static byte[] write(Object value, Type declared, boolean java) throws Exception {
+        return java ? RawTypeMapper.toBytes(value) : CompactSerializer.toBytes(value, declared);
+    }
+
+    public interface Api {
+        List<Integer> list();
+
+        Map<String, Long> map();
+    }
+}
@@ -0,0 +1,169 @@
+package cn.huiwings.tcprest.mapper;
+
+import cn.huiwings.tcprest.codec.v2.RequestPlan;
+import cn.huiwings.tcprest.codec.v3.ProtocolV3Codec;
+import cn.huiwings.tcprest.parser.v2.ProtocolV2Parser;
+import cn.huiwings.tcprest.parser.v3.ProtocolV3Parser;
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.protocol.v2.StatusCode;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants;
+import org.testng.annotations.Test;
+
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for typed sequences: collections and maps whose declared generic type names a boxed primitive
+ * or String element type are written without per-element tags, and read back without type information.
+ */
+public class TypedCollectionEncodingTest {
+
+    private static final int COMPACT = Capabilities.FEATURE_COMPACT;
+
+    private final Map<String, Mapper> mappers = MapperHelper.DEFAULT_MAPPERS;
+
+    @Test
+    public void testIntegerListIsPacked() throws Exception {
+        List<Integer> scores = scores(200);
+        Type declared = Scores.class.getMethod("top", List.class).getGenericReturnType();
+
+        byte[] typed = CompactSerializer.toBytes(scores, declared);
+        byte[] untyped = CompactSerializer.toBytes(scores);
+
+        assertTrue(typed.length < untyped.length, typed.length + " vs " + untyped.length);
+        Object read = RawTypeMapper.fromBytes(typed, 0, typed.length);
+        assertEquals(read, scores);
+        assertEquals(read.getClass(), ArrayList.class);
+    }
+
+    @Test
+    public void testStringLongMapIsPacked() throws Exception {
+        Map<String, Long> totals = new LinkedHashMap<>();
+        for (int i = 0; i < 50; i++) {
+            totals.put("account-" + i, i * 1_000_000_007L);
+        }
+        Type declared = Scores.class.getMethod("totals").getGenericReturnType();
+
+        byte[] typed = CompactSerializer.toBytes(totals, declared);
+
+        assertTrue(typed.length < CompactSerializer.toBytes(totals).length);
+        Map<?, ?> read = (Map<?, ?>) CompactSerializer.read(typed, 0, typed.length);
+        assertEquals(read.getClass(), LinkedHashMap.class);
+        assertEquals(new ArrayList<>(read.keySet()), new ArrayList<>(totals.keySet()));
+        assertEquals(read, totals);
+    }
+
+    @Test
+    public void testNullsAndForeignElementsFallBackToTags() throws Exception {
+        Type declared = Scores.class.getMethod("top", List.class).getGenericReturnType();
+        List<Integer> withNull = new ArrayList<>(Arrays.asList(1, null, 3));
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        List<Integer> polluted = (List) new ArrayList<>(Arrays.asList(1, "two", 3L));
+
+        for (List<Integer> list : Arrays.asList(withNull, polluted)) {
+            byte[] bytes = CompactSerializer.toBytes(list, declared);
+            assertEquals(bytes, CompactSerializer.toBytes(list));
+            assertEquals(CompactSerializer.read(bytes, 0, bytes.length), list);
+        }
+    }
+
+    @Test
+    public void testNestedAndFieldGenerics() throws Exception {
+        Map<String, List<Integer>> nested = new LinkedHashMap<>();
+        nested.put("a", scores(5));
+        nested.put("b", new ArrayList<>());
+        Type declared = Scores.class.getMethod("byTeam").getGenericReturnType();
+        Board board = new Board("weekly", new TreeSet<>(Arrays.asList("x", "y", "z")), scores(20));
+
+        byte[] nestedBytes = CompactSerializer.toBytes(nested, declared);
+        byte[] boardBytes = CompactSerializer.toBytes(board);
+
+        assertTrue(nestedBytes.length < CompactSerializer.toBytes(nested).length);
+        assertEquals(CompactSerializer.read(nestedBytes, 0, nestedBytes.length), nested);
+        assertEquals(CompactSerializer.read(boardBytes, 0, boardBytes.length), board);
+    }
+
+    @Test
+    public void testInvalidElementKindRejected() throws Exception {
+        List<Integer> scores = new ArrayList<>(Arrays.asList(1, 2, 3));
+        byte[] bytes = CompactSerializer.toBytes(scores, Scores.class.getMethod("top", List.class).getGenericReturnType());
+        // the element kind precedes the size and three one-byte varints
+        int kind = bytes.length - scores.size() - 2;
+        assertEquals(bytes[kind], 6);
+        bytes[kind] = 15;
+
+        expectThrows(StreamCorruptedException.class, () -> CompactSerializer.read(bytes, 0, bytes.length));
+    }
+
+    @Test
+    public void testV2RequestAndResponse() throws Exception {
+        ProtocolV3Codec codec = new ProtocolV3Codec(null, mappers);
+        Method method = Scores.class.getMethod("top", List.class);
+        RequestPlan plan = codec.plan(Scores.class, method, mappers);
+        List<Integer> scores = scores(100);
+
+        String request = codec.encode(plan, new Object[]{scores}, COMPACT);
+
+        assertTrue(request.length() < codec.encode(codec.plan(Scores.class, untyped(), mappers),
+                new Object[]{scores}, COMPACT).length());
+        assertEquals(new ProtocolV2Parser(mappers).parse(request).getParams()[0], scores);
+        String response = codec.encodeResponse(scores, method.getGenericReturnType(), StatusCode.SUCCESS, COMPACT);
+        assertTrue(response.length() < codec.encodeResponse(scores, null, StatusCode.SUCCESS, COMPACT).length());
+        assertEquals(codec.decode(response, plan), scores);
+    }
+
+    @Test
+    public void testV3RequestAndResponse() throws Exception {
+        ProtocolV3Codec codec = new ProtocolV3Codec(null, mappers);
+        Method method = Scores.class.getMethod("top", List.class);
+        RequestPlan plan = codec.plan(Scores.class, method, mappers);
+        List<Integer> scores = scores(100);
+
+        byte[] frame = codec.encodeRequest(plan, new Object[]{scores}, COMPACT);
+
+        assertEquals(new ProtocolV3Parser(mappers).parse(payload(frame)).getParams()[0], scores);
+        byte[] response = codec.encodeBinaryResponse(scores, method.getGenericReturnType(), StatusCode.SUCCESS,
+                COMPACT);
+        assertTrue(response.length < codec.encodeBinaryResponse(scores, null, StatusCode.SUCCESS, COMPACT).length);
+        assertEquals(codec.decodeResponse(payload(response), plan), scores);
+    }
+
+    private static Method untyped() throws NoSuchMethodException {
+        return Scores.class.getMethod("raw", List.class);
+    }
+
+    private static byte[] payload(byte[] frame) {
+        return Arrays.copyOfRange(frame, ProtocolV3Constants.FRAME_HEADER_LENGTH, frame.length);
+    }
+
+    private static List<Integer> scores(int n) {
+        List<Integer> scores = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            scores.add(i * 37 - 500);
+        }
+        return scores;
+    }
+
+    public interface Scores {
+        List<Integer> top(List<Integer> scores);
+
+        @SuppressWarnings("rawtypes")
+        List raw(List scores);
+
+        Map<String, Long> totals();
+
+        Map<String, List<Integer>> byTeam();
+    }
+
+    public record Board(String name, TreeSet<String> tags, List<Integer> scores) {
+    }
+}
@@ -0,0 +1,129 @@
+package cn.huiwings.tcprest.protocol;
+
+import cn.huiwings.tcprest.exception.ProtocolException;
+import cn.huiwings.tcprest.security.SecurityConfig;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for the capability handshake lines: offers, answers and the client-side security check.
+ */
+public class CapabilitiesTest {
+
+    @Test
+    public void testOffer_roundTrip() {
+        Capabilities offer = Capabilities.offer(true, new SecurityConfig().enableCRC32(), 4096);
+
+        String line = offer.toLine();
+        Capabilities parsed = Capabilities.parse(line);
+
+        assertTrue(Capabilities.isHello(line));
+        assertEquals(line, "TCPREST|HELLO|1|version=3,2;features=compact,binary,packed;checksum=CRC32;signature=NONE;maxFrame=4096");
+        assertEquals(parsed.getVersions(), Arrays.asList(3, 2));
+        assertEquals(parsed.getFeatures(), Capabilities.SUPPORTED_FEATURES);
+        assertEquals(parsed.getChecksum(), "CRC32");
+        assertEquals(parsed.getSignature(), "NONE");
+        assertEquals(parsed.getMaxFrameLength(), 4096);
+    }
+
+    @Test
+    public void testAnswer_picksCommonFeatures() {
+        Capabilities offer = Capabilities.offer(true, null, 4096);
+
+        Capabilities both = offer.answer(true, null, 1024);
+        assertEquals(both.getVersion(), 3);
+        assertTrue(both.supports(Capabilities.FEATURE_BINARY));
+        assertEquals(both.getMaxFrameLength(), 1024);
+
+        Capabilities v2Only = offer.answer(false, null, 8192);
+        assertEquals(v2Only.getVersion(), 2);
+        assertEquals(v2Only.getMaxFrameLength(), 4096);
+    }
+
+    @Test
+    public void testAnswer_v2OnlyClient() {
+        Capabilities offer = Capabilities.offer(false, null, 4096);
+
+        assertEquals(offer.answer(true, null, 4096).getVersion(), 2);
+    }
+
+    @Test
+    public void testAnswer_onlyKnownFeatures() {
+        Capabilities offer = Capabilities.parse("TCPREST|HELLO|1|version=2;features=zstd,packed,compact");
+        Capabilities answer = Capabilities.parse(offer.answer(false, null, 4096).toLine());
+
+        assertEquals(answer.getFeatures(), Capabilities.FEATURE_PACKED | Capabilities.FEATURE_COMPACT);
+        assertFalse(answer.supports(Capabilities.FEATURE_BINARY));
+        assertEquals(Capabilities.LEGACY.getFeatures(), 0);
+        assertFalse(Capabilities.parse("TCPREST|HELLO|1|version=2").supports(Capabilities.FEATURE_COMPACT));
+    }
+
+    @Test
+    public void testParse_unknownKeysIgnored() {
+        Capabilities parsed = Capabilities.parse(
+                "TCPREST|HELLO|1|version=4,3;streams=64;compression=zstd,none;maxFrame=100");
+
+        assertEquals(parsed.getVersions(), Arrays.asList(4, 3));
+        assertEquals(parsed.answer(true, null, 4096).getVersion(), 3);
+        assertEquals(parsed.answer(true, null, 4096).getFeatures(), 0);
+        assertNull(parsed.getChecksum());
+    }
+
+    @Test
+    public void testParse_defaults() {
+        Capabilities parsed = Capabilities.parse(Capabilities.HELLO_PREFIX);
+
+        assertEquals(parsed.getVersion(), 2);
+        assertEquals(parsed.getFeatures(), 0);
+        assertEquals(parsed.getMaxFrameLength(), Integer.MAX_VALUE);
+    }
+
+    @Test(expectedExceptions = ProtocolException.class)
+    public void testParse_malformedVersion() {
+        Capabilities.parse("TCPREST|HELLO|1|version=three");
+    }
+
+    @Test(expectedExceptions = ProtocolException.class)
+    public void testParse_notHello() {
+        Capabilities.parse("V2|0|{{x}}|[]");
+    }
+
+    @Test
+    public void testCheckSecurity_matching() {
+        SecurityConfig server = new SecurityConfig().enableHMAC("secret");
+        Capabilities answer = Capabilities.offer(false, server, 4096).answer(false, server, 4096);
+
+        answer.checkSecurity(new SecurityConfig().enableHMAC("secret"));
+        Capabilities.LEGACY.checkSecurity(null);
+        Capabilities.offer(false, null, 4096).answer(false, null, 4096)
+                .checkSecurity(new SecurityConfig().enableCRC32());
+    }
+
+    @Test
+    public void testCheckSecurity_adoptsCrc32() {
+        Capabilities answer = Capabilities.offer(false, null, 4096)
+                .answer(false, new SecurityConfig().enableCRC32(), 4096);
+
+        assertEquals(answer.checkSecurity(null), SecurityConfig.ChecksumAlgorithm.CRC32);
+        assertEquals(answer.checkSecurity(new SecurityConfig()), SecurityConfig.ChecksumAlgorithm.CRC32);
+    }
+
+    @Test(expectedExceptions = cn.huiwings.tcprest.exception.SecurityException.class)
+    public void testCheckSecurity_keepsConfiguredChecksum() {
+        Capabilities answer = Capabilities.offer(false, null, 4096)
+                .answer(false, new SecurityConfig().enableCRC32(), 4096);
+
+        answer.checkSecurity(new SecurityConfig().enableHMAC("secret"));
+    }
+
+    @Test(expectedExceptions = cn.huiwings.tcprest.exception.SecurityException.class)
+    public void testCheckSecurity_checksumMismatch() {
+        Capabilities answer = Capabilities.offer(false, null, 4096)
+                .answer(false, new SecurityConfig().enableHMAC("secret"), 4096);
+
+        answer.checkSecurity(null);
+    }
+}
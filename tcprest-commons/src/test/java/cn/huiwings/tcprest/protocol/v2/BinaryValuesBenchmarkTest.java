@@ -0,0 +1,81 @@
+package cn.huiwings.tcprest.protocol.v2;
+
+import cn.huiwings.tcprest.codec.v3.ProtocolV3Codec;
+import cn.huiwings.tcprest.mapper.Mapper;
+import cn.huiwings.tcprest.mapper.MapperHelper;
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants;
+import cn.huiwings.tcprest.test.Benchmarks;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Size and round-trip cost of a 1 MB {@code byte[]} result: the former {@code Arrays.toString} text in
+ * Base64, the V2 binary token, and a V3 frame.
+ */
+public class BinaryValuesBenchmarkTest {
+
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int ITERATIONS = 50;
+
+    private final Map<String, Mapper> mappers = MapperHelper.DEFAULT_MAPPERS;
+
+    @Test(groups = "benchmark")
+    public void benchmarkOneMegabyte() throws Throwable {
+        byte[] blob = new byte[1 << 20];
+        new Random(7).nextBytes(blob);
+        ProtocolV3Codec codec = new ProtocolV3Codec(null, mappers);
+
+        Benchmarks.Table table = Benchmarks.table("Binary Value Benchmark: 1 MB byte[]", TimeUnit.MILLISECONDS,
+                "Encoding", 16, "wire bytes", "ms/op (encode + decode)");
+        run(table, "Text (before)", blob, () -> {
+            String text = Base64.getEncoder().encodeToString(Arrays.toString(blob).getBytes(StandardCharsets.UTF_8));
+            String[] parts = new String(Base64.getDecoder().decode(text), StandardCharsets.UTF_8)
+                    .replace("[", "").replace("]", "").split(",\\s*");
+            byte[] decoded = new byte[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                decoded[i] = Byte.parseByte(parts[i]);
+            }
+            return new Result(text.length(), decoded);
+        });
+        run(table, "V2 binary token", blob, () -> {
+            String response = codec.encodeResponse(blob, null, StatusCode.SUCCESS, Capabilities.FEATURE_BINARY);
+            return new Result(response.length(), (byte[]) codec.decode(response, byte[].class));
+        });
+        run(table, "V3 frame", blob, () -> {
+            byte[] frame = codec.encodeBinaryResponse(ByteBuffer.wrap(blob), null, StatusCode.SUCCESS,
+                    Capabilities.FEATURE_BINARY);
+            return new Result(frame.length, (byte[]) codec.decodeResponse(
+                    Arrays.copyOfRange(frame, ProtocolV3Constants.FRAME_HEADER_LENGTH, frame.length), byte[].class));
+        });
+    }
+
+    private void run(Benchmarks.Table table, String name, byte[] blob, RoundTrip roundTrip) throws Throwable {
+        Result result = roundTrip.run();
+        assertEquals(result.decoded, blob);
+        table.measure(name, WARMUP_ITERATIONS, ITERATIONS, i -> roundTrip.run().decoded.length, result.wireBytes);
+    }
+
+    private interface RoundTrip {
+        Result run() throws Exception;
+    }
+
+    private static final class Result {
+        final int wireBytes;
+        final byte[] decoded;
+
+        Result(int wireBytes, byte[] decoded) {
+            this.wireBytes = wireBytes;
+            this.decoded = decoded;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package cn.huiwings.tcprest.protocol.v2;
+
+import cn.huiwings.tcprest.codec.v2.RequestPlan;
+import cn.huiwings.tcprest.codec.v3.ProtocolV3Codec;
+import cn.huiwings.tcprest.mapper.Mapper;
+import cn.huiwings.tcprest.mapper.MapperHelper;
+import cn.huiwings.tcprest.parser.v2.ProtocolV2Parser;
+import cn.huiwings.tcprest.parser.v3.ProtocolV3Parser;
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants;
+import cn.huiwings.tcprest.server.Context;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Random;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for raw binary values: byte[] and ByteBuffer parameters and results travel as their bytes
+ * (V2: "!" plus URL-safe Base64, V3: the raw block) instead of Arrays.toString text, when the peer
+ * announced the binary feature.
+ */
+public class BinaryValuesTest {
+
+    private static final int BINARY = Capabilities.FEATURE_BINARY;
+
+    private final Map<String, Mapper> mappers = MapperHelper.DEFAULT_MAPPERS;
+
+    @Test
+    public void testV2ByteArrayRequestAndResponse() throws Exception {
+        ProtocolV3Codec codec = new ProtocolV3Codec(null, mappers);
+        RequestPlan plan = codec.plan(Blobs.class, Blobs.class.getMethod("store", byte[].class), mappers);
+        byte[] blob = randomBytes(1 << 20);
+
+        String request = codec.encode(plan, new Object[]{blob}, BINARY);
+
+        assertTrue(request.length() < blob.length * 4 / 3 + 200, String.valueOf(request.length()));
+        assertEquals((byte[]) new ProtocolV2Parser(mappers).parse(request).getParams()[0], blob);
+        String response = codec.encodeResponse(blob, null, StatusCode.SUCCESS, BINARY);
+        assertTrue(response.contains("{{" + ProtocolV2Constants.BINARY_MARKER));
+        assertEquals((byte[]) codec.decode(response, byte[].class), blob);
+    }
+
+    @Test
+    public void testV2ByteBufferKinds() throws Exception {
+        ProtocolV3Codec codec = new ProtocolV3Codec(null, mappers);
+        RequestPlan plan = codec.plan(Blobs.class, Blobs.class.getMethod("copy", ByteBuffer.class), mappers);
+        byte[] content = "payload bytes".getBytes(StandardCharsets.US_ASCII);
+
+        for (ByteBuffer buffer : buffers(content)) {
+            int position = buffer.position();
+            for (int features : new int[]{BINARY, 0}) {
+                String request = codec.encode(plan, new Object[]{buffer}, features);
+
+                assertEquals(buffer.position(), position);
+                ByteBuffer parsed = (ByteBuffer) new ProtocolV2Parser(mappers).parse(request).getParams()[0];
+                assertEquals(parsed, ByteBuffer.wrap(content));
+                ByteBuffer result = (ByteBuffer) codec.decode(
+                        codec.encodeResponse(buffer, null, StatusCode.SUCCESS, features), plan);
+                assertEquals(result, ByteBuffer.wrap(content));
+            }
+        }
+    }
+
+    @Test
+    public void testV2LegacyPeers() throws Exception {
+        ProtocolV3Codec codec = new ProtocolV3Codec(null, mappers);
+        RequestPlan plan = codec.plan(Blobs.class, Blobs.class.getMethod("store", byte[].class), mappers);
+        byte[] blob = {1, -2, 127, -128};
+        String text = Base64.getEncoder().encodeToString("[1, -2, 127, -128]".getBytes(StandardCharsets.UTF_8));
+
+        // Without the binary feature the request carries the Arrays.toString text older servers read
+        String request = codec.encode(plan, new Object[]{blob});
+        assertFalse(request.contains(ProtocolV2Constants.BINARY_MARKER), request);
+        assertTrue(request.contains("[" + text + "]"), request);
+        // and a request from an older client, which announces no features, is parsed and answered in text
+        Context context = new ProtocolV2Parser(mappers).parse(request);
+        assertEquals((byte[]) context.getParams()[0], blob);
+        assertEquals(context.getFeatures(), 0);
+        String response = codec.encodeResponse(blob, null, StatusCode.SUCCESS, context.getFeatures());
+        assertEquals(response, "V2|0|0|{{" + text + "}}");
+        assertEquals((byte[]) codec.decode(response, byte[].class), blob);
+    }
+
+    @Test
+    public void testV3RawBlocks() throws Exception {
+        ProtocolV3Codec codec = new ProtocolV3Codec(null, mappers);
+        byte[] blob = randomBytes(4096);
+        ProtocolV3Parser parser = new ProtocolV3Parser(mappers);
+
+        RequestPlan store = codec.plan(Blobs.class, Blobs.class.getMethod("store", byte[].class), mappers);
+
+        byte[] frame = codec.encodeRequest(store, new Object[]{blob}, BINARY);
+
+        assertTrue(frame.length < blob.length + 200, String.valueOf(frame.length));
+        assertEquals((byte[]) parser.parse(payload(frame)).getParams()[0], blob);
+        byte[] empty = codec.encodeRequest(store, new Object[]{new byte[0]}, BINARY);
+        assertEquals((byte[]) parser.parse(payload(empty)).getParams()[0], new byte[0]);
+
+        RequestPlan copy = codec.plan(Blobs.class, Blobs.class.getMethod("copy", ByteBuffer.class), mappers);
+        for (ByteBuffer buffer : buffers(blob)) {
+            for (int features : new int[]{BINARY, 0}) {
+                byte[] request = codec.encodeRequest(copy, new Object[]{buffer}, features);
+                assertEquals(parser.parse(payload(request)).getParams()[0], ByteBuffer.wrap(blob));
+                byte[] response = codec.encodeBinaryResponse(buffer, null, StatusCode.SUCCESS, features);
+                assertEquals(codec.decodeResponse(payload(response), ByteBuffer.class), ByteBuffer.wrap(blob));
+            }
+        }
+        // without the feature a V3 block holds the text a V3 peer without binary values reads
+        byte[] legacy = codec.encodeRequest(store, new Object[]{new byte[]{1, 2}}, 0);
+        assertTrue(new String(legacy, StandardCharsets.UTF_8).contains("[1, 2]"));
+        assertEquals((byte[]) parser.parse(payload(legacy)).getParams()[0], new byte[]{1, 2});
+    }
+
+    @Test
+    public void testBinaryTypesClassified() {
+        assertEquals(DispatchTable.parameterKind(byte[].class, mappers), DispatchTable.ParameterKind.BINARY);
+        assertEquals(DispatchTable.parameterKind(ByteBuffer.class, mappers), DispatchTable.ParameterKind.BINARY);
+        assertTrue(ProtocolV2TypeSupport.isTypeSupported(ByteBuffer.class, null));
+        assertTrue(BinaryValues.isBinaryType(ByteBuffer.allocateDirect(1).getClass()));
+        assertFalse(BinaryValues.isBinaryType(int[].class));
+    }
+
+    /**
+     * The content as a sliced heap buffer (non-zero position and array offset), a direct buffer and a
+     * read-only view.
+     */
+    private static ByteBuffer[] buffers(byte[] content) {
+        byte[] padded = new byte[content.length + 6];
+        System.arraycopy(content, 0, padded, 4, content.length);
+        ByteBuffer sliced = ByteBuffer.wrap(padded, 2, content.length + 4).slice();
+        sliced.position(2).limit(2 + content.length);
+        ByteBuffer direct = ByteBuffer.allocateDirect(content.length);
+        direct.put(content).flip();
+        return new ByteBuffer[]{sliced, direct, ByteBuffer.wrap(content).asReadOnlyBuffer()};
+    }
+
+    private static byte[] randomBytes(int n) {
+        byte[] bytes = new byte[n];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] payload(byte[] frame) {
+        return Arrays.copyOfRange(frame, ProtocolV3Constants.FRAME_HEADER_LENGTH, frame.length);
+    }
+
+    public interface Blobs {
+        byte[] store(byte[] blob);
+
+        ByteBuffer copy(ByteBuffer buffer);
+    }
+}
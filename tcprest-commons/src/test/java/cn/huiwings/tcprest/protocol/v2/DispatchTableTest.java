@@ -0,0 +1,147 @@
+package cn.huiwings.tcprest.protocol.v2;
+
+import cn.huiwings.tcprest.codec.v2.ProtocolV2Codec;
+import cn.huiwings.tcprest.mapper.Mapper;
+import cn.huiwings.tcprest.mapper.MapperHelper;
+import cn.huiwings.tcprest.parser.v2.ProtocolV2Parser;
+import cn.huiwings.tcprest.security.ProtocolSecurity;
+import cn.huiwings.tcprest.security.SecurityConfig;
+import cn.huiwings.tcprest.server.Context;
+import cn.huiwings.tcprest.test.Color;
+import cn.huiwings.tcprest.test.ColorMapper;
+import cn.huiwings.tcprest.test.HelloWorld;
+import cn.huiwings.tcprest.test.HelloWorldResource;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for DispatchTable and its use by ProtocolV2Parser: registered methods resolve by lookup
+ * to the same targets as a lookup by signature, and unknown metadata is cached as a failure.
+ */
+public class DispatchTableTest {
+
+    private static final List<Class<?>> RESOURCES = Collections.<Class<?>>singletonList(HelloWorldResource.class);
+
+    @Test
+    public void testIndexesResourceAndInterfaces() throws Exception {
+        DispatchTable table = DispatchTable.build(RESOURCES, null);
+        Method echo = HelloWorld.class.getMethod("echo", String.class);
+        String meta = HelloWorld.class.getName() + "/echo" + TypeSignatureUtil.getMethodSignature(echo);
+
+        DispatchTable.Entry byInterface = table.get(meta);
+        assertNotNull(byInterface);
+        assertEquals(byInterface.getTargetClass(), HelloWorld.class);
+        assertEquals(byInterface.getMethod(), echo);
+        assertSame(table.getByToken(ProtocolSecurity.encodeComponent(meta)), byInterface);
+
+        DispatchTable.Entry byClass = table.get(HelloWorldResource.class.getName() + "/echo(Ljava/lang/String;)");
+        assertNotNull(byClass);
+        assertEquals(byClass.getTargetClass(), HelloWorldResource.class);
+        assertNull(table.get(HelloWorld.class.getName() + "/echo(I)"));
+    }
+
+    @Test
+    public void testMatchesLookupBySignature() throws Exception {
+        DispatchTable table = DispatchTable.build(RESOURCES, null);
+
+        for (Class<?> type : new Class<?>[]{HelloWorld.class, HelloWorldResource.class}) {
+            for (Method method : type.getMethods()) {
+                String signature = TypeSignatureUtil.getMethodSignature(method);
+                DispatchTable.Entry entry = table.get(type.getName() + "/" + method.getName() + signature);
+                assertNotNull(entry, method.toString());
+                assertEquals(entry.getMethod(),
+                        TypeSignatureUtil.findMethodBySignature(type, method.getName(), signature));
+            }
+        }
+    }
+
+    @Test
+    public void testParameterKinds() throws Exception {
+        Map<String, Mapper> mappers = new HashMap<>(MapperHelper.DEFAULT_MAPPERS);
+        mappers.put(Color.class.getCanonicalName(), new ColorMapper());
+        DispatchTable table = DispatchTable.build(RESOURCES, mappers);
+
+        DispatchTable.Entry entry = table.get(HelloWorld.class.getName() + "/favoriteColor"
+                + TypeSignatureUtil.getMethodSignature(HelloWorld.class.getMethod("favoriteColor", Color.class)));
+        assertEquals(entry.getParameterKind(0), DispatchTable.ParameterKind.MAPPER);
+        assertTrue(entry.getParameterMapper(0) instanceof ColorMapper);
+
+        assertEquals(DispatchTable.parameterKind(int.class, mappers), DispatchTable.ParameterKind.TEXT);
+        assertEquals(DispatchTable.parameterKind(String[].class, mappers), DispatchTable.ParameterKind.TEXT);
+        assertEquals(DispatchTable.parameterKind(Color[].class, mappers), DispatchTable.ParameterKind.SERIALIZED);
+        assertEquals(DispatchTable.parameterKind(List.class, null), DispatchTable.ParameterKind.SERIALIZED);
+        assertEquals(DispatchTable.parameterKind(Object.class, null), DispatchTable.ParameterKind.TEXT);
+    }
+
+    @Test
+    public void testParserUsesTable() throws Exception {
+        Method method = HelloWorld.class.getMethod("oneTwoThree", String.class, int.class, boolean.class);
+        String request = new ProtocolV2Codec().encode(HelloWorld.class, method, new Object[]{"one", 2, true}, null);
+
+        ProtocolV2Parser parser = new ProtocolV2Parser();
+        Context slow = parser.parse(request);
+        parser.setDispatchTable(DispatchTable.build(RESOURCES, null));
+        Context fast = parser.parse(request);
+
+        assertEquals(fast.getTargetClass(), slow.getTargetClass());
+        assertEquals(fast.getTargetMethod(), slow.getTargetMethod());
+        assertEquals(fast.getParams(), new Object[]{"one", 2, true});
+    }
+
+    @Test
+    public void testWhitelistAppliesToTableHits() throws Exception {
+        Method method = HelloWorld.class.getMethod("echo", String.class);
+        String request = new ProtocolV2Codec().encode(HelloWorld.class, method, new Object[]{"x"}, null);
+        ProtocolV2Parser parser = new ProtocolV2Parser(new SecurityConfig().enableClassWhitelist());
+        parser.setDispatchTable(DispatchTable.build(RESOURCES, null));
+
+        try {
+            parser.parse(request);
+            fail("Expected whitelist rejection");
+        } catch (cn.huiwings.tcprest.exception.SecurityException e) {
+            assertTrue(e.getMessage().contains("whitelist"), e.getMessage());
+        }
+    }
+
+    @Test
+    public void testUnknownMetadataCached() throws Exception {
+        DispatchTable table = DispatchTable.build(RESOURCES, null);
+        ProtocolV2Parser parser = new ProtocolV2Parser();
+        parser.setDispatchTable(table);
+        String meta = "com.example.Missing/run()";
+        String request = "V2|0|{{" + ProtocolSecurity.encodeComponent(meta) + "}}|[]";
+
+        ClassNotFoundException first = null;
+        try {
+            parser.parse(request);
+            fail("Expected ClassNotFoundException");
+        } catch (ClassNotFoundException e) {
+            first = e;
+        }
+        assertSame(table.getFailure(meta), first);
+        try {
+            parser.parse(request);
+            fail("Expected ClassNotFoundException");
+        } catch (ClassNotFoundException e) {
+            assertSame(e, first);
+        }
+    }
+
+    @Test
+    public void testNegativeCacheBounded() {
+        DispatchTable table = DispatchTable.build(RESOURCES, null);
+        for (int i = 0; i <= DispatchTable.NEGATIVE_CACHE_SIZE; i++) {
+            table.recordFailure("com.example.Missing" + i + "/run()", new ClassNotFoundException());
+        }
+
+        assertNull(table.getFailure("com.example.Missing0/run()"));
+        assertNotNull(table.getFailure("com.example.Missing" + DispatchTable.NEGATIVE_CACHE_SIZE + "/run()"));
+    }
+}
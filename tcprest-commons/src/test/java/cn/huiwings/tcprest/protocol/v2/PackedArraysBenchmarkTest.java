@@ -0,0 +1,84 @@
+package cn.huiwings.tcprest.protocol.v2;
+
+import cn.huiwings.tcprest.codec.v3.ProtocolV3Codec;
+import cn.huiwings.tcprest.mapper.Mapper;
+import cn.huiwings.tcprest.mapper.MapperHelper;
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants;
+import cn.huiwings.tcprest.test.Benchmarks;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Size and round-trip cost of a {@code double[]} feature vector result: the former
+ * {@code Arrays.toString} text in Base64 (100,000 elements, its cap), the V2 packed token, and a V3
+ * frame (1,000,000 elements).
+ */
+public class PackedArraysBenchmarkTest {
+
+    private static final int PACKED = Capabilities.FEATURE_PACKED;
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int ITERATIONS = 20;
+
+    private final Map<String, Mapper> mappers = MapperHelper.DEFAULT_MAPPERS;
+
+    @Test(groups = "benchmark")
+    public void benchmarkFeatureVector() throws Throwable {
+        double[] capped = PackedArraysTest.randomDoubles(100_000);
+        double[] features = PackedArraysTest.randomDoubles(1_000_000);
+        ProtocolV3Codec codec = new ProtocolV3Codec(null, mappers);
+
+        Benchmarks.Table table = Benchmarks.table("Packed Array Benchmark: double[]", TimeUnit.MILLISECONDS,
+                "Encoding", 22, "wire bytes", "ms/op (encode + decode)");
+        run(table, "Text (before), 100k", capped, () -> {
+            String text = Base64.getEncoder().encodeToString(Arrays.toString(capped).getBytes(StandardCharsets.UTF_8));
+            String[] parts = new String(Base64.getDecoder().decode(text), StandardCharsets.UTF_8)
+                    .replace("[", "").replace("]", "").split(",\\s*");
+            double[] decoded = new double[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                decoded[i] = Double.parseDouble(parts[i]);
+            }
+            return new Result(text.length(), decoded);
+        });
+        run(table, "V2 packed token, 100k", capped, () -> {
+            String response = codec.encodeResponse(capped, null, StatusCode.SUCCESS, PACKED);
+            return new Result(response.length(), (double[]) codec.decode(response, double[].class));
+        });
+        run(table, "V2 packed token, 1M", features, () -> {
+            String response = codec.encodeResponse(features, null, StatusCode.SUCCESS, PACKED);
+            return new Result(response.length(), (double[]) codec.decode(response, double[].class));
+        });
+        run(table, "V3 frame, 1M", features, () -> {
+            byte[] frame = codec.encodeBinaryResponse(features, null, StatusCode.SUCCESS, PACKED);
+            return new Result(frame.length, (double[]) codec.decodeResponse(
+                    Arrays.copyOfRange(frame, ProtocolV3Constants.FRAME_HEADER_LENGTH, frame.length), double[].class));
+        });
+    }
+
+    private void run(Benchmarks.Table table, String name, double[] values, RoundTrip roundTrip) throws Throwable {
+        Result result = roundTrip.run();
+        assertEquals(result.decoded, values);
+        table.measure(name, WARMUP_ITERATIONS, ITERATIONS, i -> roundTrip.run().decoded.length, result.wireBytes);
+    }
+
+    private interface RoundTrip {
+        Result run() throws Exception;
+    }
+
+    private static final class Result {
+        final int wireBytes;
+        final double[] decoded;
+
+        Result(int wireBytes, double[] decoded) {
+            this.wireBytes = wireBytes;
+            this.decoded = decoded;
+        }
+    }
+}
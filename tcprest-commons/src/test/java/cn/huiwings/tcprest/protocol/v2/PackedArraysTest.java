@@ -0,0 +1,192 @@
+package cn.huiwings.tcprest.protocol.v2;
+
+import cn.huiwings.tcprest.codec.v2.RequestPlan;
+import cn.huiwings.tcprest.codec.v3.ProtocolV3Codec;
+import cn.huiwings.tcprest.mapper.Mapper;
+import cn.huiwings.tcprest.mapper.MapperHelper;
+import cn.huiwings.tcprest.parser.v2.ProtocolV2Parser;
+import cn.huiwings.tcprest.parser.v3.ProtocolV3Parser;
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Random;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for packed primitive arrays: int[], double[][] and the like travel as little-endian bytes
+ * (V2: "*" plus URL-safe Base64, V3: the raw block) instead of Arrays.toString text, without the
+ * element count cap, when the peer announced the packed feature.
+ */
+public class PackedArraysTest {
+
+    private static final int PACKED = Capabilities.FEATURE_PACKED;
+
+    private final Map<String, Mapper> mappers = MapperHelper.DEFAULT_MAPPERS;
+
+    @Test
+    public void testV2MillionDoubles() throws Exception {
+        ProtocolV3Codec codec = new ProtocolV3Codec(null, mappers);
+        RequestPlan plan = codec.plan(Vectors.class, Vectors.class.getMethod("normalize", double[].class), mappers);
+        double[] features = randomDoubles(1_000_000);
+
+        String request = codec.encode(plan, new Object[]{features}, PACKED);
+
+        assertTrue(request.length() < features.length * 8 * 4 / 3 + 200, String.valueOf(request.length()));
+        assertEquals((double[]) new ProtocolV2Parser(mappers).parse(request).getParams()[0], features);
+        String response = codec.encodeResponse(features, null, StatusCode.SUCCESS, PACKED);
+        assertTrue(response.contains("{{" + ProtocolV2Constants.PACKED_ARRAY_MARKER));
+        assertEquals((double[]) codec.decode(response, double[].class), features);
+    }
+
+    @Test
+    public void testV3MultiDimensionalArrays() throws Exception {
+        ProtocolV3Codec codec = new ProtocolV3Codec(null, mappers);
+        ProtocolV3Parser parser = new ProtocolV3Parser(mappers);
+        int[][] matrix = {{1, -2, 3}, null, {}, {Integer.MIN_VALUE, Integer.MAX_VALUE}};
+
+        RequestPlan plan = codec.plan(Vectors.class, Vectors.class.getMethod("transpose", int[][].class), mappers);
+        double[][][] cube = {{{0.5, Double.NaN}, {-0.0}}, {{Double.MAX_VALUE}}};
+
+        for (int features : new int[]{PACKED, 0}) {
+            byte[] frame = codec.encodeRequest(plan, new Object[]{matrix}, features);
+
+            assertTrue(Arrays.deepEquals((int[][]) parser.parse(payload(frame)).getParams()[0], matrix));
+            byte[] response = codec.encodeBinaryResponse(cube, null, StatusCode.SUCCESS, features);
+            assertTrue(Arrays.deepEquals((double[][][]) codec.decodeResponse(payload(response), double[][][].class),
+                    cube));
+        }
+        byte[] text = codec.encodeRequest(codec.plan(Vectors.class,
+                Vectors.class.getMethod("normalize", double[].class), mappers), new Object[]{new double[]{0.5}}, 0);
+        assertTrue(new String(text, StandardCharsets.UTF_8).contains("[0.5]"));
+        assertEquals((double[]) parser.parse(payload(text)).getParams()[0], new double[]{0.5});
+    }
+
+    @Test
+    public void testV2LegacyPeers() throws Exception {
+        ProtocolV3Codec codec = new ProtocolV3Codec(null, mappers);
+        ProtocolV2Parser parser = new ProtocolV2Parser(mappers);
+        RequestPlan normalize = codec.plan(Vectors.class, Vectors.class.getMethod("normalize", double[].class), mappers);
+        RequestPlan transpose = codec.plan(Vectors.class, Vectors.class.getMethod("transpose", int[][].class), mappers);
+        double[] vector = {1.5, -2.0};
+        int[][] matrix = {{1, 2}, null, {}};
+        String text = Base64.getEncoder().encodeToString("[1.5, -2.0]".getBytes(StandardCharsets.UTF_8));
+
+        // Without the packed feature requests carry the Arrays.toString text older servers read
+        String request = codec.encode(normalize, new Object[]{vector});
+        assertTrue(request.contains("[" + text + "]"), request);
+        assertEquals((double[]) parser.parse(request).getParams()[0], vector);
+        // and multi-dimensional arrays as Java-serialized object arrays ("rO0" in Base64)
+        request = codec.encode(transpose, new Object[]{matrix});
+        assertFalse(request.contains(ProtocolV2Constants.PACKED_ARRAY_MARKER), request);
+        assertTrue(request.contains("[rO0"), request);
+        assertTrue(Arrays.deepEquals((int[][]) parser.parse(request).getParams()[0], matrix));
+
+        String response = codec.encodeResponse(vector, null, StatusCode.SUCCESS, 0);
+        assertEquals(response, "V2|0|0|{{" + text + "}}");
+        assertEquals((double[]) codec.decode(response, double[].class), vector);
+        response = codec.encodeResponse(matrix, null, StatusCode.SUCCESS, 0);
+        assertFalse(response.contains(ProtocolV2Constants.PACKED_ARRAY_MARKER), response);
+        assertTrue(Arrays.deepEquals((int[][]) codec.decode(response, int[][].class), matrix));
+    }
+
+    @Test
+    public void testElementTypes() {
+        boolean[] flags = new boolean[13];
+        flags[0] = flags[8] = flags[12] = true;
+        Object[] arrays = {
+                flags,
+                new char[]{'a', 'ß', '\uffff'},
+                new short[]{Short.MIN_VALUE, 0, Short.MAX_VALUE},
+                new float[]{1.5f, Float.NaN, Float.NEGATIVE_INFINITY},
+                new long[]{Long.MIN_VALUE, -1, Long.MAX_VALUE},
+                new byte[][]{{1, 2}, {}, null},
+                new int[0]
+        };
+
+        for (Object array : arrays) {
+            byte[] bytes = PackedArrays.toBytes(array);
+            Object decoded = PackedArrays.fromBytes(bytes, 0, bytes.length, array.getClass());
+            assertTrue(Arrays.deepEquals(new Object[]{decoded}, new Object[]{array}), array.getClass().getName());
+        }
+        assertEquals(PackedArrays.toBytes(flags).length, 2 + 1 + 2);
+    }
+
+    @Test
+    public void testDeltaVarintsWhenSmaller() {
+        int[] ids = new int[10_000];
+        long[] timestamps = new long[10_000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 1_000_000 + 3 * i;
+            timestamps[i] = 1_700_000_000_000L + 1000L * i;
+        }
+        int[] random = new Random(1).ints(10_000).toArray();
+
+        assertTrue(PackedArrays.toBytes(ids).length < ids.length + 16);
+        assertTrue(PackedArrays.toBytes(timestamps).length < 2 * timestamps.length + 16);
+        assertEquals(PackedArrays.toBytes(random).length, 2 + 2 + 1 + 4 * random.length);
+        for (Object array : new Object[]{ids, timestamps, random}) {
+            byte[] bytes = PackedArrays.toBytes(array);
+            Object decoded = PackedArrays.fromBytes(bytes, 0, bytes.length, array.getClass());
+            assertTrue(Arrays.deepEquals(new Object[]{decoded}, new Object[]{array}));
+        }
+    }
+
+    @Test
+    public void testFrameLimit() {
+        double[] tooLarge = new double[PackedArrays.MAX_BYTES / 8];
+        long[] tokenTooLarge = new Random(1).longs(PackedArrays.MAX_BYTES / 8 - 16).toArray();
+
+        assertEquals(PackedArrays.MAX_BYTES, ProtocolV3Constants.MAX_FRAME_LENGTH);
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> PackedArrays.toBytes(tooLarge));
+        assertTrue(e.getMessage().contains("bytes"), e.getMessage());
+        // fits in a V3 block, but not once Base64 expands it for a V2 line
+        PackedArrays.toBytes(tokenTooLarge);
+        e = expectThrows(IllegalArgumentException.class, () -> PackedArrays.toToken(tokenTooLarge));
+        assertTrue(e.getMessage().contains("chars"), e.getMessage());
+    }
+
+    @Test
+    public void testMalformedInputRejected() {
+        byte[] ints = PackedArrays.toBytes(new int[]{1, 2, 3});
+
+        expectThrows(IllegalArgumentException.class, () -> PackedArrays.fromBytes(ints, 0, ints.length, long[].class));
+        expectThrows(IllegalArgumentException.class, () -> PackedArrays.fromBytes(ints, 0, ints.length, int[][].class));
+        expectThrows(IllegalArgumentException.class, () -> PackedArrays.fromBytes(ints, 0, ints.length - 1, int[].class));
+        // a length of 2^28 elements announced in five bytes is rejected before anything is allocated
+        byte[] huge = {'D', 1, (byte) 0x81, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01};
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+                () -> PackedArrays.fromBytes(huge, 0, huge.length, double[].class));
+        assertTrue(e.getMessage().contains("remaining bytes"), e.getMessage());
+    }
+
+    @Test
+    public void testPackedTypesClassified() {
+        assertEquals(DispatchTable.parameterKind(int[].class, mappers), DispatchTable.ParameterKind.PACKED_ARRAY);
+        assertEquals(DispatchTable.parameterKind(double[][].class, mappers), DispatchTable.ParameterKind.PACKED_ARRAY);
+        assertEquals(DispatchTable.parameterKind(byte[].class, mappers), DispatchTable.ParameterKind.BINARY);
+        assertEquals(DispatchTable.parameterKind(String[].class, mappers), DispatchTable.ParameterKind.TEXT);
+        assertEquals(DispatchTable.parameterKind(Integer[].class, mappers), DispatchTable.ParameterKind.SERIALIZED);
+        assertTrue(PackedArrays.isPackedType(byte[][].class));
+        assertFalse(PackedArrays.isPackedType(Object[].class));
+    }
+
+    static double[] randomDoubles(int n) {
+        return new Random(42).doubles(n).toArray();
+    }
+
+    private static byte[] payload(byte[] frame) {
+        return Arrays.copyOfRange(frame, ProtocolV3Constants.FRAME_HEADER_LENGTH, frame.length);
+    }
+
+    public interface Vectors {
+        double[] normalize(double[] features);
+
+        int[][] transpose(int[][] matrix);
+    }
+}
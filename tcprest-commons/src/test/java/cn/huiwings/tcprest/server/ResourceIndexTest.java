@@ -0,0 +1,95 @@
+package cn.huiwings.tcprest.server;
+
+import cn.huiwings.tcprest.test.Counter;
+import cn.huiwings.tcprest.test.HelloWorld;
+import cn.huiwings.tcprest.test.HelloWorldResource;
+import cn.huiwings.tcprest.test.SingletonCounterResource;
+import cn.huiwings.tcprest.test.SingletonHelloWorldResource;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for ResourceIndex: lookups by class and interface name follow the resolution order of
+ * ResourceResolver (singletons of the class, resource classes, singletons by interface).
+ */
+public class ResourceIndexTest {
+
+    @Test
+    public void testResourceClassByInterface() throws Exception {
+        ResourceIndex index = ResourceIndex.build(providers(HelloWorldResource.class),
+                Collections.emptyList());
+
+        Object first = index.findInstance(HelloWorld.class);
+        Object second = index.findInstance(HelloWorld.class);
+
+        assertTrue(first instanceof HelloWorldResource);
+        assertNotSame(first, second);
+        assertTrue(index.findInstance(HelloWorldResource.class) instanceof HelloWorldResource);
+        assertEquals(index.getImplementationClass(HelloWorld.class.getName()), HelloWorldResource.class);
+        assertNull(index.getSingleton(HelloWorld.class.getName()));
+    }
+
+    @Test
+    public void testSingletonByClassAndInterface() throws Exception {
+        SingletonCounterResource counter = new SingletonCounterResource();
+        ResourceIndex index = ResourceIndex.build(Collections.<ResourceProvider>emptyList(),
+                Collections.<Object>singletonList(counter));
+
+        assertSame(index.findInstance(Counter.class), counter);
+        assertSame(index.findInstance(SingletonCounterResource.class), counter);
+        assertSame(index.getSingleton(Counter.class.getName()), counter);
+    }
+
+    @Test
+    public void testResourceClassBeforeSingletonForInterface() throws Exception {
+        ResourceIndex index = ResourceIndex.build(providers(HelloWorldResource.class),
+                Collections.<Object>singletonList(new SingletonHelloWorldResource()));
+
+        assertTrue(index.findInstance(HelloWorld.class) instanceof HelloWorldResource);
+        assertTrue(index.findInstance(SingletonHelloWorldResource.class) instanceof SingletonHelloWorldResource);
+    }
+
+    @Test
+    public void testSingletonOfResourceClassWins() throws Exception {
+        SingletonCounterResource counter = new SingletonCounterResource();
+        ResourceIndex index = ResourceIndex.build(providers(SingletonCounterResource.class),
+                Collections.<Object>singletonList(counter));
+
+        assertSame(index.findInstance(Counter.class), counter);
+        assertEquals(index.getTypes(), Arrays.asList(SingletonCounterResource.class, SingletonCounterResource.class));
+    }
+
+    @Test
+    public void testUnregisteredClassInstantiated() throws Exception {
+        Object instance = ResourceIndex.EMPTY.findInstance(HelloWorldResource.class);
+
+        assertTrue(instance instanceof HelloWorldResource);
+        assertNull(ResourceIndex.EMPTY.getImplementationClass(HelloWorld.class.getName()));
+    }
+
+    @Test(expectedExceptions = NoSuchMethodException.class)
+    public void testNoDefaultConstructor() throws Exception {
+        ResourceIndex index = ResourceIndex.build(providers(NoDefaultConstructor.class),
+                Collections.emptyList());
+
+        index.findInstance(Runnable.class);
+    }
+
+    private static List<ResourceProvider> providers(Class<?> resourceClass) {
+        return Collections.singletonList(ResourceProvider.of(resourceClass));
+    }
+
+    public static class NoDefaultConstructor implements Runnable {
+        public NoDefaultConstructor(String name) {
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+}
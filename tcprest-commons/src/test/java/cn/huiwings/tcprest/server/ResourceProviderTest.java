@@ -0,0 +1,235 @@
+package cn.huiwings.tcprest.server;
+
+import cn.huiwings.tcprest.annotations.Scope;
+import cn.huiwings.tcprest.invoker.v2.ProtocolV2Invoker;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for ResourceProvider: instance reuse per scope, pool bounds and the reset hook.
+ */
+public class ResourceProviderTest {
+
+    @Test
+    public void testPerRequest() throws Exception {
+        ResourceProvider provider = ResourceProvider.of(Plain.class);
+
+        assertEquals(provider.getScope(), ResourceScope.PER_REQUEST);
+        assertNotSame(provider.acquire(), provider.acquire());
+    }
+
+    @Test
+    public void testSingleton() throws Exception {
+        ResourceProvider provider = ResourceProvider.of(Plain.class, ResourceScope.SINGLETON, 1);
+
+        assertSame(provider.acquire(), provider.acquire());
+    }
+
+    @Test
+    public void testPerThread() throws Exception {
+        ResourceProvider provider = ResourceProvider.of(Plain.class, ResourceScope.PER_THREAD, 1);
+        Object mine = provider.acquire();
+        AtomicReference<Object> other = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                other.set(provider.acquire());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertSame(provider.acquire(), mine);
+        assertNotNull(other.get());
+        assertNotSame(other.get(), mine);
+    }
+
+    @Test
+    public void testPoolReusesAndResets() throws Exception {
+        ResourceProvider provider = ResourceProvider.of(Pooled.class);
+        assertEquals(provider.getScope(), ResourceScope.POOLED);
+
+        Pooled first = (Pooled) provider.acquire();
+        first.value = 42;
+        provider.release(first);
+        Pooled second = (Pooled) provider.acquire();
+
+        assertSame(second, first);
+        assertEquals(second.value, 0);
+        assertEquals(second.resets, 1);
+    }
+
+    @Test
+    public void testPoolBounded() throws Exception {
+        ResourceProvider provider = ResourceProvider.of(Pooled.class, ResourceScope.POOLED, 1);
+        Object a = provider.acquire();
+        Object b = provider.acquire();
+        assertNotSame(a, b);
+
+        provider.release(a);
+        provider.release(b); // pool full, discarded
+
+        assertSame(provider.acquire(), a);
+        assertNotSame(provider.acquire(), b);
+    }
+
+    @Test
+    public void testFailedResetDiscards() throws Exception {
+        ResourceProvider provider = ResourceProvider.of(Pooled.class, ResourceScope.POOLED, 4);
+        Pooled broken = (Pooled) provider.acquire();
+        broken.failReset = true;
+
+        provider.release(broken);
+
+        assertNotSame(provider.acquire(), broken);
+    }
+
+    @Test
+    public void testShardsPerThreadAndMergedReads() throws Exception {
+        ShardedResourceProvider provider = new ShardedResourceProvider(Shard.class, Shard::new,
+                ShardMerger.summing("total"));
+        Shard mine = (Shard) provider.acquire();
+        mine.count.addAndGet(2);
+        Thread thread = new Thread(() -> {
+            try {
+                Shard other = (Shard) provider.acquire();
+                other.count.addAndGet(3);
+                provider.release(other);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        thread.join();
+        provider.release(mine);
+
+        assertSame(provider.acquire(), mine);
+        provider.release(mine);
+        assertEquals(provider.getShards().size(), 2);
+
+        Context context = new Context();
+        context.setTargetMethod(Shard.class.getMethod("total"));
+        context.setParams(new Object[0]);
+        assertTrue(provider.isMerged(context.getTargetMethod()));
+        assertFalse(provider.isMerged(Shard.class.getMethod("toString")));
+        assertEquals(provider.invokeMerged(context, new ProtocolV2Invoker()), 5);
+    }
+
+    @Test
+    public void testShardedScopeWithoutSupplier() throws Exception {
+        ResourceProvider provider = ResourceProvider.of(Shard.class, ResourceScope.SHARDED, 1);
+
+        assertEquals(provider.getScope(), ResourceScope.SHARDED);
+        Object shard = provider.acquire();
+        provider.release(shard);
+        assertSame(provider.acquire(), shard);
+        assertFalse(((ShardedResourceProvider) provider).isMerged(Shard.class.getMethod("total")));
+    }
+
+    @Test
+    public void testShardsBoundedOnCachedPool() throws Exception {
+        ShardedResourceProvider provider = new ShardedResourceProvider(Shard.class, Shard::new,
+                ShardMerger.summing("total"), 4);
+        ExecutorService threads = Executors.newCachedThreadPool();
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger inUse = new AtomicInteger();
+        AtomicInteger maxInUse = new AtomicInteger();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 64; t++) {
+                futures.add(threads.submit(() -> {
+                    start.await();
+                    Shard shard = (Shard) provider.acquire();
+                    try {
+                        maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+                        shard.count.incrementAndGet();
+                        Thread.sleep(1);
+                    } finally {
+                        inUse.decrementAndGet();
+                        provider.release(shard);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            threads.shutdown();
+        }
+
+        assertTrue(provider.getShards().size() <= 4, "shards: " + provider.getShards().size());
+        assertTrue(maxInUse.get() <= 4, "concurrent shard users: " + maxInUse.get());
+        Context context = new Context();
+        context.setTargetMethod(Shard.class.getMethod("total"));
+        context.setParams(new Object[0]);
+        assertEquals(provider.invokeMerged(context, new ProtocolV2Invoker()), 64);
+    }
+
+    @Test
+    public void testMergedReadWaitsForBusyShard() throws Exception {
+        ShardedResourceProvider provider = new ShardedResourceProvider(Shard.class, Shard::new,
+                ShardMerger.summing("total"), 1);
+        Shard shard = (Shard) provider.acquire();
+        Context context = new Context();
+        context.setTargetMethod(Shard.class.getMethod("total"));
+        context.setParams(new Object[0]);
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            Future<Object> merged = reader.submit(() -> provider.invokeMerged(context, new ProtocolV2Invoker()));
+            Thread.sleep(200);
+            assertFalse(merged.isDone(), "merged read ran on a shard in use");
+
+            shard.count.incrementAndGet();
+            provider.release(shard);
+            assertEquals(merged.get(5, TimeUnit.SECONDS), 1);
+        } finally {
+            reader.shutdownNow();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidPoolSize() {
+        ResourceProvider.of(Plain.class, ResourceScope.POOLED, 0);
+    }
+
+    public static class Plain {
+    }
+
+    public static class Shard {
+        final AtomicInteger count = new AtomicInteger();
+
+        public int total() {
+            return count.get();
+        }
+    }
+
+    @Scope(value = ResourceScope.POOLED, poolSize = 2)
+    public static class Pooled implements ResettableResource {
+        int value;
+        int resets;
+        boolean failReset;
+
+        @Override
+        public void reset() {
+            if (failReset) {
+                throw new IllegalStateException("cannot reset");
+            }
+            value = 0;
+            resets++;
+        }
+    }
+}
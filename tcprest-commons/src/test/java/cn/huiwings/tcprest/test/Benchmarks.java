@@ -0,0 +1,104 @@
+package cn.huiwings.tcprest.test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared harness for the {@code benchmark} group: warms an operation up, times a measured loop with
+ * {@link System#nanoTime()} and prints one table row per case. Each operation returns a value that is
+ * summed into a blackhole and printed with the row, so the JIT cannot drop the work being measured.
+ *
+ * <pre>
+ * Benchmarks.Table table = Benchmarks.table("Serializer Benchmark", TimeUnit.NANOSECONDS,
+ *         "Format", 13, "bytes", "ns/op");
+ * table.measure("Compact", 100_000, 200_000, i -&gt; roundTrip(order), bytes.length);
+ * </pre>
+ */
+public final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    /**
+     * One benchmarked call; {@code i} is the iteration index, the result feeds the blackhole.
+     */
+    public interface Operation {
+        long run(int i) throws Throwable;
+    }
+
+    /**
+     * Prints the title and header of a result table.
+     *
+     * @param title      printed as {@code === title ===}
+     * @param unit       {@link TimeUnit#NANOSECONDS} or {@link TimeUnit#MILLISECONDS} per operation
+     * @param nameHeader header of the first column, which holds the case name
+     * @param nameWidth  width of the first column
+     * @param columns    headers of the case-specific columns, followed by the header of the time column
+     */
+    public static Table table(String title, TimeUnit unit, String nameHeader, int nameWidth, String... columns) {
+        if (columns.length == 0) {
+            throw new IllegalArgumentException("Missing the time column header");
+        }
+        Table table = new Table(unit, nameWidth, columns);
+        StringBuilder header = new StringBuilder(String.format("%-" + nameWidth + "s", nameHeader));
+        StringBuilder rule = new StringBuilder("-".repeat(nameWidth + 1));
+        for (String column : columns) {
+            header.append(" | ").append(column);
+            rule.append('|').append("-".repeat(column.length() + 2));
+        }
+        System.out.println("\n=== " + title + " ===");
+        System.out.println(header);
+        System.out.println(rule);
+        return table;
+    }
+
+    /**
+     * Runs {@code operation} {@code iterations} times and returns the sum of its results.
+     */
+    public static long loop(Operation operation, int iterations) throws Throwable {
+        long blackhole = 0;
+        for (int i = 0; i < iterations; i++) {
+            blackhole += operation.run(i);
+        }
+        return blackhole;
+    }
+
+    public static final class Table {
+        private final TimeUnit unit;
+        private final int nameWidth;
+        private final String[] columns;
+
+        private Table(TimeUnit unit, int nameWidth, String[] columns) {
+            this.unit = unit;
+            this.nameWidth = nameWidth;
+            this.columns = columns;
+        }
+
+        /**
+         * Warms {@code operation} up, times {@code iterations} calls and prints the row.
+         *
+         * @param cells values of the case-specific columns, in header order
+         * @return the average time per operation in this table's unit
+         */
+        public double measure(String name, int warmup, int iterations, Operation operation, Object... cells)
+                throws Throwable {
+            if (cells.length != columns.length - 1) {
+                throw new IllegalArgumentException("Expected " + (columns.length - 1) + " cells, got " + cells.length);
+            }
+            loop(operation, warmup);
+
+            long start = System.nanoTime();
+            long blackhole = loop(operation, iterations);
+            long time = System.nanoTime() - start;
+
+            double perOp = (double) time / unit.toNanos(1) / iterations;
+            StringBuilder row = new StringBuilder(String.format("%-" + nameWidth + "s", name));
+            for (int i = 0; i < cells.length; i++) {
+                row.append(" | ").append(String.format("%" + columns[i].length() + "s", cells[i]));
+            }
+            String precision = unit == TimeUnit.NANOSECONDS ? "1" : "2";
+            row.append(" | ").append(String.format("%8." + precision + "f  (%d)", perOp, blackhole));
+            System.out.println(row);
+            return perOp;
+        }
+    }
+}
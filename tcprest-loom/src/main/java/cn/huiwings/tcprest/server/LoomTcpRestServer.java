@@ -0,0 +1,323 @@
+package cn.huiwings.tcprest.server;
+
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.protocol.v2.MultiplexFrames;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Frames;
+import cn.huiwings.tcprest.ssl.SSLParams;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * LoomTcpRestServer serves every connection on its own virtual thread (Java 21+).
+ *
+ * <p>Connection handling is plain blocking code, as in {@link SingleThreadTcpRestServer}, but
+ * connections are served concurrently: a blocked read or a slow resource method parks a virtual
+ * thread, not a carrier thread. This gives high concurrency without an event-loop programming model.</p>
+ *
+ * <p><b>SSL Support:</b> Full SSL/TLS via {@link SSLParams}, using the same server sockets as
+ * {@link SingleThreadTcpRestServer} ({@link TcpRestServerSocketFactory}).</p>
+ *
+ * <p><b>Keep-Alive:</b> With {@link KeepAliveConfig} enabled a connection serves many requests in order;
+ * idle connections only cost a parked virtual thread.</p>
+ *
+ * <p><b>Multiplexing:</b> After the multiplexing handshake each {@code #id|}-tagged request runs on
+ * its own virtual thread and responses are written as they complete, in any order.</p>
+ *
+ * <p>{@link WorkerPoolConfig} is not used: processing already happens off the accept thread.</p>
+ *
+ * @author Weinan Li
+ */
+public class LoomTcpRestServer extends AbstractTcpRestServer {
+
+    protected ServerSocket serverSocket;
+    private volatile Thread acceptThread;
+    private volatile ExecutorService connectionExecutor;
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Create server on default port (8000) binding to all interfaces.
+     *
+     * @throws Exception if server creation fails
+     */
+    public LoomTcpRestServer() throws Exception {
+        this(TcpRestServerConfig.DEFAULT_PORT);
+    }
+
+    /**
+     * Create server on specified port binding to all interfaces.
+     *
+     * @param port the port to bind to
+     * @throws Exception if server creation fails
+     */
+    public LoomTcpRestServer(int port) throws Exception {
+        this(TcpRestServerSocketFactory.getServerSocket(port, null, null));
+    }
+
+    /**
+     * Create server on specified port and bind address.
+     *
+     * @param port the port to bind to
+     * @param bindAddress the IP address to bind to (null = all interfaces, "127.0.0.1" = localhost only)
+     * @throws Exception if server creation fails or address is invalid
+     */
+    public LoomTcpRestServer(int port, String bindAddress) throws Exception {
+        this(TcpRestServerSocketFactory.getServerSocket(port, bindAddress, null));
+    }
+
+    /**
+     * Create SSL server on specified port binding to all interfaces.
+     *
+     * @param port the port to bind to
+     * @param sslParams SSL parameters
+     * @throws Exception if server creation fails
+     */
+    public LoomTcpRestServer(int port, SSLParams sslParams) throws Exception {
+        this(TcpRestServerSocketFactory.getServerSocket(port, null, sslParams));
+    }
+
+    /**
+     * Create SSL server on specified port and bind address.
+     *
+     * @param port the port to bind to
+     * @param bindAddress the IP address to bind to (null = all interfaces, "127.0.0.1" = localhost only)
+     * @param sslParams SSL parameters
+     * @throws Exception if server creation fails or address is invalid
+     */
+    public LoomTcpRestServer(int port, String bindAddress, SSLParams sslParams) throws Exception {
+        this(TcpRestServerSocketFactory.getServerSocket(port, bindAddress, sslParams));
+    }
+
+    /**
+     * Create server with existing ServerSocket.
+     *
+     * @param socket the server socket to use
+     */
+    public LoomTcpRestServer(ServerSocket socket) {
+        this.serverSocket = socket;
+        logger.info("ServerSocket initialized: " + this.serverSocket);
+    }
+
+    @Override
+    public int getServerPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void up() {
+        up(false);
+    }
+
+    /**
+     * Starts the server.
+     *
+     * @param setDaemon whether the accept thread is a daemon (virtual threads always are)
+     */
+    @Override
+    public void up(boolean setDaemon) {
+        status = TcpRestServerStatus.RUNNING;
+        initializeProtocolComponents();
+        connectionExecutor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("tcprest-loom-conn-", 0).factory());
+        acceptThread = Thread.ofPlatform()
+                .name("tcprest-loom-acceptor")
+                .daemon(setDaemon)
+                .start(this::acceptLoop);
+        notifyRegistryUp();
+    }
+
+    private void acceptLoop() {
+        try {
+            while (status.equals(TcpRestServerStatus.RUNNING) && !Thread.currentThread().isInterrupted()) {
+                Socket socket = serverSocket.accept();
+                logger.fine("Client accepted.");
+                openSockets.add(socket);
+                try {
+                    connectionExecutor.execute(() -> handleConnection(socket));
+                } catch (RejectedExecutionException e) {
+                    // shutting down
+                    closeQuietly(socket);
+                }
+            }
+        } catch (java.net.SocketException e) {
+            logger.fine("Server socket closed: " + e.getMessage());
+        } catch (IOException e) {
+            logger.severe("IO error in server: " + e.getMessage());
+        } finally {
+            logger.info("Server stopped.");
+        }
+    }
+
+    /**
+     * Serve one accepted connection on the current virtual thread. Without keep-alive exactly one
+     * request is read; with keep-alive, newline-framed requests are served in order until EOF,
+     * idle timeout or the max-requests cap.
+     *
+     * @param socket the accepted client socket (always closed on return)
+     */
+    protected void handleConnection(Socket socket) {
+        // ReentrantLock rather than synchronized: virtual threads must not block while pinned
+        ReentrantLock writeLock = new ReentrantLock();
+        PrintWriter writer = null;
+        try {
+            KeepAliveConfig keepAlive = keepAliveConfig;
+            if (keepAlive.isEnabled() && keepAlive.getIdleTimeoutMillis() > 0) {
+                socket.setSoTimeout(keepAlive.getIdleTimeoutMillis());
+            }
+            OutputStream out = socket.getOutputStream();
+            writer = new PrintWriter(out);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            int served = 0;
+            boolean multiplexed = false;
+            while (status.equals(TcpRestServerStatus.RUNNING)) {
+                int first = in.read();
+                if (first == -1) {
+                    break; // client closed the connection
+                }
+                if (first == ProtocolV3Constants.FRAME_MAGIC) {
+                    writeFrame(writer, out, writeLock, processBinaryRequest(ProtocolV3Frames.readPayload(in)));
+                    served++;
+                    if (!multiplexed && !keepAlive.shouldKeepOpen(served)) {
+                        break;
+                    }
+                    continue;
+                }
+                String request = ProtocolV3Frames.readLine(in, first);
+                if (request.isEmpty()) {
+                    continue;
+                }
+                if (Capabilities.isHello(request)) {
+                    writeLine(writer, writeLock, processHandshake(request));
+                    continue;
+                }
+                if (MultiplexFrames.isHello(request)) {
+                    multiplexed = true;
+                    socket.setSoTimeout(keepAlive.getIdleTimeoutMillis());
+                    writeLine(writer, writeLock, request);
+                    continue;
+                }
+                if (MultiplexFrames.isMultiplexed(request)) {
+                    PrintWriter muxWriter = writer;
+                    Thread.ofVirtual().name("tcprest-loom-mux").start(() -> {
+                        try {
+                            writeLine(muxWriter, writeLock, processMultiplexedRequest(request));
+                        } catch (Exception e) {
+                            logger.severe("Error processing multiplexed request: " + e.getMessage());
+                            closeQuietly(socket);
+                        }
+                    });
+                    continue;
+                }
+                writeLine(writer, writeLock, processRequest(request));
+                served++;
+                if (!multiplexed && !keepAlive.shouldKeepOpen(served)) {
+                    break;
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            logger.fine("Closing idle keep-alive connection: " + e.getMessage());
+        } catch (IOException e) {
+            logger.fine("Connection closed: " + e.getMessage());
+        } catch (Exception e) {
+            logger.severe(e.getMessage());
+            if (writer != null) {
+                writeLine(writer, writeLock, e.getMessage());
+            }
+        } finally {
+            openSockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private static void writeLine(PrintWriter writer, ReentrantLock writeLock, String line) {
+        writeLock.lock();
+        try {
+            writer.println(line);
+            writer.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static void writeFrame(PrintWriter writer, OutputStream out, ReentrantLock writeLock, byte[] frame)
+            throws IOException {
+        writeLock.lock();
+        try {
+            writer.flush();
+            out.write(frame);
+            out.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * @return number of connections currently being served
+     */
+    public int getOpenConnectionCount() {
+        return openSockets.size();
+    }
+
+    @Override
+    public void down() {
+        notifyRegistryDown();
+        status = TcpRestServerStatus.CLOSING;
+
+        if (acceptThread != null) {
+            acceptThread.interrupt();
+        }
+
+        // Close server socket to unblock accept()
+        if (serverSocket != null && !serverSocket.isClosed()) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                logger.severe("Error closing server socket: " + e.getMessage());
+            }
+        }
+
+        // Close client sockets to unblock connection threads waiting in read()
+        for (Socket socket : openSockets) {
+            closeQuietly(socket);
+        }
+
+        if (connectionExecutor != null) {
+            connectionExecutor.shutdownNow();
+            try {
+                connectionExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (acceptThread != null) {
+            try {
+                acceptThread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        status = TcpRestServerStatus.CLOSED;
+    }
+}
@@ -0,0 +1,165 @@
+package cn.huiwings.tcprest.test.loom;
+
+import cn.huiwings.tcprest.client.TcpRestClientFactory;
+import cn.huiwings.tcprest.server.LoomTcpRestServer;
+import cn.huiwings.tcprest.ssl.SSLParams;
+import cn.huiwings.tcprest.test.HelloWorld;
+import cn.huiwings.tcprest.test.HelloWorldResource;
+import cn.huiwings.tcprest.test.smoke.PortGenerator;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests for LoomTcpRestServer (one virtual thread per connection).
+ *
+ * <p><b>Test scenarios:</b></p>
+ * <ul>
+ *   <li>Basic calls</li>
+ *   <li>Idle keep-alive connections do not block other clients</li>
+ *   <li>Slow call on one connection does not delay another</li>
+ *   <li>Multiplexed calls</li>
+ *   <li>Two-way SSL</li>
+ * </ul>
+ */
+public class LoomTcpRestServerTest {
+
+    // Use dedicated port range for this test class (34000-34499)
+    private static final PortGenerator.PortRange portRange = PortGenerator.from(34000);
+
+    private LoomTcpRestServer server;
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.down();
+            server = null;
+        }
+        Thread.sleep(300);
+    }
+
+    private int startServer(SSLParams sslParams, boolean keepAlive) throws Exception {
+        int port = portRange.next();
+        server = new LoomTcpRestServer(port, sslParams);
+        if (keepAlive) {
+            server.enableKeepAlive();
+        }
+        server.addResource(HelloWorldResource.class);
+        server.up();
+        Thread.sleep(200);
+        return port;
+    }
+
+    @Test
+    public void testBasicCalls() throws Exception {
+        int port = startServer(null, false);
+        HelloWorld client = new TcpRestClientFactory(HelloWorld.class, "localhost", port).getClient();
+        assertEquals(client.helloWorld(), "Hello, world!");
+        assertEquals(client.sayHelloTo("Loom"), "Hello, Loom");
+        assertEquals(client.oneTwoThree("One", 2, true), "One,2,true");
+    }
+
+    @Test
+    public void testIdleKeepAliveConnectionsDoNotBlock() throws Exception {
+        int port = startServer(null, true);
+        List<Socket> idle = new ArrayList<>();
+        try {
+            for (int i = 0; i < 50; i++) {
+                idle.add(new Socket("localhost", port));
+            }
+            HelloWorld client = new TcpRestClientFactory(HelloWorld.class, "localhost", port).getClient();
+            assertEquals(client.helloWorld(), "Hello, world!");
+        } finally {
+            for (Socket s : idle) {
+                s.close();
+            }
+        }
+    }
+
+    @Test
+    public void testSlowCallDoesNotDelayOthers() throws Exception {
+        int port = startServer(null, false);
+        HelloWorld client = new TcpRestClientFactory(HelloWorld.class, "localhost", port).getClient();
+        ExecutorService callers = Executors.newSingleThreadExecutor();
+        try {
+            // timeout() sleeps 2 seconds on the server; the client gives up after 1
+            Future<?> slow = callers.submit(() -> {
+                try {
+                    client.timeout();
+                } catch (RuntimeException ignored) {
+                }
+            });
+            Thread.sleep(200);
+            long start = System.currentTimeMillis();
+            assertEquals(client.helloWorld(), "Hello, world!");
+            assertTrue(System.currentTimeMillis() - start < 1000, "fast call waited for the slow one");
+            slow.get();
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMultiplexedCalls() throws Exception {
+        int port = startServer(null, false);
+        TcpRestClientFactory factory = new TcpRestClientFactory(HelloWorld.class, "localhost", port)
+                .withMultiplexing(1);
+        HelloWorld client = factory.getClient();
+        ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                String name = "user" + i;
+                futures.add(callers.submit(() -> assertEquals(client.sayHelloTo(name), "Hello, " + name)));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            callers.shutdownNow();
+            factory.getMultiplexedConnections().close();
+        }
+    }
+
+    @Test
+    public void testTwoWaySsl() throws Exception {
+        SSLParams serverSSLParams = new SSLParams();
+        serverSSLParams.setTrustStorePath("classpath:server_ks");
+        serverSSLParams.setKeyStorePath("classpath:server_ks");
+        serverSSLParams.setKeyStoreKeyPass("123123");
+        serverSSLParams.setNeedClientAuth(true);
+        int port = startServer(serverSSLParams, false);
+
+        SSLParams clientSSLParams = new SSLParams();
+        clientSSLParams.setTrustStorePath("classpath:client_ks");
+        clientSSLParams.setKeyStorePath("classpath:client_ks");
+        clientSSLParams.setKeyStoreKeyPass("456456");
+        clientSSLParams.setNeedClientAuth(true);
+        HelloWorld client = new TcpRestClientFactory(HelloWorld.class, "localhost", port, null, clientSSLParams)
+                .getClient();
+        assertEquals(client.sayHelloTo("SSL"), "Hello, SSL");
+    }
+
+    @Test
+    public void testConnectionsClosedOnDown() throws Exception {
+        int port = startServer(null, true);
+        Socket socket = new Socket("localhost", port);
+        Thread.sleep(200);
+        assertEquals(server.getOpenConnectionCount(), 1);
+        server.down();
+        server = null;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        assertNull(reader.readLine());
+        socket.close();
+    }
+}
@@ -0,0 +1,130 @@
+package cn.huiwings.tcprest.test.loom;
+
+import cn.huiwings.tcprest.client.TcpRestClientFactory;
+import cn.huiwings.tcprest.server.AbstractTcpRestServer;
+import cn.huiwings.tcprest.server.LoomTcpRestServer;
+import cn.huiwings.tcprest.server.NettyTcpRestServer;
+import cn.huiwings.tcprest.server.NioTcpRestServer;
+import cn.huiwings.tcprest.server.SingleThreadTcpRestServer;
+import cn.huiwings.tcprest.ssl.SSLParams;
+import cn.huiwings.tcprest.test.HelloWorld;
+import cn.huiwings.tcprest.test.HelloWorldResource;
+import cn.huiwings.tcprest.test.smoke.PortGenerator;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Throughput comparison of the four TCP transports under concurrent load.
+ *
+ * <p>Servers run with keep-alive and clients share a connection pool, so the numbers reflect
+ * request handling rather than connection setup. SingleThreadTcpRestServer is the exception: it
+ * serves one connection at a time, so a pooled idle connection would stall it; it runs with one
+ * request per connection. Results are printed, not asserted, because they depend on the machine.</p>
+ *
+ * <p>{@link #benchmarkTlsTransports()} repeats the run over two-way TLS, comparing the NIO server's
+ * SSLEngine layer with Netty's {@code SslHandler} and blocking SSL sockets on virtual threads.</p>
+ */
+public class TransportBenchmarkTest {
+
+    // Use dedicated port range for this test class (34500-34999)
+    private static final PortGenerator.PortRange portRange = PortGenerator.from(34500);
+
+    private static final int CLIENT_THREADS = 32;
+    private static final int CALLS_PER_THREAD = 200;
+
+    interface ServerSupplier {
+        AbstractTcpRestServer create(int port, SSLParams sslParams) throws Exception;
+    }
+
+    @Test(groups = "benchmark")
+    public void benchmarkTransports() throws Exception {
+        System.out.println("\n=== Transport Throughput Benchmark ("
+                + CLIENT_THREADS + " clients x " + CALLS_PER_THREAD + " calls) ===");
+        run("SingleThread", SingleThreadTcpRestServer::new, false, false);
+        run("NIO", NioTcpRestServer::new, true, false);
+        run("Netty", NettyTcpRestServer::new, true, false);
+        run("Loom", LoomTcpRestServer::new, true, false);
+    }
+
+    @Test(groups = "benchmark")
+    public void benchmarkTlsTransports() throws Exception {
+        System.out.println("\n=== TLS Transport Throughput Benchmark ("
+                + CLIENT_THREADS + " clients x " + CALLS_PER_THREAD + " calls) ===");
+        run("NIO+TLS", NioTcpRestServer::new, true, true);
+        run("Netty+TLS", NettyTcpRestServer::new, true, true);
+        run("Loom+TLS", LoomTcpRestServer::new, true, true);
+    }
+
+    private static SSLParams serverSSLParams() {
+        SSLParams params = new SSLParams();
+        params.setTrustStorePath("classpath:server_ks");
+        params.setKeyStorePath("classpath:server_ks");
+        params.setKeyStoreKeyPass("123123");
+        params.setNeedClientAuth(true);
+        return params;
+    }
+
+    private static SSLParams clientSSLParams() {
+        SSLParams params = new SSLParams();
+        params.setTrustStorePath("classpath:client_ks");
+        params.setKeyStorePath("classpath:client_ks");
+        params.setKeyStoreKeyPass("456456");
+        params.setNeedClientAuth(true);
+        return params;
+    }
+
+    private void run(String name, ServerSupplier supplier, boolean keepAlive, boolean tls) throws Exception {
+        int port = portRange.next();
+        AbstractTcpRestServer server = supplier.create(port, tls ? serverSSLParams() : null);
+        if (keepAlive) {
+            server.enableKeepAlive();
+        }
+        server.addResource(HelloWorldResource.class);
+        server.up();
+        Thread.sleep(500);
+        TcpRestClientFactory factory = tls
+                ? new TcpRestClientFactory(HelloWorld.class, "localhost", port, null, clientSSLParams())
+                : new TcpRestClientFactory(HelloWorld.class, "localhost", port);
+        if (keepAlive) {
+            factory.withConnectionPool();
+        }
+        HelloWorld client = factory.getClient();
+        ExecutorService callers = Executors.newFixedThreadPool(CLIENT_THREADS);
+        try {
+            // Warm up
+            for (int i = 0; i < 100; i++) {
+                client.sayHelloTo("warmup");
+            }
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < CLIENT_THREADS; t++) {
+                futures.add(callers.submit(() -> {
+                    for (int i = 0; i < CALLS_PER_THREAD; i++) {
+                        assertEquals(client.sayHelloTo("bench"), "Hello, bench");
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+            long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            int calls = CLIENT_THREADS * CALLS_PER_THREAD;
+            System.out.printf("%-14s: %6d calls in %6d ms (%8.0f calls/s)%n",
+                    name, calls, elapsedMillis, calls * 1000.0 / elapsedMillis);
+        } finally {
+            callers.shutdownNow();
+            if (factory.getConnectionPool() != null) {
+                factory.getConnectionPool().close();
+            }
+            server.down();
+            Thread.sleep(300);
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package cn.huiwings.tcprest.client;
+
+import cn.huiwings.tcprest.commons.PropertyProcessor;
+import cn.huiwings.tcprest.discovery.HostPort;
+import cn.huiwings.tcprest.protocol.v2.MultiplexFrames;
+import cn.huiwings.tcprest.protocol.v2.ProtocolV2Constants;
+import cn.huiwings.tcprest.ssl.SSLParams;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.util.CharsetUtil;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking channels to TcpRest servers, shared by every {@link NettyTcpRestClient} of a factory.
+ *
+ * <p>Each host gets a few long-lived channels that negotiate multiplexing ({@link MultiplexFrames}),
+ * so any number of in-flight calls share them and no thread waits on a socket. Responses are
+ * completed on the channel's event loop. Servers that decline the handshake get one channel per
+ * request, closed by the server after its response; servers that do not answer it in time get the same
+ * for {@link MultiplexedConnectionManager#DEFAULT_UNANSWERED_RETRY_MILLIS} and are then asked again.</p>
+ *
+ * @author Weinan Li
+ * @see NettyTcpRestClientFactory
+ */
+public class NettyChannelManager implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(NettyChannelManager.class.getName());
+
+    /**
+     * Default number of channels per host.
+     */
+    public static final int DEFAULT_CHANNELS_PER_HOST = 2;
+
+    /**
+     * Maximum response line length, matching the server's frame decoder.
+     */
+    static final int MAX_FRAME_LENGTH = 1024 * 1024;
+
+    private final EventLoopGroup group;
+    private final SslContext sslContext;
+    private final int channelsPerHost;
+    private final ConcurrentMap<HostPort, Slots> hosts = new ConcurrentHashMap<>();
+    // Hosts served without multiplexing, until the given time (Long.MAX_VALUE after a decline)
+    private final ConcurrentMap<HostPort, Long> unsupported = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    private static class Slots {
+        final AtomicReferenceArray<MuxChannel> channels;
+        final AtomicInteger next = new AtomicInteger();
+
+        Slots(int size) {
+            channels = new AtomicReferenceArray<>(size);
+        }
+    }
+
+    /**
+     * @param group           event loop group for client channels (owned by the caller)
+     * @param sslParams       SSL configuration (null = plain TCP)
+     * @param channelsPerHost multiplexed channels per host
+     * @throws IllegalArgumentException if the SSL configuration cannot be loaded
+     */
+    public NettyChannelManager(EventLoopGroup group, SSLParams sslParams, int channelsPerHost) {
+        if (channelsPerHost < 1) {
+            throw new IllegalArgumentException("channelsPerHost must be at least 1");
+        }
+        this.group = group;
+        this.channelsPerHost = channelsPerHost;
+        try {
+            this.sslContext = createSslContext(sslParams);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid client SSL configuration: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Send a request to the address. Completing the returned future first (a timeout or
+     * {@link CompletableFuture#cancel}) abandons the request: its multiplexed slot or its channel is released.
+     *
+     * @param address target host and port
+     * @param request V2 request frame
+     * @return future completed on the event loop with the V2 response frame
+     */
+    public CompletableFuture<String> send(HostPort address, String request) {
+        if (closed) {
+            return failed(new IllegalStateException("Netty channel manager is closed"));
+        }
+        CompletableFuture<String> result = new CompletableFuture<>();
+        if (!isMultiplexed(address)) {
+            forward(sendOnNewChannel(address, request), result);
+            return result;
+        }
+        MuxChannel channel = acquire(address);
+        channel.ready.whenComplete((supported, error) -> {
+            if (result.isDone()) {
+                return; // abandoned during the handshake
+            }
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else if (supported) {
+                forward(channel.send(request), result);
+            } else {
+                unsupported.put(address, channel.unanswered
+                        ? System.currentTimeMillis() + MultiplexedConnectionManager.DEFAULT_UNANSWERED_RETRY_MILLIS
+                        : Long.MAX_VALUE);
+                forward(sendOnNewChannel(address, request), result);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Complete {@code result} with the outcome of {@code inner}, and fail {@code inner} when the caller
+     * completes {@code result} first, so the inner request releases what it holds.
+     */
+    private static <T> void forward(CompletableFuture<T> inner, CompletableFuture<T> result) {
+        inner.whenComplete((r, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(r);
+            }
+        });
+        result.whenComplete((r, e) -> {
+            if (e != null) {
+                inner.completeExceptionally(e);
+            }
+        });
+    }
+
+    private MuxChannel acquire(HostPort address) {
+        Slots slots = hosts.computeIfAbsent(address, k -> new Slots(channelsPerHost));
+        int index = Math.floorMod(slots.next.getAndIncrement(), channelsPerHost);
+        MuxChannel channel = slots.channels.get(index);
+        if (channel != null && channel.isUsable()) {
+            return channel;
+        }
+        synchronized (slots) {
+            channel = slots.channels.get(index);
+            if (channel == null || !channel.isUsable()) {
+                channel = new MuxChannel(address);
+                slots.channels.set(index, channel);
+            }
+            return channel;
+        }
+    }
+
+    private ChannelFuture connect(HostPort address, SimpleChannelInboundHandler<String> handler) {
+        Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ChannelPipeline pipeline = ch.pipeline();
+                        if (sslContext != null) {
+                            pipeline.addLast("ssl", sslContext.newHandler(ch.alloc(), address.getHost(), address.getPort()));
+                        }
+                        pipeline.addLast("lineFramer", new LineBasedFrameDecoder(MAX_FRAME_LENGTH));
+                        pipeline.addLast("stringDecoder", new StringDecoder(CharsetUtil.UTF_8));
+                        pipeline.addLast("tcpRestClientHandler", handler);
+                    }
+                });
+        return bootstrap.connect(address.getHost(), address.getPort());
+    }
+
+    private static void writeLine(Channel channel, String line, CompletableFuture<?> onFailure) {
+        channel.writeAndFlush(ByteBufUtil.writeUtf8(channel.alloc(), line + "\n")).addListener(f -> {
+            if (!f.isSuccess()) {
+                onFailure.completeExceptionally(f.cause());
+                channel.close();
+            }
+        });
+    }
+
+    /**
+     * One request on a fresh channel, for servers without multiplexing support.
+     */
+    private CompletableFuture<String> sendOnNewChannel(HostPort address, String request) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        ChannelFuture connect = connect(address, new SimpleChannelInboundHandler<String>() {
+            @Override
+            protected void channelRead0(ChannelHandlerContext ctx, String msg) {
+                future.complete(msg);
+                ctx.close();
+            }
+
+            @Override
+            public void channelInactive(ChannelHandlerContext ctx) {
+                future.completeExceptionally(new EOFException("Connection closed before response: " + address));
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+                future.completeExceptionally(cause);
+                ctx.close();
+            }
+        });
+        connect.addListener((ChannelFuture f) -> {
+            if (!f.isSuccess()) {
+                future.completeExceptionally(f.cause());
+            } else {
+                writeLine(f.channel(), request, future);
+            }
+        });
+        // Timed out or cancelled by the caller: release the channel
+        future.whenComplete((r, e) -> {
+            if (e != null) {
+                connect.channel().close();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * A channel carrying multiplexed requests after a successful handshake. A server that does not answer
+     * the handshake within {@link MultiplexedConnection#HANDSHAKE_TIMEOUT_MILLIS} (one that reads the hello
+     * as an incomplete request, or is just slow) is treated as not supporting multiplexing for a while, and
+     * the channel is closed.
+     */
+    private class MuxChannel extends SimpleChannelInboundHandler<String> {
+        final HostPort address;
+        final CompletableFuture<Boolean> ready = new CompletableFuture<>();
+        final ConcurrentMap<Long, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+        final AtomicLong nextId = new AtomicLong();
+        final Channel channel;
+        volatile boolean inactive;
+        // The handshake timed out, rather than being declined
+        volatile boolean unanswered;
+
+        MuxChannel(HostPort address) {
+            this.address = address;
+            ChannelFuture connect = connect(address, this);
+            this.channel = connect.channel();
+            connect.addListener((ChannelFuture f) -> {
+                if (!f.isSuccess()) {
+                    inactive = true;
+                    ready.completeExceptionally(f.cause());
+                    return;
+                }
+                writeLine(f.channel(), ProtocolV2Constants.MUX_HELLO, ready);
+                ScheduledFuture<?> timer = f.channel().eventLoop().schedule(() -> {
+                    // Same event loop as channelRead0, so a decline cannot slip in between
+                    unanswered = !ready.isDone();
+                    if (ready.complete(false)) {
+                        logger.fine("No multiplexing handshake answer from " + address + " within "
+                                + MultiplexedConnection.HANDSHAKE_TIMEOUT_MILLIS + " ms");
+                        f.channel().close();
+                    }
+                }, MultiplexedConnection.HANDSHAKE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                ready.whenComplete((r, e) -> timer.cancel(false));
+            });
+        }
+
+        boolean isUsable() {
+            return !inactive && !ready.isCompletedExceptionally()
+                    && !(ready.isDone() && !ready.join());
+        }
+
+        CompletableFuture<String> send(String request) {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            if (inactive) {
+                future.completeExceptionally(new EOFException("Channel closed: " + address));
+                return future;
+            }
+            long id = nextId.incrementAndGet();
+            pending.put(id, future);
+            future.whenComplete((r, e) -> pending.remove(id));
+            if (inactive) {
+                future.completeExceptionally(new EOFException("Channel closed: " + address));
+                return future;
+            }
+            writeLine(channel, MultiplexFrames.wrap(id, request), future);
+            return future;
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, String msg) {
+            if (!ready.isDone()) {
+                boolean supported = MultiplexFrames.isHello(msg);
+                if (!supported) {
+                    logger.info("Server does not support multiplexing, using one channel per request: " + address);
+                    ctx.close();
+                }
+                ready.complete(supported);
+                return;
+            }
+            if (!MultiplexFrames.isMultiplexed(msg)) {
+                logger.warning("Unexpected untagged response on multiplexed channel: " + address);
+                return;
+            }
+            CompletableFuture<String> future;
+            try {
+                future = pending.get(MultiplexFrames.parseId(msg));
+            } catch (IllegalArgumentException e) {
+                logger.warning("Malformed multiplexed response from " + address + ": " + e.getMessage());
+                return;
+            }
+            if (future != null) {
+                future.complete(MultiplexFrames.unwrap(msg));
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            inactive = true;
+            EOFException failure = new EOFException("Channel closed: " + address);
+            ready.completeExceptionally(failure);
+            for (CompletableFuture<String> future : pending.values()) {
+                future.completeExceptionally(failure);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logger.fine("Channel to " + address + " failed: " + cause.getMessage());
+            ctx.close();
+        }
+    }
+
+    /**
+     * @param address target host and port
+     * @return requests currently awaiting a response on the address's channels
+     */
+    public int getPendingCount(HostPort address) {
+        Slots slots = hosts.get(address);
+        if (slots == null) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = 0; i < slots.channels.length(); i++) {
+            MuxChannel channel = slots.channels.get(i);
+            if (channel != null) {
+                count += channel.pending.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param address target host and port
+     * @return false if the server at the address declined the multiplexing handshake, or recently left it
+     *         unanswered
+     */
+    public boolean isMultiplexed(HostPort address) {
+        Long until = unsupported.get(address);
+        if (until == null) {
+            return true;
+        }
+        if (System.currentTimeMillis() < until) {
+            return false;
+        }
+        unsupported.remove(address, until);
+        return true;
+    }
+
+    public EventLoopGroup getEventLoopGroup() {
+        return group;
+    }
+
+    /**
+     * Close all channels, failing in-flight requests. The event loop group is left running.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Slots slots : hosts.values()) {
+            for (int i = 0; i < slots.channels.length(); i++) {
+                MuxChannel channel = slots.channels.get(i);
+                if (channel != null) {
+                    channel.channel.close();
+                }
+            }
+        }
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable cause) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return future;
+    }
+
+    /**
+     * Build the client SSL context. The trust store verifies the server; the key store is presented
+     * when {@link SSLParams#isNeedClientAuth()} is set. As with the blocking client, the server's
+     * host name is not checked against its certificate.
+     */
+    private static SslContext createSslContext(SSLParams sslParams) throws Exception {
+        if (sslParams == null) {
+            return null;
+        }
+        SslContextBuilder builder = SslContextBuilder.forClient().endpointIdentificationAlgorithm(null);
+        if (sslParams.getTrustStorePath() != null) {
+            TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmf.init(loadKeyStore(sslParams.getTrustStorePath(), sslParams.getTrustStoreStorePass()));
+            builder.trustManager(tmf);
+        }
+        if (sslParams.isNeedClientAuth() && sslParams.getKeyStorePath() != null) {
+            KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509");
+            kmf.init(loadKeyStore(sslParams.getKeyStorePath(), sslParams.getKeyStoreStorePass()),
+                    sslParams.getKeyStoreKeyPass().toCharArray());
+            builder.keyManager(kmf);
+        }
+        return builder.build();
+    }
+
+    private static KeyStore loadKeyStore(String path, String storePass) throws Exception {
+        // Use "jceks" keystore type to match the other client and server implementations
+        KeyStore keyStore = KeyStore.getInstance("jceks");
+        try (InputStream in = PropertyProcessor.getFileInputStream(path)) {
+            keyStore.load(in, storePass != null ? storePass.toCharArray() : null);
+        } catch (IOException e) {
+            throw new IOException("Failed to load keystore " + path + ": " + e.getMessage(), e);
+        }
+        return keyStore;
+    }
+}
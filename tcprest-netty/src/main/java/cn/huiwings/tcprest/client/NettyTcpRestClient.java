@@ -0,0 +1,67 @@
+package cn.huiwings.tcprest.client;
+
+import cn.huiwings.tcprest.discovery.HostPort;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TCP transport client using Netty. Requests travel over channels shared through a
+ * {@link NettyChannelManager}, so in-flight calls do not hold a socket or a reader thread each.
+ * Implements {@link TcpRestClient} for use with {@link TcpRestClientProxy}.
+ *
+ * <p>{@link #sendRequestAsync(String, int)} is fully non-blocking: the future is completed on the
+ * event loop and timeouts are scheduled on it. {@link #sendRequest(String, int)} blocks the calling
+ * thread only.</p>
+ */
+public class NettyTcpRestClient implements TcpRestClient {
+
+    private final String delegatedClassName;
+    private final HostPort address;
+    private final NettyChannelManager channels;
+
+    public NettyTcpRestClient(String delegatedClassName, String host, int port, NettyChannelManager channels) {
+        this.delegatedClassName = delegatedClassName;
+        this.address = new HostPort(host, port);
+        this.channels = channels;
+    }
+
+    @Override
+    public String sendRequest(String request, int timeout) throws Exception {
+        CompletableFuture<String> future = channels.send(address, request);
+        try {
+            return timeout > 0 ? future.get(timeout, TimeUnit.SECONDS) : future.get();
+        } catch (java.util.concurrent.TimeoutException e) {
+            future.cancel(false);
+            throw new SocketTimeoutException("No response within " + timeout + " seconds");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String request, int timeout) {
+        CompletableFuture<String> future = channels.send(address, request);
+        if (timeout > 0 && !future.isDone()) {
+            ScheduledFuture<?> timer = channels.getEventLoopGroup().schedule(
+                    () -> future.completeExceptionally(new cn.huiwings.tcprest.exception.TimeoutException(
+                            "Request timeout after " + timeout + " seconds")),
+                    timeout, TimeUnit.SECONDS);
+            future.whenComplete((r, e) -> timer.cancel(false));
+        }
+        return future;
+    }
+
+    @Override
+    public String getDeletgatedClassName() {
+        return delegatedClassName;
+    }
+
+    public HostPort getAddress() {
+        return address;
+    }
+}
@@ -0,0 +1,166 @@
+package cn.huiwings.tcprest.client;
+
+import cn.huiwings.tcprest.compression.CompressionConfig;
+import cn.huiwings.tcprest.mapper.Mapper;
+import cn.huiwings.tcprest.security.SecurityConfig;
+import cn.huiwings.tcprest.ssl.SSLParams;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/**
+ * Factory for creating TCP client proxies backed by Netty.
+ *
+ * <p>All proxies from one factory (any number of interfaces) share one event loop group and the
+ * channels of one {@link NettyChannelManager}. Pass an {@link EventLoopGroup} to share the event loop
+ * across factories as well. Works with every TcpRest TCP server; servers supporting multiplexing
+ * carry all calls over a few channels per host.</p>
+ *
+ * <p>Example:</p>
+ * <pre>
+ * NettyTcpRestClientFactory factory = new NettyTcpRestClientFactory(
+ *     "localhost", 8080, HelloWorld.class);
+ * HelloWorld client = factory.getClient();
+ * String result = client.helloWorld();
+ * factory.shutdown(); // close channels and release the event loop
+ * </pre>
+ */
+public class NettyTcpRestClientFactory {
+
+    private final Class<?>[] interfaceClasses;
+    private final String host;
+    private final int port;
+    private final EventLoopGroup group;
+    private final boolean ownsGroup;
+    private final NettyChannelManager channels;
+    private Map<String, Mapper> extraMappers;
+    private CompressionConfig compressionConfig;
+    private SecurityConfig securityConfig;
+
+    public NettyTcpRestClientFactory(String host, int port, Class<?>... interfaceClasses) {
+        this(host, port, null, null, interfaceClasses);
+    }
+
+    public NettyTcpRestClientFactory(String host, int port, SSLParams sslParams, Class<?>... interfaceClasses) {
+        this(host, port, sslParams, null, interfaceClasses);
+    }
+
+    /**
+     * @param host             server host
+     * @param port             server port
+     * @param sslParams        SSL configuration (null = plain TCP)
+     * @param group            shared event loop group (null = create one owned by this factory)
+     * @param interfaceClasses one or more service interfaces
+     */
+    public NettyTcpRestClientFactory(String host, int port, SSLParams sslParams, EventLoopGroup group,
+                                     Class<?>... interfaceClasses) {
+        if (interfaceClasses == null || interfaceClasses.length == 0) {
+            throw new IllegalArgumentException("interfaceClasses must not be null or empty");
+        }
+        for (Class<?> c : interfaceClasses) {
+            if (c == null || !c.isInterface()) {
+                throw new IllegalArgumentException("interfaceClasses must contain only interfaces: " + c);
+            }
+        }
+        this.interfaceClasses = interfaceClasses.clone();
+        this.host = host;
+        this.port = port;
+        this.ownsGroup = group == null;
+        this.group = group != null ? group : new NioEventLoopGroup(0, new DefaultThreadFactory("tcprest-netty-client", true));
+        this.channels = new NettyChannelManager(this.group, sslParams, NettyChannelManager.DEFAULT_CHANNELS_PER_HOST);
+    }
+
+    public NettyTcpRestClientFactory withMappers(Map<String, Mapper> extraMappers) {
+        this.extraMappers = extraMappers;
+        return this;
+    }
+
+    public NettyTcpRestClientFactory withCompression(CompressionConfig compressionConfig) {
+        this.compressionConfig = compressionConfig;
+        return this;
+    }
+
+    public NettyTcpRestClientFactory withSecurity(SecurityConfig securityConfig) {
+        this.securityConfig = securityConfig;
+        return this;
+    }
+
+    /**
+     * Create a client proxy when exactly one interface is registered.
+     *
+     * @param <T> interface type
+     * @return proxy implementing the interface
+     * @throws IllegalStateException if several interfaces are registered
+     */
+    public <T> T getClient() {
+        if (interfaceClasses.length != 1) {
+            throw new IllegalStateException("Multiple interfaces registered; use getClient(Class<T>) to get a proxy.");
+        }
+        return createProxy(interfaceClasses[0]);
+    }
+
+    /**
+     * Create a client proxy for one of the registered interfaces.
+     *
+     * @param <T>  interface type
+     * @param type registered interface
+     * @return proxy implementing the interface
+     * @throws IllegalArgumentException if the interface is not registered
+     */
+    public <T> T getClient(Class<T> type) {
+        for (Class<?> c : interfaceClasses) {
+            if (c == type) {
+                return createProxy(type);
+            }
+        }
+        throw new IllegalArgumentException("Interface not registered with this factory: "
+                + (type == null ? null : type.getName()));
+    }
+
+    /**
+     * Create an asynchronous client whose methods return futures completed on the event loop.
+     *
+     * @param asyncInterface interface mirroring {@code syncInterface} with {@code CompletableFuture} returns
+     * @param syncInterface  registered service interface
+     * @return async client proxy
+     * @see AsyncTcpRestClientFactory
+     */
+    @SuppressWarnings("unchecked")
+    public <A> A getAsyncClient(Class<A> asyncInterface, Class<?> syncInterface) {
+        getClient(syncInterface); // validates registration
+        String name = syncInterface.getCanonicalName();
+        NettyTcpRestClient transport = new NettyTcpRestClient(name, host, port, channels);
+        TcpRestClientProxy delegate = new TcpRestClientProxy(name, transport, extraMappers, null,
+                compressionConfig, securityConfig);
+        return (A) Proxy.newProxyInstance(asyncInterface.getClassLoader(), new Class<?>[]{asyncInterface},
+                new AsyncTcpRestClientProxy(asyncInterface, syncInterface, transport, delegate));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T createProxy(Class<?> type) {
+        String name = type.getCanonicalName();
+        TcpRestClientProxy proxy = new TcpRestClientProxy(name, new NettyTcpRestClient(name, host, port, channels),
+                extraMappers, null, compressionConfig, securityConfig);
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, proxy);
+    }
+
+    /**
+     * @return channels shared by this factory's proxies
+     */
+    public NettyChannelManager getChannelManager() {
+        return channels;
+    }
+
+    /**
+     * Close channels and, unless it was supplied by the caller, release the event loop group.
+     */
+    public void shutdown() {
+        channels.close();
+        if (ownsGroup) {
+            group.shutdownGracefully();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package cn.huiwings.tcprest.server;
+
+import cn.huiwings.tcprest.exception.ProtocolException;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Frames;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.CharsetUtil;
+
+import java.util.List;
+
+/**
+ * Splits inbound bytes into TcpRest requests: a Protocol V3 frame (first byte
+ * {@link ProtocolV3Constants#FRAME_MAGIC}) is cut by its length prefix and emitted as its payload
+ * {@code byte[]}; anything else is a V2 line, emitted as a {@code String} without its terminator.
+ *
+ * <p>Replaces the {@code LineBasedFrameDecoder}/{@code StringDecoder} pair so both protocols can be
+ * served on one connection. Each request is copied out of the cumulation buffer exactly once (a line
+ * into a {@code String}, a V3 payload into a {@code byte[]}); parsing requests in place from the
+ * {@code ByteBuf} is not implemented. A line split across reads is searched for its terminator incrementally,
+ * so each byte is scanned once.</p>
+ *
+ * @since 2.0.0
+ */
+public class NettyRequestFrameDecoder extends ByteToMessageDecoder {
+
+    private final int maxLineLength;
+
+    /**
+     * Bytes of the pending line already searched for a newline, counted from the reader index.
+     */
+    private int scanned;
+
+    /**
+     * @param maxLineLength longest V2 line accepted, in bytes
+     */
+    public NettyRequestFrameDecoder(int maxLineLength) {
+        this.maxLineLength = maxLineLength;
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        int start = in.readerIndex();
+        if (in.getByte(start) == ProtocolV3Constants.FRAME_MAGIC) {
+            if (in.readableBytes() < ProtocolV3Constants.FRAME_HEADER_LENGTH) {
+                return;
+            }
+            int length;
+            try {
+                length = ProtocolV3Frames.checkLength(in.getInt(start + 1));
+            } catch (ProtocolException e) {
+                in.skipBytes(in.readableBytes());
+                throw new CorruptedFrameException(e.getMessage());
+            }
+            if (in.readableBytes() < ProtocolV3Constants.FRAME_HEADER_LENGTH + length) {
+                return;
+            }
+            byte[] payload = new byte[length];
+            in.skipBytes(ProtocolV3Constants.FRAME_HEADER_LENGTH).readBytes(payload);
+            out.add(payload);
+            return;
+        }
+
+        int eol = in.indexOf(start + scanned, in.writerIndex(), (byte) '\n');
+        int length = (eol < 0 ? in.writerIndex() : eol) - start;
+        if (length > maxLineLength) {
+            scanned = 0;
+            in.skipBytes(in.readableBytes());
+            throw new TooLongFrameException("Request line exceeds " + maxLineLength + " bytes");
+        }
+        if (eol < 0) {
+            scanned = length;
+            return;
+        }
+        scanned = 0;
+        if (length > 0 && in.getByte(eol - 1) == '\r') {
+            length--;
+        }
+        out.add(in.toString(start, length, CharsetUtil.UTF_8));
+        in.readerIndex(eol + 1);
+    }
+}
@@ -1,38 +1,92 @@
 package cn.huiwings.tcprest.server;
 
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.protocol.v2.MultiplexFrames;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Logger;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
-import io.netty.util.CharsetUtil;
+import io.netty.handler.timeout.IdleStateEvent;
 
 /**
  * Protocol handler for NettyTcpRestServer using Netty 4.x API.
  *
  * <p>Processes incoming TcpRest protocol messages and writes responses.
- * The channel is closed after each response to maintain request-response semantics.</p>
+ * By default the channel is closed after each response to maintain request-response semantics.
+ * With {@link KeepAliveConfig} enabled the channel stays open; pipelined requests are answered
+ * in order, and the channel is closed on idle timeout or after the max requests per connection.
+ * After the multiplexing handshake, {@code #id|}-tagged requests run on the server's executor and
+ * responses are written as they complete, in any order.</p>
+ *
+ * <p>With the server's worker pool enabled ({@link WorkerPoolConfig}), requests are processed off the
+ * event loop; plain requests of one channel still run one at a time so responses keep their order.
+ * While {@link NettyTcpRestServer#MAX_PIPELINED_REQUESTS} of them wait, auto-read is turned off, so the
+ * backlog grows by no more than the requests already read. A request rejected by a full pool is
+ * answered with a {@code SERVER_ERROR} response.</p>
+ *
+ * <p>Messages come from {@link NettyRequestFrameDecoder}: V2 lines as {@code String}, Protocol V3
+ * payloads as {@code byte[]}, answered with a V3 frame. Both take part in keep-alive and ordering alike.
+ * Requests are therefore still copied out of the inbound buffer once, because the V2 parser works on
+ * Strings; only the response side avoids copies. Response lines are encoded straight into a buffer from
+ * the channel's allocator (pooled by default), and V3 response frames are wrapped without copying. A capability handshake ({@link Capabilities})
+ * is answered on the event loop and does not count as a request.</p>
  *
  * @author Weinan Li
  * @date 2012-11-05
  * @updated 2026-02-17 - Upgraded to Netty 4.x API
  */
-public class NettyTcpRestProtocolHandler extends SimpleChannelInboundHandler<String> {
+public class NettyTcpRestProtocolHandler extends SimpleChannelInboundHandler<Object> {
     private static final Logger logger = Logger.getLogger(NettyTcpRestProtocolHandler.class.getName());
     private final NettyTcpRestServer serverInstance;
+    private int servedRequests;
+    private boolean closing;
+    private boolean multiplexed;
+    /** Requests waiting for the worker pool, in arrival order (event loop only). */
+    private final Queue<Object> queued = new ArrayDeque<>();
+    private boolean processing;
 
     public NettyTcpRestProtocolHandler(NettyTcpRestServer serverInstance) {
         this.serverInstance = serverInstance;
     }
 
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, String request) throws Exception {
+    protected void channelRead0(ChannelHandlerContext ctx, Object request) throws Exception {
+        if (closing) {
+            return; // max requests reached, drop pipelined leftovers
+        }
+        if (request instanceof String) {
+            String line = (String) request;
+            if (Capabilities.isHello(line)) {
+                ctx.writeAndFlush(encodeLine(ctx, serverInstance.processHandshake(line)));
+                return;
+            }
+            if (MultiplexFrames.isHello(line)) {
+                multiplexed = true;
+                ctx.writeAndFlush(encodeLine(ctx, line));
+                return;
+            }
+            if (MultiplexFrames.isMultiplexed(line)) {
+                dispatchMultiplexed(ctx, line);
+                return;
+            }
+        }
+        if (serverInstance.getWorkerExecutor() != null) {
+            // Responses must keep request order: run one request of this channel at a time
+            queued.add(request);
+            if (queued.size() >= NettyTcpRestServer.MAX_PIPELINED_REQUESTS) {
+                ctx.channel().config().setAutoRead(false);
+            }
+            if (!processing) {
+                dispatchNext(ctx);
+            }
+            return;
+        }
         try {
-            logger.fine("Received request: " + sanitizeForLog(request));
-            String response = serverInstance.processRequest(request);
-            logger.fine("Sending response: " + sanitizeForLog(response));
-            // Manually create ByteBuf with response + newline for BufferedReader.readLine()
-            ByteBuf buf = Unpooled.copiedBuffer(response + "\n", CharsetUtil.UTF_8);
-            ctx.writeAndFlush(buf).addListener(ChannelFutureListener.CLOSE);
+            writeResponse(ctx, process(request));
         } catch (Exception e) {
             logger.severe("Error processing request: " + e.getMessage());
             e.printStackTrace();
@@ -40,6 +94,113 @@ public class NettyTcpRestProtocolHandler extends SimpleChannelInboundHandler<Str
         }
     }
 
+    /**
+     * Process a plain (non-multiplexed) V2 line or V3 payload.
+     *
+     * @return the response line, or the V3 response frame
+     */
+    private Object process(Object request) throws Exception {
+        if (request instanceof byte[]) {
+            logger.fine("Received V3 request: " + ((byte[]) request).length + " bytes");
+            return serverInstance.processBinaryRequest((byte[]) request);
+        }
+        logger.fine("Received request: " + sanitizeForLog((String) request));
+        return serverInstance.processRequest((String) request);
+    }
+
+    private void writeResponse(ChannelHandlerContext ctx, Object response) {
+        ByteBuf buf;
+        if (response instanceof byte[]) {
+            buf = Unpooled.wrappedBuffer((byte[]) response);
+        } else {
+            logger.fine("Sending response: " + sanitizeForLog((String) response));
+            buf = encodeLine(ctx, (String) response);
+        }
+        servedRequests++;
+        if (multiplexed || serverInstance.getKeepAliveConfig().shouldKeepOpen(servedRequests)) {
+            ctx.writeAndFlush(buf);
+        } else {
+            closing = true;
+            queued.clear();
+            ctx.writeAndFlush(buf).addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    /**
+     * Run the next queued request on the worker pool; the response is written back on the event loop,
+     * which then dispatches the following request. Called on the event loop only.
+     */
+    private void dispatchNext(ChannelHandlerContext ctx) {
+        Object request = queued.poll();
+        if (request == null || closing) {
+            processing = false;
+            return;
+        }
+        processing = true;
+        if (!ctx.channel().config().isAutoRead() && queued.size() < NettyTcpRestServer.MAX_PIPELINED_REQUESTS) {
+            ctx.channel().config().setAutoRead(true);
+        }
+        try {
+            serverInstance.getWorkerExecutor().execute(() -> {
+                Object response;
+                try {
+                    response = process(request);
+                } catch (Exception e) {
+                    logger.severe("Error processing request: " + e.getMessage());
+                    ctx.close();
+                    return;
+                }
+                ctx.executor().execute(() -> {
+                    writeResponse(ctx, response);
+                    dispatchNext(ctx);
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warning("Request rejected: " + e.getMessage());
+            writeResponse(ctx, request instanceof byte[]
+                    ? serverInstance.encodeBinaryRejection(e)
+                    : serverInstance.encodeRejection(e));
+            dispatchNext(ctx);
+        }
+    }
+
+    /**
+     * Process a multiplexed request on the server's executor and write the response when it completes,
+     * so a slow call does not hold back later requests on the same connection.
+     */
+    private void dispatchMultiplexed(ChannelHandlerContext ctx, String request) {
+        try {
+            serverInstance.getMultiplexExecutor().execute(() -> {
+                try {
+                    String response = serverInstance.processMultiplexedRequest(request);
+                    ctx.writeAndFlush(encodeLine(ctx, response));
+                } catch (Exception e) {
+                    logger.severe("Error processing multiplexed request: " + e.getMessage());
+                    ctx.close();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warning("Multiplexed request rejected: " + e.getMessage());
+            try {
+                long id = MultiplexFrames.parseId(request);
+                String response = MultiplexFrames.wrap(id, serverInstance.encodeRejection(e));
+                ctx.writeAndFlush(encodeLine(ctx, response));
+            } catch (IllegalArgumentException malformed) {
+                ctx.close();
+            }
+        }
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            logger.fine("Closing idle keep-alive connection: " + ctx.channel());
+            ctx.close();
+        } else {
+            super.userEventTriggered(ctx, evt);
+        }
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         logger.severe("Exception caught in channel: " + cause.getMessage());
@@ -47,6 +208,16 @@ public class NettyTcpRestProtocolHandler extends SimpleChannelInboundHandler<Str
         ctx.close();
     }
 
+    /**
+     * Encode a response line plus its newline terminator (read by {@code BufferedReader.readLine()}
+     * on the client) directly into an exactly sized buffer from the channel's allocator.
+     */
+    private static ByteBuf encodeLine(ChannelHandlerContext ctx, String line) {
+        ByteBuf buf = ctx.alloc().buffer(ByteBufUtil.utf8Bytes(line) + 1);
+        ByteBufUtil.writeUtf8(buf, line);
+        return buf.writeByte('\n');
+    }
+
     /** Sanitize string for logging to prevent log injection (newlines/control chars). */
     private static String sanitizeForLog(String s) {
         if (s == null) return "null";
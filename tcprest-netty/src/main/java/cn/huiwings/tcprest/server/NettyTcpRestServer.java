@@ -6,17 +6,17 @@ import io.netty.channel.*;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.LineBasedFrameDecoder;
-import io.netty.handler.codec.string.StringDecoder;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
-import io.netty.util.CharsetUtil;
+import io.netty.handler.timeout.IdleStateHandler;
 
 import javax.net.ssl.KeyManagerFactory;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.security.KeyStore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * NettyTcpRestServer uses Netty 4.x framework for high-performance async I/O.
@@ -28,10 +28,18 @@ import java.security.KeyStore;
  * <p><b>Features:</b></p>
  * <ul>
  *   <li>High-performance async I/O using Netty 4.x</li>
- *   <li>Line-based frame decoding (handles large payloads correctly)</li>
+ *   <li>Line-based frame decoding straight from the inbound buffer, with Protocol V3 binary frames
+ *       accepted on the same connection ({@link NettyRequestFrameDecoder})</li>
+ *   <li>Response lines encoded into buffers from the channel allocator, without intermediate copies</li>
  *   <li>Optional SSL/TLS support</li>
  *   <li>Optional bind address configuration</li>
  *   <li>Boss/Worker thread pool model</li>
+ *   <li>Optional keep-alive connections with request pipelining ({@link KeepAliveConfig})</li>
+ *   <li>Multiplexed connections: concurrent in-flight requests answered out of order
+ *       ({@link cn.huiwings.tcprest.protocol.v2.MultiplexFrames})</li>
+ *   <li>Optional worker pool ({@link WorkerPoolConfig}): resource methods run off the event loops,
+ *       and requests beyond the queue limit are answered with {@code SERVER_ERROR}. Required for
+ *       {@link ResourceScope#SHARDED} resources</li>
  * </ul>
  *
  * <p><b>Performance:</b> Suitable for high-concurrency production scenarios.
@@ -43,12 +51,30 @@ import java.security.KeyStore;
  */
 public class NettyTcpRestServer extends AbstractTcpRestServer {
 
+    /**
+     * Longest V2 request line accepted, in bytes; announced as the frame limit in the capability handshake.
+     */
+    public static final int MAX_LINE_LENGTH = 1024 * 1024;
+
+    /**
+     * Pipelined requests waiting per channel for the worker pool before the channel stops reading.
+     */
+    public static final int MAX_PIPELINED_REQUESTS = 128;
+
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
     private Channel serverChannel;
     private final int port;
     private final String bindAddress;
     private final SSLParams sslParams;
+    /**
+     * Runs multiplexed requests off the event loop so responses can complete out of order; the worker
+     * pool if enabled, else a pool with the {@link WorkerPoolConfig} defaults.
+     */
+    private ExecutorService multiplexExecutor;
+    /** Runs all requests off the event loop when the worker pool is enabled; null otherwise. */
+    private ExecutorService workerExecutor;
+    private boolean ownsWorkerExecutor;
 
     /**
      * Creates a NettyTcpRestServer with default port (8000) and no SSL, binding to all interfaces.
@@ -111,8 +137,19 @@ public class NettyTcpRestServer extends AbstractTcpRestServer {
      */
     @Override
     public void up(boolean setDaemon) {
+        checkShardedResources();
         bossGroup = new NioEventLoopGroup(1); // Accepts incoming connections
         workerGroup = new NioEventLoopGroup(); // Handles I/O operations
+        if (workerPoolConfig.isEnabled()) {
+            ownsWorkerExecutor = workerPoolConfig.getExecutor() == null;
+            workerExecutor = ownsWorkerExecutor
+                    ? workerPoolConfig.createExecutor("tcprest-netty-worker")
+                    : workerPoolConfig.getExecutor();
+            multiplexExecutor = workerExecutor;
+        } else {
+            // Bounded like the default worker pool; requests beyond its queue are answered with SERVER_ERROR
+            multiplexExecutor = new WorkerPoolConfig().createExecutor("tcprest-netty-mux");
+        }
         initializeProtocolComponents();
 
         try {
@@ -131,10 +168,16 @@ public class NettyTcpRestServer extends AbstractTcpRestServer {
                                 pipeline.addLast("ssl", sslContext.newHandler(ch.alloc()));
                             }
 
-                            // Inbound pipeline: SSL -> LineFramer -> StringDecoder -> Handler
-                            // LineBasedFrameDecoder handles large payloads by reading complete lines
-                            pipeline.addLast("lineFramer", new LineBasedFrameDecoder(1024 * 1024)); // 1MB max
-                            pipeline.addLast("stringDecoder", new StringDecoder(CharsetUtil.UTF_8));
+                            // Close keep-alive connections that stay idle
+                            KeepAliveConfig keepAlive = getKeepAliveConfig();
+                            if (keepAlive.isEnabled() && keepAlive.getIdleTimeoutMillis() > 0) {
+                                pipeline.addLast("idleState", new IdleStateHandler(
+                                        0, 0, keepAlive.getIdleTimeoutMillis(), TimeUnit.MILLISECONDS));
+                            }
+
+                            // Inbound pipeline: SSL -> FrameDecoder -> Handler
+                            // V2 lines arrive as String, V3 frames as their payload byte[]
+                            pipeline.addLast("frameDecoder", new NettyRequestFrameDecoder(MAX_LINE_LENGTH));
                             // Create a new handler instance for each channel
                             pipeline.addLast("tcpRestProtocolHandler", new NettyTcpRestProtocolHandler(NettyTcpRestServer.this));
                         }
@@ -173,6 +216,11 @@ public class NettyTcpRestServer extends AbstractTcpRestServer {
             if (bossGroup != null) {
                 bossGroup.shutdownGracefully();
             }
+            if (workerExecutor == null && multiplexExecutor != null) {
+                multiplexExecutor.shutdownNow();
+            } else if (workerExecutor != null && ownsWorkerExecutor) {
+                workerExecutor.shutdownNow();
+            }
             status = TcpRestServerStatus.CLOSED;
         }
     }
@@ -182,6 +230,37 @@ public class NettyTcpRestServer extends AbstractTcpRestServer {
         return port;
     }
 
+    @Override
+    protected int getMaxFrameLength() {
+        return MAX_LINE_LENGTH;
+    }
+
+    /**
+     * Executor for requests on multiplexed connections.
+     *
+     * @return executor, or null if the server is not running
+     */
+    ExecutorService getMultiplexExecutor() {
+        return multiplexExecutor;
+    }
+
+    /**
+     * Executor for all requests when the worker pool is enabled.
+     *
+     * @return executor, or null if requests are processed on the event loop
+     */
+    ExecutorService getWorkerExecutor() {
+        return workerExecutor;
+    }
+
+    /**
+     * Without the worker pool, resource methods run on the event loops.
+     */
+    @Override
+    protected boolean invokesOnBlockingThreads() {
+        return workerPoolConfig.isEnabled();
+    }
+
     /**
      * Creates SSL context if SSL is enabled.
      *
@@ -8,13 +8,16 @@ import io.netty.channel.socket.DatagramPacket;
 import io.netty.util.CharsetUtil;
 
 import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Logger;
 
 /**
  * Protocol handler for NettyUdpRestServer. Receives one datagram (one request),
  * processes via V2 protocol, sends one datagram back to the sender.
  *
- * <p>No SSL/DTLS. Request and response must fit in a single UDP packet (see max payload).</p>
+ * <p>No SSL/DTLS. Request and response must fit in a single UDP packet (see max payload).
+ * With the server's worker pool enabled, processing runs off the event loop.</p>
  */
 public class NettyUdpRestProtocolHandler extends SimpleChannelInboundHandler<DatagramPacket> {
 
@@ -37,6 +40,21 @@ public class NettyUdpRestProtocolHandler extends SimpleChannelInboundHandler<Dat
             return;
         }
         String request = content.toString(CharsetUtil.UTF_8);
+        ExecutorService workers = serverInstance.getWorkerExecutor();
+        if (workers == null) {
+            process(ctx, sender, request);
+            return;
+        }
+        try {
+            workers.execute(() -> process(ctx, sender, request));
+        } catch (RejectedExecutionException e) {
+            logger.warning("Request from " + sender + " rejected: " + e.getMessage());
+            String errorResponse = serverInstance.encodeRejection(e);
+            ctx.writeAndFlush(new DatagramPacket(Unpooled.copiedBuffer(errorResponse, CharsetUtil.UTF_8), sender));
+        }
+    }
+
+    private void process(ChannelHandlerContext ctx, InetSocketAddress sender, String request) {
         try {
             logger.fine("Received request from " + sender + ": " + sanitizeForLog(request));
             String response = serverInstance.processRequest(request);
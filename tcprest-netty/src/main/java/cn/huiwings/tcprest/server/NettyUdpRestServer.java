@@ -8,6 +8,7 @@ import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioDatagramChannel;
 
 import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
 
 /**
  * UDP transport server using Netty NioDatagramChannel.
@@ -18,6 +19,9 @@ import java.net.InetSocketAddress;
  * <p><b>Payload size:</b> Request and response should fit in a single UDP packet.
  * Default max payload is 1472 bytes (safe for typical MTU). Oversized packets are dropped.</p>
  *
+ * <p><b>Worker pool:</b> With {@link WorkerPoolConfig} enabled, datagrams are processed off the
+ * event loop; requests rejected by a full pool are answered with a {@code SERVER_ERROR} datagram.</p>
+ *
  * @see NettyUdpRestProtocolHandler
  */
 public class NettyUdpRestServer extends AbstractTcpRestServer {
@@ -30,6 +34,9 @@ public class NettyUdpRestServer extends AbstractTcpRestServer {
     private final int port;
     private final String bindAddress;
     private final int maxPayloadSize;
+    /** Runs requests off the event loop when the worker pool is enabled; null otherwise. */
+    private ExecutorService workerExecutor;
+    private boolean ownsWorkerExecutor;
 
     public NettyUdpRestServer(int port) {
         this(port, null, DEFAULT_MAX_DATAGRAM_PAYLOAD);
@@ -53,6 +60,12 @@ public class NettyUdpRestServer extends AbstractTcpRestServer {
     @Override
     public void up(boolean setDaemon) {
         group = new NioEventLoopGroup();
+        if (workerPoolConfig.isEnabled()) {
+            ownsWorkerExecutor = workerPoolConfig.getExecutor() == null;
+            workerExecutor = ownsWorkerExecutor
+                    ? workerPoolConfig.createExecutor("tcprest-udp-worker")
+                    : workerPoolConfig.getExecutor();
+        }
         initializeProtocolComponents();
 
         try {
@@ -90,6 +103,9 @@ public class NettyUdpRestServer extends AbstractTcpRestServer {
             if (group != null) {
                 group.shutdownGracefully();
             }
+            if (workerExecutor != null && ownsWorkerExecutor) {
+                workerExecutor.shutdownNow();
+            }
             status = TcpRestServerStatus.CLOSED;
         }
     }
@@ -98,4 +114,13 @@ public class NettyUdpRestServer extends AbstractTcpRestServer {
     public int getServerPort() {
         return port;
     }
+
+    /**
+     * Executor for requests when the worker pool is enabled.
+     *
+     * @return executor, or null if requests are processed on the event loop
+     */
+    ExecutorService getWorkerExecutor() {
+        return workerExecutor;
+    }
 }
@@ -0,0 +1,163 @@
+package cn.huiwings.tcprest.test.client;
+
+import cn.huiwings.tcprest.client.NettyTcpRestClientFactory;
+import cn.huiwings.tcprest.discovery.HostPort;
+import cn.huiwings.tcprest.exception.TimeoutException;
+import cn.huiwings.tcprest.server.NettyTcpRestServer;
+import cn.huiwings.tcprest.server.TcpRestServer;
+import cn.huiwings.tcprest.ssl.SSLParams;
+import cn.huiwings.tcprest.test.HelloWorld;
+import cn.huiwings.tcprest.test.HelloWorldResource;
+import cn.huiwings.tcprest.test.smoke.PortGenerator;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests the Netty TCP client transport ({@link NettyTcpRestClientFactory}).
+ *
+ * <p><b>Test scenarios:</b></p>
+ * <ul>
+ *   <li>Blocking calls over shared channels</li>
+ *   <li>Many concurrent async calls without blocked client threads</li>
+ *   <li>{@code @Timeout} enforced on the event loop, releasing the abandoned request</li>
+ *   <li>A server that never answers the multiplexing handshake is treated as unsupported</li>
+ *   <li>Two-way SSL</li>
+ * </ul>
+ */
+public class NettyTcpRestClientTest {
+
+    // Use dedicated port range for this test class (32000-32999)
+    private static final PortGenerator.PortRange portRange = PortGenerator.from(32000);
+
+    public interface HelloWorldAsync {
+        CompletableFuture<String> sayHelloTo(String name);
+    }
+
+    private TcpRestServer server;
+    private NettyTcpRestClientFactory factory;
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        if (factory != null) {
+            factory.shutdown();
+            factory = null;
+        }
+        if (server != null) {
+            server.down();
+            server = null;
+        }
+        Thread.sleep(300);
+    }
+
+    private int startServer(SSLParams sslParams) throws Exception {
+        int port = portRange.next();
+        server = new NettyTcpRestServer(port, sslParams);
+        server.addResource(HelloWorldResource.class);
+        server.up();
+        Thread.sleep(500);
+        return port;
+    }
+
+    @Test
+    public void testBlockingCalls() throws Exception {
+        int port = startServer(null);
+        factory = new NettyTcpRestClientFactory("localhost", port, HelloWorld.class);
+        HelloWorld client = factory.getClient();
+        assertEquals(client.helloWorld(), "Hello, world!");
+        assertEquals(client.sayHelloTo("Netty"), "Hello, Netty");
+        assertEquals(client.oneTwoThree("One", 2, true), "One,2,true");
+        assertTrue(factory.getChannelManager().isMultiplexed(new HostPort("localhost", port)));
+    }
+
+    @Test
+    public void testConcurrentAsyncCalls() throws Exception {
+        int port = startServer(null);
+        factory = new NettyTcpRestClientFactory("localhost", port, HelloWorld.class);
+        HelloWorldAsync client = factory.getAsyncClient(HelloWorldAsync.class, HelloWorld.class);
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(client.sayHelloTo("user" + i));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(futures.get(i).get(30, TimeUnit.SECONDS), "Hello, user" + i);
+        }
+        assertEquals(factory.getChannelManager().getPendingCount(new HostPort("localhost", port)), 0);
+    }
+
+    @Test(expectedExceptions = TimeoutException.class)
+    public void testTimeout() throws Exception {
+        int port = startServer(null);
+        factory = new NettyTcpRestClientFactory("localhost", port, HelloWorld.class);
+        HelloWorld client = factory.getClient();
+        // @Timeout(second = 1), server sleeps 2 seconds
+        client.timeout();
+    }
+
+    @Test
+    public void testTimeoutReleasesPendingRequest() throws Exception {
+        int port = startServer(null);
+        factory = new NettyTcpRestClientFactory("localhost", port, HelloWorld.class);
+        HelloWorld client = factory.getClient();
+        try {
+            client.timeout();
+            fail("Expected timeout");
+        } catch (TimeoutException expected) {
+            // the server is still sleeping; the request no longer holds a slot
+            assertEquals(factory.getChannelManager().getPendingCount(new HostPort("localhost", port)), 0);
+        }
+    }
+
+    @Test
+    public void testHandshakeTimeout() throws Exception {
+        try (ServerSocket silent = new ServerSocket(portRange.next())) { // connections queue in the backlog, never answered
+            factory = new NettyTcpRestClientFactory("localhost", silent.getLocalPort(), HelloWorld.class);
+            HostPort address = new HostPort("localhost", silent.getLocalPort());
+            CompletableFuture<String> response = factory.getChannelManager().send(address, "request");
+
+            Thread.sleep(6000);
+            assertFalse(factory.getChannelManager().isMultiplexed(address));
+            assertFalse(response.isDone());
+            response.cancel(false);
+        }
+    }
+
+    @Test
+    public void testTwoWaySsl() throws Exception {
+        SSLParams serverSSLParams = new SSLParams();
+        serverSSLParams.setTrustStorePath("classpath:server_ks");
+        serverSSLParams.setKeyStorePath("classpath:server_ks");
+        serverSSLParams.setKeyStoreKeyPass("123123");
+        serverSSLParams.setNeedClientAuth(true);
+        int port = startServer(serverSSLParams);
+
+        SSLParams clientSSLParams = new SSLParams();
+        clientSSLParams.setTrustStorePath("classpath:client_ks");
+        clientSSLParams.setKeyStorePath("classpath:client_ks");
+        clientSSLParams.setKeyStoreKeyPass("456456");
+        clientSSLParams.setNeedClientAuth(true);
+        factory = new NettyTcpRestClientFactory("localhost", port, clientSSLParams, HelloWorld.class);
+        HelloWorld client = factory.getClient();
+        assertEquals(client.sayHelloTo("SSL"), "Hello, SSL");
+    }
+
+    @Test
+    public void testConnectionRefused() throws Exception {
+        factory = new NettyTcpRestClientFactory("localhost", portRange.next(), HelloWorld.class);
+        HelloWorldAsync client = factory.getAsyncClient(HelloWorldAsync.class, HelloWorld.class);
+        try {
+            client.sayHelloTo("nobody").get(10, TimeUnit.SECONDS);
+            fail("Expected connection failure");
+        } catch (ExecutionException e) {
+            assertNotNull(e.getCause());
+        }
+    }
+}
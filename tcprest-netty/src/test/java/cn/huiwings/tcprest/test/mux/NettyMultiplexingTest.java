@@ -0,0 +1,104 @@
+package cn.huiwings.tcprest.test.mux;
+
+import cn.huiwings.tcprest.client.MultiplexedConnectionManager;
+import cn.huiwings.tcprest.client.TcpRestClientFactory;
+import cn.huiwings.tcprest.discovery.HostPort;
+import cn.huiwings.tcprest.exception.TimeoutException;
+import cn.huiwings.tcprest.server.NettyTcpRestServer;
+import cn.huiwings.tcprest.server.TcpRestServer;
+import cn.huiwings.tcprest.test.HelloWorld;
+import cn.huiwings.tcprest.test.HelloWorldResource;
+import cn.huiwings.tcprest.test.smoke.PortGenerator;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests multiplexed connections on NettyTcpRestServer, where responses complete out of order.
+ */
+public class NettyMultiplexingTest {
+
+    // Use dedicated port range for this test class (31000-31999)
+    private static final PortGenerator.PortRange portRange = PortGenerator.from(31000);
+
+    private TcpRestServer server;
+    private MultiplexedConnectionManager manager;
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        if (manager != null) {
+            manager.close();
+            manager = null;
+        }
+        if (server != null) {
+            server.down();
+            server = null;
+        }
+        Thread.sleep(300);
+    }
+
+    private HelloWorld startAndConnect() throws Exception {
+        int port = portRange.next();
+        server = new NettyTcpRestServer(port);
+        server.addResource(HelloWorldResource.class);
+        server.up();
+        Thread.sleep(500);
+        TcpRestClientFactory factory = new TcpRestClientFactory(HelloWorld.class, "localhost", port)
+                .withMultiplexing(1);
+        manager = factory.getMultiplexedConnections();
+        return factory.getClient();
+    }
+
+    @Test
+    public void testFastCallOvertakesSlowCall() throws Exception {
+        HelloWorld client = startAndConnect();
+        assertEquals(client.echo("warm-up"), "warm-up");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // timeout() sleeps 2s on the server and has @Timeout(second = 1)
+            Future<?> slow = executor.submit(client::timeout);
+            Thread.sleep(100);
+
+            long start = System.currentTimeMillis();
+            assertEquals(client.echo("fast"), "fast");
+            assertTrue(System.currentTimeMillis() - start < 1000,
+                    "Fast call should not wait behind the slow one on the shared connection");
+
+            try {
+                slow.get();
+                fail("Expected timeout");
+            } catch (java.util.concurrent.ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testManyConcurrentCalls() throws Exception {
+        HelloWorld client = startAndConnect();
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                final String msg = "n" + i;
+                results.add(executor.submit(() -> client.echo(msg)));
+            }
+            for (int i = 0; i < 500; i++) {
+                assertEquals(results.get(i).get(), "n" + i);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(manager.getPendingCount(new HostPort("localhost", server.getServerPort())), 0);
+    }
+}
@@ -0,0 +1,193 @@
+package cn.huiwings.tcprest.test.worker;
+
+import cn.huiwings.tcprest.client.NettyUdpRestClientFactory;
+import cn.huiwings.tcprest.client.TcpRestClientFactory;
+import cn.huiwings.tcprest.codec.v2.ProtocolV2Codec;
+import cn.huiwings.tcprest.server.AbstractTcpRestServer;
+import cn.huiwings.tcprest.server.NettyTcpRestServer;
+import cn.huiwings.tcprest.server.NettyUdpRestServer;
+import cn.huiwings.tcprest.server.WorkerPoolConfig;
+import cn.huiwings.tcprest.test.HelloWorld;
+import cn.huiwings.tcprest.test.HelloWorldResource;
+import cn.huiwings.tcprest.test.smoke.PortGenerator;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests the worker pool ({@link WorkerPoolConfig}) on NettyTcpRestServer and NettyUdpRestServer.
+ *
+ * <p><b>Test scenarios:</b></p>
+ * <ul>
+ *   <li>Requests are processed on worker threads; pipelined keep-alive responses stay in request order</li>
+ *   <li>A pipelined backlog beyond the per-channel limit pauses reading and is still fully answered</li>
+ *   <li>A full pool answers with SERVER_ERROR instead of queueing on the event loop</li>
+ *   <li>Sharded resources are refused without the worker pool</li>
+ *   <li>UDP requests use the same pool</li>
+ * </ul>
+ */
+public class NettyWorkerPoolTest {
+
+    // Use dedicated port range for this test class (33000-33999)
+    private static final PortGenerator.PortRange portRange = PortGenerator.from(33000);
+
+    private AbstractTcpRestServer server;
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.down();
+            server = null;
+        }
+        Thread.sleep(300);
+    }
+
+    private int startTcpServer(WorkerPoolConfig config) throws Exception {
+        int port = portRange.next();
+        server = new NettyTcpRestServer(port);
+        server.setWorkerPoolConfig(config);
+        server.addResource(HelloWorldResource.class);
+        server.up();
+        Thread.sleep(500);
+        return port;
+    }
+
+    @Test
+    public void testRequestsOnWorkerPool() throws Exception {
+        int port = startTcpServer(new WorkerPoolConfig(true, 4, 100));
+        HelloWorld client = new TcpRestClientFactory(HelloWorld.class, "localhost", port)
+                .withConnectionPool()
+                .getClient();
+        for (int i = 0; i < 50; i++) {
+            assertEquals(client.sayHelloTo("user" + i), "Hello, user" + i);
+        }
+    }
+
+    @Test
+    public void testPipelinedResponsesStayInOrder() throws Exception {
+        int port = portRange.next();
+        server = new NettyTcpRestServer(port);
+        server.setWorkerPoolConfig(new WorkerPoolConfig(true, 8, 100));
+        server.enableKeepAlive();
+        server.addResource(HelloWorldResource.class);
+        server.up();
+        Thread.sleep(500);
+
+        // One write carrying a slow request (timeout() sleeps 2 seconds) followed by fast ones,
+        // which finish first on other workers but must be answered after it
+        ProtocolV2Codec codec = new ProtocolV2Codec();
+        StringBuilder requests = new StringBuilder(codec.encode(
+                codec.plan(HelloWorld.class, HelloWorld.class.getMethod("timeout"), null), new Object[0])).append('\n');
+        for (int i = 1; i < 8; i++) {
+            requests.append(codec.encode(codec.plan(HelloWorld.class,
+                    HelloWorld.class.getMethod("sayHelloTo", String.class), null), new Object[]{"user" + i})).append('\n');
+        }
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(10000);
+            OutputStream out = socket.getOutputStream();
+            out.write(requests.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+            assertEquals(codec.decode(reader.readLine(), String.class), "ok");
+            for (int i = 1; i < 8; i++) {
+                assertEquals(codec.decode(reader.readLine(), String.class), "Hello, user" + i);
+            }
+        }
+    }
+
+    @Test
+    public void testBacklogBeyondLimitIsAnsweredInOrder() throws Exception {
+        int port = portRange.next();
+        server = new NettyTcpRestServer(port);
+        server.setWorkerPoolConfig(new WorkerPoolConfig(true, 1, 16));
+        server.enableKeepAlive();
+        server.addResource(HelloWorldResource.class);
+        server.up();
+        Thread.sleep(500);
+
+        // Far more pipelined requests than the channel may queue: reading pauses and resumes
+        int count = NettyTcpRestServer.MAX_PIPELINED_REQUESTS * 4;
+        ProtocolV2Codec codec = new ProtocolV2Codec();
+        StringBuilder requests = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            requests.append(codec.encode(codec.plan(HelloWorld.class,
+                    HelloWorld.class.getMethod("echo", String.class), null), new Object[]{"m" + i})).append('\n');
+        }
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(10000);
+            OutputStream out = socket.getOutputStream();
+            out.write(requests.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            for (int i = 0; i < count; i++) {
+                assertEquals(codec.decode(reader.readLine(), String.class), "m" + i);
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testShardedResourceRequiresWorkerPool() throws Exception {
+        NettyTcpRestServer netty = new NettyTcpRestServer(portRange.next());
+        server = netty;
+        // Requests waiting for a busy shard would block the event loop
+        netty.addShardedResource(HelloWorldResource.class, HelloWorldResource::new, null);
+        netty.up();
+    }
+
+    @Test
+    public void testFullPoolRejectsWithServerError() throws Exception {
+        int port = startTcpServer(new WorkerPoolConfig(true, 1, 0));
+        HelloWorld client = new TcpRestClientFactory(HelloWorld.class, "localhost", port).getClient();
+
+        // Occupy the only worker: timeout() sleeps 2 seconds on the server
+        Thread slow = new Thread(() -> {
+            try {
+                client.timeout();
+            } catch (RuntimeException ignored) {
+                // client gives up after 1 second
+            }
+        });
+        slow.start();
+        Thread.sleep(300);
+        try {
+            client.helloWorld();
+            fail("Expected rejection");
+        } catch (RuntimeException e) {
+            assertTrue(String.valueOf(e.getMessage()).contains("Server busy"), "unexpected: " + e);
+        }
+        slow.join();
+        Thread.sleep(2000);
+        assertEquals(client.helloWorld(), "Hello, world!");
+    }
+
+    @Test
+    public void testUdpOnWorkerPool() throws Exception {
+        int port = portRange.next();
+        server = new NettyUdpRestServer(port);
+        server.setWorkerPoolConfig(new WorkerPoolConfig(true, 2, 10));
+        server.addResource(HelloWorldResource.class);
+        server.up();
+        Thread.sleep(500);
+
+        NettyUdpRestClientFactory factory = new NettyUdpRestClientFactory(HelloWorld.class, "localhost", port);
+        try {
+            HelloWorld client = factory.getClient();
+            assertEquals(client.sayHelloTo("UDP"), "Hello, UDP");
+        } finally {
+            factory.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidQueueCapacity() {
+        new WorkerPoolConfig(true, 1, -1);
+    }
+}
@@ -0,0 +1,161 @@
+package cn.huiwings.tcprest.server;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.function.Consumer;
+
+/**
+ * TLS layer of one {@link NioTcpRestServer} connection, driven by the connection's reactor thread.
+ *
+ * <p>Network bytes go in through {@link #unwrap}; decrypted application bytes are passed to a sink
+ * and any handshake records the engine needs to send are appended to the connection's output queue.
+ * {@link #wrap} encrypts application bytes onto the same queue, so handshake and data records leave
+ * in the order the engine produced them. Delegated tasks (certificate checks) run inline.</p>
+ *
+ * @author Weinan Li
+ */
+final class NioSslSession {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final SSLEngine engine;
+    private ByteBuffer netIn;
+    private ByteBuffer appIn;
+
+    NioSslSession(SSLEngine engine) {
+        this.engine = engine;
+        this.netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+        this.appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+    }
+
+    /**
+     * Decrypt network bytes.
+     *
+     * @param net       bytes read from the channel (fully consumed; partial records are kept)
+     * @param out       output queue for handshake records
+     * @param plaintext receives decrypted application bytes
+     * @return true if the peer closed the TLS session
+     * @throws SSLException on handshake or record errors
+     */
+    boolean unwrap(ByteBuffer net, Queue<ByteBuffer> out, Consumer<ByteBuffer> plaintext) throws SSLException {
+        if (netIn.remaining() < net.remaining()) {
+            ByteBuffer grown = ByteBuffer.allocate(netIn.position() + net.remaining());
+            netIn.flip();
+            grown.put(netIn);
+            netIn = grown;
+        }
+        netIn.put(net);
+        netIn.flip();
+        try {
+            while (true) {
+                SSLEngineResult result = engine.unwrap(netIn, appIn);
+                if (appIn.position() > 0) {
+                    appIn.flip();
+                    plaintext.accept(appIn);
+                    appIn.clear();
+                }
+                switch (result.getStatus()) {
+                    case CLOSED:
+                        return true;
+                    case BUFFER_OVERFLOW:
+                        appIn = ByteBuffer.allocate(Math.max(appIn.capacity() * 2,
+                                engine.getSession().getApplicationBufferSize()));
+                        continue;
+                    case BUFFER_UNDERFLOW:
+                        ensureNetInCapacity();
+                        return false;
+                    default:
+                        break;
+                }
+                SSLEngineResult.HandshakeStatus hs = runDelegatedTasks(result.getHandshakeStatus());
+                if (hs == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                    wrapHandshake(out);
+                    continue;
+                }
+                if (!netIn.hasRemaining()
+                        || (result.bytesConsumed() == 0 && result.bytesProduced() == 0)) {
+                    return false;
+                }
+            }
+        } finally {
+            netIn.compact();
+        }
+    }
+
+    /**
+     * Encrypt application bytes onto the output queue.
+     *
+     * @param src plaintext (fully consumed)
+     * @param out output queue
+     * @throws SSLException if the engine is closed or fails
+     */
+    void wrap(ByteBuffer src, Queue<ByteBuffer> out) throws SSLException {
+        while (src.hasRemaining()) {
+            ByteBuffer dst = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+            SSLEngineResult result = engine.wrap(src, dst);
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                throw new SSLException("TLS session closed");
+            }
+            dst.flip();
+            if (dst.hasRemaining()) {
+                out.add(dst);
+            }
+            if (runDelegatedTasks(result.getHandshakeStatus()) == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                wrapHandshake(out);
+            }
+        }
+    }
+
+    /**
+     * Queue a close_notify alert. Errors are ignored: the connection is closing anyway.
+     *
+     * @param out output queue
+     */
+    void close(Queue<ByteBuffer> out) {
+        engine.closeOutbound();
+        try {
+            wrapHandshake(out);
+        } catch (SSLException ignored) {
+        }
+    }
+
+    private void wrapHandshake(Queue<ByteBuffer> out) throws SSLException {
+        SSLEngineResult.HandshakeStatus hs;
+        do {
+            ByteBuffer dst = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+            SSLEngineResult result = engine.wrap(EMPTY, dst);
+            dst.flip();
+            if (dst.hasRemaining()) {
+                out.add(dst);
+            }
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                return;
+            }
+            hs = runDelegatedTasks(result.getHandshakeStatus());
+        } while (hs == SSLEngineResult.HandshakeStatus.NEED_WRAP);
+    }
+
+    private SSLEngineResult.HandshakeStatus runDelegatedTasks(SSLEngineResult.HandshakeStatus hs) {
+        if (hs != SSLEngineResult.HandshakeStatus.NEED_TASK) {
+            return hs;
+        }
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+        return engine.getHandshakeStatus();
+    }
+
+    private void ensureNetInCapacity() {
+        int packetSize = engine.getSession().getPacketBufferSize();
+        if (netIn.capacity() < packetSize) {
+            ByteBuffer grown = ByteBuffer.allocate(packetSize);
+            grown.put(netIn);
+            grown.flip(); // back to read mode for the compact() in unwrap
+            netIn = grown;
+        }
+    }
+}
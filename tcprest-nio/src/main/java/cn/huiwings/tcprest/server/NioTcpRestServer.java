@@ -1,52 +1,104 @@
 package cn.huiwings.tcprest.server;
 
+import cn.huiwings.tcprest.exception.ProtocolException;
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.protocol.v2.MultiplexFrames;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Frames;
 import cn.huiwings.tcprest.ssl.SSLParams;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
-import java.nio.channels.*;
-import java.nio.charset.Charset;
-import java.nio.charset.CharsetDecoder;
-import java.nio.charset.CoderResult;
-import java.nio.charset.UnsupportedCharsetException;
-import java.util.ArrayList;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * NioTcpRestServer uses Java NIO for non-blocking I/O.
  *
- * <p><b>SSL Support:</b> This server does NOT support SSL/TLS.</p>
+ * <p><b>Threading model:</b> one acceptor thread hands accepted connections round-robin to a fixed
+ * set of reactor threads ({@link #DEFAULT_REACTOR_COUNT} by default, one per core). Each reactor owns
+ * a {@link Selector} and does all reads, framing and writes for its connections, so per-connection
+ * state needs no locking. Resource methods run on a bounded worker pool (see {@link WorkerPoolConfig};
+ * built-in defaults are used when none is configured) and hand their responses back to the reactor.</p>
  *
- * <p><b>Rationale:</b> Java NIO's SocketChannel doesn't support SSL directly.
- * Implementing SSL with NIO requires using SSLEngine, which adds significant
- * complexity for handshaking, buffer management, and error handling.</p>
+ * <p><b>Framing:</b> bytes are accumulated per connection and scanned incrementally for the newline
+ * terminator; a request larger than {@link #MAX_FRAME_LENGTH} closes the connection. Protocol V3
+ * frames are recognized by their first byte and cut by their length prefix, on the same connection as
+ * V2 lines. Responses are queued per connection and written as the socket accepts them.</p>
+ *
+ * <p><b>SSL Support:</b> Full SSL/TLS via {@link SSLParams}, including client authentication
+ * ({@link SSLParams#isNeedClientAuth()}). Each connection gets its own {@link SSLEngine}, driven by its
+ * reactor thread; no extra threads and no dependencies beyond the JDK.</p>
  *
  * <p><b>Bind Address Support:</b> Supports binding to specific IP addresses for security and multi-homing.</p>
  *
- * <p><b>Alternatives for SSL:</b></p>
- * <ul>
- *   <li>For low-traffic SSL: Use {@link SingleThreadTcpRestServer} with {@link SSLParams}</li>
- *   <li>For high-traffic SSL: Use {@code NettyTcpRestServer} (in tcprest-netty module)</li>
- * </ul>
+ * <p><b>Keep-Alive:</b> With {@link KeepAliveConfig} enabled, connections stay registered with their
+ * reactor after each response. Pipelined requests are processed one at a time and answered in order;
+ * a connection with {@link #MAX_PIPELINED_REQUESTS} requests waiting is not read until its backlog
+ * drains. Idle connections are swept by the reactor thread.</p>
+ *
+ * <p><b>Multiplexing:</b> After the multiplexing handshake each {@code #id|}-tagged request is processed
+ * on the worker pool as soon as it arrives and answered when it completes, in any order.</p>
  *
- * <p><b>Best use case:</b> High-throughput applications without encryption requirements,
- * or when using external SSL termination (e.g., nginx, HAProxy).</p>
+ * <p><b>Best use case:</b> High-throughput applications, with or without TLS, where only the JDK
+ * may be on the classpath.</p>
  *
  * @author Weinan Li
  * @created 08 26 2012
  */
 public class NioTcpRestServer extends AbstractTcpRestServer {
 
-    private ServerSocketChannel ssc;
-    private final List<SocketChannel> runningChannels = new ArrayList<SocketChannel>();
-    private Thread worker = null;
+    /**
+     * Default number of reactor threads: one per available processor.
+     */
+    public static final int DEFAULT_REACTOR_COUNT = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Largest request line accepted, in bytes; longer requests close the connection.
+     */
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    /**
+     * Pipelined requests waiting per connection before the server stops reading from it.
+     */
+    public static final int MAX_PIPELINED_REQUESTS = 128;
+
+    /**
+     * Incomplete requests are dropped after this long when keep-alive is disabled.
+     */
+    private static final long REQUEST_READ_TIMEOUT_MILLIS = 5000;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_READS_PER_EVENT = 16;
+
+    private final ServerSocketChannel ssc;
+    private final SSLParams sslParams;
+    private final SSLContext sslContext;
+    private final Set<SocketChannel> runningChannels = ConcurrentHashMap.newKeySet();
+    private int reactorCount = DEFAULT_REACTOR_COUNT;
+    private Reactor[] reactors;
+    private Selector acceptSelector;
+    private Thread acceptor;
+    private ExecutorService workerExecutor;
+    private boolean ownsWorkerExecutor;
 
     /**
      * Create NIO server on default port (8000) binding to all interfaces.
@@ -64,7 +116,7 @@ public class NioTcpRestServer extends AbstractTcpRestServer {
      * @throws Exception if server creation fails
      */
     public NioTcpRestServer(int port) throws Exception {
-        this(port, null);
+        this(port, null, null);
     }
 
     /**
@@ -75,6 +127,31 @@ public class NioTcpRestServer extends AbstractTcpRestServer {
      * @throws Exception if server creation fails or address is invalid
      */
     public NioTcpRestServer(int port, String bindAddress) throws Exception {
+        this(port, bindAddress, null);
+    }
+
+    /**
+     * Create SSL NIO server on specified port binding to all interfaces.
+     *
+     * @param port the port to bind to
+     * @param sslParams SSL parameters (null for no SSL)
+     * @throws Exception if server creation fails
+     */
+    public NioTcpRestServer(int port, SSLParams sslParams) throws Exception {
+        this(port, null, sslParams);
+    }
+
+    /**
+     * Create SSL NIO server on specified port and bind address.
+     *
+     * @param port the port to bind to
+     * @param bindAddress the IP address to bind to (null = all interfaces, "127.0.0.1" = localhost only)
+     * @param sslParams SSL parameters (null for no SSL)
+     * @throws Exception if server creation fails, address is invalid or the key store cannot be loaded
+     */
+    public NioTcpRestServer(int port, String bindAddress, SSLParams sslParams) throws Exception {
+        this.sslParams = sslParams;
+        this.sslContext = sslParams == null ? null : TcpRestServerSocketFactory.getSSLContext(sslParams);
         ssc = ServerSocketChannel.open();
         ServerSocket sc = ssc.socket();
 
@@ -85,7 +162,7 @@ public class NioTcpRestServer extends AbstractTcpRestServer {
         sc.bind(new InetSocketAddress(addr, port));
         ssc.configureBlocking(false);
 
-        logger.info("NioServerSocket initialized: " + ssc.socket());
+        logger.info("NioServerSocket initialized: " + ssc.socket() + (sslParams != null ? " (SSL)" : ""));
     }
 
     @Override
@@ -93,328 +170,577 @@ public class NioTcpRestServer extends AbstractTcpRestServer {
         return ssc.socket().getLocalPort();
     }
 
-    private static final Executor workers = Executors.newCachedThreadPool();
-
-    private class ReadChannelWorker implements Runnable {
-
-        private SelectionKey key;
+    /**
+     * @return number of reactor (selector) threads
+     */
+    public int getReactorCount() {
+        return reactorCount;
+    }
 
-        public ReadChannelWorker(SelectionKey key) {
-            this.key = key;
+    /**
+     * Set the number of reactor (selector) threads. Takes effect on the next {@link #up()}.
+     *
+     * @param reactorCount number of reactors (must be &gt; 0)
+     * @throws IllegalArgumentException if reactorCount is not positive
+     */
+    public void setReactorCount(int reactorCount) {
+        if (reactorCount <= 0) {
+            throw new IllegalArgumentException("reactorCount must be > 0");
         }
+        this.reactorCount = reactorCount;
+    }
 
-        @Override
-        public void run() {
-            SocketChannel _sc = null;
-            try {
-                _sc = (SocketChannel) key.channel();
-                synchronized (runningChannels) {
-                    runningChannels.add(_sc);
-                }
-
-                // Read until we get a complete line (non-blocking with short timeout)
-                StringBuilder requestBuf = new StringBuilder();
-                ByteBuffer bb = ByteBuffer.allocate(1024);
-                long deadline = System.currentTimeMillis() + 2000; // 2 second timeout
-                boolean lineComplete = false;
-
-                while (!lineComplete && System.currentTimeMillis() < deadline) {
-                    int bytesRead = _sc.read(bb);
+    /**
+     * @return the executor resource methods run on, or null before {@link #up()}
+     */
+    ExecutorService getWorkerExecutor() {
+        return workerExecutor;
+    }
 
-                    if (bytesRead == -1) {
-                        // EOF
-                        synchronized (runningChannels) {
-                            runningChannels.remove(_sc);
-                            _sc.close();
-                        }
-                        return;
-                    }
+    /**
+     * @return number of open client connections
+     */
+    public int getOpenConnectionCount() {
+        return runningChannels.size();
+    }
 
-                    if (bytesRead > 0) {
-                        bb.flip();
-                        CharBuffer cb = Charset.forName("UTF-8").decode(bb);
-                        requestBuf.append(cb.toString());
-                        bb.clear();
+    @Override
+    public void up() {
+        up(false);
+    }
 
-                        // Check for complete line
-                        if (requestBuf.indexOf("\n") >= 0 || requestBuf.indexOf("\r") >= 0) {
-                            lineComplete = true;
-                        }
-                    } else {
-                        // No data available, brief pause
-                        try {
-                            Thread.sleep(1);
-                        } catch (InterruptedException e) {
-                            Thread.currentThread().interrupt();
-                            break;
-                        }
-                    }
-                }
+    @Override
+    public void up(boolean setDaemon) {
+        status = TcpRestServerStatus.RUNNING;
+        initializeProtocolComponents();
 
-                if (lineComplete) {
-                    // Process the request
-                    String request = requestBuf.toString();
-                    int newlineIndex = Math.max(request.indexOf('\n'), request.indexOf('\r'));
-                    if (newlineIndex >= 0) {
-                        request = request.substring(0, newlineIndex);
-                    }
+        ownsWorkerExecutor = workerPoolConfig.getExecutor() == null;
+        workerExecutor = ownsWorkerExecutor
+                ? (workerPoolConfig.isEnabled() ? workerPoolConfig : new WorkerPoolConfig())
+                        .createExecutor("tcprest-nio-worker")
+                : workerPoolConfig.getExecutor();
 
-                    logger.fine("incoming request: " + request);
-                    String response = processRequest(request.trim());
+        try {
+            acceptSelector = Selector.open();
+            ssc.register(acceptSelector, SelectionKey.OP_ACCEPT);
+            reactors = new Reactor[reactorCount];
+            for (int i = 0; i < reactorCount; i++) {
+                reactors[i] = new Reactor(Selector.open());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open selector: " + e.getMessage(), e);
+        }
+        for (int i = 0; i < reactors.length; i++) {
+            Thread t = new Thread(reactors[i], "tcprest-nio-reactor-" + i);
+            t.setDaemon(setDaemon);
+            reactors[i].thread = t;
+            t.start();
+        }
+        acceptor = new Thread(this::acceptLoop, "tcprest-nio-acceptor");
+        acceptor.setDaemon(setDaemon);
+        acceptor.start();
+        notifyRegistryUp();
+    }
 
-                    key.attach(response);
-                    // Enable write, selector will pick it up on next iteration
-                    key.interestOps(SelectionKey.OP_WRITE);
-                    key.selector().wakeup();
-                }
-            } catch (Exception e) {
-                try {
-                    if (_sc != null) {
-                        synchronized (runningChannels) {
-                            runningChannels.remove(_sc);
-                            _sc.close();
-                        }
-                    }
-                } catch (Exception e2) {
+    private void acceptLoop() {
+        int next = 0;
+        try {
+            while (status.equals(TcpRestServerStatus.RUNNING) && !Thread.currentThread().isInterrupted()) {
+                acceptSelector.select(1000);
+                acceptSelector.selectedKeys().clear();
+                SocketChannel sc;
+                while ((sc = ssc.accept()) != null) {
+                    sc.configureBlocking(false);
+                    sc.socket().setTcpNoDelay(true);
+                    runningChannels.add(sc);
+                    reactors[next].register(sc);
+                    next = (next + 1) % reactors.length;
                 }
             }
+        } catch (ClosedSelectorException | IOException e) {
+            // Expected during shutdown when ssc.close() is called
+            logger.fine("Server channel closed: " + e.getMessage());
+        } finally {
+            logger.info("Server stopped.");
         }
     }
 
-    private class WriteChannelWorker implements Runnable {
+    /**
+     * A selector thread serving a subset of the connections. Other threads talk to it only through
+     * {@link #execute(Runnable)}.
+     */
+    private final class Reactor implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        private volatile Thread thread;
+
+        private Reactor(Selector selector) {
+            this.selector = selector;
+        }
 
-        private SelectionKey key;
+        /**
+         * Run a task on this reactor's thread.
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
 
-        public WriteChannelWorker(SelectionKey key) {
-            this.key = key;
+        void register(SocketChannel sc) {
+            execute(() -> {
+                try {
+                    SelectionKey key = sc.register(selector, SelectionKey.OP_READ);
+                    key.attach(new NioConnection(this, key, sc, newSslSession()));
+                } catch (IOException e) {
+                    closeChannel(sc);
+                }
+            });
         }
 
         @Override
         public void run() {
-            SocketChannel sc = null;
+            long lastSweep = System.currentTimeMillis();
             try {
-                sc = (SocketChannel) key.channel();
-                sc.write(ByteBuffer.wrap(((String) key.attachment()).getBytes()));
-            } catch (Exception e) {
-            } finally {
-                if (sc != null) {
-                    try {
-                        sc.close(); // response sent, close channel
-                        synchronized (runningChannels) {
-                            runningChannels.remove(sc);
+                while (status.equals(TcpRestServerStatus.RUNNING) && !Thread.currentThread().isInterrupted()) {
+                    selector.select(1000);
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+                    while (iter.hasNext()) {
+                        SelectionKey key = iter.next();
+                        iter.remove();
+                        if (!key.isValid()) {
+                            continue; // closed by the idle sweep
+                        }
+                        NioConnection conn = (NioConnection) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                conn.read(readBuffer);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                conn.flush();
+                            }
+                        } catch (IOException e) {
+                            logger.fine("Connection closed: " + e.getMessage());
+                            conn.close();
                         }
-                    } catch (Exception e2) {
+                    }
+                    long now = System.currentTimeMillis();
+                    if (now - lastSweep >= 1000) {
+                        closeIdleConnections(now);
+                        lastSweep = now;
                     }
                 }
+            } catch (ClosedSelectorException | IOException e) {
+                logger.fine("Reactor selector closed: " + e.getMessage());
+            } finally {
+                try {
+                    for (SelectionKey key : selector.keys()) {
+                        closeChannel((SocketChannel) key.channel());
+                    }
+                    selector.close();
+                } catch (ClosedSelectorException | IOException ignored) {
+                }
+            }
+        }
+
+        /**
+         * Close connections that have been idle longer than the keep-alive idle timeout
+         * (or with an incomplete request longer than {@link #REQUEST_READ_TIMEOUT_MILLIS}).
+         */
+        private void closeIdleConnections(long now) {
+            for (SelectionKey key : selector.keys()) {
+                NioConnection conn = (NioConnection) key.attachment();
+                if (conn == null) {
+                    continue;
+                }
+                long timeout = (keepAliveConfig.isEnabled() || conn.multiplexed)
+                        ? keepAliveConfig.getIdleTimeoutMillis()
+                        : REQUEST_READ_TIMEOUT_MILLIS;
+                if (timeout > 0 && conn.isIdle() && now - conn.lastActivity > timeout) {
+                    logger.fine("Closing idle connection: " + key.channel());
+                    conn.close();
+                }
             }
         }
     }
 
-    @Override
-    public void up(boolean setDaemon) {
-        status = TcpRestServerStatus.RUNNING;
-        initializeProtocolComponents();
-        worker = new Thread() {
-            @Override
-            public void run() {
-                while (status.equals(TcpRestServerStatus.RUNNING) && !Thread.currentThread().isInterrupted()) {
-                    try {
-                        Selector sel = Selector.open();
-                        ssc.register(sel, SelectionKey.OP_ACCEPT);
+    private NioSslSession newSslSession() {
+        if (sslContext == null) {
+            return null;
+        }
+        SSLEngine engine = sslContext.createSSLEngine();
+        engine.setUseClientMode(false);
+        engine.setNeedClientAuth(sslParams.isNeedClientAuth());
+        return new NioSslSession(engine);
+    }
 
-                        while (status.equals(TcpRestServerStatus.RUNNING) && !Thread.currentThread().isInterrupted()) {
-                            int readyCount = sel.select(1000); // 1 second timeout
+    /**
+     * Per-connection state, attached to the channel's {@link SelectionKey} and only touched on the
+     * owning reactor's thread.
+     *
+     * <p>Incoming bytes are appended to {@code in}; {@code scanFrom} remembers how far the buffer has
+     * been searched for a newline, so each byte is scanned once however the request is split across
+     * reads. Plain requests (V2 lines as {@code String}, V3 payloads as {@code byte[]}) are processed
+     * one at a time so pipelined responses keep their order; while {@link #MAX_PIPELINED_REQUESTS} of
+     * them wait, framing stops and read interest is dropped, leaving further bytes in {@code in} and the
+     * socket until a request completes.
+     * With SSL, {@code in} holds decrypted bytes and {@code out} holds encrypted records.</p>
+     */
+    private final class NioConnection {
+        private final Reactor reactor;
+        private final SelectionKey key;
+        private final SocketChannel channel;
+        private final NioSslSession ssl;
+        private byte[] in = new byte[1024];
+        private int inStart;
+        private int inEnd;
+        private int scanFrom;
+        private final Queue<ByteBuffer> out = new ArrayDeque<ByteBuffer>();
+        private final Queue<Object> queued = new ArrayDeque<Object>();
+        private boolean processing;
+        private boolean readPaused;
+        private int inFlight;
+        private int accepted;
+        private boolean multiplexed;
+        private boolean inputDone;
+        private long lastActivity = System.currentTimeMillis();
+
+        private NioConnection(Reactor reactor, SelectionKey key, SocketChannel channel, NioSslSession ssl) {
+            this.reactor = reactor;
+            this.key = key;
+            this.channel = channel;
+            this.ssl = ssl;
+        }
 
-                            if (readyCount == 0)
-                                continue;
+        void read(ByteBuffer buf) throws IOException {
+            for (int i = 0; i < MAX_READS_PER_EVENT && !inputDone && !readPaused; i++) {
+                buf.clear();
+                int n = channel.read(buf);
+                if (n < 0) {
+                    inputDone = true;
+                    break;
+                }
+                if (n == 0) {
+                    break;
+                }
+                buf.flip();
+                boolean peerClosed = false;
+                if (ssl == null) {
+                    append(buf);
+                } else {
+                    peerClosed = ssl.unwrap(buf, out, this::append);
+                }
+                lastActivity = System.currentTimeMillis();
+                frame();
+                if (!channel.isOpen()) {
+                    return;
+                }
+                if (peerClosed) {
+                    inputDone = true;
+                }
+                if (ssl != null && !out.isEmpty()) {
+                    flush(); // handshake records
+                }
+            }
+            if (inputDone) {
+                updateInterest();
+                closeIfDone();
+            }
+        }
 
-                            Iterator iter = sel.selectedKeys().iterator();
-                            while (iter.hasNext()) {
-                                SelectionKey key = (SelectionKey) iter.next();
+        private void append(ByteBuffer buf) {
+            int n = buf.remaining();
+            if (inEnd + n > in.length) {
+                // Reclaim consumed space first, grow only if still needed
+                int pending = inEnd - inStart;
+                if (pending + n > in.length) {
+                    in = Arrays.copyOfRange(in, inStart, inStart + Math.max(in.length * 2, pending + n));
+                } else {
+                    System.arraycopy(in, inStart, in, 0, pending);
+                }
+                scanFrom -= inStart;
+                inStart = 0;
+                inEnd = pending;
+            }
+            buf.get(in, inEnd, n);
+            inEnd += n;
+        }
 
-                                if (key.isAcceptable()) {
-                                    ServerSocketChannel _ssc = (ServerSocketChannel) key.channel();
-                                    SocketChannel _sc = _ssc.accept();
+        /**
+         * Dispatch every complete line and V3 frame in the buffer.
+         */
+        private void frame() {
+            while (inStart < inEnd && !inputDone) {
+                if (queued.size() >= MAX_PIPELINED_REQUESTS) {
+                    // Backlog full: keep the rest buffered until a request completes
+                    readPaused = true;
+                    updateInterest();
+                    return;
+                }
+                if (in[inStart] == ProtocolV3Constants.FRAME_MAGIC) {
+                    if (!frameBinary()) {
+                        return;
+                    }
+                } else {
+                    int i = Math.max(scanFrom, inStart);
+                    while (i < inEnd && in[i] != '\n') {
+                        i++;
+                    }
+                    if (i == inEnd) {
+                        scanFrom = i;
+                        if (inEnd - inStart > MAX_FRAME_LENGTH) {
+                            logger.warning("Request exceeds " + MAX_FRAME_LENGTH + " bytes, closing " + channel);
+                            close();
+                        }
+                        return;
+                    }
+                    int end = (i > inStart && in[i - 1] == '\r') ? i - 1 : i;
+                    String line = new String(in, inStart, end - inStart, StandardCharsets.UTF_8);
+                    inStart = scanFrom = i + 1;
+                    onLine(line);
+                }
+                if (!channel.isOpen()) {
+                    return;
+                }
+            }
+            inStart = inEnd = scanFrom = 0;
+        }
 
-                                    _sc.configureBlocking(false);
-                                    _sc.register(sel, SelectionKey.OP_READ);
-                                }
+        /**
+         * Cut a V3 frame starting at {@code inStart}.
+         *
+         * @return false if the frame is incomplete or invalid (the connection is then closed)
+         */
+        private boolean frameBinary() {
+            int available = inEnd - inStart;
+            if (available < ProtocolV3Constants.FRAME_HEADER_LENGTH) {
+                return false;
+            }
+            int length;
+            try {
+                length = ProtocolV3Frames.checkLength(ProtocolV3Frames.readInt(in, inStart + 1));
+            } catch (ProtocolException e) {
+                logger.warning(e.getMessage() + ", closing " + channel);
+                close();
+                return false;
+            }
+            if (available < ProtocolV3Constants.FRAME_HEADER_LENGTH + length) {
+                return false;
+            }
+            int payloadStart = inStart + ProtocolV3Constants.FRAME_HEADER_LENGTH;
+            byte[] payload = Arrays.copyOfRange(in, payloadStart, payloadStart + length);
+            inStart = scanFrom = payloadStart + length;
+            enqueue(payload);
+            return true;
+        }
 
-                                if (key.isReadable()) {
-                                    key.interestOps(key.interestOps() & (~SelectionKey.OP_READ));
-                                    workers.execute(new ReadChannelWorker(key));
-                                }
+        private void onLine(String request) {
+            if (request.isEmpty()) {
+                return;
+            }
+            if (Capabilities.isHello(request)) {
+                write(processHandshake(request));
+                return;
+            }
+            if (MultiplexFrames.isHello(request)) {
+                multiplexed = true;
+                write(request);
+                return;
+            }
+            logger.fine("incoming request: " + request);
+            if (MultiplexFrames.isMultiplexed(request)) {
+                dispatchMultiplexed(request);
+                return;
+            }
+            enqueue(request);
+        }
 
-                                if (key.isWritable()) {
-                                    key.interestOps(key.interestOps() & (~SelectionKey.OP_WRITE));
-                                    workers.execute(new WriteChannelWorker(key));
-                                }
+        /**
+         * Queue a V2 line or V3 payload for in-order processing.
+         */
+        private void enqueue(Object request) {
+            accepted++;
+            if (!multiplexed && !keepAliveConfig.shouldKeepOpen(accepted)) {
+                // Last request on this connection; ignore anything after it
+                inputDone = true;
+                updateInterest();
+            }
+            queued.add(request);
+            if (!processing) {
+                dispatchNext();
+            }
+        }
 
-                                iter.remove();
-                            }
+        private void dispatchNext() {
+            Object request = queued.poll();
+            if (request == null) {
+                processing = false;
+                closeIfDone();
+                return;
+            }
+            processing = true;
+            if (readPaused) {
+                // Room again: frame what is buffered, then resume reading
+                readPaused = false;
+                frame();
+                updateInterest();
+                if (!channel.isOpen()) {
+                    return;
+                }
+            }
+            try {
+                workerExecutor.execute(() -> {
+                    Object response = process(request, false);
+                    reactor.execute(() -> {
+                        if (complete(response)) {
+                            dispatchNext();
                         }
-                    } catch (ClosedChannelException e) {
-                        // Expected during shutdown when ssc.close() is called
-                        logger.fine("Server channel closed: " + e.getMessage());
-                        break;
-                    } catch (Exception e) {
-                        logger.severe("Error in NIO server: " + e.getMessage());
-                        for (SocketChannel sc : runningChannels) {
-                            try {
-                                sc.close();
-                            } catch (IOException e1) {
-                                logger.severe("Error closing channel: " + e1.getMessage());
-                            }
+                    });
+                });
+            } catch (RejectedExecutionException e) {
+                logger.warning("Request rejected: " + e.getMessage());
+                write(request instanceof byte[] ? encodeBinaryRejection(e) : encodeRejection(e));
+                dispatchNext();
+            }
+        }
+
+        private void dispatchMultiplexed(String request) {
+            inFlight++;
+            try {
+                workerExecutor.execute(() -> {
+                    Object response = process(request, true);
+                    reactor.execute(() -> {
+                        inFlight--;
+                        if (complete(response)) {
+                            closeIfDone();
                         }
-                    }
+                    });
+                });
+            } catch (RejectedExecutionException e) {
+                inFlight--;
+                logger.warning("Multiplexed request rejected: " + e.getMessage());
+                try {
+                    write(MultiplexFrames.wrap(MultiplexFrames.parseId(request), encodeRejection(e)));
+                } catch (IllegalArgumentException malformed) {
+                    close();
                 }
             }
-        };
-        worker.setDaemon(setDaemon);
-        worker.start();
-        notifyRegistryUp();
-    }
-
-    @Override
-    public void up() {
-        up(false);
-    }
+        }
 
-    /**
-     * Borrowed from Java NIO by Ron Hitchens (ron@ronsoft.com) with modifications.
-     * <p/>
-     * General purpose static method which reads bytes from a Channel,
-     * decodes them according
-     *
-     * @param source  A ReadableByteChannel object which will be read to
-     *                EOF as a source of encoded bytes.
-     * @param builder A StringBuilder object to which decoded chars will be written.
-     * @param charset A Charset object, whose CharsetDecoder will be used * to do the character set decoding.
-     */
-    private static void decodeChannel(ReadableByteChannel source, StringBuilder builder, Charset charset)
-            throws UnsupportedCharsetException, IOException {
-        // Get a decoder instance from the Charset
-        CharsetDecoder decoder = charset.newDecoder();
-
-        // Tell decoder to replace bad chars with default mark
-        // decoder.onMalformedInput(CodingErrorAction.REPLACE);
-        // decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
-
-        ByteBuffer bb = ByteBuffer.allocateDirect(1024);
-        CharBuffer cb = CharBuffer.allocate(1024);
-
-        // Buffer starts empty; indicate input is needed
-        CoderResult result = CoderResult.UNDERFLOW;
-        boolean eof = false;
-        boolean lineComplete = false;
-        long startTime = System.currentTimeMillis();
-        final long TIMEOUT_MS = 5000; // 5 second timeout for reading complete line
-        int consecutiveEmptyReads = 0;
-        final int MAX_CONSECUTIVE_EMPTY = 50; // Allow some retries
-
-        // Read until we get a complete line (ends with \n or \r) or EOF or timeout
-        while (!eof && !lineComplete) {
-            // Check timeout
-            if (System.currentTimeMillis() - startTime > TIMEOUT_MS) {
-                break; // Timeout - use whatever we have
-            }
-
-            // Input buffer underflow; decoder wants more input
-            if (result == CoderResult.UNDERFLOW) {
-                // decoder consumed all input, prepare to refill
-                bb.clear();
-                // Fill the input buffer (non-blocking read)
-                int bytesRead = source.read(bb);
-
-                if (bytesRead == -1) {
-                    // -1 means EOF (connection closed)
-                    eof = true;
-                    consecutiveEmptyReads = 0;
-                } else if (bytesRead == 0) {
-                    // No data available right now in non-blocking mode
-                    // Check if we already have a complete line
-                    if (builder.indexOf("\n") >= 0 || builder.indexOf("\r") >= 0) {
-                        lineComplete = true;
-                    } else {
-                        // Increment empty read counter
-                        consecutiveEmptyReads++;
-                        if (consecutiveEmptyReads >= MAX_CONSECUTIVE_EMPTY) {
-                            // Too many consecutive empty reads, yield briefly
-                            try {
-                                Thread.sleep(1);
-                            } catch (InterruptedException e) {
-                                Thread.currentThread().interrupt();
-                                break;
-                            }
-                            consecutiveEmptyReads = 0;
-                        }
-                    }
-                } else {
-                    // Successfully read some data, reset counter
-                    consecutiveEmptyReads = 0;
+        /**
+         * Runs on a worker thread.
+         *
+         * @return the response ({@code byte[]} for a V3 request), or null if processing failed and the
+         *         connection should be closed
+         */
+        private Object process(Object request, boolean tagged) {
+            try {
+                if (request instanceof byte[]) {
+                    return processBinaryRequest((byte[]) request);
                 }
+                return tagged ? processMultiplexedRequest((String) request) : processRequest((String) request);
+            } catch (Exception e) {
+                logger.severe("Error processing request: " + e.getMessage());
+                return null;
+            }
+        }
 
-                // Prepare the buffer for reading by decoder
-                bb.flip();
+        /**
+         * Queue a worker's response; back on the reactor thread.
+         *
+         * @return false if the connection is gone
+         */
+        private boolean complete(Object response) {
+            if (!channel.isOpen()) {
+                return false;
+            }
+            if (response == null) {
+                close();
+                return false;
+            }
+            write(response);
+            return channel.isOpen();
+        }
 
-                // If buffer is empty and we haven't reached EOF, continue loop
-                if (bb.remaining() == 0 && !eof) {
-                    continue;
+        /**
+         * Queue a V2 line (newline appended) or a complete V3 frame.
+         */
+        private void write(Object response) {
+            ByteBuffer bytes = response instanceof byte[]
+                    ? ByteBuffer.wrap((byte[]) response)
+                    : ByteBuffer.wrap((response + "\n").getBytes(StandardCharsets.UTF_8));
+            try {
+                if (ssl == null) {
+                    out.add(bytes);
+                } else {
+                    ssl.wrap(bytes, out);
                 }
+                flush();
+            } catch (IOException e) {
+                logger.fine("Connection closed: " + e.getMessage());
+                close();
             }
+        }
 
-            // Decode input bytes to output chars; pass EOF flag
-            result = decoder.decode(bb, cb, eof);
-
-            // If output buffer has content, drain it and check for newline
-            if (cb.position() > 0) {
-                drainCharBuf(cb, builder);
-                // Check if we've received a complete line (ends with \n or \r)
-                if (builder.indexOf("\n") >= 0 || builder.indexOf("\r") >= 0) {
-                    lineComplete = true;
+        void flush() throws IOException {
+            ByteBuffer head;
+            while ((head = out.peek()) != null) {
+                channel.write(head);
+                if (head.hasRemaining()) {
+                    // Socket buffer full, continue when writable again
+                    break;
                 }
+                out.poll();
             }
+            lastActivity = System.currentTimeMillis();
+            updateInterest();
+            closeIfDone();
+        }
 
-            // If output buffer is full, drain it
-            if (result == CoderResult.OVERFLOW) {
-                drainCharBuf(cb, builder);
+        private void updateInterest() {
+            if (key.isValid()) {
+                key.interestOps((inputDone || readPaused ? 0 : SelectionKey.OP_READ)
+                        | (out.isEmpty() ? 0 : SelectionKey.OP_WRITE));
             }
         }
 
-        // Flush any remaining state from the decoder
-        while (decoder.flush(cb) == CoderResult.OVERFLOW) {
-            drainCharBuf(cb, builder);
+        private boolean isIdle() {
+            return !processing && inFlight == 0 && out.isEmpty();
+        }
+
+        private void closeIfDone() {
+            if (inputDone && queued.isEmpty() && isIdle() && channel.isOpen()) {
+                close();
+            }
         }
 
-        // Drain any chars remaining in the output buffer
-        if (cb.position() > 0) {
-            drainCharBuf(cb, builder);
+        void close() {
+            if (ssl != null && channel.isOpen()) {
+                // Best-effort close_notify; the channel is closed right after
+                out.clear();
+                ssl.close(out);
+                try {
+                    for (ByteBuffer b : out) {
+                        channel.write(b);
+                    }
+                } catch (IOException ignored) {
+                }
+            }
+            key.cancel();
+            closeChannel(channel);
         }
     }
 
-    /**
-     * Borrowed from Java NIO by Ron Hitchens (ron@ronsoft.com) with modifications.
-     * <p/>
-     * Helper method to drain the char buffer and write its content to
-     * the given Writer object. Upon return, the buffer is empty and
-     * ready to be refilled.
-     *
-     * @param cb      A CharBuffer containing chars to be written.
-     * @param builder A StringBuilder object to consume the chars in cb.
-     */
-    private static void drainCharBuf(CharBuffer cb, StringBuilder builder)
-            throws IOException {
-        // Prepare buffer for draining
-        cb.flip();
-
-        // This writes the chars contained in the CharBuffer but
-        // doesn't actually modify the state of the buffer.
-        // If the char buffer was being drained by calls to get(),
-        // a loop might be needed here.
-        if (cb.hasRemaining()) {
-            builder.append(cb.toString());
-        }
-        cb.clear(); // Prepare buffer to be filled again
+    private void closeChannel(SocketChannel sc) {
+        runningChannels.remove(sc);
+        try {
+            sc.close();
+        } catch (IOException ignored) {
+        }
     }
 
     @Override
@@ -422,38 +748,54 @@ public class NioTcpRestServer extends AbstractTcpRestServer {
         notifyRegistryDown();
         status = TcpRestServerStatus.CLOSING;
 
-        // Interrupt worker thread
-        if (worker != null) {
-            worker.interrupt();
+        if (acceptor != null) {
+            acceptor.interrupt();
         }
 
         // Close server channel and all client channels
         try {
-            if (ssc != null && ssc.isOpen()) {
+            if (ssc.isOpen()) {
                 ssc.close();
             }
-            synchronized (runningChannels) {
-                for (SocketChannel sc : runningChannels) {
-                    try {
-                        sc.close();
-                    } catch (IOException e) {
-                        logger.severe("Error closing client channel: " + e.getMessage());
-                    }
-                }
-                runningChannels.clear();
-            }
         } catch (IOException e) {
             logger.severe("Error closing server channel: " + e.getMessage());
         }
+        if (acceptSelector != null) {
+            acceptSelector.wakeup();
+        }
+        for (SocketChannel sc : runningChannels) {
+            closeChannel(sc);
+        }
+        if (reactors != null) {
+            for (Reactor reactor : reactors) {
+                reactor.selector.wakeup();
+            }
+        }
 
-        // Wait for worker thread termination (5 second timeout)
-        if (worker != null) {
+        // Wait for acceptor and reactor threads (5 second timeout each)
+        try {
+            if (acceptor != null) {
+                acceptor.join(5000);
+            }
+            if (reactors != null) {
+                for (Reactor reactor : reactors) {
+                    if (reactor.thread != null) {
+                        reactor.thread.join(5000);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (acceptSelector != null) {
             try {
-                worker.join(5000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+                acceptSelector.close();
+            } catch (IOException ignored) {
             }
         }
+        if (workerExecutor != null && ownsWorkerExecutor) {
+            workerExecutor.shutdownNow();
+        }
         status = TcpRestServerStatus.CLOSED;
     }
 
@@ -0,0 +1,69 @@
+package cn.huiwings.tcprest.test.pipeline;
+
+import cn.huiwings.tcprest.codec.v2.ProtocolV2Codec;
+import cn.huiwings.tcprest.server.NioTcpRestServer;
+import cn.huiwings.tcprest.server.WorkerPoolConfig;
+import cn.huiwings.tcprest.test.HelloWorld;
+import cn.huiwings.tcprest.test.HelloWorldResource;
+import cn.huiwings.tcprest.test.smoke.PortGenerator;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Pipelined keep-alive requests on {@link NioTcpRestServer}: more requests than
+ * {@link NioTcpRestServer#MAX_PIPELINED_REQUESTS} in one write pause reading, and every one is still
+ * answered, in order, once the backlog drains.
+ */
+public class NioPipeliningTest {
+
+    // Use dedicated port range for this test class (41000-41499)
+    private static final PortGenerator.PortRange portRange = PortGenerator.from(41000);
+
+    private NioTcpRestServer server;
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.down();
+            server = null;
+        }
+        Thread.sleep(200);
+    }
+
+    @Test
+    public void testBacklogBeyondLimitIsAnsweredInOrder() throws Exception {
+        int port = portRange.next();
+        server = new NioTcpRestServer(port);
+        server.setWorkerPoolConfig(new WorkerPoolConfig(true, 1, 16));
+        server.enableKeepAlive();
+        server.addResource(HelloWorldResource.class);
+        server.up();
+        Thread.sleep(300);
+
+        int count = NioTcpRestServer.MAX_PIPELINED_REQUESTS * 4;
+        ProtocolV2Codec codec = new ProtocolV2Codec();
+        StringBuilder requests = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            requests.append(codec.encode(codec.plan(HelloWorld.class,
+                    HelloWorld.class.getMethod("echo", String.class), null), new Object[]{"m" + i})).append('\n');
+        }
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(10000);
+            OutputStream out = socket.getOutputStream();
+            out.write(requests.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            for (int i = 0; i < count; i++) {
+                assertEquals(codec.decode(reader.readLine(), String.class), "m" + i);
+            }
+        }
+    }
+}
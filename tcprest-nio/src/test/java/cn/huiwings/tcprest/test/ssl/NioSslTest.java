@@ -0,0 +1,132 @@
+package cn.huiwings.tcprest.test.ssl;
+
+import cn.huiwings.tcprest.client.TcpRestClientFactory;
+import cn.huiwings.tcprest.server.NioTcpRestServer;
+import cn.huiwings.tcprest.ssl.SSLParams;
+import cn.huiwings.tcprest.test.HelloWorld;
+import cn.huiwings.tcprest.test.HelloWorldResource;
+import cn.huiwings.tcprest.test.smoke.PortGenerator;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * SSL/TLS on {@link NioTcpRestServer}: two-way handshake through the selector-driven SSLEngine,
+ * keep-alive, multiplexing and records larger than one TLS packet.
+ */
+public class NioSslTest {
+
+    // Use dedicated port range for this test class (16000-16999)
+    private static final PortGenerator.PortRange portRange = PortGenerator.from(16000);
+
+    private NioTcpRestServer server;
+    private int port;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        port = portRange.next();
+        SSLParams serverSSLParams = new SSLParams();
+        serverSSLParams.setTrustStorePath("classpath:server_ks");
+        serverSSLParams.setKeyStorePath("classpath:server_ks");
+        serverSSLParams.setKeyStoreKeyPass("123123");
+        serverSSLParams.setNeedClientAuth(true);
+
+        server = new NioTcpRestServer(port, serverSSLParams);
+        server.addResource(HelloWorldResource.class);
+    }
+
+    @AfterMethod
+    public void teardown() throws Exception {
+        if (server != null) {
+            server.down();
+            Thread.sleep(200);
+        }
+    }
+
+    private static SSLParams clientSSLParams() {
+        SSLParams clientSSLParams = new SSLParams();
+        clientSSLParams.setTrustStorePath("classpath:client_ks");
+        clientSSLParams.setKeyStorePath("classpath:client_ks");
+        clientSSLParams.setKeyStoreKeyPass("456456");
+        clientSSLParams.setNeedClientAuth(true);
+        return clientSSLParams;
+    }
+
+    @Test
+    public void testTwoWayHandShake() throws Exception {
+        server.up();
+        Thread.sleep(300);
+
+        HelloWorld client = new TcpRestClientFactory(HelloWorld.class, "localhost", port, null, clientSSLParams())
+                .getInstance();
+
+        assertEquals(client.sayHelloTo("World"), "Hello, World");
+        assertEquals(client.sayHelloFromTo("Alice", "Bob"), "Alice say hello to Bob");
+    }
+
+    @Test
+    public void testLargePayloadSpansTlsRecords() throws Exception {
+        server.up();
+        Thread.sleep(300);
+
+        HelloWorld client = new TcpRestClientFactory(HelloWorld.class, "localhost", port, null, clientSSLParams())
+                .getInstance();
+
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            large.append((char) ('a' + i % 26));
+        }
+        assertEquals(client.echo(large.toString()), large.toString());
+    }
+
+    @Test
+    public void testKeepAliveWithConnectionPool() throws Exception {
+        server.enableKeepAlive();
+        server.up();
+        Thread.sleep(300);
+
+        HelloWorld client = new TcpRestClientFactory(HelloWorld.class, "localhost", port, null, clientSSLParams())
+                .withConnectionPool()
+                .getInstance();
+
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int id = t;
+                futures.add(callers.submit(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        assertEquals(client.sayHelloTo("c" + id + "-" + i), "Hello, c" + id + "-" + i);
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMultiplexing() throws Exception {
+        server.up();
+        Thread.sleep(300);
+
+        HelloWorld client = new TcpRestClientFactory(HelloWorld.class, "localhost", port, null, clientSSLParams())
+                .withMultiplexing()
+                .getInstance();
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(client.sayHelloTo("mux" + i), "Hello, mux" + i);
+        }
+    }
+}
@@ -1,14 +1,26 @@
 package cn.huiwings.tcprest.server;
 
+import cn.huiwings.tcprest.exception.ProtocolException;
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.protocol.v2.MultiplexFrames;
+import cn.huiwings.tcprest.protocol.v2.StatusCode;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Constants;
+import cn.huiwings.tcprest.protocol.v3.ProtocolV3Frames;
 import cn.huiwings.tcprest.ssl.SSLParams;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.Scanner;
+import java.net.SocketTimeoutException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * SingleThreadTcpRestServer uses a single threaded Socket Server to serve the clients.
@@ -17,6 +29,23 @@ import java.util.Scanner;
  *
  * <p><b>Bind Address Support:</b> Supports binding to specific IP addresses for security and multi-homing.</p>
  *
+ * <p><b>Keep-Alive:</b> With {@link KeepAliveConfig} enabled, a connection serves many requests in order.
+ * Because connections are served one at a time, an idle keep-alive client holds the server until it
+ * closes, times out ({@link KeepAliveConfig#getIdleTimeoutMillis()}) or hits the max-requests cap.</p>
+ *
+ * <p><b>Worker Pool:</b> With {@link WorkerPoolConfig} enabled, the accept thread hands each connection
+ * to the pool, which serves it with the same blocking loop (including the SSL handshake). Up to
+ * {@link WorkerPoolConfig#getThreads()} connections are served at once and further ones wait in the
+ * pool's queue; when the queue is full the connection is answered with a V2 {@code SERVER_ERROR}
+ * and closed.</p>
+ *
+ * <p><b>Multiplexing:</b> accepted only with the worker pool enabled. The tagged requests of a
+ * connection then run concurrently on a second pool of the same size, since every multiplexed
+ * connection holds a worker in its read loop. A multiplexed connection is closed as idle only with
+ * keep-alive enabled, and never while its tagged requests are running. Without the worker pool the
+ * handshake is declined with a {@code PROTOCOL_ERROR}, and clients fall back to one request per
+ * connection.</p>
+ *
  * <p><b>Use cases:</b></p>
  * <ul>
  *   <li>Development and testing</li>
@@ -25,9 +54,9 @@ import java.util.Scanner;
  *   <li>Applications requiring binding to specific network interfaces</li>
  * </ul>
  *
- * <p><b>Performance:</b> Single-threaded, handles one request at a time.
- * For high-concurrency scenarios, use {@link NioTcpRestServer} (without SSL)
- * or {@code NettyTcpRestServer} (with SSL).</p>
+ * <p><b>Performance:</b> Single-threaded by default, handles one connection at a time; enable the
+ * worker pool to serve several. For high-concurrency scenarios, use {@link NioTcpRestServer}
+ * or {@code NettyTcpRestServer}.</p>
  *
  * @author Weinan Li
  * @date Jul 29 2012
@@ -35,8 +64,23 @@ import java.util.Scanner;
 public class SingleThreadTcpRestServer extends AbstractTcpRestServer {
 
 
+    /**
+     * Threads writing "server busy" answers to connections the worker pool rejected.
+     */
+    private static final int REJECTION_THREADS = 2;
+
+    /**
+     * Rejected connections waiting for an answer; beyond this they are closed unanswered.
+     */
+    private static final int REJECTION_QUEUE_CAPACITY = 64;
+
     protected ServerSocket serverSocket;
     private volatile Thread serverThread;
+    private ExecutorService workerExecutor;
+    private boolean ownsWorkerExecutor;
+    private ExecutorService rejectionExecutor;
+    private ExecutorService multiplexExecutor;
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
 
     /**
      * Create server on default port (8000) binding to all interfaces.
@@ -116,51 +160,32 @@ public class SingleThreadTcpRestServer extends AbstractTcpRestServer {
     public void up(boolean setDaemon) {
         status = TcpRestServerStatus.RUNNING;
         initializeProtocolComponents();
+        if (workerPoolConfig.isEnabled()) {
+            ownsWorkerExecutor = workerPoolConfig.getExecutor() == null;
+            workerExecutor = ownsWorkerExecutor
+                    ? workerPoolConfig.createExecutor("tcprest-singlethread-worker")
+                    : workerPoolConfig.getExecutor();
+            rejectionExecutor = new WorkerPoolConfig(true, REJECTION_THREADS, REJECTION_QUEUE_CAPACITY)
+                    .createExecutor("tcprest-singlethread-reject");
+            // Tagged requests must not wait for workers blocked in connection read loops
+            multiplexExecutor = new WorkerPoolConfig(true, workerPoolConfig.getThreads(),
+                    workerPoolConfig.getQueueCapacity()).createExecutor("tcprest-singlethread-mux");
+        } else {
+            workerExecutor = null;
+            rejectionExecutor = null;
+            multiplexExecutor = null;
+        }
         serverThread = new Thread() {
             @Override
             public void run() {
                 try {
                     while (status.equals(TcpRestServerStatus.RUNNING) && !Thread.currentThread().isInterrupted()) {
-                        Socket socket = null;
-                        PrintWriter writer = null;
-                        try {
-                            socket = serverSocket.accept();
-                            logger.fine("Client accepted.");
-                            writer = new PrintWriter(socket.getOutputStream());
-                            try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                                 Scanner scanner = new Scanner(reader)) {
-                                String request = scanner.nextLine();
-                                String response = processRequest(request);
-                                writer.println(response);
-                                writer.flush();
-                            }
-                        } catch (ClassNotFoundException e) {
-                            String message = "***SingleThreadTcpRestServer: requested class not found.";
-                            logger.severe(message);
-                            writer.println(message);
-                        } catch (NoSuchMethodException e) {
-                            String message = "***SingleThreadTcpRestServer: requested method not found.";
-                            logger.severe(message);
-                            writer.println(message);
-                        } catch (InstantiationException e) {
-                            String message = "***SingleThreadTcpRestServer: resource cannot be instantiated.";
-                            logger.severe(message);
-                            writer.println(message);
-                        } catch (IllegalAccessException e) {
-                            String message = "***SingleThreadTcpRestServer: cannot invoke context.";
-                            logger.severe(message);
-                            writer.println(message);
-                        } catch (Exception e) {
-                            if (e instanceof IOException) throw (IOException) e;
-                            logger.severe(e.getMessage());
-                            if (writer != null) writer.println(e.getMessage());
-                        } finally {
-                            if (writer != null) {
-                                try { writer.close(); } catch (Exception ignored) { }
-                            }
-                            if (socket != null) {
-                                try { socket.close(); } catch (IOException ignored) { }
-                            }
+                        Socket socket = serverSocket.accept();
+                        logger.fine("Client accepted.");
+                        if (workerExecutor == null) {
+                            handleConnection(socket);
+                        } else {
+                            dispatch(socket);
                         }
                     }
                 } catch (java.net.SocketException e) {
@@ -177,6 +202,200 @@ public class SingleThreadTcpRestServer extends AbstractTcpRestServer {
         notifyRegistryUp();
     }
 
+    /**
+     * Hand an accepted connection to the worker pool, or reject it when the pool is full. Rejections are
+     * answered on separate threads so a slow client cannot hold the accept thread.
+     */
+    private void dispatch(Socket socket) {
+        openSockets.add(socket);
+        try {
+            workerExecutor.execute(() -> {
+                try {
+                    handleConnection(socket);
+                } finally {
+                    openSockets.remove(socket);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.warning("Connection rejected: " + e.getMessage());
+            openSockets.remove(socket);
+            try {
+                rejectionExecutor.execute(() -> reject(socket, e));
+            } catch (RejectedExecutionException overloaded) {
+                try { socket.close(); } catch (IOException ignored) { }
+            }
+        }
+    }
+
+    /**
+     * Answer a rejected connection with a "server busy" response in the protocol of its request.
+     */
+    private void reject(Socket socket, RejectedExecutionException e) {
+        try {
+            // Read the request first so closing does not reset the connection before the
+            // client sees the answer; bound the time a slow (SSL) client can hold this thread
+            socket.setSoTimeout(1000);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            int first = in.read();
+            if (first == ProtocolV3Constants.FRAME_MAGIC) {
+                ProtocolV3Frames.readPayload(in);
+                OutputStream out = socket.getOutputStream();
+                out.write(encodeBinaryRejection(e));
+                out.flush();
+            } else {
+                ProtocolV3Frames.readLine(in, first);
+                PrintWriter writer = new PrintWriter(socket.getOutputStream());
+                writer.println(encodeRejection(e));
+                writer.flush();
+            }
+        } catch (IOException ignored) {
+        } finally {
+            try { socket.close(); } catch (IOException ignored) { }
+        }
+    }
+
+    /**
+     * @return number of connections currently held by the worker pool (0 when it is disabled)
+     */
+    public int getOpenConnectionCount() {
+        return openSockets.size();
+    }
+
+    /**
+     * Serve one accepted connection. Without keep-alive exactly one request is read; with keep-alive,
+     * requests are served in order until EOF, idle timeout or the max-requests cap. Each request is
+     * either a V2 line or a V3 frame, told apart by its first byte.
+     *
+     * @param socket the accepted client socket (always closed on return)
+     */
+    protected void handleConnection(Socket socket) {
+        PrintWriter writer = null;
+        try {
+            KeepAliveConfig keepAlive = keepAliveConfig;
+            if (keepAlive.isEnabled() && keepAlive.getIdleTimeoutMillis() > 0) {
+                socket.setSoTimeout(keepAlive.getIdleTimeoutMillis());
+            }
+            OutputStream out = socket.getOutputStream();
+            writer = new PrintWriter(out);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            int served = 0;
+            boolean multiplexed = false;
+            // Tagged requests of this connection still running on the multiplexing pool
+            AtomicInteger inFlight = new AtomicInteger();
+            while (status.equals(TcpRestServerStatus.RUNNING)) {
+                int first;
+                try {
+                    first = in.read();
+                } catch (SocketTimeoutException e) {
+                    if (inFlight.get() > 0) {
+                        continue; // quiet, but not idle: responses are still to be written
+                    }
+                    throw e;
+                }
+                if (first == -1) {
+                    break; // client closed the connection
+                }
+                if (first == ProtocolV3Constants.FRAME_MAGIC) {
+                    byte[] response = processBinaryRequest(ProtocolV3Frames.readPayload(in));
+                    synchronized (writer) {
+                        out.write(response);
+                        out.flush();
+                    }
+                    served++;
+                    if (!multiplexed && !keepAlive.shouldKeepOpen(served)) {
+                        break;
+                    }
+                    continue;
+                }
+                String request = ProtocolV3Frames.readLine(in, first);
+                if (request.isEmpty()) {
+                    continue;
+                }
+                if (Capabilities.isHello(request)) {
+                    writeLine(writer, processHandshake(request));
+                    continue;
+                }
+                if (MultiplexFrames.isHello(request)) {
+                    if (workerExecutor == null) {
+                        // Requests of this connection would still be served one at a time
+                        writeLine(writer, encodeErrorResponse(
+                                new ProtocolException("Multiplexing requires the worker pool"),
+                                StatusCode.PROTOCOL_ERROR));
+                        continue;
+                    }
+                    // Multiplexed connections stay open; only keep-alive may close them when idle
+                    multiplexed = true;
+                    socket.setSoTimeout(keepAlive.isEnabled() ? keepAlive.getIdleTimeoutMillis() : 0);
+                    writeLine(writer, request);
+                    continue;
+                }
+                if (multiplexed && MultiplexFrames.isMultiplexed(request)) {
+                    dispatchMultiplexed(request, writer, socket, inFlight);
+                    continue;
+                }
+                String response = MultiplexFrames.isMultiplexed(request)
+                        ? processMultiplexedRequest(request)
+                        : processRequest(request);
+                writeLine(writer, response);
+                served++;
+                if (!multiplexed && !keepAlive.shouldKeepOpen(served)) {
+                    break;
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            logger.fine("Closing idle keep-alive connection: " + e.getMessage());
+        } catch (IOException e) {
+            logger.fine("Connection closed: " + e.getMessage());
+        } catch (Exception e) {
+            logger.severe(e.getMessage());
+            if (writer != null) {
+                writeLine(writer, e.getMessage());
+            }
+        } finally {
+            if (writer != null) {
+                try { writer.close(); } catch (Exception ignored) { }
+            }
+            try { socket.close(); } catch (IOException ignored) { }
+        }
+    }
+
+    /**
+     * Run a multiplexed request on the multiplexing pool; its response is written whenever it completes.
+     */
+    private void dispatchMultiplexed(String request, PrintWriter writer, Socket socket, AtomicInteger inFlight) {
+        inFlight.incrementAndGet();
+        try {
+            multiplexExecutor.execute(() -> {
+                try {
+                    writeLine(writer, processMultiplexedRequest(request));
+                } catch (Exception e) {
+                    logger.severe("Error processing multiplexed request: " + e.getMessage());
+                    try { socket.close(); } catch (IOException ignored) { }
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.decrementAndGet();
+            logger.warning("Multiplexed request rejected: " + e.getMessage());
+            try {
+                writeLine(writer, MultiplexFrames.wrap(MultiplexFrames.parseId(request), encodeRejection(e)));
+            } catch (IllegalArgumentException malformed) {
+                try { socket.close(); } catch (IOException ignored) { }
+            }
+        }
+    }
+
+    /**
+     * Write a response line; multiplexed responses are written by worker threads, so writes are serialized.
+     */
+    private static void writeLine(PrintWriter writer, String line) {
+        synchronized (writer) {
+            writer.println(line);
+            writer.flush();
+        }
+    }
+
     @Override
     public void down() {
         notifyRegistryDown();
@@ -196,6 +415,11 @@ public class SingleThreadTcpRestServer extends AbstractTcpRestServer {
             }
         }
 
+        // Close pooled connections to unblock workers waiting in read()
+        for (Socket socket : openSockets) {
+            try { socket.close(); } catch (IOException ignored) { }
+        }
+
         // Wait for thread termination (5 second timeout)
         if (serverThread != null) {
             try {
@@ -204,6 +428,15 @@ public class SingleThreadTcpRestServer extends AbstractTcpRestServer {
                 Thread.currentThread().interrupt();
             }
         }
+        if (workerExecutor != null && ownsWorkerExecutor) {
+            workerExecutor.shutdownNow();
+        }
+        if (rejectionExecutor != null) {
+            rejectionExecutor.shutdownNow();
+        }
+        if (multiplexExecutor != null) {
+            multiplexExecutor.shutdownNow();
+        }
         status = TcpRestServerStatus.CLOSED;
     }
 }
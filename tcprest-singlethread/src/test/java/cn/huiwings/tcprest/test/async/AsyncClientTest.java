@@ -0,0 +1,172 @@
+package cn.huiwings.tcprest.test.async;
+
+import cn.huiwings.tcprest.annotations.Timeout;
+import cn.huiwings.tcprest.client.AsyncTcpRestClientFactory;
+import cn.huiwings.tcprest.client.TcpRestClientFactory;
+import cn.huiwings.tcprest.exception.TimeoutException;
+import cn.huiwings.tcprest.server.SingleThreadTcpRestServer;
+import cn.huiwings.tcprest.test.HelloWorld;
+import cn.huiwings.tcprest.test.HelloWorldResource;
+import cn.huiwings.tcprest.test.smoke.PortGenerator;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests the CompletableFuture-based client API ({@link AsyncTcpRestClientFactory}).
+ *
+ * <p><b>Test scenarios:</b></p>
+ * <ul>
+ *   <li>Async calls over multiplexed and plain connections</li>
+ *   <li>{@code @Timeout} fails the future with TimeoutException</li>
+ *   <li>Async methods without a matching service method are rejected</li>
+ * </ul>
+ */
+public class AsyncClientTest {
+
+    // Use dedicated port range for this test class (38500-38999)
+    private static final PortGenerator.PortRange portRange = PortGenerator.from(38500);
+
+    public interface HelloWorldAsync {
+        CompletableFuture<String> helloWorld();
+
+        CompletableFuture<String> sayHelloTo(String name);
+
+        CompletableFuture<String> oneTwoThree(String one, int two, boolean three);
+
+        CompletableFuture<String> timeout();
+    }
+
+    public interface ShortTimeoutAsync {
+        @Timeout(second = 1)
+        CompletableFuture<String> echo(String in);
+
+        @Timeout(second = 1)
+        CompletableFuture<String> timeout();
+    }
+
+    public interface WrongTypeAsync {
+        CompletableFuture<Integer> helloWorld();
+    }
+
+    public interface UnknownMethodAsync {
+        CompletableFuture<String> goodbye();
+    }
+
+    private SingleThreadTcpRestServer server;
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.down();
+            server = null;
+        }
+        Thread.sleep(300);
+    }
+
+    private int startServer() throws Exception {
+        return startServer(false);
+    }
+
+    /**
+     * @param workerPool enable the worker pool, which the single-thread server needs to multiplex
+     */
+    private int startServer(boolean workerPool) throws Exception {
+        int port = portRange.next();
+        server = new SingleThreadTcpRestServer(port);
+        server.addResource(HelloWorldResource.class);
+        if (workerPool) {
+            server.enableWorkerPool();
+        }
+        server.up();
+        Thread.sleep(200);
+        return port;
+    }
+
+    @Test
+    public void testAsyncCallsOverMultiplexedConnection() throws Exception {
+        int port = startServer(true);
+        TcpRestClientFactory base = new TcpRestClientFactory(HelloWorld.class, "localhost", port).withMultiplexing(1);
+        HelloWorldAsync client = new AsyncTcpRestClientFactory(base).getInstance(HelloWorldAsync.class);
+        try {
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(client.sayHelloTo("user" + i));
+            }
+            for (int i = 0; i < 100; i++) {
+                assertEquals(futures.get(i).get(10, TimeUnit.SECONDS), "Hello, user" + i);
+            }
+            assertEquals(client.oneTwoThree("One", 2, true).get(10, TimeUnit.SECONDS), "One,2,true");
+        } finally {
+            base.getMultiplexedConnections().close();
+        }
+    }
+
+    @Test
+    public void testAsyncCallsWithoutMultiplexing() throws Exception {
+        int port = startServer();
+        TcpRestClientFactory base = new TcpRestClientFactory(HelloWorld.class, "localhost", port);
+        HelloWorldAsync client = new AsyncTcpRestClientFactory(base).getInstance(HelloWorldAsync.class);
+        assertEquals(client.helloWorld().get(10, TimeUnit.SECONDS), "Hello, world!");
+        assertEquals(client.sayHelloTo("Async").thenApply(String::length).get(10, TimeUnit.SECONDS),
+                Integer.valueOf("Hello, Async".length()));
+    }
+
+    @Test
+    public void testTimeoutFromServiceInterface() throws Exception {
+        int port = startServer();
+        TcpRestClientFactory base = new TcpRestClientFactory(HelloWorld.class, "localhost", port).withMultiplexing(1);
+        HelloWorldAsync client = new AsyncTcpRestClientFactory(base).getInstance(HelloWorldAsync.class);
+        try {
+            // HelloWorld.timeout() is annotated @Timeout(second = 1) and sleeps 2 seconds
+            CompletableFuture<String> future = client.timeout();
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                fail("Expected timeout");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException, "cause: " + e.getCause());
+            }
+        } finally {
+            base.getMultiplexedConnections().close();
+        }
+    }
+
+    @Test
+    public void testTimeoutOnAsyncMethodWithoutMultiplexing() throws Exception {
+        int port = startServer();
+        TcpRestClientFactory base = new TcpRestClientFactory(HelloWorld.class, "localhost", port);
+        ShortTimeoutAsync client = new AsyncTcpRestClientFactory(base).getInstance(ShortTimeoutAsync.class);
+        assertEquals(client.echo("ping").get(10, TimeUnit.SECONDS), "ping");
+
+        // The server sleeps 2 seconds; the future must fail after the 1 second timeout, before the response
+        long start = System.currentTimeMillis();
+        CompletableFuture<String> future = client.timeout();
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Expected timeout");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException, "cause: " + e.getCause());
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue(elapsed >= 900 && elapsed < 1900, "timed out after " + elapsed + " ms");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMismatchedFutureType() {
+        TcpRestClientFactory base = new TcpRestClientFactory(HelloWorld.class, "localhost", 1);
+        new AsyncTcpRestClientFactory(base).getInstance(WrongTypeAsync.class);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownMethod() {
+        TcpRestClientFactory base = new TcpRestClientFactory(HelloWorld.class, "localhost", 1);
+        new AsyncTcpRestClientFactory(base).getInstance(UnknownMethodAsync.class);
+    }
+}
@@ -0,0 +1,192 @@
+package cn.huiwings.tcprest.test.integration;
+
+import cn.huiwings.tcprest.client.ConnectionPool;
+import cn.huiwings.tcprest.client.TcpRestClientFactory;
+import cn.huiwings.tcprest.codec.v2.ProtocolV2Codec;
+import cn.huiwings.tcprest.discovery.HostPort;
+import cn.huiwings.tcprest.protocol.Capabilities;
+import cn.huiwings.tcprest.security.SecurityConfig;
+import cn.huiwings.tcprest.server.SingleThreadTcpRestServer;
+import cn.huiwings.tcprest.test.HelloWorld;
+import cn.huiwings.tcprest.test.HelloWorldResource;
+import cn.huiwings.tcprest.test.smoke.PortGenerator;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+
+import static org.testng.Assert.*;
+
+/**
+ * End-to-end tests for the capability handshake against SingleThreadTcpRestServer.
+ *
+ * <p><b>Test scenarios:</b></p>
+ * <ul>
+ *   <li>The server answers an offer with the common version, features and frame limit</li>
+ *   <li>Responses use only the features their request announced</li>
+ *   <li>Clients upgrade to Protocol V3 when the server accepts it and stay on V2 otherwise</li>
+ *   <li>Pooled connections negotiate once when opened</li>
+ *   <li>A client without a checksum adopts a required CRC32</li>
+ *   <li>A checksum the client cannot compute fails before any request is sent</li>
+ * </ul>
+ */
+public class CapabilityHandshakeIntegrationTest {
+
+    // Use dedicated port range for this test class (40000-40499)
+    private static final PortGenerator.PortRange portRange = PortGenerator.from(40000);
+
+    private SingleThreadTcpRestServer server;
+    private ConnectionPool pool;
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+        if (server != null) {
+            server.down();
+            server = null;
+        }
+        Thread.sleep(300);
+    }
+
+    private int startServer() throws Exception {
+        int port = portRange.next();
+        server = new SingleThreadTcpRestServer(port);
+        server.addResource(HelloWorldResource.class);
+        return port;
+    }
+
+    @Test
+    public void testServerAnswer() throws Exception {
+        int port = startServer();
+        server.up();
+        Thread.sleep(200);
+
+        try (Socket socket = new Socket("localhost", port);
+             PrintWriter writer = new PrintWriter(socket.getOutputStream());
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            writer.println("TCPREST|HELLO|1|version=4,3,2;compression=gzip,none;features=binary,zstd;streams=8;maxFrame=2048");
+            writer.flush();
+            Capabilities answer = Capabilities.parse(reader.readLine());
+
+            assertEquals(answer.getVersion(), 3);
+            assertEquals(answer.getFeatures(), Capabilities.FEATURE_BINARY);
+            assertEquals(answer.getChecksum(), "NONE");
+            assertEquals(answer.getMaxFrameLength(), 2048);
+        }
+    }
+
+    @Test
+    public void testResponseUsesAnnouncedFeatures() throws Exception {
+        int port = startServer();
+        server.up();
+        Thread.sleep(200);
+        ProtocolV2Codec codec = new ProtocolV2Codec();
+        String legacy = codec.encode(codec.plan(HelloWorld.class,
+                HelloWorld.class.getMethod("echo", String.class), null), new Object[]{"x"});
+        String announced = codec.encode(codec.plan(HelloWorld.class,
+                HelloWorld.class.getMethod("echo", String.class), null), new Object[]{"x"},
+                Capabilities.FEATURE_BINARY | 0x40);
+
+        assertTrue(legacy.startsWith("V2|0|"), legacy);
+        assertTrue(exchange(port, legacy).startsWith("V2|0|0|"));
+        // Unknown feature bits are dropped on both sides
+        assertTrue(announced.startsWith("V2|" + Capabilities.FEATURE_BINARY + "|"), announced);
+        assertTrue(exchange(port, announced).startsWith("V2|" + Capabilities.FEATURE_BINARY + "|0|"));
+    }
+
+    private static String exchange(int port, String request) throws Exception {
+        try (Socket socket = new Socket("localhost", port);
+             PrintWriter writer = new PrintWriter(socket.getOutputStream());
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            writer.println(request);
+            writer.flush();
+            return reader.readLine();
+        }
+    }
+
+    @Test
+    public void testUpgradesToV3() throws Exception {
+        int port = startServer();
+        server.up();
+        Thread.sleep(200);
+        TcpRestClientFactory factory = new TcpRestClientFactory(HelloWorld.class, "localhost", port)
+                .withCapabilityHandshake();
+        HelloWorld client = factory.getClient();
+
+        assertEquals(client.echo("negotiated"), "negotiated");
+        assertEquals(client.helloWorld(), "Hello, world!");
+        assertEquals(factory.getCapabilityNegotiator().get(new HostPort("localhost", port)).getVersion(), 3);
+    }
+
+    @Test
+    public void testStaysOnV2WhenV3Disabled() throws Exception {
+        int port = startServer();
+        server.setProtocolV3Enabled(false);
+        server.up();
+        Thread.sleep(200);
+        TcpRestClientFactory factory = new TcpRestClientFactory(HelloWorld.class, "localhost", port)
+                .withProtocolV3()
+                .withCapabilityHandshake();
+        HelloWorld client = factory.getClient();
+
+        // Configured for V3, but the agreement downgrades to V2 instead of failing
+        assertEquals(client.echo("v2"), "v2");
+        assertEquals(factory.getCapabilityNegotiator().get(new HostPort("localhost", port)).getVersion(), 2);
+    }
+
+    @Test
+    public void testPooledConnectionNegotiatesOnce() throws Exception {
+        int port = startServer();
+        server.enableKeepAlive();
+        server.up();
+        Thread.sleep(200);
+        TcpRestClientFactory factory = new TcpRestClientFactory(HelloWorld.class, "localhost", port)
+                .withConnectionPool()
+                .withCapabilityHandshake();
+        HelloWorld client = factory.getClient();
+        pool = factory.getConnectionPool();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(client.echo("pooled-" + i), "pooled-" + i);
+        }
+        assertEquals(pool.getCreatedCount(), 1);
+        assertEquals(factory.getCapabilityNegotiator().get(new HostPort("localhost", port)).getVersion(), 3);
+    }
+
+    @Test
+    public void testRequiredCrc32IsAdopted() throws Exception {
+        int port = startServer();
+        server.setSecurityConfig(new SecurityConfig().enableCRC32());
+        server.up();
+        Thread.sleep(200);
+        HelloWorld client = new TcpRestClientFactory(HelloWorld.class, "localhost", port)
+                .withCapabilityHandshake()
+                .getClient();
+
+        assertEquals(client.echo("checked"), "checked");
+    }
+
+    @Test
+    public void testChecksumMismatchFailsFast() throws Exception {
+        int port = startServer();
+        server.setSecurityConfig(new SecurityConfig().enableHMAC("server-secret"));
+        server.up();
+        Thread.sleep(200);
+        HelloWorld client = new TcpRestClientFactory(HelloWorld.class, "localhost", port)
+                .withCapabilityHandshake()
+                .getClient();
+
+        try {
+            client.echo("unchecked");
+            fail("Expected security exception");
+        } catch (cn.huiwings.tcprest.exception.SecurityException e) {
+            assertTrue(e.getMessage().contains("HMAC_SHA256"), e.getMessage());
+        }
+    }
+}
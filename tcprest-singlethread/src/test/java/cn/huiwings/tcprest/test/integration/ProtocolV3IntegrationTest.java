@@ -0,0 +1,239 @@
+package cn.huiwings.tcprest.test.integration;
+
+import cn.huiwings.tcprest.client.ConnectionPool;
+import cn.huiwings.tcprest.client.TcpRestClientFactory;
+import cn.huiwings.tcprest.exception.BusinessException;
+import cn.huiwings.tcprest.exception.ProtocolException;
+import cn.huiwings.tcprest.exception.RemoteServerException;
+import cn.huiwings.tcprest.security.SecurityConfig;
+import cn.huiwings.tcprest.server.SingleThreadTcpRestServer;
+import cn.huiwings.tcprest.test.HelloWorld;
+import cn.huiwings.tcprest.test.HelloWorldResource;
+import cn.huiwings.tcprest.test.smoke.PortGenerator;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.*;
+
+/**
+ * End-to-end tests for Protocol V3 binary frames against SingleThreadTcpRestServer.
+ *
+ * <p><b>Test scenarios:</b></p>
+ * <ul>
+ *   <li>Primitives, strings, arrays, collections and serializable objects round-trip</li>
+ *   <li>V2 and V3 clients share one server; pooled V3 calls reuse a keep-alive connection</li>
+ *   <li>Business and server exceptions propagate as in V2</li>
+ *   <li>Checksums are enforced on V3 frames</li>
+ *   <li>A server with V3 disabled answers V3 requests with a protocol error</li>
+ *   <li>Generated client stubs call the server like dynamic proxies</li>
+ * </ul>
+ */
+public class ProtocolV3IntegrationTest {
+
+    // Use dedicated port range for this test class (39500-39999)
+    private static final PortGenerator.PortRange portRange = PortGenerator.from(39500);
+
+    private SingleThreadTcpRestServer server;
+    private ConnectionPool pool;
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+        if (server != null) {
+            server.down();
+            server = null;
+        }
+        Thread.sleep(300);
+    }
+
+    private int startServer(SecurityConfig securityConfig) throws Exception {
+        int port = portRange.next();
+        server = new SingleThreadTcpRestServer(port);
+        server.addResource(HelloWorldResource.class);
+        server.addResource(OrderServiceImpl.class);
+        if (securityConfig != null) {
+            server.setSecurityConfig(securityConfig);
+        }
+        server.up();
+        Thread.sleep(200);
+        return port;
+    }
+
+    @Test
+    public void testValuesRoundTrip() throws Exception {
+        int port = startServer(null);
+        TcpRestClientFactory factory = new TcpRestClientFactory("localhost", port, HelloWorld.class, OrderService.class)
+                .withProtocolV3();
+        HelloWorld hello = factory.getClient(HelloWorld.class);
+        OrderService orders = factory.getClient(OrderService.class);
+
+        assertEquals(hello.helloWorld(), "Hello, world!");
+        assertEquals(hello.sayHelloFromTo("a|b", "c\nd"), "a|b say hello to c\nd");
+        assertEquals(hello.allTypes("x", 1, true, (short) 2, 3L, 4.5, (byte) 6), "x,1,true234.56");
+        assertEquals(hello.getArray(new String[]{"p", "q"}), new String[]{"p", "q"});
+        assertEquals(hello.echo(""), "");
+        assertNull(hello.echo(null));
+
+        Order order = orders.place(new Order("book", 2), new ArrayList<>(Arrays.asList("gift", "express")));
+        assertEquals(order.item, "book");
+        assertEquals(order.quantity, 2);
+        assertEquals(order.notes, Arrays.asList("gift", "express"));
+        assertEquals(orders.total(new int[]{1, 2, 3}), 6);
+    }
+
+    @Test
+    public void testV2AndV3ShareServer() throws Exception {
+        int port = startServer(null);
+        HelloWorld v2 = new TcpRestClientFactory(HelloWorld.class, "localhost", port).getClient();
+        HelloWorld v3 = new TcpRestClientFactory(HelloWorld.class, "localhost", port).withProtocolV3().getClient();
+
+        assertEquals(v2.echo("two"), "two");
+        assertEquals(v3.echo("three"), "three");
+    }
+
+    @Test
+    public void testGeneratedStubs() throws Exception {
+        int port = startServer(null);
+        HelloWorld v2 = new TcpRestClientFactory(HelloWorld.class, "localhost", port).withGeneratedStubs()
+                .getClient();
+        OrderService v3 = new TcpRestClientFactory(OrderService.class, "localhost", port).withGeneratedStubs()
+                .withProtocolV3().getClient();
+
+        assertFalse(Proxy.isProxyClass(v2.getClass()));
+        assertEquals(v2.allTypes("x", 1, true, (short) 2, 3L, 4.5, (byte) 6), "x,1,true234.56");
+        assertEquals(v3.total(new int[]{4, 5}), 9);
+        try {
+            v3.place(new Order("book", 0), new ArrayList<>());
+            fail("Expected business exception");
+        } catch (BusinessException e) {
+            assertTrue(e.getMessage().contains("quantity must be positive"));
+        }
+    }
+
+    @Test
+    public void testPooledKeepAlive() throws Exception {
+        int port = startServer(null);
+        server.enableKeepAlive();
+        TcpRestClientFactory factory = new TcpRestClientFactory(HelloWorld.class, "localhost", port)
+                .withProtocolV3()
+                .withConnectionPool();
+        pool = factory.getConnectionPool();
+        HelloWorld client = factory.getClient();
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(client.echo("v3-" + i), "v3-" + i);
+        }
+        assertEquals(pool.getCreatedCount(), 1);
+        assertEquals(pool.getReuseCount(), 19);
+    }
+
+    @Test
+    public void testExceptions() throws Exception {
+        int port = startServer(null);
+        OrderService orders = new TcpRestClientFactory(OrderService.class, "localhost", port)
+                .withProtocolV3().getClient();
+
+        try {
+            orders.place(new Order("book", 0), new ArrayList<>());
+            fail("Expected business exception");
+        } catch (BusinessException e) {
+            assertTrue(e.getMessage().contains("quantity must be positive"));
+        }
+        try {
+            orders.total(null);
+            fail("Expected server exception");
+        } catch (RuntimeException e) {
+            // Reconstructed NPE, or RemoteServerException when the client cannot reconstruct it
+            assertTrue(e instanceof NullPointerException
+                    || (e instanceof RemoteServerException
+                        && ((RemoteServerException) e).getRemoteExceptionType().contains("NullPointerException")),
+                    e.toString());
+        }
+    }
+
+    @Test
+    public void testChecksumEnforced() throws Exception {
+        int port = startServer(new SecurityConfig().enableHMAC("v3-secret"));
+
+        HelloWorld signed = new TcpRestClientFactory(HelloWorld.class, "localhost", port)
+                .withProtocolV3()
+                .withSecurity(new SecurityConfig().enableHMAC("v3-secret"))
+                .getClient();
+        assertEquals(signed.echo("checked"), "checked");
+
+        HelloWorld unsigned = new TcpRestClientFactory(HelloWorld.class, "localhost", port)
+                .withProtocolV3()
+                .getClient();
+        try {
+            unsigned.echo("unchecked");
+            fail("Expected checksum failure");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("Checksum"), e.getMessage());
+        }
+    }
+
+    @Test
+    public void testV3Disabled() throws Exception {
+        int port = startServer(null);
+        server.setProtocolV3Enabled(false);
+        HelloWorld client = new TcpRestClientFactory(HelloWorld.class, "localhost", port)
+                .withProtocolV3().getClient();
+
+        try {
+            client.echo("x");
+            fail("Expected protocol error");
+        } catch (RuntimeException e) {
+            assertTrue(e instanceof ProtocolException || e.getMessage().contains("Protocol V3 is disabled"),
+                    e.toString());
+        }
+        HelloWorld v2 = new TcpRestClientFactory(HelloWorld.class, "localhost", port).getClient();
+        assertEquals(v2.echo("v2"), "v2");
+    }
+
+    public interface OrderService {
+        Order place(Order order, List<String> notes);
+
+        int total(int[] amounts);
+    }
+
+    public static class OrderServiceImpl implements OrderService {
+        @Override
+        public Order place(Order order, List<String> notes) {
+            if (order.quantity <= 0) {
+                throw new BusinessException("quantity must be positive");
+            }
+            order.notes = notes;
+            return order;
+        }
+
+        @Override
+        public int total(int[] amounts) {
+            int sum = 0;
+            for (int amount : amounts) {
+                sum += amount;
+            }
+            return sum;
+        }
+    }
+
+    public static class Order implements Serializable {
+        private static final long serialVersionUID = 1L;
+        String item;
+        int quantity;
+        List<String> notes;
+
+        Order(String item, int quantity) {
+            this.item = item;
+            this.quantity = quantity;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package cn.huiwings.tcprest.test.integration;
+
+import cn.huiwings.tcprest.annotations.Scope;
+import cn.huiwings.tcprest.client.TcpRestClientFactory;
+import cn.huiwings.tcprest.server.ResettableResource;
+import cn.huiwings.tcprest.server.ResourceScope;
+import cn.huiwings.tcprest.server.ShardMerger;
+import cn.huiwings.tcprest.server.ShardedResourceProvider;
+import cn.huiwings.tcprest.server.SingleThreadTcpRestServer;
+import cn.huiwings.tcprest.server.WorkerPoolConfig;
+import cn.huiwings.tcprest.test.smoke.PortGenerator;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.*;
+
+/**
+ * Test resource scopes for classes registered with addResource.
+ *
+ * <p><b>Test scenarios:</b></p>
+ * <ul>
+ *   <li>SINGLETON and PER_THREAD keep state across requests (the server serves them on one thread)</li>
+ *   <li>POOLED reuses one instance and resets it between requests</li>
+ *   <li>The {@link Scope} annotation selects the scope without registration arguments</li>
+ *   <li>SHARDED routes concurrent requests to a bounded set of instances and merges reads</li>
+ * </ul>
+ */
+public class ResourceScopeTest {
+
+    // Use dedicated port range for this test class (40500-40999)
+    private static final PortGenerator.PortRange portRange = PortGenerator.from(40500);
+
+    private SingleThreadTcpRestServer server;
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.down();
+            server = null;
+        }
+        Thread.sleep(300);
+    }
+
+    private CounterService start(Runnable register) throws Exception {
+        int port = portRange.next();
+        server = new SingleThreadTcpRestServer(port);
+        register.run();
+        server.up();
+        Thread.sleep(200);
+        return new TcpRestClientFactory(CounterService.class, "localhost", port).getClient();
+    }
+
+    @Test
+    public void testSingletonScope() throws Exception {
+        CounterService client = start(() -> server.addResource(CounterServiceImpl.class, ResourceScope.SINGLETON));
+
+        assertEquals(client.increment(), 1);
+        assertEquals(client.increment(), 2);
+        assertEquals(client.increment(), 3);
+    }
+
+    @Test
+    public void testPerThreadScope() throws Exception {
+        CounterService client = start(() -> server.addResource(CounterServiceImpl.class, ResourceScope.PER_THREAD));
+
+        assertEquals(client.increment(), 1);
+        assertEquals(client.increment(), 2);
+    }
+
+    @Test
+    public void testPooledScope() throws Exception {
+        PooledCounterService.CREATED.set(0);
+        CounterService client = start(() -> server.addPooledResource(PooledCounterService.class, 4));
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(client.increment(), 1, "Pooled instance must be reset between requests");
+        }
+        assertEquals(PooledCounterService.CREATED.get(), 1);
+    }
+
+    @Test
+    public void testScopeAnnotation() throws Exception {
+        AnnotatedCounterService.CREATED.set(0);
+        CounterService client = start(() -> server.addResource(AnnotatedCounterService.class));
+
+        assertEquals(client.increment(), 1);
+        assertEquals(client.increment(), 1);
+        assertEquals(AnnotatedCounterService.CREATED.get(), 1);
+    }
+
+    @Test
+    public void testShardedScope() throws Exception {
+        int port = portRange.next();
+        server = new SingleThreadTcpRestServer(port);
+        server.setWorkerPoolConfig(new WorkerPoolConfig(true, 4, 100));
+        server.addShardedResource(ShardedCounter.class, ShardedCounter::new, ShardMerger.summing("total"));
+        server.up();
+        Thread.sleep(200);
+        ShardedCounterService client = new TcpRestClientFactory(ShardedCounterService.class, "localhost", port)
+                .getClient();
+
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(clients.submit(() -> {
+                    for (int i = 0; i < 25; i++) {
+                        client.add(1);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            clients.shutdown();
+        }
+
+        assertEquals(client.total(), 100);
+        ShardedResourceProvider provider = (ShardedResourceProvider) server.getResourceIndex()
+                .getProvider(ShardedCounterService.class.getName());
+        int shards = provider.getShards().size();
+        assertTrue(shards >= 1 && shards <= ShardedResourceProvider.DEFAULT_SHARDS, "bounded shard count, got " + shards);
+    }
+
+    public interface CounterService {
+        int increment();
+    }
+
+    public interface ShardedCounterService {
+        void add(int delta);
+
+        long total();
+    }
+
+    public static class ShardedCounter implements ShardedCounterService {
+        // Written by one request at a time; volatile so merged reads see it
+        private volatile long count;
+
+        @Override
+        public void add(int delta) {
+            count += delta;
+        }
+
+        @Override
+        public long total() {
+            return count;
+        }
+    }
+
+    public static class CounterServiceImpl implements CounterService {
+        private int count = 0;
+
+        @Override
+        public int increment() {
+            return ++count;
+        }
+    }
+
+    public static class PooledCounterService implements CounterService, ResettableResource {
+        static final AtomicInteger CREATED = new AtomicInteger();
+        private int count = 0;
+
+        public PooledCounterService() {
+            CREATED.incrementAndGet();
+        }
+
+        @Override
+        public int increment() {
+            return ++count;
+        }
+
+        @Override
+        public void reset() {
+            count = 0;
+        }
+    }
+
+    @Scope(ResourceScope.POOLED)
+    public static class AnnotatedCounterService implements CounterService, ResettableResource {
+        static final AtomicInteger CREATED = new AtomicInteger();
+        private int count = 0;
+
+        public AnnotatedCounterService() {
+            CREATED.incrementAndGet();
+        }
+
+        @Override
+        public int increment() {
+            return ++count;
+        }
+
+        @Override
+        public void reset() {
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package cn.huiwings.tcprest.test.keepalive;
+
+import cn.huiwings.tcprest.client.TcpRestClientFactory;
+import cn.huiwings.tcprest.codec.v2.ProtocolV2Codec;
+import cn.huiwings.tcprest.server.KeepAliveConfig;
+import cn.huiwings.tcprest.server.SingleThreadTcpRestServer;
+import cn.huiwings.tcprest.server.TcpRestServer;
+import cn.huiwings.tcprest.test.HelloWorld;
+import cn.huiwings.tcprest.test.HelloWorldResource;
+import cn.huiwings.tcprest.test.smoke.PortGenerator;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests keep-alive connections and request pipelining on SingleThreadTcpRestServer.
+ *
+ * <p><b>Test scenarios:</b></p>
+ * <ul>
+ *   <li>Several pipelined requests on one connection are answered in order</li>
+ *   <li>Connection is closed after max requests per connection</li>
+ *   <li>Idle connection is closed after the idle timeout</li>
+ *   <li>Default (keep-alive disabled) closes after one response</li>
+ * </ul>
+ */
+public class KeepAliveTest {
+
+    // Use dedicated port range for this test class (36000-36999)
+    private static final PortGenerator.PortRange portRange = PortGenerator.from(36000);
+
+    private TcpRestServer server;
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.down();
+            server = null;
+        }
+        Thread.sleep(300);
+    }
+
+    private int startServer(KeepAliveConfig config) throws Exception {
+        int port = portRange.next();
+        server = new SingleThreadTcpRestServer(port);
+        server.addResource(HelloWorldResource.class);
+        if (config != null) {
+            server.setKeepAliveConfig(config);
+        }
+        server.up();
+        Thread.sleep(200);
+        return port;
+    }
+
+    private static String echoRequest(String in) throws Exception {
+        Method method = HelloWorld.class.getMethod("echo", String.class);
+        return new ProtocolV2Codec().encode(HelloWorld.class, method, new Object[]{in}, null);
+    }
+
+    private static Object decode(String response) throws Exception {
+        Method method = HelloWorld.class.getMethod("echo", String.class);
+        return new ProtocolV2Codec().decode(response, method.getReturnType());
+    }
+
+    @Test
+    public void testPipelinedRequestsOnOneConnection() throws Exception {
+        int port = startServer(new KeepAliveConfig(true));
+
+        try (Socket socket = new Socket("localhost", port)) {
+            OutputStream out = socket.getOutputStream();
+            // Write all requests before reading any response
+            StringBuilder batch = new StringBuilder();
+            for (int i = 0; i < 5; i++) {
+                batch.append(echoRequest("msg-" + i)).append('\n');
+            }
+            out.write(batch.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            for (int i = 0; i < 5; i++) {
+                assertEquals(decode(reader.readLine()), "msg-" + i);
+            }
+
+            // Connection is still usable after the batch
+            out.write((echoRequest("again") + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            assertEquals(decode(reader.readLine()), "again");
+        }
+    }
+
+    @Test
+    public void testMaxRequestsPerConnection() throws Exception {
+        int port = startServer(new KeepAliveConfig(true, 5000, 2));
+
+        try (Socket socket = new Socket("localhost", port)) {
+            OutputStream out = socket.getOutputStream();
+            String batch = echoRequest("a") + "\n" + echoRequest("b") + "\n" + echoRequest("c") + "\n";
+            out.write(batch.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals(decode(reader.readLine()), "a");
+            assertEquals(decode(reader.readLine()), "b");
+            assertNull(reader.readLine(), "Connection should be closed after max requests");
+        }
+    }
+
+    @Test
+    public void testIdleConnectionClosed() throws Exception {
+        int port = startServer(new KeepAliveConfig(true, 300, 0));
+
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            assertNull(reader.readLine(), "Idle connection should be closed by server");
+        }
+
+        // Server accepts new connections after closing the idle one
+        HelloWorld client = new TcpRestClientFactory(HelloWorld.class, "localhost", port).getClient();
+        assertEquals(client.echo("next"), "next");
+    }
+
+    @Test
+    public void testKeepAliveDisabledByDefault() throws Exception {
+        int port = startServer(null);
+        assertFalse(server.getKeepAliveConfig().isEnabled());
+
+        try (Socket socket = new Socket("localhost", port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write((echoRequest("one") + "\n" + echoRequest("two") + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals(decode(reader.readLine()), "one");
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidIdleTimeout() {
+        new KeepAliveConfig().setIdleTimeoutMillis(-1);
+    }
+}
@@ -0,0 +1,268 @@
+package cn.huiwings.tcprest.test.mux;
+
+import cn.huiwings.tcprest.client.MultiplexedConnectionManager;
+import cn.huiwings.tcprest.client.TcpRestClientFactory;
+import cn.huiwings.tcprest.discovery.HostPort;
+import cn.huiwings.tcprest.protocol.v2.MultiplexFrames;
+import cn.huiwings.tcprest.protocol.v2.ProtocolV2Constants;
+import cn.huiwings.tcprest.codec.v2.ProtocolV2Codec;
+import cn.huiwings.tcprest.server.KeepAliveConfig;
+import cn.huiwings.tcprest.server.SingleThreadTcpRestServer;
+import cn.huiwings.tcprest.server.WorkerPoolConfig;
+import cn.huiwings.tcprest.test.HelloWorld;
+import cn.huiwings.tcprest.test.HelloWorldResource;
+import cn.huiwings.tcprest.test.smoke.PortGenerator;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests multiplexed connections (correlation-ID envelope) against SingleThreadTcpRestServer.
+ *
+ * <p><b>Test scenarios:</b></p>
+ * <ul>
+ *   <li>Envelope wrap/parse round trip</li>
+ *   <li>Many threads share one multiplexed connection</li>
+ *   <li>A one-thread worker pool still serves tagged requests</li>
+ *   <li>The idle timeout does not close a connection while a tagged request is running</li>
+ *   <li>Without the worker pool the server declines the handshake and the client falls back</li>
+ *   <li>Server without multiplexing support: client falls back to plain requests</li>
+ *   <li>A handshake closed without an answer is retried later instead of being remembered for good</li>
+ * </ul>
+ */
+public class MultiplexingTest {
+
+    // Use dedicated port range for this test class (37500-37999)
+    private static final PortGenerator.PortRange portRange = PortGenerator.from(37500);
+
+    private SingleThreadTcpRestServer server;
+    private MultiplexedConnectionManager manager;
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        if (manager != null) {
+            manager.close();
+            manager = null;
+        }
+        if (server != null) {
+            server.down();
+            server = null;
+        }
+        Thread.sleep(300);
+    }
+
+    private int startServer() throws Exception {
+        return startServer(true);
+    }
+
+    private int startServer(boolean workerPool) throws Exception {
+        int port = portRange.next();
+        server = new SingleThreadTcpRestServer(port);
+        server.addResource(HelloWorldResource.class);
+        if (workerPool) {
+            server.enableWorkerPool();
+        }
+        server.up();
+        Thread.sleep(200);
+        return port;
+    }
+
+    @Test
+    public void testFrameRoundTrip() {
+        String frame = "V2|0|{{abc}}|[]";
+        String wrapped = MultiplexFrames.wrap(42, frame);
+        assertEquals(wrapped, "#42|V2|0|{{abc}}|[]");
+        assertTrue(MultiplexFrames.isMultiplexed(wrapped));
+        assertEquals(MultiplexFrames.parseId(wrapped), 42L);
+        assertEquals(MultiplexFrames.unwrap(wrapped), frame);
+        assertFalse(MultiplexFrames.isMultiplexed(frame));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMalformedId() {
+        MultiplexFrames.parseId("#x|V2|0");
+    }
+
+    @Test
+    public void testConcurrentCallsShareOneConnection() throws Exception {
+        int port = startServer();
+        TcpRestClientFactory factory = new TcpRestClientFactory(HelloWorld.class, "localhost", port)
+                .withMultiplexing(1);
+        manager = factory.getMultiplexedConnections();
+        HelloWorld client = factory.getClient();
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final String msg = "m" + i;
+                results.add(executor.submit(() -> client.echo(msg)));
+            }
+            for (int i = 0; i < 200; i++) {
+                assertEquals(results.get(i).get(), "m" + i);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(manager.isSupported(new HostPort("localhost", port)));
+        assertEquals(manager.getPendingCount(new HostPort("localhost", port)), 0);
+    }
+
+    @Test
+    public void testSingleWorkerServesTaggedRequests() throws Exception {
+        int port = portRange.next();
+        server = new SingleThreadTcpRestServer(port);
+        server.addResource(HelloWorldResource.class);
+        // The only worker is held by the multiplexed connection's read loop
+        server.setWorkerPoolConfig(new WorkerPoolConfig(true, 1, 16));
+        server.up();
+        Thread.sleep(200);
+        TcpRestClientFactory factory = new TcpRestClientFactory(HelloWorld.class, "localhost", port)
+                .withMultiplexing(1);
+        manager = factory.getMultiplexedConnections();
+        HelloWorld client = factory.getClient();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> result = executor.submit(() -> client.echo("one"));
+            assertEquals(result.get(5, TimeUnit.SECONDS), "one");
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(manager.isSupported(new HostPort("localhost", port)));
+    }
+
+    @Test
+    public void testIdleTimeoutWaitsForTaggedRequests() throws Exception {
+        int port = portRange.next();
+        server = new SingleThreadTcpRestServer(port);
+        server.addResource(HelloWorldResource.class);
+        server.setKeepAliveConfig(new KeepAliveConfig(true, 500, 100));
+        server.enableWorkerPool();
+        server.up();
+        Thread.sleep(200);
+
+        // timeout() sleeps 2 seconds, well past the idle timeout, while the client sends nothing
+        ProtocolV2Codec codec = new ProtocolV2Codec();
+        String request = codec.encode(codec.plan(HelloWorld.class, HelloWorld.class.getMethod("timeout"), null),
+                new Object[0]);
+        try (Socket socket = new Socket("localhost", port);
+             PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            socket.setSoTimeout(5000);
+            writer.println(ProtocolV2Constants.MUX_HELLO);
+            assertEquals(reader.readLine(), ProtocolV2Constants.MUX_HELLO);
+            writer.println(MultiplexFrames.wrap(7, request));
+            String response = reader.readLine();
+            assertNotNull(response);
+            assertEquals(MultiplexFrames.parseId(response), 7L);
+            assertEquals(codec.decode(MultiplexFrames.unwrap(response), String.class), "ok");
+        }
+    }
+
+    @Test
+    public void testDeclinedWithoutWorkerPool() throws Exception {
+        int port = startServer(false);
+
+        try (Socket socket = new Socket("localhost", port);
+             PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            writer.println(ProtocolV2Constants.MUX_HELLO);
+            assertTrue(reader.readLine().startsWith("V2|0|3|"));
+        }
+        TcpRestClientFactory factory = new TcpRestClientFactory(HelloWorld.class, "localhost", port)
+                .withMultiplexing();
+        manager = factory.getMultiplexedConnections();
+        HelloWorld client = factory.getClient();
+
+        assertEquals(client.echo("serial"), "serial");
+        assertFalse(manager.isSupported(new HostPort("localhost", port)));
+    }
+
+    @Test
+    public void testFallbackWhenServerDoesNotSupportMultiplexing() throws Exception {
+        int backendPort = startServer();
+        int port = portRange.next();
+        // Emulates a server without multiplexing: the handshake gets a PROTOCOL_ERROR reply,
+        // other requests are relayed to a real server
+        ServerSocket legacy = new ServerSocket(port);
+        Thread relay = new Thread(() -> {
+            while (!legacy.isClosed()) {
+                try (Socket socket = legacy.accept()) {
+                    BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                    PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+                    String line = reader.readLine();
+                    if (ProtocolV2Constants.MUX_HELLO.equals(line)) {
+                        writer.println("V2|0|3|{{}}");
+                        continue;
+                    }
+                    try (Socket backend = new Socket("localhost", backendPort)) {
+                        new PrintWriter(backend.getOutputStream(), true).println(line);
+                        writer.println(new BufferedReader(new InputStreamReader(backend.getInputStream())).readLine());
+                    }
+                } catch (Exception ignored) {
+                }
+            }
+        });
+        relay.setDaemon(true);
+        relay.start();
+
+        try {
+            TcpRestClientFactory factory = new TcpRestClientFactory(HelloWorld.class, "localhost", port)
+                    .withMultiplexing();
+            manager = factory.getMultiplexedConnections();
+            HelloWorld client = factory.getClient();
+
+            assertEquals(client.echo("legacy"), "legacy");
+            assertFalse(manager.isSupported(new HostPort("localhost", port)));
+            assertEquals(client.echo("again"), "again");
+        } finally {
+            legacy.close();
+        }
+    }
+
+    @Test
+    public void testUnansweredHandshakeIsRetried() throws Exception {
+        int port = portRange.next();
+        // Closes the first connection without answering the handshake
+        ServerSocket closing = new ServerSocket(port);
+        Thread closer = new Thread(() -> {
+            try (Socket socket = closing.accept()) {
+                socket.getInputStream().read();
+            } catch (Exception ignored) {
+            }
+        });
+        closer.setDaemon(true);
+        closer.start();
+        HostPort address = new HostPort("localhost", port);
+        manager = new MultiplexedConnectionManager(1, null);
+        manager.setUnansweredRetryMillis(500);
+        try {
+            assertNull(manager.acquire(address));
+            assertFalse(manager.isSupported(address));
+        } finally {
+            closing.close();
+        }
+
+        server = new SingleThreadTcpRestServer(port);
+        server.addResource(HelloWorldResource.class);
+        server.enableWorkerPool();
+        server.up();
+        Thread.sleep(600);
+        assertNotNull(manager.acquire(address));
+        assertTrue(manager.isSupported(address));
+    }
+}
@@ -0,0 +1,161 @@
+package cn.huiwings.tcprest.test.pool;
+
+import cn.huiwings.tcprest.client.ConnectionPool;
+import cn.huiwings.tcprest.client.ConnectionPoolConfig;
+import cn.huiwings.tcprest.client.PooledConnection;
+import cn.huiwings.tcprest.client.TcpRestClientFactory;
+import cn.huiwings.tcprest.discovery.HostPort;
+import cn.huiwings.tcprest.exception.ConnectionPoolExhaustedException;
+import cn.huiwings.tcprest.server.SingleThreadTcpRestServer;
+import cn.huiwings.tcprest.server.TcpRestServer;
+import cn.huiwings.tcprest.test.Counter;
+import cn.huiwings.tcprest.test.HelloWorld;
+import cn.huiwings.tcprest.test.HelloWorldResource;
+import cn.huiwings.tcprest.test.SingletonCounterResource;
+import cn.huiwings.tcprest.test.smoke.PortGenerator;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.net.ServerSocket;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests client connection pooling against SingleThreadTcpRestServer.
+ *
+ * <p><b>Test scenarios:</b></p>
+ * <ul>
+ *   <li>Calls reuse one warm connection when the server keeps connections alive</li>
+ *   <li>One pool is shared by all interfaces of a multi-interface factory</li>
+ *   <li>Stale connections (server without keep-alive) are discarded on borrow</li>
+ *   <li>A connection closed by the peer is detected by the non-blocking stale check</li>
+ *   <li>Exhausted pool waits and then fails, recording metrics</li>
+ * </ul>
+ */
+public class ConnectionPoolTest {
+
+    // Use dedicated port range for this test class (36500-36999)
+    private static final PortGenerator.PortRange portRange = PortGenerator.from(36500);
+
+    private TcpRestServer server;
+    private ConnectionPool pool;
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+        if (server != null) {
+            server.down();
+            server = null;
+        }
+        Thread.sleep(300);
+    }
+
+    private int startServer(boolean keepAlive) throws Exception {
+        int port = portRange.next();
+        server = new SingleThreadTcpRestServer(port);
+        server.addResource(HelloWorldResource.class);
+        server.addSingletonResource(new SingletonCounterResource());
+        if (keepAlive) {
+            server.enableKeepAlive();
+        }
+        server.up();
+        Thread.sleep(200);
+        return port;
+    }
+
+    @Test
+    public void testCallsReuseConnection() throws Exception {
+        int port = startServer(true);
+        TcpRestClientFactory factory = new TcpRestClientFactory(HelloWorld.class, "localhost", port)
+                .withConnectionPool();
+        pool = factory.getConnectionPool();
+        HelloWorld client = factory.getClient();
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(client.echo("hello-" + i), "hello-" + i);
+        }
+        assertEquals(pool.getCreatedCount(), 1);
+        assertEquals(pool.getReuseCount(), 19);
+        assertEquals(pool.getIdleCount(new HostPort("localhost", port)), 1);
+    }
+
+    @Test
+    public void testPoolSharedAcrossInterfaces() throws Exception {
+        int port = startServer(true);
+        TcpRestClientFactory factory = new TcpRestClientFactory("localhost", port, HelloWorld.class, Counter.class)
+                .withConnectionPool();
+        pool = factory.getConnectionPool();
+        HelloWorld hello = factory.getClient(HelloWorld.class);
+        Counter counter = factory.getClient(Counter.class);
+
+        assertEquals(hello.echo("a"), "a");
+        counter.increaseCounter();
+        assertEquals(counter.getCounter(), 1);
+        assertEquals(pool.getCreatedCount(), 1);
+    }
+
+    @Test
+    public void testStaleConnectionDiscarded() throws Exception {
+        int port = startServer(false); // server closes after each response
+        TcpRestClientFactory factory = new TcpRestClientFactory(HelloWorld.class, "localhost", port)
+                .withConnectionPool();
+        pool = factory.getConnectionPool();
+        HelloWorld client = factory.getClient();
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(client.echo("x" + i), "x" + i);
+            Thread.sleep(50); // let the server's close arrive; a request already written is not resent
+        }
+        assertEquals(pool.getCreatedCount(), 5);
+        assertEquals(pool.getActiveCount(new HostPort("localhost", port)), 0);
+    }
+
+    @Test
+    public void testClosedPeerDetected() throws Exception {
+        try (ServerSocket peer = new ServerSocket(portRange.next())) {
+            ConnectionPoolConfig config = new ConnectionPoolConfig();
+            config.setValidateAfterIdleMillis(Long.MAX_VALUE);
+            pool = new ConnectionPool(config);
+            PooledConnection conn = pool.borrow(new HostPort("localhost", peer.getLocalPort()));
+            assertTrue(conn.isAlive());
+
+            peer.accept().close();
+            Thread.sleep(100);
+            assertFalse(conn.isAlive());
+            pool.invalidate(conn);
+        }
+    }
+
+    @Test
+    public void testExhaustedPoolRecordsWait() throws Exception {
+        int port = startServer(true);
+        ConnectionPoolConfig config = new ConnectionPoolConfig(1, 1, 0);
+        config.setMaxWaitMillis(100);
+        pool = new ConnectionPool(config);
+        HostPort address = new HostPort("localhost", port);
+
+        PooledConnection first = pool.borrow(address);
+        try {
+            pool.borrow(address);
+            fail("Expected pool exhaustion");
+        } catch (ConnectionPoolExhaustedException expected) {
+            // expected
+        }
+        assertEquals(pool.getExhaustedCount(), 1);
+        assertEquals(pool.getWaitTimeoutCount(), 1);
+        assertTrue(pool.getMaxWaitMillis() >= 100);
+
+        pool.release(first);
+        PooledConnection again = pool.borrow(address);
+        assertSame(again, first);
+        pool.release(again);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidMaxTotal() {
+        new ConnectionPoolConfig().setMaxTotal(0);
+    }
+}
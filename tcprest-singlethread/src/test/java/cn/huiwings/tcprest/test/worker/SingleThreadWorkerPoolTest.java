@@ -0,0 +1,175 @@
+package cn.huiwings.tcprest.test.worker;
+
+import cn.huiwings.tcprest.client.TcpRestClientFactory;
+import cn.huiwings.tcprest.server.SingleThreadTcpRestServer;
+import cn.huiwings.tcprest.server.WorkerPoolConfig;
+import cn.huiwings.tcprest.ssl.SSLParams;
+import cn.huiwings.tcprest.test.HelloWorld;
+import cn.huiwings.tcprest.test.HelloWorldResource;
+import cn.huiwings.tcprest.test.smoke.PortGenerator;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.*;
+
+/**
+ * Tests the worker pool ({@link WorkerPoolConfig}) on SingleThreadTcpRestServer.
+ *
+ * <p><b>Test scenarios:</b></p>
+ * <ul>
+ *   <li>An idle keep-alive connection does not hold up other clients</li>
+ *   <li>Concurrent SSL clients are served in parallel</li>
+ *   <li>A full pool answers with SERVER_ERROR</li>
+ *   <li>A rejected client that sends nothing does not delay other rejections</li>
+ * </ul>
+ */
+public class SingleThreadWorkerPoolTest {
+
+    // Use dedicated port range for this test class (39000-39999)
+    private static final PortGenerator.PortRange portRange = PortGenerator.from(39000);
+
+    private SingleThreadTcpRestServer server;
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.down();
+            server = null;
+        }
+        Thread.sleep(300);
+    }
+
+    @Test
+    public void testIdleKeepAliveConnectionDoesNotBlockOthers() throws Exception {
+        int port = portRange.next();
+        server = new SingleThreadTcpRestServer(port);
+        server.enableKeepAlive();
+        server.setWorkerPoolConfig(new WorkerPoolConfig(true, 4, 10));
+        server.addResource(HelloWorldResource.class);
+        server.up();
+        Thread.sleep(300);
+
+        // Without the pool this connection would hold the server until the idle timeout
+        try (Socket idle = new Socket("localhost", port)) {
+            Thread.sleep(200);
+            HelloWorld client = new TcpRestClientFactory(HelloWorld.class, "localhost", port).getClient();
+            long start = System.currentTimeMillis();
+            assertEquals(client.sayHelloTo("World"), "Hello, World");
+            assertTrue(System.currentTimeMillis() - start < 2000, "request waited for the idle connection");
+            assertTrue(idle.isConnected());
+        }
+    }
+
+    @Test
+    public void testConcurrentSslClients() throws Exception {
+        int port = portRange.next();
+        SSLParams serverSSLParams = new SSLParams();
+        serverSSLParams.setTrustStorePath("classpath:server_ks");
+        serverSSLParams.setKeyStorePath("classpath:server_ks");
+        serverSSLParams.setKeyStoreKeyPass("123123");
+        serverSSLParams.setNeedClientAuth(true);
+        server = new SingleThreadTcpRestServer(port, serverSSLParams);
+        server.enableKeepAlive();
+        server.enableWorkerPool();
+        server.addResource(HelloWorldResource.class);
+        server.up();
+        Thread.sleep(300);
+
+        SSLParams clientSSLParams = new SSLParams();
+        clientSSLParams.setTrustStorePath("classpath:client_ks");
+        clientSSLParams.setKeyStorePath("classpath:client_ks");
+        clientSSLParams.setKeyStoreKeyPass("456456");
+        clientSSLParams.setNeedClientAuth(true);
+        HelloWorld client = new TcpRestClientFactory(HelloWorld.class, "localhost", port, null, clientSSLParams)
+                .withConnectionPool()
+                .getClient();
+
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] futures = new Future<?>[8];
+            for (int t = 0; t < futures.length; t++) {
+                String name = "ssl" + t;
+                futures[t] = callers.submit(() -> {
+                    for (int i = 0; i < 20; i++) {
+                        assertEquals(client.sayHelloTo(name), "Hello, " + name);
+                    }
+                });
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFullPoolRejectsWithServerError() throws Exception {
+        int port = portRange.next();
+        server = new SingleThreadTcpRestServer(port);
+        server.setWorkerPoolConfig(new WorkerPoolConfig(true, 1, 0));
+        server.addResource(HelloWorldResource.class);
+        server.up();
+        Thread.sleep(300);
+        HelloWorld client = new TcpRestClientFactory(HelloWorld.class, "localhost", port).getClient();
+
+        // Occupy the only worker: timeout() sleeps 2 seconds on the server
+        Thread slow = new Thread(() -> {
+            try {
+                client.timeout();
+            } catch (RuntimeException ignored) {
+                // client gives up after 1 second
+            }
+        });
+        slow.start();
+        Thread.sleep(300);
+        try {
+            client.helloWorld();
+            fail("Expected rejection");
+        } catch (RuntimeException e) {
+            assertTrue(String.valueOf(e.getMessage()).contains("Server busy"), "unexpected: " + e);
+        }
+        slow.join();
+        Thread.sleep(2000);
+        assertEquals(client.helloWorld(), "Hello, world!");
+    }
+
+    @Test
+    public void testSilentRejectedClientDoesNotHoldAcceptThread() throws Exception {
+        int port = portRange.next();
+        server = new SingleThreadTcpRestServer(port);
+        server.setWorkerPoolConfig(new WorkerPoolConfig(true, 1, 0));
+        server.addResource(HelloWorldResource.class);
+        server.up();
+        Thread.sleep(300);
+        HelloWorld client = new TcpRestClientFactory(HelloWorld.class, "localhost", port).getClient();
+
+        Thread slow = new Thread(() -> {
+            try {
+                client.timeout();
+            } catch (RuntimeException ignored) {
+                // client gives up after 1 second
+            }
+        });
+        slow.start();
+        Thread.sleep(300);
+        // Rejected, but never sends a request: its answer waits for the read timeout
+        try (Socket silent = new Socket("localhost", port)) {
+            Thread.sleep(100);
+            long start = System.currentTimeMillis();
+            try {
+                client.helloWorld();
+                fail("Expected rejection");
+            } catch (RuntimeException e) {
+                assertTrue(String.valueOf(e.getMessage()).contains("Server busy"), "unexpected: " + e);
+            }
+            assertTrue(System.currentTimeMillis() - start < 800, "rejection waited for the silent client");
+        }
+        slow.join();
+    }
+}